@@ -20,18 +20,53 @@ import com.google.common.annotations.VisibleForTesting;
 import software.amazon.awssdk.awscore.AwsRequest;
 import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
 import software.amazon.awssdk.services.cloudformation.model.*;
+import software.amazon.awssdk.utils.CollectionUtils;
+import software.amazon.cloudformation.Action;
+import software.amazon.cloudformation.exceptions.CfnInvalidRequestException;
 import software.amazon.cloudformation.exceptions.CfnNotFoundException;
 import software.amazon.cloudformation.exceptions.TerminalException;
 import software.amazon.cloudformation.proxy.*;
+import software.amazon.cloudformation.proxy.delay.Constant;
 import software.amazon.cloudformation.proxy.delay.MultipleOf;
+import software.amazon.cloudformation.stackinstances.util.CappedMultipleOf;
 import software.amazon.cloudformation.stackinstances.util.ClientBuilder;
+import software.amazon.cloudformation.stackinstances.util.ColdStartPrimer;
+import software.amazon.cloudformation.stackinstances.util.Comparator;
+import software.amazon.cloudformation.stackinstances.util.DriftReporter;
+import software.amazon.cloudformation.stackinstances.util.DurationEstimator;
+import software.amazon.cloudformation.stackinstances.util.InstanceStatusReporter;
 import software.amazon.cloudformation.stackinstances.util.InstancesAnalyzer;
+import software.amazon.cloudformation.stackinstances.util.InstancesFingerprint;
+import software.amazon.cloudformation.stackinstances.util.LogEvent;
+import software.amazon.cloudformation.stackinstances.util.OperationCompletions;
+import software.amazon.cloudformation.stackinstances.util.OperationPlan;
+import software.amazon.cloudformation.stackinstances.util.OperationTimings;
+import software.amazon.cloudformation.stackinstances.util.PlannedOperation;
+import software.amazon.cloudformation.stackinstances.util.RepairPlanner;
+import software.amazon.cloudformation.stackinstances.util.RolloutController;
+import software.amazon.cloudformation.stackinstances.util.RolloutWave;
 import software.amazon.cloudformation.stackinstances.util.StackInstance;
+import software.amazon.cloudformation.stackinstances.util.StackInstanceGrid;
+import software.amazon.cloudformation.stackinstances.util.StackSetBeacon;
+import software.amazon.cloudformation.stackinstances.util.StackSetCoordinator;
+import software.amazon.cloudformation.stackinstances.util.StackSetLeaseQueue;
+import software.amazon.cloudformation.stackinstances.util.StackSetOperations;
+import software.amazon.cloudformation.stackinstances.util.TargetValidator;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import static software.amazon.cloudformation.stackinstances.translator.PropertyTranslator.translateFromSdkParameters;
 import static software.amazon.cloudformation.stackinstances.translator.RequestTranslator.*;
 
 /**
@@ -45,22 +80,91 @@ public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
             .delay(Duration.ofSeconds(2L))
             .build();
 
+    /**
+     * Callback delay between two rounds of {@link #executeOperationPlan}
+     */
+    protected static final int OPERATION_PLAN_CALLBACK_DELAY_SECONDS = 30;
+
+    /**
+     * Callback delay while waiting for the turn in the {@link StackSetLeaseQueue}
+     */
+    protected static final int LEASE_CALLBACK_DELAY_SECONDS = 15;
+
+    /**
+     * Environment variable enabling the anonymized timeline events replayed by the scenario benchmarks
+     */
+    public static final String TRACE_ENV = "STACK_INSTANCES_TRACE";
+
+    private static final boolean TRACE_ENABLED = Boolean.parseBoolean(System.getenv(TRACE_ENV));
+
+    /**
+     * Timeout of the CREATE, UPDATE and DELETE handlers, see timeoutInMinutes in the resource schema
+     */
+    protected static final Duration HANDLER_TIMEOUT = Duration.ofMinutes(720L);
+
+    /**
+     * Number of stabilization polls aimed at over the estimated duration of an operation
+     */
+    private static final int POLLS_PER_ESTIMATE = 20;
+
+    protected static final DriftReporter DRIFT_REPORTER = DriftReporter.fromEnvironment();
+
+    protected static final InstanceStatusReporter INSTANCE_STATUS_REPORTER = InstanceStatusReporter.fromEnvironment();
+
+    protected static final TargetValidator TARGET_VALIDATOR = TargetValidator.fromEnvironment();
+
+    protected static final OperationCompletions COMPLETIONS = OperationCompletions.fromEnvironment();
+
+    /**
+     * Stabilization delay with {@link OperationCompletions}, each check only drains the completion events
+     */
+    protected static final Constant COMPLETION_EVENT_DELAY = Constant.of()
+            .timeout(Duration.ofHours(24L))
+            .delay(OperationCompletions.EVENT_CHECK_INTERVAL)
+            .build();
+
+    /**
+     * {@link ResourceModel#getInvalidTargetAction()} leaving invalid targets out instead of rejecting the request
+     */
+    protected static final String PRUNE_INVALID_TARGETS = "PRUNE";
+
+    /**
+     * Enabled Regions lookups of the pre-flight check per invocation, one account:ListRegions call each on a cold
+     * cache. The check resumes on the next callback
+     */
+    private static final int MAX_REGION_LOOKUPS_PER_INVOCATION = 25;
+
+    /**
+     * Callback delay while the pre-flight check has accounts left to look up
+     */
+    protected static final int TARGET_VALIDATION_CALLBACK_DELAY_SECONDS = 1;
+
+    /**
+     * DescribeStackInstance calls spent on checking the overrides of CURRENT stack instances per operation at most,
+     * stack instances left unchecked are submitted
+     */
+    private static final int MAX_CURRENT_CHECKS = 50;
+
+    static {
+        // Handlers are constructed by the wrapper during the function init phase
+        ColdStartPrimer.primeOnInit();
+    }
+
     /**
      * Retrieves the {@link StackSetOperationStatus} from {@link DescribeStackSetOperationResponse}
      *
+     * @param model       {@link ResourceModel}
      * @param stackSetId  {@link ResourceModel#getStackSetName()}
      * @param operationId Operation ID
      * @return {@link StackSetOperationStatus}
      */
     private static StackSetOperationStatus getStackSetOperationStatus(
             final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
             final String stackSetId,
             final String operationId) {
 
-        final DescribeStackSetOperationResponse response = proxyClient.injectCredentialsAndInvokeV2(
-                describeStackSetOperationRequest(stackSetId, operationId),
-                proxyClient.client()::describeStackSetOperation);
-        return response.stackSetOperation().status();
+        return StackSetOperations.describe(proxyClient, model, stackSetId, operationId).status();
     }
 
     /**
@@ -94,9 +198,59 @@ public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
             final ResourceHandlerRequest<ResourceModel> request,
             final CallbackContext callbackContext,
             final Logger logger) {
-        logger.log(request.getDesiredResourceState().toString());
-        return handleRequest(proxy, request, callbackContext != null ?
-                callbackContext : new CallbackContext(), proxy.newProxy(ClientBuilder::getClient), logger);
+        logger.log(LogEvent.of("HandlerInvoked")
+                .field("Handler", getClass().getSimpleName())
+                .field("ClientRequestToken", request.getClientRequestToken())
+                .field("Reentry", callbackContext != null)
+                .model(request.getDesiredResourceState())
+                .toJson());
+        if (LogEvent.isDetailSampled()) {
+            logger.log(String.valueOf(request.getDesiredResourceState()));
+        }
+        final CallbackContext context = callbackContext != null ? callbackContext : new CallbackContext();
+        if (context.getHandlerStartedAt() == null) {
+            context.setHandlerStartedAt(System.currentTimeMillis());
+            trace(logger, "Start", request.getDesiredResourceState(),
+                    request.getDesiredResourceState() == null ? null : request.getDesiredResourceState().getStackSetName(),
+                    getClass().getSimpleName(), null, null);
+        }
+        final String administrationRegion = request.getDesiredResourceState() == null ?
+                null : request.getDesiredResourceState().getAdministrationRegion();
+        final ProxyClient<CloudFormationClient> proxyClient = proxy.newProxy(() -> ClientBuilder.getClient(administrationRegion));
+        try {
+            final ProgressEvent<ResourceModel, CallbackContext> progress = handleRequest(proxy, request, context, proxyClient, logger);
+            if (progress.isFailed()) releaseStackSetLeases(request);
+            return progress;
+        } catch (final RuntimeException e) {
+            releaseStackSetLeases(request);
+            throw e;
+        }
+    }
+
+    /**
+     * Whether the handler takes {@link StackSetLeaseQueue} leases, see {@link #acquireStackSetLease}
+     */
+    protected boolean takesStackSetLeases() {
+        return true;
+    }
+
+    /**
+     * Releases every lease the resource may hold once the handler failed, be it through a FAILED progress event, a
+     * failed operation or an exception, so that the resources queued behind it need not wait for the lease to expire
+     */
+    private void releaseStackSetLeases(final ResourceHandlerRequest<ResourceModel> request) {
+        if (!takesStackSetLeases() || !StackSetCoordinator.isLeaseQueueEnabled()) return;
+        for (final ResourceModel model : Arrays.asList(request.getDesiredResourceState(), request.getPreviousResourceState())) {
+            if (model == null || model.getInstanceId() == null) continue;
+            final Set<String> stackSetNames;
+            try {
+                stackSetNames = OperationPlan.resolveStackSetParameters(model).keySet();
+            } catch (final CfnInvalidRequestException e) {
+                // An invalid model never got to take a lease
+                continue;
+            }
+            stackSetNames.forEach(stackSetName -> StackSetCoordinator.releaseLease(model, stackSetName));
+        }
     }
 
     protected abstract ProgressEvent<ResourceModel, CallbackContext> handleRequest(
@@ -106,6 +260,248 @@ public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
             final ProxyClient<CloudFormationClient> proxyClient,
             final Logger logger);
 
+    /**
+     * Takes the resource's ticket in the {@link StackSetLeaseQueue} of the StackSet and waits for the lease
+     * without calling the CloudFormation API. The ticket is the {@link ResourceModel#getInstanceId()}
+     *
+     * @param progress     {@link ProgressEvent<ResourceModel, CallbackContext>} to place hold the current progress data
+     * @param stackSetName StackSet name
+     * @param logger       {@link Logger}
+     * @return {@link ProgressEvent<ResourceModel, CallbackContext>}, in progress with callback delay until the lease is held
+     */
+    protected ProgressEvent<ResourceModel, CallbackContext> acquireStackSetLease(
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final String stackSetName,
+            final Logger logger) {
+
+        final ResourceModel model = progress.getResourceModel();
+        if (!StackSetCoordinator.isLeaseHeld(model, progress.getCallbackContext(), stackSetName, logger)) {
+            return ProgressEvent.defaultInProgressHandler(progress.getCallbackContext(), LEASE_CALLBACK_DELAY_SECONDS, model);
+        }
+        return progress;
+    }
+
+    /**
+     * Releases the lease taken through {@link #acquireStackSetLease}
+     */
+    protected ProgressEvent<ResourceModel, CallbackContext> releaseStackSetLease(
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final String stackSetName) {
+
+        StackSetCoordinator.releaseLease(progress.getResourceModel(), stackSetName);
+        return progress;
+    }
+
+    /**
+     * Waits on the {@link StackSetBeacon} until no other operation runs on the StackSet, before the first operation
+     * of the chain is submitted. Later operations of the chain follow the resource's own operations
+     *
+     * @param proxyClient  the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param progress     {@link ProgressEvent<ResourceModel, CallbackContext>} to place hold the current progress data
+     * @param stackSetName StackSet name
+     * @param logger       {@link Logger}
+     * @return {@link ProgressEvent<ResourceModel, CallbackContext>}, in progress with callback delay while the StackSet is busy
+     */
+    protected ProgressEvent<ResourceModel, CallbackContext> awaitStackSetBeacon(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final String stackSetName,
+            final Logger logger) {
+
+        final ResourceModel model = progress.getResourceModel();
+        final CallbackContext callbackContext = progress.getCallbackContext();
+        final int delaySeconds = StackSetCoordinator.getBeaconDelaySeconds(proxyClient, model, callbackContext, stackSetName, logger);
+        if (delaySeconds > 0) {
+            return ProgressEvent.defaultInProgressHandler(callbackContext, delaySeconds, model);
+        }
+        return progress;
+    }
+
+    /**
+     * Resolves the execution path of the StackSet before its operations are submitted, see
+     * {@link #isManagedExecutionActive}
+     *
+     * @param proxyClient  the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param progress     {@link ProgressEvent<ResourceModel, CallbackContext>} to place hold the current progress data
+     * @param stackSetName StackSet name
+     * @param logger       {@link Logger}
+     * @return {@link ProgressEvent<ResourceModel, CallbackContext>}
+     */
+    protected ProgressEvent<ResourceModel, CallbackContext> resolveExecutionPath(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final String stackSetName,
+            final Logger logger) {
+
+        isManagedExecutionActive(proxyClient, progress.getResourceModel(), progress.getCallbackContext(), stackSetName, logger);
+        return progress;
+    }
+
+    /**
+     * Checks once per StackSet through {@link DescribeStackSetResponse} whether managed execution is active, the
+     * StackSet configuration is left as it is. With managed execution operations are submitted right away and only
+     * stabilized, CloudFormation queues them behind running ones. Otherwise they go through the
+     * {@link StackSetLeaseQueue} and the {@link OperationInProgressException} retries
+     *
+     * @param proxyClient     the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model           {@link ResourceModel}
+     * @param callbackContext {@link CallbackContext} caching the result
+     * @param stackSetName    StackSet name
+     * @param logger          {@link Logger}
+     * @return true if the StackSet uses managed execution
+     */
+    protected boolean isManagedExecutionActive(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final CallbackContext callbackContext,
+            final String stackSetName,
+            final Logger logger) {
+
+        final Boolean resolved = callbackContext.getManagedExecution().get(stackSetName);
+        if (resolved != null) return resolved;
+
+        final StackSet stackSet = proxyClient.injectCredentialsAndInvokeV2(
+                describeStackSetRequest(model, stackSetName),
+                proxyClient.client()::describeStackSet).stackSet();
+        final boolean active = stackSet.managedExecution() != null && Boolean.TRUE.equals(stackSet.managedExecution().active());
+
+        logger.log(String.format("StackSet [%s] operations use %s", stackSetName,
+                active ? "managed execution" : "client-side retries"));
+        callbackContext.getManagedExecution().put(stackSetName, active);
+        return active;
+    }
+
+    /**
+     * Logs an anonymized timeline event when enabled through {@value #TRACE_ENV}. Resources and StackSets are
+     * hashed, accounts and Regions are never included
+     *
+     * @param logger       {@link Logger}
+     * @param event        Start, Submit, Conflict, Poll or Complete
+     * @param model        {@link ResourceModel}
+     * @param stackSetName StackSet name
+     * @param action       handler name for Start, operation action otherwise
+     * @param instances    number of stack instances of the operation, null if not known
+     * @param status       operation status, null if not known
+     */
+    protected static void trace(
+            final Logger logger,
+            final String event,
+            final ResourceModel model,
+            final String stackSetName,
+            final Object action,
+            final Integer instances,
+            final String status) {
+        if (!TRACE_ENABLED) return;
+        logger.log(LogEvent.of("Trace" + event)
+                .field("Timestamp", System.currentTimeMillis())
+                .field("Resource", model == null ? null : LogEvent.anonymize(model.getInstanceId()))
+                .field("StackSet", LogEvent.anonymize(stackSetName))
+                .field("Action", action)
+                .field("Instances", instances)
+                .field("Status", status)
+                .toJson());
+    }
+
+    /**
+     * Submits a StackSet operation, tracing the submission or the conflict with another operation
+     */
+    private static <T> T traceSubmission(
+            final Logger logger,
+            final ResourceModel model,
+            final String stackSetName,
+            final Action action,
+            final int instances,
+            final Supplier<T> submission) {
+        try {
+            final T response = submission.get();
+            trace(logger, "Submit", model, stackSetName, action, instances, null);
+            return response;
+        } catch (final OperationInProgressException e) {
+            trace(logger, "Conflict", model, stackSetName, action, instances, null);
+            throw e;
+        }
+    }
+
+    private static void tracePoll(
+            final Logger logger,
+            final ResourceModel model,
+            final String stackSetName,
+            final StackSetOperation operation) {
+        final boolean done = operation.endTimestamp() != null;
+        trace(logger, done ? "Complete" : "Poll", model, stackSetName, operation.actionAsString(), null, operation.statusAsString());
+    }
+
+    /**
+     * Summarizes the execution path used for each StackSet, reported as the message of the final event
+     *
+     * @param callbackContext {@link CallbackContext}
+     * @return message, null if no StackSet operation was submitted
+     */
+    protected static String describeExecutionPaths(final CallbackContext callbackContext) {
+        if (callbackContext.getManagedExecution().isEmpty()) return null;
+        return callbackContext.getManagedExecution().entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> String.format("StackSet [%s]: %s", entry.getKey(),
+                        entry.getValue() ? "managed execution" : "client-side retries"))
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Sets {@link ResourceModel#getInstancesFingerprint()} on the desired model, computed on the first invocation only
+     *
+     * @param callbackContext {@link CallbackContext}
+     * @param model           desired {@link ResourceModel}, with its manifest loaded if any
+     */
+    protected void fingerprintInstances(final CallbackContext callbackContext, final ResourceModel model) {
+        if (callbackContext.getInstancesFingerprint() == null) {
+            callbackContext.setInstancesFingerprint(InstancesFingerprint.of(model));
+        }
+        model.setInstancesFingerprint(callbackContext.getInstancesFingerprint());
+    }
+
+    /**
+     * Compares the fingerprints of the previous and desired models on the first invocation only,
+     * see {@link #fingerprintInstances}
+     *
+     * @param callbackContext {@link CallbackContext}
+     * @param previousModel   previous {@link ResourceModel}, with its manifest loaded if any
+     * @param logger          {@link Logger}
+     * @return true if the update deploys exactly the stack instances the previous model deployed
+     */
+    protected boolean isInstancesUnchanged(
+            final CallbackContext callbackContext,
+            final ResourceModel previousModel,
+            final Logger logger) {
+        if (callbackContext.getInstancesUnchanged() == null) {
+            // Targets pruned by the previous Create or Update are checked again
+            callbackContext.setInstancesUnchanged(
+                    InstancesFingerprint.matches(previousModel, callbackContext.getInstancesFingerprint())
+                            && CollectionUtils.isNullOrEmpty(previousModel.getPrunedTargets()));
+            if (callbackContext.getInstancesUnchanged()) {
+                logger.log(String.format("InstancesFingerprint [%s] unchanged, no stack instance to change",
+                        callbackContext.getInstancesFingerprint()));
+            }
+        }
+        return callbackContext.getInstancesUnchanged();
+    }
+
+    /**
+     * Successful final event reporting the execution paths, see {@link #describeExecutionPaths}
+     *
+     * @param progress {@link ProgressEvent<ResourceModel, CallbackContext>} to place hold the current progress data
+     * @param model    {@link ResourceModel} to return
+     * @return {@link ProgressEvent<ResourceModel, CallbackContext>}
+     */
+    protected ProgressEvent<ResourceModel, CallbackContext> successWithExecutionPaths(
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final ResourceModel model) {
+        return ProgressEvent.<ResourceModel, CallbackContext>builder()
+                .resourceModel(model)
+                .status(OperationStatus.SUCCESS)
+                .message(describeExecutionPaths(progress.getCallbackContext()))
+                .build();
+    }
+
     protected boolean filterException(AwsRequest request, Exception e, ProxyClient<CloudFormationClient> client, ResourceModel model, CallbackContext context) {
         return e instanceof OperationInProgressException;
     }
@@ -130,18 +526,45 @@ public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
 
         final ResourceModel model = progress.getResourceModel();
         final CallbackContext callbackContext = progress.getCallbackContext();
-        return proxy
-                .initiate("AWS-CloudFormation-StackSet::CreateStackInstances", client, model, callbackContext)
-                .translateToServiceRequest(modelRequest -> createStackInstancesRequest(model, stackInstances))
-                .backoffDelay(MULTIPLE_OF)
-                .makeServiceCall((modelRequest, proxyInvocation) -> {
-                    final CreateStackInstancesResponse response = proxyInvocation.injectCredentialsAndInvokeV2(modelRequest, proxyInvocation.client()::createStackInstances);
-                    logger.log(String.format("%s [%s] CreateStackInstances initiated", ResourceModel.TYPE_NAME, model.getStackSetName()));
-                    return response;
-                })
-                .stabilize((request, response, proxyInvocation, resourceModel, context) -> isOperationStabilized(proxyInvocation, resourceModel, response.operationId(), logger))
-                .retryErrorFilter(this::filterException)
-                .progress();
+        final Set<StackInstance> pendingStackInstances = skipCurrentStackInstances(
+                client, callbackContext, model, Action.CREATE, stackInstances, logger);
+        if (pendingStackInstances.isEmpty()) {
+            return ProgressEvent.progress(model, callbackContext);
+        }
+
+        final OperationPreferences operationPreferences = OperationTimings.resolveOperationPreferences(
+                callbackContext, model, model.getStackSetName(), Action.CREATE, pendingStackInstances, logger);
+        final List<RolloutWave> waves = RolloutWave.plan(pendingStackInstances, model, operationPreferences);
+        final Map<String, Double> timings = OperationTimings.getMillisPerInstance(model, model.getStackSetName(), Action.CREATE, logger);
+        ProgressEvent<ResourceModel, CallbackContext> rollout = progress
+                .then(_progress -> checkRolloutDeadline(_progress, Action.CREATE, waves, operationPreferences, timings, logger));
+        for (final RolloutWave wave : waves) {
+            final String waveKey = wave.getKey(model.getStackSetName(), Action.CREATE);
+            final Duration estimate = RolloutController.estimate(wave, operationPreferences, timings);
+            rollout = rollout
+                .then(_progress -> checkRolloutGate(client, _progress, Action.CREATE, wave, logger))
+                .then(_progress ->
+                    proxy
+                    .initiate("AWS-CloudFormation-StackSet::CreateStackInstances" + wave.getCallGraphSuffix(), client, model, callbackContext)
+                    .translateToServiceRequest(modelRequest -> createStackInstancesRequest(model, model.getStackSetName(),
+                            model.getParameters(), wave.getStackInstances(), RolloutController.operationPreferences(callbackContext, operationPreferences, waveKey, wave)))
+                    .backoffDelay(stabilizationDelay(estimate))
+                    .makeServiceCall((modelRequest, proxyInvocation) -> {
+                        final String inFlightOperationId = findCoveringOperation(proxyInvocation, model,
+                                model.getStackSetName(), Action.CREATE, model.getParameters(), wave.getStackInstances(), logger);
+                        final CreateStackInstancesResponse response = inFlightOperationId != null ?
+                                CreateStackInstancesResponse.builder().operationId(inFlightOperationId).build() :
+                                traceSubmission(logger, model, model.getStackSetName(), Action.CREATE, wave.getStackInstances().size(),
+                                        () -> proxyInvocation.injectCredentialsAndInvokeV2(modelRequest, proxyInvocation.client()::createStackInstances));
+                        callbackContext.getRolloutOperationIds().put(waveKey, response.operationId());
+                        logger.log(String.format("%s [%s] CreateStackInstances initiated", ResourceModel.TYPE_NAME, model.getStackSetName()));
+                        return response;
+                    })
+                    .stabilize((request, response, proxyInvocation, resourceModel, context) -> isOperationStabilized(proxy, proxyInvocation, resourceModel, context, response.operationId(), logger))
+                    .retryErrorFilter(this::filterException)
+                    .progress());
+        }
+        return rollout;
     }
 
     /**
@@ -165,18 +588,33 @@ public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
         final ResourceModel model = progress.getResourceModel();
         final CallbackContext callbackContext = progress.getCallbackContext();
 
-        return proxy
-                .initiate("AWS-CloudFormation-StackSet::DeleteStackInstances", client, model, callbackContext)
-                .translateToServiceRequest(modelRequest -> deleteStackInstancesRequest(modelRequest, stackInstances))
-                .backoffDelay(MULTIPLE_OF)
-                .makeServiceCall((modelRequest, proxyInvocation) -> {
-                    final DeleteStackInstancesResponse response = proxyInvocation.injectCredentialsAndInvokeV2(modelRequest, proxyInvocation.client()::deleteStackInstances);
-                    logger.log(String.format("%s [%s] CreateStackInstances initiated", ResourceModel.TYPE_NAME, model.getStackSetName()));
-                    return response;
-                })
-                .stabilize((request, response, proxyInvocation, resourceModel, context) -> isOperationStabilized(proxyInvocation, resourceModel, response.operationId(), logger))
-                .retryErrorFilter(this::filterException)
-                .progress();
+        // One operation per rectangle, a request deletes every target of it in every Region of it
+        final List<Set<StackInstance>> rectangles = StackInstanceGrid.partition(stackInstances);
+        ProgressEvent<ResourceModel, CallbackContext> deletion = progress;
+        for (int index = 0; index < rectangles.size(); index++) {
+            final Set<StackInstance> rectangle = rectangles.get(index);
+            final String callGraphSuffix = index == 0 ? "" : String.format("::Part%d", index);
+            deletion = deletion.then(_progress -> proxy
+                    .initiate("AWS-CloudFormation-StackSet::DeleteStackInstances" + callGraphSuffix, client, model, callbackContext)
+                    .translateToServiceRequest(modelRequest -> deleteStackInstancesRequest(modelRequest, modelRequest.getStackSetName(),
+                            rectangle, OperationTimings.resolveOperationPreferences(callbackContext, model, model.getStackSetName(), Action.DELETE, rectangle, logger)))
+                    .backoffDelay(stabilizationDelay(Duration.ZERO))
+                    .makeServiceCall((modelRequest, proxyInvocation) -> {
+                        final String inFlightOperationId = findCoveringOperation(proxyInvocation, model,
+                                model.getStackSetName(), Action.DELETE, null, rectangle, logger);
+                        if (inFlightOperationId != null) {
+                            return DeleteStackInstancesResponse.builder().operationId(inFlightOperationId).build();
+                        }
+                        final DeleteStackInstancesResponse response = traceSubmission(logger, model, model.getStackSetName(), Action.DELETE,
+                                rectangle.size(), () -> proxyInvocation.injectCredentialsAndInvokeV2(modelRequest, proxyInvocation.client()::deleteStackInstances));
+                        logger.log(String.format("%s [%s] DeleteStackInstances initiated", ResourceModel.TYPE_NAME, model.getStackSetName()));
+                        return response;
+                    })
+                    .stabilize((request, response, proxyInvocation, resourceModel, context) -> isOperationStabilized(proxy, proxyInvocation, resourceModel, context, response.operationId(), logger))
+                    .retryErrorFilter(this::filterException)
+                    .progress());
+        }
+        return deletion;
     }
 
     /**
@@ -199,23 +637,548 @@ public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
 
         final ResourceModel model = progress.getResourceModel();
         final CallbackContext callbackContext = progress.getCallbackContext();
+        final Set<StackInstance> pendingStackInstances = skipCurrentStackInstances(
+                client, callbackContext, model, Action.UPDATE, stackInstances, logger);
+        if (pendingStackInstances.isEmpty()) {
+            return ProgressEvent.progress(model, callbackContext);
+        }
 
-        return progress
-            .then(_progress ->
+        final OperationPreferences operationPreferences = OperationTimings.resolveOperationPreferences(
+                callbackContext, model, model.getStackSetName(), Action.UPDATE, pendingStackInstances, logger);
+        final List<RolloutWave> waves = RolloutWave.plan(pendingStackInstances, model, operationPreferences);
+        final Map<String, Double> timings = OperationTimings.getMillisPerInstance(model, model.getStackSetName(), Action.UPDATE, logger);
+        ProgressEvent<ResourceModel, CallbackContext> rollout = progress
+                .then(_progress -> checkRolloutDeadline(_progress, Action.UPDATE, waves, operationPreferences, timings, logger));
+        for (final RolloutWave wave : waves) {
+            final String waveKey = wave.getKey(model.getStackSetName(), Action.UPDATE);
+            final Duration estimate = RolloutController.estimate(wave, operationPreferences, timings);
+            rollout = rollout
+                .then(_progress -> checkRolloutGate(client, _progress, Action.UPDATE, wave, logger))
+                .then(_progress ->
                     proxy
-                    .initiate("AWS-CloudFormation-StackSet::UpdateStackInstances", client, model, callbackContext)
-                    .translateToServiceRequest(modelRequest -> updateStackInstancesRequest(modelRequest, stackInstances))
-                    .backoffDelay(MULTIPLE_OF)
+                    .initiate("AWS-CloudFormation-StackSet::UpdateStackInstances" + wave.getCallGraphSuffix(), client, model, callbackContext)
+                    .translateToServiceRequest(modelRequest -> updateStackInstancesRequest(modelRequest, modelRequest.getStackSetName(),
+                            modelRequest.getParameters(), wave.getStackInstances(), RolloutController.operationPreferences(callbackContext, operationPreferences, waveKey, wave)))
+                    .backoffDelay(stabilizationDelay(estimate))
                     .makeServiceCall((modelRequest, proxyInvocation) -> {
-                        final UpdateStackInstancesResponse response = proxyInvocation.injectCredentialsAndInvokeV2(modelRequest, proxyInvocation.client()::updateStackInstances);
+                        final String inFlightOperationId = findCoveringOperation(proxyInvocation, model,
+                                model.getStackSetName(), Action.UPDATE, model.getParameters(), wave.getStackInstances(), logger);
+                        final UpdateStackInstancesResponse response = inFlightOperationId != null ?
+                                UpdateStackInstancesResponse.builder().operationId(inFlightOperationId).build() :
+                                traceSubmission(logger, model, model.getStackSetName(), Action.UPDATE, wave.getStackInstances().size(),
+                                        () -> proxyInvocation.injectCredentialsAndInvokeV2(modelRequest, proxyInvocation.client()::updateStackInstances));
+                        callbackContext.getRolloutOperationIds().put(waveKey, response.operationId());
                         logger.log(String.format("%s [%s] CreateStackInstances initiated", ResourceModel.TYPE_NAME, model.getStackSetName()));
                         return response;
                     })
-                    .stabilize((request, response, proxyInvocation, resourceModel, context) -> isOperationStabilized(proxyInvocation, resourceModel, response.operationId(), logger))
+                    .stabilize((request, response, proxyInvocation, resourceModel, context) -> isOperationStabilized(proxy, proxyInvocation, resourceModel, context, response.operationId(), logger))
                     .retryErrorFilter(this::filterException)
                     .progress()
 
             );
+        }
+        return rollout;
+    }
+
+    /**
+     * Executes an {@link OperationPlan} spanning several StackSets. Each round polls the operations submitted by
+     * previous rounds and submits every operation whose predecessors completed, so operations on different
+     * StackSets run concurrently. Progress is kept in {@link CallbackContext} between invocations
+     *
+     * @param proxy       {@link AmazonWebServicesClientProxy} to read the {@link OperationCompletions} with
+     * @param proxyClient the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param progress    {@link ProgressEvent<ResourceModel, CallbackContext>} to place hold the current progress data
+     * @param plan        {@link OperationPlan}
+     * @param logger      {@link Logger}
+     * @return {@link ProgressEvent<ResourceModel, CallbackContext>}, in progress with callback delay until the plan completed
+     */
+    protected ProgressEvent<ResourceModel, CallbackContext> executeOperationPlan(
+            final AmazonWebServicesClientProxy proxy,
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final OperationPlan plan,
+            final Logger logger) {
+
+        final ResourceModel model = progress.getResourceModel();
+        final CallbackContext callbackContext = progress.getCallbackContext();
+        final Set<String> completed = callbackContext.getCompletedOperations();
+        final Map<String, Duration> estimates = new HashMap<>();
+        for (final PlannedOperation operation : plan.getOperations()) {
+            estimates.put(operation.getKey(), DurationEstimator.estimate(operation.getStackInstances(),
+                    model.getOperationPreferences(), OperationTimings.getMillisPerInstance(model, operation.getStackSetName(), operation.getAction(), logger)));
+        }
+        if (callbackContext.getOperationIds().isEmpty() && completed.isEmpty()
+                && callbackContext.getCompletedRectangles().isEmpty()) {
+            checkDeadline(callbackContext, plan.getOperations().stream().map(PlannedOperation::getStackSetName)
+                    .distinct().collect(Collectors.joining(", ")),
+                    plan.estimateMakespan(completed, operation -> estimates.get(operation.getKey())), logger);
+        }
+
+        for (final PlannedOperation operation : plan.getOperations()) {
+            final String operationId = callbackContext.getOperationIds().get(operation.getKey());
+            if (operationId == null || completed.contains(operation.getKey())) continue;
+            // Renews the lease while the operation runs
+            StackSetCoordinator.isLeaseHeld(model, callbackContext, operation.getStackSetName(), logger);
+            if (!isOperationPollDue(proxy, callbackContext, operationId)) continue;
+            final StackSetOperation stackSetOperation =
+                    StackSetOperations.describe(proxyClient, model, operation.getStackSetName(), operationId);
+            OperationTimings.record(proxyClient, model, operation.getStackSetName(), stackSetOperation, logger);
+            StackSetCoordinator.publishOperationState(model, operation.getStackSetName(), stackSetOperation);
+            tracePoll(logger, model, operation.getStackSetName(), stackSetOperation);
+            if (isStackSetOperationDone(stackSetOperation.status(), operationId, logger)) {
+                final int completedRectangles = callbackContext.getCompletedRectangles().merge(operation.getKey(), 1, Integer::sum);
+                if (completedRectangles < rectanglesOf(proxyClient, model, callbackContext, operation, logger).size()) {
+                    // The operation is ready again for its next rectangle
+                    callbackContext.getOperationIds().remove(operation.getKey());
+                } else {
+                    completed.add(operation.getKey());
+                }
+            }
+        }
+
+        for (final String stackSetName : plan.getOperations().stream()
+                .map(PlannedOperation::getStackSetName).collect(Collectors.toSet())) {
+            if (plan.getOperations().stream().filter(operation -> stackSetName.equals(operation.getStackSetName()))
+                    .allMatch(operation -> completed.contains(operation.getKey()))) {
+                releaseStackSetLease(progress, stackSetName);
+            }
+        }
+
+        // Longest operations first, they take their place in the lease queues before shorter ones
+        final List<PlannedOperation> readyOperations = new ArrayList<>(
+                plan.getReadyOperations(completed, callbackContext.getOperationIds().keySet()));
+        readyOperations.sort(java.util.Comparator.comparing(
+                (PlannedOperation operation) -> estimates.get(operation.getKey())).reversed());
+        for (final PlannedOperation operation : readyOperations) {
+            if (!isManagedExecutionActive(proxyClient, model, callbackContext, operation.getStackSetName(), logger)
+                    && (!StackSetCoordinator.isLeaseHeld(model, callbackContext, operation.getStackSetName(), logger)
+                    || StackSetCoordinator.getBeaconDelaySeconds(proxyClient, model, callbackContext, operation.getStackSetName(), logger) > 0)) continue;
+
+            // One rectangle at a time, a request deploys every target of it to every Region of it
+            final List<Set<StackInstance>> rectangles = rectanglesOf(proxyClient, model, callbackContext, operation, logger);
+            final int rectangleIndex = callbackContext.getCompletedRectangles().getOrDefault(operation.getKey(), 0);
+            if (rectangleIndex >= rectangles.size()) {
+                completed.add(operation.getKey());
+                continue;
+            }
+            final Set<StackInstance> pendingStackInstances = rectangles.get(rectangleIndex);
+
+            final String inFlightOperationId = findCoveringOperation(proxyClient, model, operation.getStackSetName(),
+                    operation.getAction(), operation.getParameters(), pendingStackInstances, logger);
+            if (inFlightOperationId != null) {
+                callbackContext.getOperationIds().put(operation.getKey(), inFlightOperationId);
+                continue;
+            }
+
+            try {
+                final OperationPreferences operationPreferences = OperationTimings.resolveOperationPreferences(callbackContext, model,
+                        operation.getStackSetName(), operation.getAction(), pendingStackInstances, logger);
+                final String operationId = traceSubmission(logger, model, operation.getStackSetName(), operation.getAction(),
+                        pendingStackInstances.size(),
+                        () -> submitPlannedOperation(proxyClient, model, operation, pendingStackInstances, operationPreferences));
+                callbackContext.getOperationIds().put(operation.getKey(), operationId);
+                logger.log(String.format("%s [%s] %s operation [%s] initiated",
+                        ResourceModel.TYPE_NAME, operation.getStackSetName(), operation.getAction(), operationId));
+            } catch (final OperationInProgressException e) {
+                logger.log(String.format("StackSet [%s] has an operation in progress, %s is retried in the next round",
+                        operation.getStackSetName(), operation.getAction()));
+            }
+        }
+
+        if (plan.isComplete(completed)) {
+            return ProgressEvent.progress(model, callbackContext);
+        }
+        // Only waiting for in-flight operations, their completion events end the wait
+        if (COMPLETIONS.isEnabled() && plan.getReadyOperations(completed, callbackContext.getOperationIds().keySet()).isEmpty()) {
+            return ProgressEvent.defaultInProgressHandler(callbackContext,
+                    (int) OperationCompletions.EVENT_CHECK_INTERVAL.getSeconds(), model);
+        }
+        // Wait for the shortest in-flight operation, polling it about POLLS_PER_ESTIMATE times
+        final long shortestInFlightSeconds = plan.getOperations().stream()
+                .filter(operation -> callbackContext.getOperationIds().containsKey(operation.getKey())
+                        && !completed.contains(operation.getKey()))
+                .mapToLong(operation -> estimates.get(operation.getKey()).getSeconds())
+                .min().orElse(0L);
+        return ProgressEvent.defaultInProgressHandler(callbackContext, (int) Math.max(OPERATION_PLAN_CALLBACK_DELAY_SECONDS,
+                Math.min(300L, shortestInFlightSeconds / POLLS_PER_ESTIMATE)), model);
+    }
+
+    /**
+     * Splits the stack instances a planned operation still has to change into the rectangles it submits one by one
+     */
+    private List<Set<StackInstance>> rectanglesOf(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final CallbackContext callbackContext,
+            final PlannedOperation operation,
+            final Logger logger) {
+
+        return StackInstanceGrid.partition(operation.getAction() == Action.DELETE ?
+                operation.getStackInstances() :
+                pendingStackInstancesOf(proxyClient, callbackContext, model, operation.getStackSetName(),
+                        operation.getAction(), operation.getParameters(), operation.getStackInstances(), logger));
+    }
+
+    private static String submitPlannedOperation(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final PlannedOperation operation,
+            final Set<StackInstance> stackInstances,
+            final OperationPreferences operationPreferences) {
+
+        switch (operation.getAction()) {
+            case CREATE:
+                return proxyClient.injectCredentialsAndInvokeV2(
+                        createStackInstancesRequest(model, operation.getStackSetName(), operation.getParameters(),
+                                stackInstances, operationPreferences),
+                        proxyClient.client()::createStackInstances).operationId();
+            case UPDATE:
+                return proxyClient.injectCredentialsAndInvokeV2(
+                        updateStackInstancesRequest(model, operation.getStackSetName(), operation.getParameters(),
+                                stackInstances, operationPreferences),
+                        proxyClient.client()::updateStackInstances).operationId();
+            case DELETE:
+                return proxyClient.injectCredentialsAndInvokeV2(
+                        deleteStackInstancesRequest(model, operation.getStackSetName(), stackInstances, operationPreferences),
+                        proxyClient.client()::deleteStackInstances).operationId();
+            default:
+                throw new IllegalStateException(String.format("Unsupported planned action [%s]", operation.getAction()));
+        }
+    }
+
+    /**
+     * Removes the stack instances a single-StackSet CREATE/UPDATE would not change, see
+     * {@link #pendingStackInstancesOf}. An operation left without stack instances is recorded as completed so that
+     * re-entries skip it as well
+     *
+     * @param proxyClient     the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param callbackContext {@link CallbackContext}
+     * @param model           {@link ResourceModel}
+     * @param action          {@link Action#CREATE} or {@link Action#UPDATE}
+     * @param stackInstances  planned {@link StackInstance} set
+     * @param logger          {@link Logger}
+     * @return {@link StackInstance} set still to be submitted
+     */
+    private Set<StackInstance> skipCurrentStackInstances(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final CallbackContext callbackContext,
+            final ResourceModel model,
+            final Action action,
+            final Set<StackInstance> stackInstances,
+            final Logger logger) {
+
+        final String operationKey = PlannedOperation.key(model.getStackSetName(), action);
+        if (callbackContext.getCompletedOperations().contains(operationKey)) {
+            return new HashSet<>();
+        }
+
+        final Set<StackInstance> pendingStackInstances = pendingStackInstancesOf(proxyClient, callbackContext, model,
+                model.getStackSetName(), action, model.getParameters(), stackInstances, logger);
+        if (pendingStackInstances.isEmpty()) {
+            callbackContext.getCompletedOperations().add(operationKey);
+        }
+        return pendingStackInstances;
+    }
+
+    /**
+     * Filters the stack instances of an operation through {@link #filterCurrentStackInstances} on the first call only
+     * and keeps the result in {@link CallbackContext#getPendingStackInstances()}, so that later rounds and invocations
+     * submit the same rectangles without describing the StackSet again. The kept set only identifies the stack
+     * instances, parameters and targeting are restored from the planned set
+     *
+     * @param proxyClient     the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param callbackContext {@link CallbackContext}
+     * @param model           {@link ResourceModel}
+     * @param stackSetName    StackSet name
+     * @param action          {@link Action#CREATE} or {@link Action#UPDATE}
+     * @param parameters      parameter overrides the operation would apply
+     * @param stackInstances  planned {@link StackInstance} set
+     * @param logger          {@link Logger}
+     * @return {@link StackInstance} set still to be submitted
+     */
+    protected Set<StackInstance> pendingStackInstancesOf(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final CallbackContext callbackContext,
+            final ResourceModel model,
+            final String stackSetName,
+            final Action action,
+            final Set<Parameter> parameters,
+            final Set<StackInstance> stackInstances,
+            final Logger logger) {
+
+        final String operationKey = PlannedOperation.key(stackSetName, action);
+        final Set<StackInstance> kept = callbackContext.getPendingStackInstances().get(operationKey);
+        if (kept != null) {
+            return stackInstances.stream().filter(kept::contains).collect(Collectors.toSet());
+        }
+        final Set<StackInstance> pendingStackInstances =
+                filterCurrentStackInstances(proxyClient, model, stackSetName, parameters, stackInstances, logger);
+        callbackContext.getPendingStackInstances().put(operationKey, pendingStackInstances);
+        return pendingStackInstances;
+    }
+
+    /**
+     * Filters out planned stack instances that already exist in {@link StackInstanceStatus#CURRENT} status with
+     * identical parameter overrides, submitting them again would only hold the StackSet. Only whole targets and
+     * Regions are left out through {@link StackInstanceGrid#removeCovered}, so a rectangle stays one operation, and
+     * overrides are only described for the stack instances that could be left out, {@value #MAX_CURRENT_CHECKS} at
+     * most. Listing is narrowed to the account when all planned stack instances belong to a single account.
+     * OrganizationalUnitId targets are always submitted, the accounts they cover are only known to Organizations
+     *
+     * @param proxyClient    the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model          {@link ResourceModel}
+     * @param stackSetName   StackSet name
+     * @param parameters     parameter overrides the operation would apply
+     * @param stackInstances planned {@link StackInstance} set
+     * @param logger         {@link Logger}
+     * @return {@link StackInstance} set still to be submitted
+     */
+    protected Set<StackInstance> filterCurrentStackInstances(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName,
+            final Set<Parameter> parameters,
+            final Set<StackInstance> stackInstances,
+            final Logger logger) {
+
+        if (stackInstances.isEmpty()) return new HashSet<>();
+        if (stackInstances.stream().allMatch(StackInstance::targetsOrganizationalUnit)) return new HashSet<>(stackInstances);
+
+        final Set<StackInstance> current = StackSetOperations.listStackInstanceSummaries(proxyClient, model, stackSetName, stackInstances).stream()
+                .filter(summary -> summary.status() == StackInstanceStatus.CURRENT)
+                .map(summary -> StackInstance.builder().region(summary.region()).deploymentTarget(summary.account()).build())
+                .filter(stackInstances::contains)
+                .collect(Collectors.toSet());
+        final Set<StackInstance> coverable = StackInstanceGrid.removeCovered(stackInstances, current);
+
+        final Set<StackInstance> unchanged = new HashSet<>();
+        int checks = 0;
+        for (final StackInstance existing : stackInstances) {
+            if (coverable.contains(existing)) continue;
+            if (checks++ == MAX_CURRENT_CHECKS) break;
+            final DescribeStackInstanceResponse instance = proxyClient.injectCredentialsAndInvokeV2(
+                    describeStackInstanceRequest(model, existing.getDeploymentTarget(), existing.getRegion(), stackSetName),
+                    proxyClient.client()::describeStackInstance);
+            if (Comparator.equalsOverrides(translateFromSdkParameters(instance.stackInstance().parameterOverrides()), parameters)) {
+                unchanged.add(existing);
+            }
+        }
+        final Set<StackInstance> pendingStackInstances = StackInstanceGrid.removeCovered(stackInstances, unchanged);
+
+        logger.log(String.format("StackSet [%s] %d of %d planned stack instances are already CURRENT",
+                stackSetName, stackInstances.size() - pendingStackInstances.size(), stackInstances.size()));
+        return pendingStackInstances;
+    }
+
+    /**
+     * Looks for a RUNNING or QUEUED operation on the StackSet that already performs the planned action on every
+     * planned stack instance, so that the caller attaches to its stabilization instead of queueing a duplicate.
+     * An operation applies the same overrides to all of its stack instances and StackSets store requested overrides
+     * on submission, one described stack instance therefore verifies the overrides of the whole operation. Plans with
+     * OrganizationalUnitId targets never attach, operation results only list the accounts resolved so far
+     *
+     * @param proxyClient    the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model          {@link ResourceModel}
+     * @param stackSetName   StackSet name
+     * @param action         planned {@link Action}
+     * @param parameters     parameter overrides the operation would apply, ignored for {@link Action#DELETE}
+     * @param stackInstances planned {@link StackInstance} set
+     * @param logger         {@link Logger}
+     * @return OperationId of the covering operation, null if none
+     */
+    protected String findCoveringOperation(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName,
+            final Action action,
+            final Set<Parameter> parameters,
+            final Set<StackInstance> stackInstances,
+            final Logger logger) {
+
+        if (stackInstances.isEmpty() || stackInstances.stream().anyMatch(StackInstance::targetsOrganizationalUnit)) return null;
+
+        // In-flight operations are the most recent ones, the first page is enough
+        final ListStackSetOperationsResponse operations = proxyClient.injectCredentialsAndInvokeV2(
+                listStackSetOperationsRequest(model, stackSetName),
+                proxyClient.client()::listStackSetOperations);
+        for (final StackSetOperationSummary operation : operations.summaries()) {
+            if (!action.name().equals(operation.actionAsString())
+                    || (StackSetOperationStatus.RUNNING != operation.status()
+                    && StackSetOperationStatus.QUEUED != operation.status())) continue;
+
+            final Set<StackInstance> covered = StackSetOperations.listTargets(proxyClient, model, stackSetName, operation.operationId());
+            if (!covered.containsAll(stackInstances)) continue;
+
+            if (action != Action.DELETE) {
+                final StackInstance sample = stackInstances.iterator().next();
+                final DescribeStackInstanceResponse instance;
+                try {
+                    instance = proxyClient.injectCredentialsAndInvokeV2(
+                            describeStackInstanceRequest(model, sample.getDeploymentTarget(), sample.getRegion(), stackSetName),
+                            proxyClient.client()::describeStackInstance);
+                } catch (final StackInstanceNotFoundException e) {
+                    continue;
+                }
+                if (!Comparator.equalsOverrides(translateFromSdkParameters(instance.stackInstance().parameterOverrides()), parameters)) continue;
+            }
+
+            logger.log(String.format("StackSet [%s] %s operation [%s] already covers the %d planned stack instances, attaching to it",
+                    stackSetName, action, operation.operationId(), stackInstances.size()));
+            return operation.operationId();
+        }
+        return null;
+    }
+
+    /**
+     * Lets a rollout wave start once the previous wave succeeded, see {@link RolloutController#checkGate}
+     */
+    private static ProgressEvent<ResourceModel, CallbackContext> checkRolloutGate(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final Action action,
+            final RolloutWave wave,
+            final Logger logger) {
+
+        RolloutController.checkGate(proxyClient, progress.getResourceModel(), progress.getCallbackContext(), action, wave, logger);
+        return progress;
+    }
+
+    /**
+     * Checks the estimated duration of all waves against the remaining handler budget, once before the first wave
+     *
+     * @param progress             {@link ProgressEvent<ResourceModel, CallbackContext>} to place hold the current progress data
+     * @param action               {@link Action} of the rollout
+     * @param waves                {@link RolloutWave} list
+     * @param operationPreferences resolved {@link OperationPreferences} of the rollout
+     * @param timings              recorded duration per stack instance by Region
+     * @param logger               {@link Logger}
+     * @return {@link ProgressEvent<ResourceModel, CallbackContext>}
+     */
+    private static ProgressEvent<ResourceModel, CallbackContext> checkRolloutDeadline(
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final Action action,
+            final List<RolloutWave> waves,
+            final OperationPreferences operationPreferences,
+            final Map<String, Double> timings,
+            final Logger logger) {
+
+        final ResourceModel model = progress.getResourceModel();
+        final CallbackContext callbackContext = progress.getCallbackContext();
+        if (callbackContext.getRolloutOperationIds().containsKey(RolloutWave.key(model.getStackSetName(), action, 0))) {
+            return progress;
+        }
+        checkDeadline(callbackContext, model.getStackSetName(),
+                RolloutController.estimate(waves, operationPreferences, timings), logger);
+        return progress;
+    }
+
+    /**
+     * Repairs the OUTDATED stack instances of the resource on every given StackSet, see
+     * {@link ResourceModel#getReconcileUnhealthyInstances()}. Each round polls the in-flight repair of a StackSet,
+     * or scans the StackSet and submits one UpdateStackInstances for the largest batch of stack instances sharing
+     * Regions and overrides, until no stack instance is left to repair. Different StackSets are repaired concurrently
+     *
+     * @param proxyClient        the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param progress           {@link ProgressEvent<ResourceModel, CallbackContext>} to place hold the current progress data
+     * @param stackSetParameters parameter overrides by StackSet name, see {@link OperationPlan#resolveStackSetParameters}
+     * @param stackInstances     {@link StackInstance} set of the resource
+     * @param logger             {@link Logger}
+     * @return {@link ProgressEvent<ResourceModel, CallbackContext>}, in progress with callback delay until every StackSet is repaired
+     */
+    protected ProgressEvent<ResourceModel, CallbackContext> repairUnhealthyStackInstances(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final Map<String, Set<Parameter>> stackSetParameters,
+            final Set<StackInstance> stackInstances,
+            final Logger logger) {
+
+        final ResourceModel model = progress.getResourceModel();
+        final CallbackContext callbackContext = progress.getCallbackContext();
+
+        for (final Map.Entry<String, Set<Parameter>> entry : stackSetParameters.entrySet()) {
+            final String stackSetName = entry.getKey();
+            if (callbackContext.getRepairedStackSets().contains(stackSetName)) continue;
+
+            final String operationId = callbackContext.getRepairOperationIds().get(stackSetName);
+            if (operationId != null) {
+                if (!isStackSetOperationDone(
+                        getStackSetOperationStatus(proxyClient, model, stackSetName, operationId), operationId, logger)) continue;
+                callbackContext.getRepairOperationIds().remove(stackSetName);
+                StackSetCoordinator.publishOperationState(model, stackSetName, null);
+            }
+            if (!isManagedExecutionActive(proxyClient, model, callbackContext, stackSetName, logger)
+                    && (!StackSetCoordinator.isLeaseHeld(model, callbackContext, stackSetName, logger)
+                    || StackSetCoordinator.getBeaconDelaySeconds(proxyClient, model, callbackContext, stackSetName, logger) > 0)) continue;
+
+            final Set<StackInstance> repaired = callbackContext.getRepairedStackInstances()
+                    .computeIfAbsent(stackSetName, key -> new HashSet<>());
+            final Set<StackInstance> outdated = RepairPlanner.collectOutdated(proxyClient, model, stackSetName, stackInstances, logger);
+            outdated.removeAll(repaired);
+            if (outdated.isEmpty()) {
+                callbackContext.getRepairedStackSets().add(stackSetName);
+                releaseStackSetLease(progress, stackSetName);
+                continue;
+            }
+
+            final Set<StackInstance> batch = RepairPlanner.nextBatch(outdated, entry.getValue());
+            try {
+                final String repairOperationId = traceSubmission(logger, model, stackSetName, Action.UPDATE, batch.size(),
+                        () -> proxyClient.injectCredentialsAndInvokeV2(
+                                updateStackInstancesRequest(model, stackSetName, entry.getValue(), batch),
+                                proxyClient.client()::updateStackInstances).operationId());
+                callbackContext.getRepairOperationIds().put(stackSetName, repairOperationId);
+                batch.forEach(stackInstance -> repaired.add(StackInstance.builder()
+                        .region(stackInstance.getRegion()).deploymentTarget(stackInstance.getDeploymentTarget()).build()));
+                logger.log(String.format("StackSet [%s] repair operation [%s] initiated for %d of %d OUTDATED stack instances",
+                        stackSetName, repairOperationId, batch.size(), outdated.size()));
+            } catch (final OperationInProgressException e) {
+                logger.log(String.format("StackSet [%s] has an operation in progress, repair is retried in the next round", stackSetName));
+            }
+        }
+
+        if (callbackContext.getRepairedStackSets().containsAll(stackSetParameters.keySet())) {
+            return ProgressEvent.progress(model, callbackContext);
+        }
+        return ProgressEvent.defaultInProgressHandler(callbackContext, OPERATION_PLAN_CALLBACK_DELAY_SECONDS, model);
+    }
+
+    /**
+     * {@link #isOperationStabilized(ProxyClient, ResourceModel, String, Logger)} describing the operation only when
+     * {@link #isOperationPollDue} allows it
+     */
+    protected boolean isOperationStabilized(final AmazonWebServicesClientProxy proxy,
+                                            final ProxyClient<CloudFormationClient> proxyClient,
+                                            final ResourceModel model,
+                                            final CallbackContext callbackContext,
+                                            final String operationId,
+                                            final Logger logger) {
+
+        // Renews the lease while the operation runs, stabilization delays are capped below its timeout
+        StackSetCoordinator.isLeaseHeld(model, callbackContext, model.getStackSetName(), logger);
+        return isOperationPollDue(proxy, callbackContext, operationId)
+                && isOperationStabilized(proxyClient, model, operationId, logger);
+    }
+
+    /**
+     * Without {@link OperationCompletions} every check polls. With them the operation is described once its
+     * completion event arrived, and otherwise only every {@link OperationCompletions#SAFETY_NET_POLL_INTERVAL}
+     *
+     * @param proxy           {@link AmazonWebServicesClientProxy} to read the completion events with
+     * @param callbackContext {@link CallbackContext} keeping the last poll of each operation
+     * @param operationId     OperationId
+     * @return true if the operation should be described now
+     */
+    private static boolean isOperationPollDue(
+            final AmazonWebServicesClientProxy proxy,
+            final CallbackContext callbackContext,
+            final String operationId) {
+
+        if (!COMPLETIONS.isEnabled()) return true;
+        final Map<String, Long> polledAt = callbackContext.getOperationPolledAt();
+        if (COMPLETIONS.getFinalStatus(proxy, operationId) == null
+                && !COMPLETIONS.isSafetyNetPollDue(polledAt.get(operationId))) return false;
+        polledAt.put(operationId, System.currentTimeMillis());
+        return true;
     }
 
     /**
@@ -233,8 +1196,163 @@ public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
                                             final Logger logger) {
 
         final String stackSetId = model.getStackSetName();
-        final StackSetOperationStatus status = getStackSetOperationStatus(proxyClient, stackSetId, operationId);
-        return isStackSetOperationDone(status, operationId, logger);
+        final StackSetOperation operation = StackSetOperations.describe(proxyClient, model, stackSetId, operationId);
+        OperationTimings.record(proxyClient, model, stackSetId, operation, logger);
+        StackSetCoordinator.publishOperationState(model, stackSetId, operation);
+        tracePoll(logger, model, stackSetId, operation);
+        return isStackSetOperationDone(operation.status(), operationId, logger);
+    }
+
+    /**
+     * @param callbackContext {@link CallbackContext}
+     * @return time left until {@link #HANDLER_TIMEOUT}, counted from the first invocation
+     */
+    protected static Duration getRemainingBudget(final CallbackContext callbackContext) {
+        final long startedAt = callbackContext.getHandlerStartedAt() == null ?
+                System.currentTimeMillis() : callbackContext.getHandlerStartedAt();
+        return HANDLER_TIMEOUT.minusMillis(System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * Pre-flight check of the planned stack instances through the {@link TargetValidator}, before anything locks the
+     * StackSet. Each invocation looks up at most {@value #MAX_REGION_LOOKUPS_PER_INVOCATION} accounts, the check
+     * resumes on the next callback where it stopped, see {@link CallbackContext#getTargetValidationResumeAt()}. The
+     * sets must be planned the same way on every invocation until the check completes. Invalid targets are removed
+     * from the sets with {@link #PRUNE_INVALID_TARGETS} and reported in {@link ResourceModel#getPrunedTargets()},
+     * otherwise the request is rejected as soon as one is found
+     *
+     * @param proxy           {@link AmazonWebServicesClientProxy} to call the account and Region sources
+     * @param model           {@link ResourceModel}
+     * @param callbackContext {@link CallbackContext} keeping the progress of the check
+     * @param stackInstances  planned {@link StackInstance} sets, pruned in place
+     * @param logger          {@link Logger}
+     * @return true once every target was checked, false while accounts are left to look up
+     * @throws CfnInvalidRequestException if targets are invalid and not pruned
+     */
+    protected static boolean validateTargets(
+            final AmazonWebServicesClientProxy proxy,
+            final ResourceModel model,
+            final CallbackContext callbackContext,
+            final Collection<Set<StackInstance>> stackInstances,
+            final Logger logger) {
+
+        model.setPrunedTargets(null);
+        if (!TARGET_VALIDATOR.isEnabled(model.getInvalidTargetAction())) return true;
+        final Map<String, String> invalid = callbackContext.getInvalidTargets();
+        if (!Boolean.TRUE.equals(callbackContext.getTargetsValidated())) {
+            final Set<StackInstance> targets = new HashSet<>();
+            stackInstances.forEach(targets::addAll);
+            final int resumeAt = callbackContext.getTargetValidationResumeAt() == null ? 0 : callbackContext.getTargetValidationResumeAt();
+            final long startedAt = System.currentTimeMillis();
+            final TargetValidator.Findings findings = TARGET_VALIDATOR.validate(proxy, targets, resumeAt, MAX_REGION_LOOKUPS_PER_INVOCATION);
+            findings.getInvalidTargets().forEach((stackInstance, reason) -> invalid.put(targetOf(stackInstance), reason));
+            logger.log(LogEvent.of("TargetValidation")
+                    .field("Targets", targets.size())
+                    .field("ResumedAt", resumeAt)
+                    .field("ResumeAt", findings.getResumeAt())
+                    .field("Invalid", invalid.size())
+                    .field("Unavailable", findings.getUnavailableSources().isEmpty() ? null : LogEvent.bounded(findings.getUnavailableSources()))
+                    .field("DurationMillis", System.currentTimeMillis() - startedAt)
+                    .toJson());
+
+            if (!invalid.isEmpty() && !PRUNE_INVALID_TARGETS.equals(model.getInvalidTargetAction())) {
+                throw new CfnInvalidRequestException(String.format(
+                        "%d stack instance targets failed the pre-flight check: %s. Remove them or set InvalidTargetAction to PRUNE",
+                        invalid.size(), LogEvent.bounded(invalid.values())));
+            }
+            callbackContext.setTargetValidationResumeAt(findings.getResumeAt());
+            if (findings.getResumeAt() != null) return false;
+            callbackContext.setTargetsValidated(true);
+            if (!invalid.isEmpty()) {
+                logger.log(String.format("Pruned %d targets failing the pre-flight check: %s", invalid.size(), LogEvent.bounded(invalid.values())));
+            }
+        }
+        if (invalid.isEmpty()) return true;
+
+        stackInstances.forEach(set -> set.removeIf(stackInstance -> invalid.containsKey(targetOf(stackInstance))));
+        model.setPrunedTargets(new TreeSet<>(invalid.keySet()));
+        return true;
+    }
+
+    /**
+     * Runs {@link #validateTargets(AmazonWebServicesClientProxy, ResourceModel, CallbackContext, Collection, Logger)}
+     * on the operations of the plan that deploy stack instances, deletions are never checked
+     */
+    protected static boolean validateTargets(
+            final AmazonWebServicesClientProxy proxy,
+            final ResourceModel model,
+            final CallbackContext callbackContext,
+            final OperationPlan plan,
+            final Logger logger) {
+
+        return validateTargets(proxy, model, callbackContext, plan.getOperations().stream()
+                .filter(operation -> operation.getAction() != Action.DELETE)
+                .map(PlannedOperation::getStackInstances)
+                .collect(Collectors.toList()), logger);
+    }
+
+    /**
+     * Stack instances of the desired model that the previous Create or Update left out through
+     * {@link #PRUNE_INVALID_TARGETS}, planned for creation again
+     *
+     * @param previousModel previous {@link ResourceModel} with its {@link ResourceModel#getPrunedTargets()}
+     * @param model         desired {@link ResourceModel}
+     * @return {@link StackInstance} set to create again
+     */
+    protected static Set<StackInstance> retriedPrunedTargets(final ResourceModel previousModel, final ResourceModel model) {
+        if (previousModel == null || CollectionUtils.isNullOrEmpty(previousModel.getPrunedTargets())) return new HashSet<>();
+        return InstancesAnalyzer.flattenStackInstances(model).stream()
+                .filter(stackInstance -> previousModel.getPrunedTargets().contains(targetOf(stackInstance)))
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * @return account/Region of an account target
+     */
+    private static String targetOf(final StackInstance stackInstance) {
+        return stackInstance.getDeploymentTarget() + "/" + stackInstance.getRegion();
+    }
+
+    /**
+     * Rejects work estimated to outlast the handler, before anything locks the StackSet
+     *
+     * @param callbackContext {@link CallbackContext}
+     * @param stackSetName    StackSet name, or a description of the StackSets
+     * @param estimate        estimated duration of the work
+     * @param logger          {@link Logger}
+     * @throws CfnInvalidRequestException if the estimate exceeds the remaining budget
+     */
+    private static void checkDeadline(
+            final CallbackContext callbackContext,
+            final String stackSetName,
+            final Duration estimate,
+            final Logger logger) {
+
+        final Duration remaining = getRemainingBudget(callbackContext);
+        logger.log(String.format("StackSet [%s] operations estimated at %d minutes, %d minutes left before the handler timeout",
+                stackSetName, estimate.toMinutes(), remaining.toMinutes()));
+        if (estimate.compareTo(remaining) > 0) {
+            throw new CfnInvalidRequestException(String.format(
+                    "StackSet [%s] operations are estimated at %d minutes, beyond the %d minutes left before the handler "
+                            + "timeout. Raise the concurrency in OperationPreferences or split the stack instances across resources",
+                    stackSetName, estimate.toMinutes(), remaining.toMinutes()));
+        }
+    }
+
+    /**
+     * Stabilization backoff spreading about {@link #POLLS_PER_ESTIMATE} polls over the estimated duration, between
+     * the 2 seconds of {@link #MULTIPLE_OF} and one minute for the first delay. Delays never exceed
+     * {@link StackSetLeaseQueue#RENEWAL_INTERVAL}, each check renews the lease of the resource. With
+     * {@link OperationCompletions} the checks only drain events and run every
+     * {@link OperationCompletions#EVENT_CHECK_INTERVAL}
+     *
+     * @param estimate estimated operation duration
+     * @return {@link Delay}
+     */
+    protected static Delay stabilizationDelay(final Duration estimate) {
+        if (COMPLETIONS.isEnabled()) return COMPLETION_EVENT_DELAY;
+        final long seconds = Math.max(2L, Math.min(60L, estimate.getSeconds() / POLLS_PER_ESTIMATE));
+        return new CappedMultipleOf(Duration.ofSeconds(seconds), 2, StackSetLeaseQueue.RENEWAL_INTERVAL, Duration.ofHours(24L));
     }
 
     /**
@@ -252,20 +1370,40 @@ public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
             final ProxyClient<CloudFormationClient> client,
             final ProgressEvent<ResourceModel, CallbackContext> progress,
             final Logger logger) {
+        return describeStackSet(proxy, client, progress, progress.getResourceModel().getStackSetName(), logger);
+    }
+
+    /**
+     * Describe {@link StackSet} from service client using the given StackSet name
+     *
+     * @param proxy                 {@link AmazonWebServicesClientProxy} to initiate proxy chain
+     * @param client                the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param progress              {@link ProgressEvent<ResourceModel, CallbackContext>} to place hold the current progress data
+     * @param stackSetName          StackSet name, see {@link StackSetTarget#getStackSetName()}
+     * @param logger                {@link Logger}
+     * @throws CfnNotFoundException If the StackSet is DELETED, return NotFound exception
+     * @return {@link ProgressEvent<ResourceModel, CallbackContext>}
+     */
+    protected ProgressEvent<ResourceModel, CallbackContext> describeStackSet(
+            final AmazonWebServicesClientProxy proxy,
+            final ProxyClient<CloudFormationClient> client,
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final String stackSetName,
+            final Logger logger) {
 
         final ResourceModel model = progress.getResourceModel();
         final CallbackContext callbackContext = progress.getCallbackContext();
 
         final ProgressEvent<ResourceModel, CallbackContext> progressEvent = proxy
                 .newInitiator(client, model, callbackContext)
-                .translateToServiceRequest(modelRequest -> describeStackSetRequest(modelRequest.getStackSetName()))
+                .translateToServiceRequest(modelRequest -> describeStackSetRequest(modelRequest, stackSetName))
                 .backoffDelay(MULTIPLE_OF)
                 .makeServiceCall((modelRequest, proxyInvocation) -> {
                     final DescribeStackSetResponse response = proxyInvocation.injectCredentialsAndInvokeV2(modelRequest, proxyInvocation.client()::describeStackSet);
-                    logger.log(String.format("Describe StackSet [%s] successfully", model.getStackSetName()));
+                    logger.log(String.format("Describe StackSet [%s] successfully", stackSetName));
                     if (StackSetStatus.DELETED == response.stackSet().status()) {
-                        logger.log(String.format("StackSet [%s] is %s", model.getStackSetName(), StackSetStatus.DELETED.toString()));
-                        throw new CfnNotFoundException(ResourceModel.TYPE_NAME, model.getStackSetName());
+                        logger.log(String.format("StackSet [%s] is %s", stackSetName, StackSetStatus.DELETED.toString()));
+                        throw new CfnNotFoundException(ResourceModel.TYPE_NAME, stackSetName);
                     }
                     return response;
                 })
@@ -277,4 +1415,46 @@ public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
 
         return ProgressEvent.progress(model, callbackContext);
     }
+
+    /**
+     * Reports the status of the stack instances of the resource when opted in through
+     * {@link ResourceModel#getReportInstanceStatus()}, see {@link InstanceStatusReporter}
+     *
+     * @param proxyClient the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param progress    {@link ProgressEvent<ResourceModel, CallbackContext>} to place hold the current progress data
+     * @param logger      {@link Logger}
+     * @return {@link ProgressEvent<ResourceModel, CallbackContext>}
+     */
+    protected ProgressEvent<ResourceModel, CallbackContext> reportInstanceStatus(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final Logger logger) {
+
+        final ResourceModel model = progress.getResourceModel();
+        if (!Boolean.TRUE.equals(model.getReportInstanceStatus())) return progress;
+
+        INSTANCE_STATUS_REPORTER.report(proxyClient, model, logger);
+        return progress;
+    }
+
+    /**
+     * Reports the drift of the stack instances of the resource when opted in through
+     * {@link ResourceModel#getDriftDetection()}, see {@link DriftReporter}
+     *
+     * @param proxyClient the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param progress    {@link ProgressEvent<ResourceModel, CallbackContext>} to place hold the current progress data
+     * @param logger      {@link Logger}
+     * @return {@link ProgressEvent<ResourceModel, CallbackContext>}
+     */
+    protected ProgressEvent<ResourceModel, CallbackContext> detectDrift(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final Logger logger) {
+
+        final ResourceModel model = progress.getResourceModel();
+        if (model.getDriftDetection() == null || !Boolean.TRUE.equals(model.getDriftDetection().getEnabled())) return progress;
+
+        DRIFT_REPORTER.report(proxyClient, model, HANDLER_TIMEOUT, logger);
+        return progress;
+    }
 }
@@ -16,11 +16,148 @@
 
 package software.amazon.cloudformation.stackinstances;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import software.amazon.cloudformation.proxy.StdCallbackContext;
+import software.amazon.cloudformation.stackinstances.util.OperationPlan;
+import software.amazon.cloudformation.stackinstances.util.PlannedOperation;
+import software.amazon.cloudformation.stackinstances.util.RolloutWave;
+import software.amazon.cloudformation.stackinstances.util.StackInstance;
+import software.amazon.cloudformation.stackinstances.util.StackInstanceSetCodec;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 @lombok.Getter
 @lombok.Setter
 @lombok.ToString
 @lombok.EqualsAndHashCode(callSuper = true)
 public class CallbackContext extends StdCallbackContext {
+
+    /**
+     * Operation IDs of the submitted {@link OperationPlan} operations, keyed by {@link PlannedOperation#getKey()}
+     */
+    private Map<String, String> operationIds = new HashMap<>();
+
+    /**
+     * Keys of the operations that completed successfully or had no stack instance left to change,
+     * see {@link PlannedOperation#key}
+     */
+    private Set<String> completedOperations = new HashSet<>();
+
+    /**
+     * Stack instances the operations still submit after checking them against the existing stack instances,
+     * keyed by {@link PlannedOperation#key}
+     */
+    @JsonSerialize(contentUsing = StackInstanceSetCodec.Serializer.class)
+    @JsonDeserialize(contentUsing = StackInstanceSetCodec.Deserializer.class)
+    private Map<String, Set<StackInstance>> pendingStackInstances = new HashMap<>();
+
+    /**
+     * Number of rectangles of each {@link OperationPlan} operation that completed, keyed by {@link PlannedOperation#key}
+     */
+    private Map<String, Integer> completedRectangles = new HashMap<>();
+
+    /**
+     * Operation IDs of the in-flight repair operations, keyed by StackSet name
+     */
+    private Map<String, String> repairOperationIds = new HashMap<>();
+
+    /**
+     * Stack instances already submitted for repair, keyed by StackSet name
+     */
+    @JsonSerialize(contentUsing = StackInstanceSetCodec.Serializer.class)
+    @JsonDeserialize(contentUsing = StackInstanceSetCodec.Deserializer.class)
+    private Map<String, Set<StackInstance>> repairedStackInstances = new HashMap<>();
+
+    /**
+     * Names of the StackSets left without stack instances to repair
+     */
+    private Set<String> repairedStackSets = new HashSet<>();
+
+    /**
+     * Operation IDs of the rollout waves, keyed by {@link RolloutWave#getKey}
+     */
+    private Map<String, String> rolloutOperationIds = new HashMap<>();
+
+    /**
+     * Keys of the rollout waves whose success ratio allowed the next wave to start, see {@link RolloutWave#getKey}
+     */
+    private Set<String> passedRolloutWaves = new HashSet<>();
+
+    /**
+     * MaxConcurrentPercentage chosen for the auto-tuned rollout waves, keyed by {@link RolloutWave#getKey}
+     */
+    private Map<String, Integer> rolloutConcurrency = new HashMap<>();
+
+    /**
+     * Observed duration per stack instance of the completed auto-tuned rollout waves in milliseconds, keyed by
+     * {@link RolloutWave#getKey}
+     */
+    private Map<String, Double> rolloutMillisPerInstance = new HashMap<>();
+
+    /**
+     * Whether the StackSet queues operations through managed execution, keyed by StackSet name
+     */
+    private Map<String, Boolean> managedExecution = new HashMap<>();
+
+    /**
+     * Epoch milliseconds of the first handler invocation, the start of the handler timeout
+     */
+    private Long handlerStartedAt;
+
+    /**
+     * Region orders picked for RegionOrder [AUTO], keyed by {@link PlannedOperation#key}
+     */
+    private Map<String, List<String>> regionOrders = new HashMap<>();
+
+    /**
+     * Names of the StackSets the {@link software.amazon.cloudformation.stackinstances.util.StackSetBeacon} let the
+     * resource submit its first operation to
+     */
+    private Set<String> beaconPassedStackSets = new HashSet<>();
+
+    /**
+     * {@link ResourceModel#getInstancesFingerprint()} of the desired model, computed on the first invocation
+     */
+    private String instancesFingerprint;
+
+    /**
+     * Whether the previous model has the same fingerprint as the desired model, resolved on the first invocation
+     */
+    private Boolean instancesUnchanged;
+
+    /**
+     * Stack instances the update plans to change, keyed by {@link software.amazon.cloudformation.Action} name.
+     * Empty until the models are diffed on the first invocation
+     */
+    @JsonSerialize(contentUsing = StackInstanceSetCodec.Serializer.class)
+    @JsonDeserialize(contentUsing = StackInstanceSetCodec.Deserializer.class)
+    private Map<String, Set<StackInstance>> plannedStackInstances = new HashMap<>();
+
+    /**
+     * Whether every planned target went through the pre-flight check of the
+     * {@link software.amazon.cloudformation.stackinstances.util.TargetValidator}
+     */
+    private Boolean targetsValidated;
+
+    /**
+     * Index of the first account target the pre-flight check resumes at, null before the first check
+     */
+    private Integer targetValidationResumeAt;
+
+    /**
+     * Reasons of the targets failing the pre-flight check, keyed by account/Region
+     */
+    private Map<String, String> invalidTargets = new TreeMap<>();
+
+    /**
+     * Epoch millis of the last DescribeStackSetOperation of each operation waited for through
+     * {@link software.amazon.cloudformation.stackinstances.util.OperationCompletions}, keyed by OperationId
+     */
+    private Map<String, Long> operationPolledAt = new HashMap<>();
 }
@@ -22,8 +22,11 @@ import software.amazon.awssdk.services.cloudformation.model.CreateStackSetRespon
 import software.amazon.cloudformation.Action;
 import software.amazon.cloudformation.proxy.*;
 import software.amazon.cloudformation.stackinstances.util.InstancesAnalyzer;
+import software.amazon.cloudformation.stackinstances.util.OperationPlan;
+import software.amazon.cloudformation.stackinstances.util.StackInstanceManifest;
 import software.amazon.cloudformation.stackinstances.util.StackInstancesPlaceHolder;
 
+import java.util.Collections;
 import java.util.UUID;
 
 import static software.amazon.cloudformation.stackinstances.translator.RequestTranslator.createStackInstancesRequest;
@@ -40,13 +43,33 @@ public class CreateHandler extends BaseHandlerStd {
 
         final ResourceModel model = request.getDesiredResourceState();
         final StackInstancesPlaceHolder placeHolder = new StackInstancesPlaceHolder();
+        StackInstanceManifest.load(proxy, model);
 
-        InstancesAnalyzer.builder().desiredModel(model).build().analyzeForCreate(placeHolder);
         if (model.getInstanceId() == null) {
             model.setInstanceId(UUID.randomUUID().toString());
         }
+        fingerprintInstances(callbackContext, model);
+
+        if (OperationPlan.targetsMultipleStackSets(model)) {
+            final OperationPlan plan = OperationPlan.forCreate(model);
+            if (!validateTargets(proxy, model, callbackContext, plan, logger)) {
+                return ProgressEvent.defaultInProgressHandler(callbackContext, TARGET_VALIDATION_CALLBACK_DELAY_SECONDS, model);
+            }
+            return ProgressEvent.progress(model, callbackContext)
+                    .then(progress -> executeOperationPlan(proxy, proxyClient, progress, plan, logger))
+                    .then(progress -> successWithExecutionPaths(progress, model));
+        }
+
+        InstancesAnalyzer.builder().desiredModel(model).build().analyzeForCreate(placeHolder);
+        if (!validateTargets(proxy, model, callbackContext, Collections.singletonList(placeHolder.getCreateStackInstances()), logger)) {
+            return ProgressEvent.defaultInProgressHandler(callbackContext, TARGET_VALIDATION_CALLBACK_DELAY_SECONDS, model);
+        }
         return ProgressEvent.progress(model, callbackContext)
+                .then(progress -> resolveExecutionPath(proxyClient, progress, model.getStackSetName(), logger))
+                .then(progress -> acquireStackSetLease(progress, model.getStackSetName(), logger))
+                .then(progress -> awaitStackSetBeacon(proxyClient, progress, model.getStackSetName(), logger))
                 .then(progress -> createStackInstances(proxy, proxyClient, progress, placeHolder.getCreateStackInstances(), logger))
-                .then(progress -> ProgressEvent.defaultSuccessHandler(model));
+                .then(progress -> releaseStackSetLease(progress, model.getStackSetName()))
+                .then(progress -> successWithExecutionPaths(progress, model));
     }
 }
@@ -19,6 +19,8 @@ package software.amazon.cloudformation.stackinstances;
 import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
 import software.amazon.cloudformation.proxy.*;
 import software.amazon.cloudformation.stackinstances.util.InstancesAnalyzer;
+import software.amazon.cloudformation.stackinstances.util.OperationPlan;
+import software.amazon.cloudformation.stackinstances.util.StackInstanceManifest;
 import software.amazon.cloudformation.stackinstances.util.StackInstancesPlaceHolder;
 
 public class DeleteHandler extends BaseHandlerStd {
@@ -33,13 +35,29 @@ public class DeleteHandler extends BaseHandlerStd {
 
         final ResourceModel model = request.getDesiredResourceState();
         final StackInstancesPlaceHolder placeHolder = new StackInstancesPlaceHolder();
+        StackInstanceManifest.load(proxy, model);
+
+        if (OperationPlan.targetsMultipleStackSets(model)) {
+            final OperationPlan plan = OperationPlan.forDelete(model);
+            return ProgressEvent.progress(model, callbackContext)
+                    .then(progress -> executeOperationPlan(proxy, proxyClient, progress, plan, logger))
+                    .then(progress -> ProgressEvent.<ResourceModel, CallbackContext>builder()
+                            .status(OperationStatus.SUCCESS)
+                            .message(describeExecutionPaths(progress.getCallbackContext()))
+                            .build());
+        }
 
         InstancesAnalyzer.builder().desiredModel(model).build().analyzeForDelete(placeHolder);
 
         return ProgressEvent.progress(model, callbackContext)
+                .then(progress -> resolveExecutionPath(proxyClient, progress, model.getStackSetName(), logger))
+                .then(progress -> acquireStackSetLease(progress, model.getStackSetName(), logger))
+                .then(progress -> awaitStackSetBeacon(proxyClient, progress, model.getStackSetName(), logger))
                 .then(progress -> deleteStackInstances(proxy, proxyClient, progress, placeHolder.getDeleteStackInstances(), logger))
+                .then(progress -> releaseStackSetLease(progress, model.getStackSetName()))
                 .then(progress -> ProgressEvent.<ResourceModel, CallbackContext>builder()
                         .status(OperationStatus.SUCCESS)
+                        .message(describeExecutionPaths(progress.getCallbackContext()))
                         .build());
     }
 }
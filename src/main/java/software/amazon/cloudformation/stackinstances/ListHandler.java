@@ -24,6 +24,11 @@ import java.util.List;
 
 public class ListHandler extends BaseHandlerStd {
 
+    @Override
+    protected boolean takesStackSetLeases() {
+        return false;
+    }
+
     @Override
     protected ProgressEvent<ResourceModel, CallbackContext> handleRequest(
             final AmazonWebServicesClientProxy proxy,
@@ -18,9 +18,16 @@ package software.amazon.cloudformation.stackinstances;
 
 import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
 import software.amazon.cloudformation.proxy.*;
+import software.amazon.cloudformation.stackinstances.util.OperationPlan;
+import software.amazon.cloudformation.stackinstances.util.StackInstanceManifest;
 
 public class ReadHandler extends BaseHandlerStd {
 
+    @Override
+    protected boolean takesStackSetLeases() {
+        return false;
+    }
+
     @Override
     protected ProgressEvent<ResourceModel, CallbackContext> handleRequest(
             final AmazonWebServicesClientProxy proxy,
@@ -30,8 +37,26 @@ public class ReadHandler extends BaseHandlerStd {
             final Logger logger) {
 
         final ResourceModel model = request.getDesiredResourceState();
+        if (OperationPlan.targetsMultipleStackSets(model)) {
+            ProgressEvent<ResourceModel, CallbackContext> progressEvent = ProgressEvent.progress(model, callbackContext);
+            for (final String stackSetName : OperationPlan.resolveStackSetParameters(model).keySet()) {
+                progressEvent = progressEvent.then(progress ->
+                        describeStackSet(proxy, proxyClient, progress, stackSetName, logger));
+            }
+            return progressEvent
+                    .then(progress -> reportInstanceStatus(proxyClient, progress, logger))
+                    .then(progress -> ProgressEvent.defaultSuccessHandler(model));
+        }
+
+        if (Boolean.TRUE.equals(model.getReportInstanceStatus())
+                || model.getDriftDetection() != null && Boolean.TRUE.equals(model.getDriftDetection().getEnabled())) {
+            StackInstanceManifest.load(proxy, model);
+        }
+
         return ProgressEvent.progress(model, callbackContext)
             .then(progress -> describeStackSet(proxy, proxyClient, progress, logger))
+            .then(progress -> reportInstanceStatus(proxyClient, progress, logger))
+            .then(progress -> detectDrift(proxyClient, progress, logger))
             .then(progress -> ProgressEvent.defaultSuccessHandler(model));
 
     }
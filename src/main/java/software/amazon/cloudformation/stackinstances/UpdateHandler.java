@@ -17,12 +17,143 @@
 package software.amazon.cloudformation.stackinstances;
 
 import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.cloudformation.Action;
 import software.amazon.cloudformation.proxy.*;
 import software.amazon.cloudformation.stackinstances.util.InstancesAnalyzer;
+import software.amazon.cloudformation.stackinstances.util.OperationPlan;
+import software.amazon.cloudformation.stackinstances.util.StackInstance;
+import software.amazon.cloudformation.stackinstances.util.StackInstanceManifest;
 import software.amazon.cloudformation.stackinstances.util.StackInstancesPlaceHolder;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
 public class UpdateHandler extends BaseHandlerStd {
 
+    /**
+     * Repairs the OUTDATED stack instances of the desired model when opted in through
+     * {@link ResourceModel#getReconcileUnhealthyInstances()}
+     */
+    private ProgressEvent<ResourceModel, CallbackContext> repairUnhealthyStackInstances(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final ResourceModel model,
+            final Logger logger) {
+
+        if (!Boolean.TRUE.equals(model.getReconcileUnhealthyInstances())) return progress;
+        return repairUnhealthyStackInstances(proxyClient, progress, OperationPlan.resolveStackSetParameters(model),
+                InstancesAnalyzer.flattenStackInstances(model), logger);
+    }
+
+    /**
+     * Diffs the previous and desired models, runs the pre-flight check on the targets to deploy and keeps the result
+     * in the {@link CallbackContext} once the check completes. Targets pruned by the previous Create or Update are
+     * created again. Re-entries restore the planned stack instances without diffing or checking again
+     *
+     * @return {@link StackInstancesPlaceHolder}, null while the pre-flight check has accounts left to look up
+     */
+    private StackInstancesPlaceHolder planStackInstances(
+            final AmazonWebServicesClientProxy proxy,
+            final CallbackContext callbackContext,
+            final ResourceModel previousModel,
+            final ResourceModel model,
+            final Logger logger) {
+
+        final StackInstancesPlaceHolder placeHolder = new StackInstancesPlaceHolder();
+        final Map<String, Set<StackInstance>> planned = callbackContext.getPlannedStackInstances();
+        if (planned.isEmpty()) {
+            if (!isInstancesUnchanged(callbackContext, previousModel, logger)) {
+                InstancesAnalyzer.builder().desiredModel(model).previousModel(previousModel).build().analyzeForUpdate(placeHolder);
+                final Set<StackInstance> retried = retriedPrunedTargets(previousModel, model);
+                placeHolder.getCreateStackInstances().addAll(retried);
+                placeHolder.getUpdateStackInstances().removeAll(retried);
+                if (!validateTargets(proxy, model, callbackContext,
+                        Arrays.asList(placeHolder.getCreateStackInstances(), placeHolder.getUpdateStackInstances()), logger)) {
+                    return null;
+                }
+            }
+            planned.put(Action.DELETE.name(), placeHolder.getDeleteStackInstances());
+            planned.put(Action.CREATE.name(), placeHolder.getCreateStackInstances());
+            planned.put(Action.UPDATE.name(), placeHolder.getUpdateStackInstances());
+            return placeHolder;
+        }
+
+        if (!callbackContext.getInvalidTargets().isEmpty()) {
+            model.setPrunedTargets(new TreeSet<>(callbackContext.getInvalidTargets().keySet()));
+        }
+
+        // The context keeps regions and targets only, overrides and targeting come back from the models
+        placeHolder.setDeleteStackInstances(restoreStackInstances(planned.get(Action.DELETE.name()),
+                InstancesAnalyzer.flattenStackInstances(previousModel)));
+        placeHolder.setCreateStackInstances(restoreStackInstances(planned.get(Action.CREATE.name()),
+                InstancesAnalyzer.flattenStackInstances(model)));
+        placeHolder.setUpdateStackInstances(restoreStackInstances(planned.get(Action.UPDATE.name()),
+                InstancesAnalyzer.flattenStackInstances(model)));
+        if (isRestored(planned, placeHolder)) return placeHolder;
+
+        // Accounts a DIFFERENCE change splits off an OrganizationalUnitId exist in the diff only, diff again
+        final StackInstancesPlaceHolder diffed = new StackInstancesPlaceHolder();
+        InstancesAnalyzer.builder().desiredModel(model).previousModel(previousModel).build().analyzeForUpdate(diffed);
+        placeHolder.setDeleteStackInstances(restoreStackInstances(planned.get(Action.DELETE.name()), diffed.getDeleteStackInstances()));
+        placeHolder.setCreateStackInstances(restoreStackInstances(planned.get(Action.CREATE.name()), diffed.getCreateStackInstances()));
+        placeHolder.setUpdateStackInstances(restoreStackInstances(planned.get(Action.UPDATE.name()), diffed.getUpdateStackInstances()));
+        return placeHolder;
+    }
+
+    /**
+     * @param planned   planned stack instances, regions and targets only
+     * @param available stack instances with their overrides and targeting
+     * @return the available stack instances that were planned, planned ones missing from them are left out
+     */
+    private static Set<StackInstance> restoreStackInstances(final Set<StackInstance> planned, final Set<StackInstance> available) {
+        if (planned.isEmpty()) return planned;
+        final Map<StackInstance, StackInstance> lookup = available.stream()
+                .collect(Collectors.toMap(stackInstance -> stackInstance, stackInstance -> stackInstance));
+        return planned.stream().map(lookup::get).filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+
+    private static boolean isRestored(final Map<String, Set<StackInstance>> planned, final StackInstancesPlaceHolder placeHolder) {
+        return planned.get(Action.DELETE.name()).size() == placeHolder.getDeleteStackInstances().size()
+                && planned.get(Action.CREATE.name()).size() == placeHolder.getCreateStackInstances().size()
+                && planned.get(Action.UPDATE.name()).size() == placeHolder.getUpdateStackInstances().size();
+    }
+
+    /**
+     * Plans the update of every StackSet, creating the targets pruned by the previous Create or Update again, and
+     * runs the pre-flight check on it
+     *
+     * @return {@link OperationPlan}, null while the pre-flight check has accounts left to look up
+     */
+    private OperationPlan validatedPlan(
+            final AmazonWebServicesClientProxy proxy,
+            final CallbackContext callbackContext,
+            final ResourceModel previousModel,
+            final ResourceModel model,
+            final Logger logger) {
+
+        final OperationPlan plan = OperationPlan.forUpdate(previousModel, model, retriedPrunedTargets(previousModel, model));
+        return validateTargets(proxy, model, callbackContext, plan, logger) ? plan : null;
+    }
+
+    private ProgressEvent<ResourceModel, CallbackContext> executeValidatedPlan(
+            final AmazonWebServicesClientProxy proxy,
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ProgressEvent<ResourceModel, CallbackContext> progress,
+            final ResourceModel previousModel,
+            final ResourceModel model,
+            final Logger logger) {
+
+        final OperationPlan plan = validatedPlan(proxy, progress.getCallbackContext(), previousModel, model, logger);
+        if (plan == null) {
+            return ProgressEvent.defaultInProgressHandler(progress.getCallbackContext(), TARGET_VALIDATION_CALLBACK_DELAY_SECONDS, model);
+        }
+        return executeOperationPlan(proxy, proxyClient, progress, plan, logger);
+    }
+
     @Override
     protected ProgressEvent<ResourceModel, CallbackContext> handleRequest(
             final AmazonWebServicesClientProxy proxy,
@@ -33,11 +164,30 @@ public class UpdateHandler extends BaseHandlerStd {
 
         final ResourceModel model = request.getDesiredResourceState();
         final ResourceModel previousModel = request.getPreviousResourceState();
-        final StackInstancesPlaceHolder placeHolder = new StackInstancesPlaceHolder();
+        StackInstanceManifest.load(proxy, previousModel);
+        StackInstanceManifest.load(proxy, model);
+        fingerprintInstances(callbackContext, model);
+
+        if (OperationPlan.targetsMultipleStackSets(previousModel) || OperationPlan.targetsMultipleStackSets(model)) {
+            return ProgressEvent.progress(model, callbackContext)
+                    .then(progress -> isInstancesUnchanged(callbackContext, previousModel, logger) ? progress :
+                            executeValidatedPlan(proxy, proxyClient, progress, previousModel, model, logger))
+                    .then(progress -> repairUnhealthyStackInstances(proxyClient, progress, model, logger))
+                    .then(progress -> successWithExecutionPaths(progress, model));
+        }
 
-        InstancesAnalyzer.builder().desiredModel(model).previousModel(previousModel).build().analyzeForUpdate(placeHolder);
+        final StackInstancesPlaceHolder placeHolder = planStackInstances(proxy, callbackContext, previousModel, model, logger);
+        if (placeHolder == null) {
+            return ProgressEvent.defaultInProgressHandler(callbackContext, TARGET_VALIDATION_CALLBACK_DELAY_SECONDS, model);
+        }
+        if (Boolean.TRUE.equals(callbackContext.getInstancesUnchanged()) && !Boolean.TRUE.equals(model.getReconcileUnhealthyInstances())) {
+            return ProgressEvent.defaultSuccessHandler(model);
+        }
 
         return ProgressEvent.progress(model, callbackContext)
+                .then(progress -> resolveExecutionPath(proxyClient, progress, model.getStackSetName(), logger))
+                .then(progress -> acquireStackSetLease(progress, model.getStackSetName(), logger))
+                .then(progress -> awaitStackSetBeacon(proxyClient, progress, model.getStackSetName(), logger))
                 .then(progress ->
                         placeHolder.getDeleteStackInstances().size() > 0 ?
                                 deleteStackInstances(proxy, proxyClient, progress, placeHolder.getDeleteStackInstances(), logger) :
@@ -53,6 +203,8 @@ public class UpdateHandler extends BaseHandlerStd {
                                 updateStackInstances(proxy, proxyClient, progress, placeHolder.getUpdateStackInstances(), logger) :
                                 ProgressEvent.defaultInProgressHandler(progress.getCallbackContext(), 0, progress.getResourceModel())
                 )
-                .then(progress -> ProgressEvent.defaultSuccessHandler(model));
+                .then(progress -> repairUnhealthyStackInstances(proxyClient, progress, model, logger))
+                .then(progress -> releaseStackSetLease(progress, model.getStackSetName()))
+                .then(progress -> successWithExecutionPaths(progress, model));
     }
 }
@@ -16,16 +16,22 @@
 
 package software.amazon.cloudformation.stackinstances.translator;
 
+import software.amazon.awssdk.services.cloudformation.model.AccountFilterType;
+import software.amazon.awssdk.services.cloudformation.model.CallAs;
 import software.amazon.awssdk.services.cloudformation.model.DeploymentTargets;
 import software.amazon.awssdk.services.cloudformation.model.Parameter;
 import software.amazon.awssdk.services.cloudformation.model.StackInstanceSummary;
 import software.amazon.awssdk.services.cloudformation.model.StackSetOperationPreferences;
 import software.amazon.awssdk.utils.CollectionUtils;
+import software.amazon.cloudformation.exceptions.CfnInvalidRequestException;
 import software.amazon.cloudformation.stackinstances.OperationPreferences;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.util.RegionOrderPlanner;
 import software.amazon.cloudformation.stackinstances.util.StackInstance;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -33,16 +39,49 @@ import java.util.stream.Collectors;
 public class PropertyTranslator {
 
     /**
-     * Converts resource model DeploymentTargets to StackSet SDK DeploymentTargets
+     * Converts resource model DeploymentTargets to StackSet SDK DeploymentTargets. Account targets of a
+     * service-managed StackSet are addressed through their OrganizationalUnitIds with the AccountFilterType they
+     * were expanded from, OrganizationalUnitId targets carry the accounts a DIFFERENCE filter excludes
      *
      * @param deploymentTargets DeploymentTargets from resource model
      * @return SDK DeploymentTargets
      */
     static DeploymentTargets translateToSdkDeploymentTargets(
             final Set<StackInstance> deploymentTargets) {
-        Set<String> accounts = deploymentTargets.stream().map(StackInstance::getDeploymentTarget).collect(Collectors.toSet());
+        final Set<String> accounts = new HashSet<>();
+        final Set<String> organizationalUnitIds = new HashSet<>();
+        final Set<String> accountFilterTypes = new HashSet<>();
+        for (final StackInstance stackInstance : deploymentTargets) {
+            if (stackInstance.targetsOrganizationalUnit()) {
+                organizationalUnitIds.add(stackInstance.getDeploymentTarget());
+                if (stackInstance.getExcludedAccounts() != null) accounts.addAll(stackInstance.getExcludedAccounts());
+            } else {
+                accounts.add(stackInstance.getDeploymentTarget());
+                if (stackInstance.getOrganizationalUnitIds() != null) organizationalUnitIds.addAll(stackInstance.getOrganizationalUnitIds());
+            }
+            if (stackInstance.getAccountFilterType() != null) accountFilterTypes.add(stackInstance.getAccountFilterType());
+        }
+
+        if (organizationalUnitIds.isEmpty()) {
+            return DeploymentTargets.builder()
+                    .accounts(accounts)
+                    .build();
+        }
+        if (accounts.isEmpty()) {
+            return DeploymentTargets.builder()
+                    .organizationalUnitIds(organizationalUnitIds)
+                    .accountFilterType(AccountFilterType.NONE)
+                    .build();
+        }
+        accountFilterTypes.remove(AccountFilterType.NONE.toString());
+        if (accountFilterTypes.size() != 1) {
+            throw new CfnInvalidRequestException(String.format(
+                    "Stack instances with AccountFilterTypes %s cannot be submitted in a single operation", accountFilterTypes));
+        }
         return DeploymentTargets.builder()
+                .organizationalUnitIds(organizationalUnitIds)
                 .accounts(accounts)
+                .accountFilterType(accountFilterTypes.iterator().next())
                 .build();
     }
 
@@ -86,7 +125,8 @@ public class PropertyTranslator {
     }
 
     /**
-     * Converts resource model OperationPreferences to StackSet SDK OperationPreferences
+     * Converts resource model OperationPreferences to StackSet SDK OperationPreferences, an unresolved
+     * RegionOrder [AUTO] leaves the order to the service
      *
      * @param operationPreferences OperationPreferences from resource model
      * @return SDK OperationPreferences
@@ -99,11 +139,22 @@ public class PropertyTranslator {
                 .maxConcurrentPercentage(operationPreferences.getMaxConcurrentPercentage())
                 .failureToleranceCount(operationPreferences.getFailureToleranceCount())
                 .failureTolerancePercentage(operationPreferences.getFailureTolerancePercentage())
-                .regionOrder(operationPreferences.getRegionOrder())
+                .regionOrder(RegionOrderPlanner.isAuto(operationPreferences) ? null : operationPreferences.getRegionOrder())
                 .regionConcurrencyType(operationPreferences.getRegionConcurrencyType())
                 .build();
     }
 
+    /**
+     * Converts resource model CallAs to StackSet SDK CallAs
+     *
+     * @param model {@link ResourceModel}
+     * @return SDK CallAs, {@link CallAs#SELF} if not specified
+     */
+    static CallAs translateToSdkCallAs(final ResourceModel model) {
+        if (model == null || model.getCallAs() == null) return CallAs.SELF;
+        return CallAs.fromValue(model.getCallAs());
+    }
+
     /**
      * Converts {@link StackInstanceSummary} to {@link StackInstance} utility placeholder
      *
@@ -20,6 +20,7 @@ import software.amazon.awssdk.services.cloudformation.model.*;
 import software.amazon.cloudformation.stackinstances.ResourceModel;
 import software.amazon.cloudformation.stackinstances.util.StackInstance;
 
+import java.util.Collection;
 import java.util.Set;
 
 import static software.amazon.cloudformation.stackinstances.translator.PropertyTranslator.*;
@@ -27,7 +28,6 @@ import static software.amazon.cloudformation.stackinstances.translator.PropertyT
 public class RequestTranslator {
 
     private static final int LIST_MAX_ITEMS = 100;
-    private static final CallAs CALL_AS = CallAs.SELF;
 
     /**
      * Request to create a resource
@@ -36,49 +36,153 @@ public class RequestTranslator {
      * @return awsRequest the aws service request to create a resource
      */
     public static CreateStackInstancesRequest createStackInstancesRequest(final ResourceModel model, final Set<StackInstance> stackInstances) {
+        return createStackInstancesRequest(model, model.getStackSetName(), model.getParameters(), stackInstances);
+    }
+
+    public static CreateStackInstancesRequest createStackInstancesRequest(
+            final ResourceModel model,
+            final String stackSetName,
+            final Collection<software.amazon.cloudformation.stackinstances.Parameter> parameters,
+            final Set<StackInstance> stackInstances) {
+        return createStackInstancesRequest(model, stackSetName, parameters, stackInstances, model.getOperationPreferences());
+    }
+
+    public static CreateStackInstancesRequest createStackInstancesRequest(
+            final ResourceModel model,
+            final String stackSetName,
+            final Collection<software.amazon.cloudformation.stackinstances.Parameter> parameters,
+            final Set<StackInstance> stackInstances,
+            final software.amazon.cloudformation.stackinstances.OperationPreferences operationPreferences) {
         return CreateStackInstancesRequest.builder()
-                .stackSetName(model.getStackSetName())
+                .stackSetName(stackSetName)
                 .regions(translateToRegionsList(stackInstances))
                 .deploymentTargets(translateToSdkDeploymentTargets(stackInstances))
-                .operationPreferences(translateToSdkOperationPreferences(model.getOperationPreferences()))
-                .parameterOverrides(translateToSdkParameters(model.getParameters()))
-                .callAs(CALL_AS)
+                .operationPreferences(translateToSdkOperationPreferences(operationPreferences))
+                .parameterOverrides(translateToSdkParameters(parameters))
+                .callAs(translateToSdkCallAs(model))
                 .build();
     }
 
     public static UpdateStackInstancesRequest updateStackInstancesRequest(final ResourceModel model, final Set<StackInstance> stackInstances) {
+        return updateStackInstancesRequest(model, model.getStackSetName(), model.getParameters(), stackInstances);
+    }
+
+    public static UpdateStackInstancesRequest updateStackInstancesRequest(
+            final ResourceModel model,
+            final String stackSetName,
+            final Collection<software.amazon.cloudformation.stackinstances.Parameter> parameters,
+            final Set<StackInstance> stackInstances) {
+        return updateStackInstancesRequest(model, stackSetName, parameters, stackInstances, model.getOperationPreferences());
+    }
+
+    public static UpdateStackInstancesRequest updateStackInstancesRequest(
+            final ResourceModel model,
+            final String stackSetName,
+            final Collection<software.amazon.cloudformation.stackinstances.Parameter> parameters,
+            final Set<StackInstance> stackInstances,
+            final software.amazon.cloudformation.stackinstances.OperationPreferences operationPreferences) {
         return UpdateStackInstancesRequest.builder()
-                .stackSetName(model.getStackSetName())
+                .stackSetName(stackSetName)
                 .regions(translateToRegionsList(stackInstances))
                 .deploymentTargets(translateToSdkDeploymentTargets(stackInstances))
-                .operationPreferences(translateToSdkOperationPreferences(model.getOperationPreferences()))
-                .parameterOverrides(translateToSdkParameters(model.getParameters()))
-                .callAs(CALL_AS)
+                .operationPreferences(translateToSdkOperationPreferences(operationPreferences))
+                .parameterOverrides(translateToSdkParameters(parameters))
+                .callAs(translateToSdkCallAs(model))
                 .build();
     }
 
     public static DeleteStackInstancesRequest deleteStackInstancesRequest(final ResourceModel model, final Set<StackInstance> stackInstances) {
+        return deleteStackInstancesRequest(model, model.getStackSetName(), stackInstances);
+    }
+
+    public static DeleteStackInstancesRequest deleteStackInstancesRequest(
+            final ResourceModel model,
+            final String stackSetName,
+            final Set<StackInstance> stackInstances) {
+        return deleteStackInstancesRequest(model, stackSetName, stackInstances, model.getOperationPreferences());
+    }
+
+    public static DeleteStackInstancesRequest deleteStackInstancesRequest(
+            final ResourceModel model,
+            final String stackSetName,
+            final Set<StackInstance> stackInstances,
+            final software.amazon.cloudformation.stackinstances.OperationPreferences operationPreferences) {
         return DeleteStackInstancesRequest.builder()
-                .stackSetName(model.getStackSetName())
+                .stackSetName(stackSetName)
                 .regions(translateToRegionsList(stackInstances))
                 .deploymentTargets(translateToSdkDeploymentTargets(stackInstances))
+                .operationPreferences(translateToSdkOperationPreferences(operationPreferences))
+                .callAs(translateToSdkCallAs(model))
+                .build();
+    }
+
+    public static DetectStackSetDriftRequest detectStackSetDriftRequest(
+            final ResourceModel model,
+            final String stackSetName,
+            final String operationId) {
+        return DetectStackSetDriftRequest.builder()
+                .stackSetName(stackSetName)
+                .operationId(operationId)
                 .operationPreferences(translateToSdkOperationPreferences(model.getOperationPreferences()))
-                .callAs(CALL_AS)
+                .callAs(translateToSdkCallAs(model))
                 .build();
     }
 
     public static ListStackInstancesRequest listStackInstancesRequest(
+            final ResourceModel model,
             final String nextToken,
             final String stackSetName) {
+        return listStackInstancesRequest(model, nextToken, stackSetName, null);
+    }
+
+    public static ListStackInstancesRequest listStackInstancesRequest(
+            final ResourceModel model,
+            final String nextToken,
+            final String stackSetName,
+            final String account) {
         return ListStackInstancesRequest.builder()
                 .maxResults(LIST_MAX_ITEMS)
                 .nextToken(nextToken)
                 .stackSetName(stackSetName)
-                .callAs(CALL_AS)
+                .stackInstanceAccount(account)
+                .callAs(translateToSdkCallAs(model))
+                .build();
+    }
+
+    public static ListStackSetOperationsRequest listStackSetOperationsRequest(
+            final ResourceModel model,
+            final String stackSetName) {
+        return listStackSetOperationsRequest(model, null, stackSetName);
+    }
+
+    public static ListStackSetOperationsRequest listStackSetOperationsRequest(
+            final ResourceModel model,
+            final String nextToken,
+            final String stackSetName) {
+        return ListStackSetOperationsRequest.builder()
+                .maxResults(LIST_MAX_ITEMS)
+                .nextToken(nextToken)
+                .stackSetName(stackSetName)
+                .callAs(translateToSdkCallAs(model))
+                .build();
+    }
+
+    public static ListStackSetOperationResultsRequest listStackSetOperationResultsRequest(
+            final ResourceModel model,
+            final String nextToken,
+            final String stackSetName,
+            final String operationId) {
+        return ListStackSetOperationResultsRequest.builder()
+                .maxResults(LIST_MAX_ITEMS)
+                .nextToken(nextToken)
+                .stackSetName(stackSetName)
+                .operationId(operationId)
+                .callAs(translateToSdkCallAs(model))
                 .build();
     }
 
     public static DescribeStackInstanceRequest describeStackInstanceRequest(
+            final ResourceModel model,
             final String account,
             final String region,
             final String stackSetId) {
@@ -86,25 +190,27 @@ public class RequestTranslator {
                 .stackInstanceAccount(account)
                 .stackInstanceRegion(region)
                 .stackSetName(stackSetId)
-                .callAs(CALL_AS)
+                .callAs(translateToSdkCallAs(model))
                 .build();
     }
 
     public static DescribeStackSetOperationRequest describeStackSetOperationRequest(
+            final ResourceModel model,
             final String stackSetName,
             final String operationId) {
         return DescribeStackSetOperationRequest.builder()
                 .stackSetName(stackSetName)
                 .operationId(operationId)
-                .callAs(CALL_AS)
+                .callAs(translateToSdkCallAs(model))
                 .build();
     }
 
     public static DescribeStackSetRequest describeStackSetRequest(
+            final ResourceModel model,
             final String stackSetId) {
         return DescribeStackSetRequest.builder()
                 .stackSetName(stackSetId)
-                .callAs(CALL_AS)
+                .callAs(translateToSdkCallAs(model))
                 .build();
     }
 }
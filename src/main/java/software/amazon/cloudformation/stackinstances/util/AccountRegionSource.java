@@ -0,0 +1,65 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.awssdk.services.account.AccountClient;
+import software.amazon.awssdk.services.account.model.AccessDeniedException;
+import software.amazon.awssdk.services.account.model.ListRegionsRequest;
+import software.amazon.awssdk.services.account.model.ListRegionsResponse;
+import software.amazon.awssdk.services.account.model.Region;
+import software.amazon.awssdk.services.account.model.RegionOptStatus;
+import software.amazon.awssdk.services.account.model.ValidationException;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.ProxyClient;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lists the enabled Regions of an account through the Account Management ListRegions API. Member accounts can only
+ * be looked up from the management account or a delegated administrator with trusted access, other accounts are
+ * reported as unknown
+ */
+public class AccountRegionSource implements TargetValidator.RegionSource {
+
+    @Override
+    public Set<String> listEnabledRegions(final AmazonWebServicesClientProxy proxy, final String account) {
+        final ProxyClient<AccountClient> proxyClient = proxy.newProxy(ClientBuilder::getAccountClient);
+        final Set<String> regions = new HashSet<>();
+        String nextToken = null;
+        try {
+            do {
+                final ListRegionsResponse response = proxyClient.injectCredentialsAndInvokeV2(
+                        ListRegionsRequest.builder()
+                                .accountId(account)
+                                .regionOptStatusContains(RegionOptStatus.ENABLED, RegionOptStatus.ENABLED_BY_DEFAULT)
+                                .nextToken(nextToken)
+                                .build(),
+                        proxyClient.client()::listRegions);
+                for (final Region region : response.regions()) {
+                    regions.add(region.regionName());
+                }
+                nextToken = response.nextToken();
+            } while (nextToken != null);
+        } catch (final AccessDeniedException | ValidationException e) {
+            // Accounts outside the organization and the calling account itself cannot be looked up by AccountId
+            return null;
+        }
+        return regions;
+    }
+}
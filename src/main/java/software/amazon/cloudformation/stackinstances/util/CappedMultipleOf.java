@@ -0,0 +1,62 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.cloudformation.proxy.Delay;
+import software.amazon.cloudformation.proxy.delay.MultipleOf;
+
+import java.time.Duration;
+
+/**
+ * {@link MultipleOf} backoff with every delay capped at a maximum, so that a resource stabilizing a long operation
+ * still comes back often enough to renew its {@link StackSetLeaseQueue} lease. The timeout applies to the sum of
+ * the capped delays
+ */
+public class CappedMultipleOf implements Delay {
+
+    private final Duration delay;
+
+    private final int multiple;
+
+    private final Duration maxDelay;
+
+    private final Duration timeout;
+
+    public CappedMultipleOf(final Duration delay, final int multiple, final Duration maxDelay, final Duration timeout) {
+        this.delay = delay;
+        this.multiple = multiple;
+        this.maxDelay = maxDelay;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param attempt attempt number, starting at 1
+     * @return delay before the next attempt, {@link Duration#ZERO} once the timeout passed
+     */
+    @Override
+    public Duration nextDelay(final int attempt) {
+        Duration accrued = Duration.ZERO;
+        Duration next = delay;
+        for (int current = 1; current <= attempt; current++) {
+            next = current < 2 ? delay : delay.multipliedBy((long) multiple * (current - 1));
+            if (next.compareTo(maxDelay) > 0) next = maxDelay;
+            accrued = accrued.plus(next);
+        }
+        return accrued.compareTo(timeout) > 0 ? Duration.ZERO : next;
+    }
+}
@@ -26,11 +26,26 @@ import software.amazon.awssdk.core.retry.RetryPolicyContext;
 import software.amazon.awssdk.core.retry.backoff.BackoffStrategy;
 import software.amazon.awssdk.core.retry.conditions.OrRetryCondition;
 import software.amazon.awssdk.core.retry.conditions.RetryCondition;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.account.AccountClient;
 import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
-import software.amazon.cloudformation.LambdaWrapper;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClientBuilder;
+import software.amazon.awssdk.services.organizations.OrganizationsClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.net.URI;
 
 public class ClientBuilder {
 
+    private static final Integer MAX_RETRIES = 5;
+
+    /**
+     * Administration Regions with a client kept in the {@link ClientPool}
+     */
+    static final int MAX_POOLED_REGIONS = 8;
+
     private ClientBuilder() {
     }
 
@@ -39,16 +54,81 @@ public class ClientBuilder {
     }
 
     /**
-     * Get CloudFormationClient for requests to interact with StackSet client
+     * Get CloudFormationClient for the administration Region of a StackSet from the {@link ClientPool}. Credentials
+     * and CallAs travel with each request, one client per Region serves every identity
      *
+     * @param region administration Region, null for the Region of the function
      * @return {@link CloudFormationClient}
      */
-    private static class LazyHolder {
+    public static CloudFormationClient getClient(final String region) {
+        if (region == null) return getClient();
+        return RegionalHolder.CLIENT_POOL.get(region);
+    }
+
+    /**
+     * Get S3Client for requests to read stack instance manifests, see {@link StackInstanceManifest}
+     *
+     * @return {@link S3Client}
+     */
+    public static S3Client getS3Client() {
+        return S3Holder.S3_CLIENT;
+    }
 
-        private static final Integer MAX_RETRIES = 5;
+    /**
+     * Get OrganizationsClient for requests to list the accounts of the organization, see {@link OrganizationsAccountSource}
+     *
+     * @return {@link OrganizationsClient}
+     */
+    public static OrganizationsClient getOrganizationsClient() {
+        return OrganizationsHolder.ORGANIZATIONS_CLIENT;
+    }
 
-        public static CloudFormationClient SERVICE_CLIENT = CloudFormationClient.builder()
-                .httpClient(LambdaWrapper.HTTP_CLIENT)
+    /**
+     * Get AccountClient for requests to list the enabled Regions of an account, see {@link AccountRegionSource}
+     *
+     * @return {@link AccountClient}
+     */
+    public static AccountClient getAccountClient() {
+        return AccountHolder.ACCOUNT_CLIENT;
+    }
+
+    /**
+     * Get SqsClient for requests to read StackSet operation events, see {@link SqsCompletionQueue}
+     *
+     * @return {@link SqsClient}
+     */
+    public static SqsClient getSqsClient() {
+        return SqsHolder.SQS_CLIENT;
+    }
+
+    /**
+     * Builds a CloudFormationClient with the handler retry policy, see {@link CloudFormationRetryCondition}
+     *
+     * @param endpointOverride endpoint to call instead of the regional endpoint, null for the regional endpoint
+     * @return {@link CloudFormationClient}
+     */
+    static CloudFormationClient newClient(final URI endpointOverride) {
+        return newClient(null, endpointOverride, HttpClientHolder.HTTP_CLIENT);
+    }
+
+    /**
+     * @param endpointOverride endpoint to call instead of the regional endpoint, null for the regional endpoint
+     * @param httpClient       {@link SdkHttpClient} built through {@link HttpTransport}
+     * @return {@link CloudFormationClient}
+     */
+    static CloudFormationClient newClient(final URI endpointOverride, final SdkHttpClient httpClient) {
+        return newClient(null, endpointOverride, httpClient);
+    }
+
+    /**
+     * @param region           Region of the client, null for the Region of the function
+     * @param endpointOverride endpoint to call instead of the regional endpoint, null for the regional endpoint
+     * @param httpClient       {@link SdkHttpClient} built through {@link HttpTransport}
+     * @return {@link CloudFormationClient}
+     */
+    static CloudFormationClient newClient(final Region region, final URI endpointOverride, final SdkHttpClient httpClient) {
+        final CloudFormationClientBuilder builder = CloudFormationClient.builder()
+                .httpClient(httpClient)
                 .overrideConfiguration(ClientOverrideConfiguration.builder()
                         .retryPolicy(RetryPolicy.builder()
                                 .backoffStrategy(BackoffStrategy.defaultThrottlingStrategy())
@@ -59,7 +139,71 @@ public class ClientBuilder {
                                         CloudFormationRetryCondition.create()
                                 }))
                                 .build())
-                        .build())
+                        .addExecutionInterceptor(new ColdStartPrimer.DryRunInterceptor())
+                        .build());
+        if (region != null) {
+            builder.region(region);
+        }
+        if (endpointOverride != null) {
+            builder.endpointOverride(endpointOverride);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Transport shared by every service client, see {@link HttpTransport}
+     */
+    private static class HttpClientHolder {
+
+        public static SdkHttpClient HTTP_CLIENT = HttpTransport.fromEnvironment();
+    }
+
+    private static class RegionalHolder {
+
+        public static ClientPool<String, CloudFormationClient> CLIENT_POOL = new ClientPool<>(MAX_POOLED_REGIONS,
+                region -> newClient(Region.of(region), null, HttpClientHolder.HTTP_CLIENT));
+    }
+
+    /**
+     * Get CloudFormationClient for requests to interact with StackSet client
+     *
+     * @return {@link CloudFormationClient}
+     */
+    private static class LazyHolder {
+
+        public static CloudFormationClient SERVICE_CLIENT = newClient(null);
+    }
+
+    /**
+     * Optional clients get a holder each, so that only the features in use build their client
+     */
+    private static class S3Holder {
+
+        public static S3Client S3_CLIENT = S3Client.builder()
+                .httpClient(HttpClientHolder.HTTP_CLIENT)
+                .build();
+    }
+
+    private static class OrganizationsHolder {
+
+        public static OrganizationsClient ORGANIZATIONS_CLIENT = OrganizationsClient.builder()
+                .httpClient(HttpClientHolder.HTTP_CLIENT)
+                .region(Region.AWS_GLOBAL)
+                .build();
+    }
+
+    private static class AccountHolder {
+
+        public static AccountClient ACCOUNT_CLIENT = AccountClient.builder()
+                .httpClient(HttpClientHolder.HTTP_CLIENT)
+                .region(Region.AWS_GLOBAL)
+                .build();
+    }
+
+    private static class SqsHolder {
+
+        public static SqsClient SQS_CLIENT = SqsClient.builder()
+                .httpClient(HttpClientHolder.HTTP_CLIENT)
                 .build();
     }
 
@@ -0,0 +1,66 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Least recently used service clients by key, built on first use. Clients are thread safe and share the
+ * {@link HttpTransport} connection pool, so that after warm-up switching between keys costs a map lookup.
+ * Evicted clients are not closed, since a caller may still hold them mid-call; they own no connections of their
+ * own and are garbage collected once released
+ *
+ * @param <K> client key, e.g. the Region
+ * @param <C> service client
+ */
+public class ClientPool<K, C> {
+
+    private final Function<K, C> factory;
+
+    private final Map<K, C> clients;
+
+    /**
+     * @param capacity clients kept, the least recently used one is evicted beyond it
+     * @param factory  builds the client of a key
+     */
+    public ClientPool(final int capacity, final Function<K, C> factory) {
+        this.factory = factory;
+        this.clients = new LinkedHashMap<K, C>(capacity + 1, 1f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, C> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param key client key
+     * @return the pooled client, built if absent
+     */
+    public synchronized C get(final K key) {
+        return clients.computeIfAbsent(key, factory);
+    }
+
+    public synchronized int size() {
+        return clients.size();
+    }
+}
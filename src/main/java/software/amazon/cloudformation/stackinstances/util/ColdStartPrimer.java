@@ -0,0 +1,242 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.cloudformation.stackinstances.CallbackContext;
+import software.amazon.cloudformation.stackinstances.DeploymentTargets;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.StackInstances;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static software.amazon.cloudformation.stackinstances.translator.RequestTranslator.*;
+
+/**
+ * Moves the cold start cost of the first invocation into the function init phase: builds the
+ * {@link ClientBuilder#getClient()} client and the pooled clients of {@value #ADMINISTRATION_REGIONS_ENV}, marshals and signs every StackSet request the handlers send without
+ * transmitting it, and runs the resource model and callback context through Jackson. Runs only inside Lambda.
+ * Setting {@value #CHECKPOINT_PRIMING_ENV} to true also registers a checkpoint hook with the CRaC API the runtime
+ * provides, org.crac when on the classpath or jdk.crac, looked up reflectively so that the handler does not depend on
+ * either. The hook primes before a snapshot is taken and opens a fresh connection after restore. Without either API,
+ * as on the java8 runtime, nothing is registered.
+ */
+public final class ColdStartPrimer {
+
+    /**
+     * Comma separated administration Regions whose pooled clients are built and primed as well
+     */
+    public static final String ADMINISTRATION_REGIONS_ENV = "STACK_INSTANCES_ADMINISTRATION_REGIONS";
+
+    public static final String CHECKPOINT_PRIMING_ENV = "STACK_INSTANCES_CHECKPOINT_PRIMING";
+
+    /**
+     * Packages of the CRaC API, in lookup order
+     */
+    private static final List<String> CRAC_PACKAGES = Arrays.asList("org.crac", "jdk.crac");
+
+    private static final String LAMBDA_FUNCTION_ENV = "AWS_LAMBDA_FUNCTION_NAME";
+
+    private static final String DRY_RUN_HEADER = "x-stack-instances-dry-run";
+
+    private static final String PRIMING_NAME = "cold-start-priming";
+
+    private static final String PRIMING_ACCOUNT = "000000000000";
+
+    private static final String PRIMING_REGION = "us-east-1";
+
+    /**
+     * Strong reference, CRaC contexts only keep weak references to registered resources
+     */
+    private static Object checkpointHook;
+
+    private static boolean primed;
+
+    private ColdStartPrimer() {
+    }
+
+    /**
+     * Primes once per execution environment, failures are ignored as the first invocation pays the cost again
+     */
+    public static synchronized void primeOnInit() {
+        if (checkpointHook == null && Boolean.parseBoolean(System.getenv(CHECKPOINT_PRIMING_ENV))) {
+            registerCheckpointHook();
+        }
+        if (primed || System.getenv(LAMBDA_FUNCTION_ENV) == null) return;
+        primed = true;
+        primeClients();
+    }
+
+    private static void primeClients() {
+        prime(ClientBuilder.getClient());
+        final String regions = System.getenv(ADMINISTRATION_REGIONS_ENV);
+        if (regions == null || regions.isEmpty()) return;
+        for (final String region : regions.split(",")) {
+            prime(ClientBuilder.getClient(region.trim()));
+        }
+    }
+
+    /**
+     * Registers the checkpoint hook with the global context of the first CRaC API found
+     *
+     * @return true if registered, false if no CRaC API is available or the registration failed
+     */
+    static boolean registerCheckpointHook() {
+        for (final String cracPackage : CRAC_PACKAGES) {
+            try {
+                final Class<?> resource = Class.forName(cracPackage + ".Resource");
+                final Object context = Class.forName(cracPackage + ".Core").getMethod("getGlobalContext").invoke(null);
+                final Object hook = Proxy.newProxyInstance(ColdStartPrimer.class.getClassLoader(),
+                        new Class<?>[]{resource}, ColdStartPrimer::onCheckpointEvent);
+                Class.forName(cracPackage + ".Context").getMethod("register", resource).invoke(context, hook);
+                checkpointHook = hook;
+                return true;
+            } catch (final ClassNotFoundException e) {
+                // Not provided by this runtime, try the next API
+            } catch (final ReflectiveOperationException | RuntimeException | LinkageError e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Primes before the snapshot is taken and opens a fresh connection after restore, connections captured in a
+     * snapshot are not usable anymore. The connection call runs with the function credentials and is expected to
+     * be rejected, it only needs the TLS session
+     */
+    private static Object onCheckpointEvent(final Object hook, final Method method, final Object[] args) {
+        switch (method.getName()) {
+            case "beforeCheckpoint":
+                primeClients();
+                return null;
+            case "afterRestore":
+                try {
+                    ClientBuilder.getClient().describeStackSet(describeStackSetRequest(
+                            ResourceModel.builder().stackSetName(PRIMING_NAME).build(), PRIMING_NAME));
+                } catch (final RuntimeException expected) {
+                    // Any response, including access denied, leaves a warm connection behind
+                }
+                return null;
+            case "hashCode":
+                return System.identityHashCode(hook);
+            case "equals":
+                return hook == args[0];
+            case "toString":
+                return ColdStartPrimer.class.getSimpleName() + " checkpoint hook";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Marshals and signs each request the handlers send with the given client, aborted before transmission
+     *
+     * @param client {@link CloudFormationClient} built by {@link ClientBuilder}
+     */
+    static void prime(final CloudFormationClient client) {
+        try {
+            final ResourceModel model = primeSerialization();
+            final Set<StackInstance> stackInstances = InstancesAnalyzer.flattenStackInstances(model.getStackInstances());
+            final Consumer<AwsRequestOverrideConfiguration.Builder> dryRun = configuration -> configuration
+                    .putHeader(DRY_RUN_HEADER, Boolean.TRUE.toString())
+                    .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(PRIMING_NAME, PRIMING_NAME)));
+
+            final List<Runnable> calls = Arrays.asList(
+                    () -> client.createStackInstances(createStackInstancesRequest(model, stackInstances)
+                            .toBuilder().overrideConfiguration(dryRun).build()),
+                    () -> client.updateStackInstances(updateStackInstancesRequest(model, stackInstances)
+                            .toBuilder().overrideConfiguration(dryRun).build()),
+                    () -> client.deleteStackInstances(deleteStackInstancesRequest(model, stackInstances)
+                            .toBuilder().overrideConfiguration(dryRun).build()),
+                    () -> client.listStackInstances(listStackInstancesRequest(model, null, PRIMING_NAME)
+                            .toBuilder().overrideConfiguration(dryRun).build()),
+                    () -> client.describeStackInstance(describeStackInstanceRequest(model, PRIMING_ACCOUNT, PRIMING_REGION, PRIMING_NAME)
+                            .toBuilder().overrideConfiguration(dryRun).build()),
+                    () -> client.describeStackSet(describeStackSetRequest(model, PRIMING_NAME)
+                            .toBuilder().overrideConfiguration(dryRun).build()),
+                    () -> client.describeStackSetOperation(describeStackSetOperationRequest(model, PRIMING_NAME, PRIMING_NAME)
+                            .toBuilder().overrideConfiguration(dryRun).build()));
+            for (final Runnable call : calls) {
+                try {
+                    call.run();
+                } catch (final RuntimeException expected) {
+                    // DryRunInterceptor aborts every call before it reaches the network
+                }
+            }
+        } catch (final RuntimeException | ExceptionInInitializerError e) {
+            // Priming is best effort, the first invocation builds what is missing
+        }
+    }
+
+    /**
+     * Runs a resource model and a callback context through Jackson, as the wrapper does for every request
+     *
+     * @return the deserialized {@link ResourceModel}
+     */
+    private static ResourceModel primeSerialization() {
+        final ObjectMapper mapper = new ObjectMapper();
+        final ResourceModel model = ResourceModel.builder()
+                .stackSetName(PRIMING_NAME)
+                .stackInstances(StackInstances.builder()
+                        .deploymentTargets(DeploymentTargets.builder()
+                                .accounts(new HashSet<>(Collections.singletonList(PRIMING_ACCOUNT)))
+                                .build())
+                        .regions(new HashSet<>(Collections.singletonList(PRIMING_REGION)))
+                        .build())
+                .build();
+        try {
+            final CallbackContext callbackContext = new CallbackContext();
+            callbackContext.getRepairedStackInstances().put(PRIMING_NAME,
+                    InstancesAnalyzer.flattenStackInstances(model.getStackInstances()));
+            mapper.readValue(mapper.writeValueAsString(callbackContext), CallbackContext.class);
+            return mapper.readValue(mapper.writeValueAsString(model), ResourceModel.class);
+        } catch (final IOException e) {
+            return model;
+        }
+    }
+
+    /**
+     * Aborts calls carrying {@value #DRY_RUN_HEADER} once they are marshalled and signed
+     */
+    static class DryRunInterceptor implements ExecutionInterceptor {
+
+        @Override
+        public void beforeTransmission(
+                final Context.BeforeTransmission context,
+                final ExecutionAttributes executionAttributes) {
+            if (context.httpRequest().firstMatchingHeader(DRY_RUN_HEADER).isPresent()) {
+                throw new IllegalStateException("Dry run request aborted before transmission");
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ package software.amazon.cloudformation.stackinstances.util;
 
 import org.apache.commons.lang3.StringUtils;
 import software.amazon.awssdk.services.cloudformation.model.PermissionModels;
+import software.amazon.awssdk.utils.CollectionUtils;
 import software.amazon.cloudformation.stackinstances.Parameter;
 import software.amazon.cloudformation.stackinstances.ResourceModel;
 
@@ -51,6 +52,20 @@ public class Comparator {
         return true;
     }
 
+    /**
+     * Compares parameter overrides the way StackSets apply them, no overrides and empty overrides are equal.
+     *
+     * @param overrides1
+     * @param overrides2
+     * @return boolean indicates if two sets of overrides equal.
+     */
+    public static boolean equalsOverrides(final Set<Parameter> overrides1, final Set<Parameter> overrides2) {
+        if (CollectionUtils.isNullOrEmpty(overrides1) || CollectionUtils.isNullOrEmpty(overrides2)) {
+            return CollectionUtils.isNullOrEmpty(overrides1) && CollectionUtils.isNullOrEmpty(overrides2);
+        }
+        return overrides1.size() == overrides2.size() && equals(overrides1, overrides2);
+    }
+
     /**
      * Compares if two objects equal in a null-safe way.
      *
@@ -0,0 +1,67 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Source of StackSet operation status change events backing {@link OperationCompletions}. {@link SqsCompletionQueue}
+ * reads the queue an EventBridge rule delivers the events to, the local {@link InMemoryCompletionQueue} and
+ * {@link FileCompletionQueue} stand in for it in tests
+ */
+public interface CompletionQueue {
+
+    String MEMORY_QUEUE = "memory";
+
+    String SQS_QUEUE_PREFIX = "https://";
+
+    /**
+     * @param configuration "memory" for {@link InMemoryCompletionQueue}, "file:&lt;directory&gt;" for
+     *                      {@link FileCompletionQueue}, an SQS queue URL for {@link SqsCompletionQueue}
+     * @throws IllegalArgumentException if the configuration names none of them
+     * @return {@link CompletionQueue}, null if the configuration is unset
+     */
+    static CompletionQueue fromConfiguration(final String configuration) {
+        if (configuration == null || configuration.isEmpty()) return null;
+        if (MEMORY_QUEUE.equals(configuration)) return new InMemoryCompletionQueue();
+        if (configuration.startsWith(LeaseStore.FILE_STORE_PREFIX)) {
+            return new FileCompletionQueue(Paths.get(configuration.substring(LeaseStore.FILE_STORE_PREFIX.length())));
+        }
+        if (configuration.startsWith(SQS_QUEUE_PREFIX)) return new SqsCompletionQueue(configuration);
+        throw new IllegalArgumentException(String.format("Unsupported completion queue [%s], use an SQS queue URL, %s or %s<directory>",
+                configuration, MEMORY_QUEUE, LeaseStore.FILE_STORE_PREFIX));
+    }
+
+    /**
+     * Takes the events available right now off the queue, without waiting for more
+     *
+     * @param proxy {@link AmazonWebServicesClientProxy} to read the queue with the caller credentials
+     * @return event bodies, empty if none
+     */
+    List<String> receive(AmazonWebServicesClientProxy proxy);
+
+    /**
+     * @return true if received events are gone for the handlers of other execution environments as well
+     */
+    default boolean isConsumedOnReceive() {
+        return false;
+    }
+}
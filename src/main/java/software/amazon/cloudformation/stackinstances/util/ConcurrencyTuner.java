@@ -0,0 +1,86 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+/**
+ * Additive increase, multiplicative decrease of the MaxConcurrentPercentage between the bulk waves of a rollout.
+ * A wave without failures and without slowing down raises the concurrency of the next wave by
+ * {@link #ADDITIVE_INCREASE} points, a wave with failures, or with a per-instance duration beyond
+ * {@link #SLOWDOWN_FACTOR} times the fastest wave so far, halves it
+ */
+public final class ConcurrencyTuner {
+
+    static final int ADDITIVE_INCREASE = 10;
+
+    static final double MULTIPLICATIVE_DECREASE = 0.5;
+
+    static final double SLOWDOWN_FACTOR = 2.0;
+
+    private static final int MIN_PERCENTAGE = 1;
+
+    private static final int MAX_PERCENTAGE = 100;
+
+    private ConcurrencyTuner() {
+    }
+
+    /**
+     * @param current                   MaxConcurrentPercentage of the previous wave
+     * @param ceiling                   highest MaxConcurrentPercentage to grow to
+     * @param failureRate               failed share of the previous wave results, 0 to 1
+     * @param millisPerInstance         duration of the previous wave per stack instance, null if unknown
+     * @param fastestMillisPerInstance  fastest duration per stack instance of the rollout so far, null if unknown
+     * @return MaxConcurrentPercentage of the next wave
+     */
+    public static int next(
+            final int current,
+            final int ceiling,
+            final double failureRate,
+            final Double millisPerInstance,
+            final Double fastestMillisPerInstance) {
+
+        final boolean slowedDown = millisPerInstance != null && fastestMillisPerInstance != null
+                && millisPerInstance > SLOWDOWN_FACTOR * fastestMillisPerInstance;
+        if (failureRate > 0 || slowedDown) {
+            return Math.max(MIN_PERCENTAGE, (int) Math.floor(current * MULTIPLICATIVE_DECREASE));
+        }
+        return Math.min(Math.min(ceiling, MAX_PERCENTAGE), current + ADDITIVE_INCREASE);
+    }
+
+    /**
+     * Formats the tuning decision as an {@link EmbeddedMetric}
+     *
+     * @param stackSetName            StackSet name
+     * @param maxConcurrentPercentage chosen MaxConcurrentPercentage
+     * @param failureRate             observed failure rate
+     * @param millisPerInstance       observed duration per stack instance, null if unknown
+     * @param timestamp               epoch milliseconds
+     * @return log line
+     */
+    public static String toEmbeddedMetric(
+            final String stackSetName,
+            final int maxConcurrentPercentage,
+            final double failureRate,
+            final Double millisPerInstance,
+            final long timestamp) {
+
+        return EmbeddedMetric.forStackSet(stackSetName, timestamp)
+                .metric("MaxConcurrentPercentage", "Percent", maxConcurrentPercentage)
+                .metric("WaveFailureRate", "None", failureRate)
+                .metric("WaveMillisPerInstance", "Milliseconds", millisPerInstance == null ? 0.0 : millisPerInstance)
+                .toJson();
+    }
+}
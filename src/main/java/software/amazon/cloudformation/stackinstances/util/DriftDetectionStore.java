@@ -0,0 +1,168 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import software.amazon.cloudformation.stackinstances.DriftSummary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Latest drift detection operation of every StackSet, with the {@link DriftSummary} of each resource computed from
+ * it, see {@link DriftReporter}. Shared by all resources on the StackSet, so that repeated Reads reuse one detection. Kept in a
+ * {@link LeaseStore} configured through {@value #DRIFT_STORE_ENV}, in memory of the execution environment when unset
+ */
+public class DriftDetectionStore {
+
+    public static final String DRIFT_STORE_ENV = "STACK_INSTANCES_DRIFT_STORE";
+
+    private static final String KEY_PREFIX = "stackset-drift::";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final LeaseStore store;
+
+    public DriftDetectionStore(final LeaseStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return {@link DriftDetectionStore} on the {@link LeaseStore} configured through {@value #DRIFT_STORE_ENV}
+     */
+    public static DriftDetectionStore fromEnvironment() {
+        final LeaseStore store = LeaseStore.fromConfiguration(System.getenv(DRIFT_STORE_ENV));
+        return new DriftDetectionStore(store == null ? new InMemoryLeaseStore() : store);
+    }
+
+    /**
+     * Claims a new detection for the StackSet, unless one is running or completed less than the TTL ago
+     *
+     * @param stackSetKey  {@link StackSetKey} of the StackSet
+     * @param operationId  operation ID to submit the new detection with
+     * @param now          epoch milliseconds
+     * @param ttl          age after which a completed detection is replaced
+     * @param staleAfter   age after which a detection that never completed is replaced
+     * @return the current {@link Detection}, whose operation ID is the given one if the claim succeeded
+     */
+    public Detection claim(
+            final String stackSetKey,
+            final String operationId,
+            final long now,
+            final Duration ttl,
+            final Duration staleAfter) {
+        return update(stackSetKey, current -> {
+            if (current != null && current.getCompletedAt() != null && now - current.getCompletedAt() < ttl.toMillis()) return current;
+            if (current != null && current.getCompletedAt() == null && now - current.getStartedAt() < staleAfter.toMillis()) return current;
+            final Detection detection = new Detection();
+            detection.setOperationId(operationId);
+            detection.setStartedAt(now);
+            return detection;
+        });
+    }
+
+    /**
+     * Drops a claimed detection whose operation could not be submitted or no longer exists
+     *
+     * @param stackSetKey  {@link StackSetKey} of the StackSet
+     * @param operationId  operation ID of the claimed detection
+     */
+    public void release(final String stackSetKey, final String operationId) {
+        update(stackSetKey, current -> current != null && operationId.equals(current.getOperationId()) ? null : current);
+    }
+
+    /**
+     * @param stackSetKey  {@link StackSetKey} of the StackSet
+     * @param operationId  operation ID of the detection
+     * @param completedAt  epoch milliseconds the operation ended
+     * @param status       drift detection status of the operation
+     * @return the current {@link Detection}
+     */
+    public Detection complete(final String stackSetKey, final String operationId, final long completedAt, final String status) {
+        return update(stackSetKey, current -> {
+            if (current == null || !operationId.equals(current.getOperationId()) || current.getCompletedAt() != null) return current;
+            current.setCompletedAt(completedAt);
+            current.setStatus(status);
+            return current;
+        });
+    }
+
+    /**
+     * @param stackSetKey  {@link StackSetKey} of the StackSet
+     * @param operationId  operation ID the summary was computed from, ignored if a newer detection replaced it
+     * @param summaryKey   resource and stack instances the summary was computed over
+     * @param summary      {@link DriftSummary} of the resource
+     */
+    public void putSummary(final String stackSetKey, final String operationId, final String summaryKey, final DriftSummary summary) {
+        update(stackSetKey, current -> {
+            if (current == null || !operationId.equals(current.getOperationId())) return current;
+            current.getSummaries().put(summaryKey, summary);
+            return current;
+        });
+    }
+
+    /**
+     * Applies the change with a conditional write, a released detection is stored as an empty {@link Detection}
+     */
+    private Detection update(final String stackSetKey, final UnaryOperator<Detection> change) {
+        while (true) {
+            final LeaseStore.VersionedValue current = store.get(KEY_PREFIX + stackSetKey);
+            final Detection detection = current == null ? null : read(current.getValue());
+            final String unchanged = write(detection);
+            final Detection updated = change.apply(detection);
+            final String value = write(updated);
+            if (value.equals(unchanged)) return updated;
+            if (store.compareAndSet(KEY_PREFIX + stackSetKey, current == null ? 0 : current.getVersion(), value)) {
+                return updated;
+            }
+        }
+    }
+
+    private static Detection read(final String value) {
+        try {
+            final Detection detection = MAPPER.readValue(value, Detection.class);
+            return detection.getOperationId() == null ? null : detection;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String write(final Detection detection) {
+        try {
+            return MAPPER.writeValueAsString(detection == null ? new Detection() : detection);
+        } catch (final JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Detection {
+        private String operationId;
+        private Long startedAt;
+        private Long completedAt;
+        private String status;
+        private Map<String, DriftSummary> summaries = new HashMap<>();
+    }
+}
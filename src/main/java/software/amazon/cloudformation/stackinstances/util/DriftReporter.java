@@ -0,0 +1,221 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.ListStackInstancesResponse;
+import software.amazon.awssdk.services.cloudformation.model.OperationInProgressException;
+import software.amazon.awssdk.services.cloudformation.model.OperationNotFoundException;
+import software.amazon.awssdk.services.cloudformation.model.StackDriftStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceSummary;
+import software.amazon.awssdk.services.cloudformation.model.StackSetDriftDetectionStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperation;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.DriftSummary;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static software.amazon.cloudformation.stackinstances.translator.RequestTranslator.*;
+
+/**
+ * Reports the drift of the stack instances of a resource in a {@link DriftSummary}. Starts a StackSet-wide drift
+ * detection operation unless one is running or completed within the TTL, see {@link DriftDetectionStore}, and never
+ * while a resource holds or waits for the lease of the StackSet, see {@link StackSetLeaseQueue}. A report never waits
+ * for the operation, it reports its status until it completes, then pages the stack instances
+ */
+public class DriftReporter {
+
+    static final String PENDING = "PENDING";
+
+    private static final int DEFAULT_DRIFT_TTL_MINUTES = 60;
+
+    /**
+     * Number of drifted stack instances listed in {@link DriftSummary#getDriftedInstances()}
+     */
+    private static final int DRIFTED_INSTANCES_LISTED = 20;
+
+    private final DriftDetectionStore store;
+
+    private final StackSetLeaseQueue leaseQueue;
+
+    private final Clock clock;
+
+    public DriftReporter(final DriftDetectionStore store, final StackSetLeaseQueue leaseQueue, final Clock clock) {
+        this.store = store;
+        this.leaseQueue = leaseQueue;
+        this.clock = clock;
+    }
+
+    /**
+     * @return {@link DriftReporter} on the {@link DriftDetectionStore} and {@link StackSetLeaseQueue} configured
+     * through the environment
+     */
+    public static DriftReporter fromEnvironment() {
+        return new DriftReporter(DriftDetectionStore.fromEnvironment(), StackSetLeaseQueue.fromEnvironment(),
+                Clock.systemUTC());
+    }
+
+    /**
+     * Sets {@link ResourceModel#getDriftSummary()}
+     *
+     * @param proxyClient   the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model         {@link ResourceModel} with drift detection enabled, with its manifest loaded if any
+     * @param claimDuration time a started detection is claimed for before another resource may start one
+     * @param logger        {@link Logger}
+     */
+    public void report(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final Duration claimDuration,
+            final Logger logger) {
+
+        final String stackSetName = model.getStackSetName();
+        final Duration ttl = Duration.ofMinutes(model.getDriftDetection().getCacheTtlMinutes() == null ?
+                DEFAULT_DRIFT_TTL_MINUTES : model.getDriftDetection().getCacheTtlMinutes());
+        final String stackSetKey = StackSetKey.of(model, stackSetName);
+        final String claimedOperationId = UUID.randomUUID().toString();
+        DriftDetectionStore.Detection detection = store.claim(
+                stackSetKey, claimedOperationId, clock.millis(), ttl, claimDuration);
+        final String operationId = detection.getOperationId();
+
+        if (claimedOperationId.equals(operationId)) {
+            if (!leaseQueue.isIdle(stackSetKey)) {
+                store.release(stackSetKey, operationId);
+                logger.log(String.format("StackSet [%s] lease is held or awaited, drift detection is started on a later Read", stackSetName));
+                model.setDriftSummary(DriftSummary.builder().detectionStatus(PENDING).build());
+                return;
+            }
+            try {
+                proxyClient.injectCredentialsAndInvokeV2(detectStackSetDriftRequest(model, stackSetName, operationId),
+                        proxyClient.client()::detectStackSetDrift);
+                logger.log(String.format("StackSet [%s] drift detection [%s] initiated", stackSetName, operationId));
+            } catch (final OperationInProgressException e) {
+                store.release(stackSetKey, operationId);
+                logger.log(String.format("StackSet [%s] has an operation in progress, drift detection is started on a later Read", stackSetName));
+                model.setDriftSummary(DriftSummary.builder().detectionStatus(PENDING).build());
+                return;
+            }
+        }
+
+        if (detection.getCompletedAt() == null) {
+            final StackSetOperation operation;
+            try {
+                operation = StackSetOperations.describe(proxyClient, model, stackSetName, operationId);
+            } catch (final OperationNotFoundException e) {
+                store.release(stackSetKey, operationId);
+                model.setDriftSummary(DriftSummary.builder().detectionStatus(PENDING).build());
+                return;
+            }
+            if (operation.endTimestamp() == null) {
+                model.setDriftSummary(DriftSummary.builder()
+                        .detectionStatus(StackSetDriftDetectionStatus.IN_PROGRESS.toString()).operationId(operationId).build());
+                return;
+            }
+            final long completedAt = operation.endTimestamp().toEpochMilli();
+            final String status = operation.stackSetDriftDetectionDetails() == null ? operation.statusAsString() :
+                    operation.stackSetDriftDetectionDetails().driftDetectionStatusAsString();
+            detection = store.complete(stackSetKey, operationId, completedAt, status);
+            if (detection == null || !operationId.equals(detection.getOperationId())) {
+                // Released or replaced by another Read meanwhile, report what this operation found all the same
+                detection = new DriftDetectionStore.Detection();
+                detection.setOperationId(operationId);
+                detection.setCompletedAt(completedAt);
+                detection.setStatus(status);
+            }
+        }
+
+        final String summaryKey = summaryKey(model);
+        DriftSummary summary = detection.getSummaries().get(summaryKey);
+        if (summary == null) {
+            summary = summarize(proxyClient, model, stackSetName, detection);
+            store.putSummary(stackSetKey, operationId, summaryKey, summary);
+        }
+        model.setDriftSummary(summary);
+    }
+
+    /**
+     * A summary only holds for the stack instances it was computed over, so it is cached per resource and
+     * {@link InstancesFingerprint}: a resource whose targets changed within the TTL summarizes again
+     */
+    static String summaryKey(final ResourceModel model) {
+        return model.getInstanceId() + "::" + InstancesFingerprint.of(model);
+    }
+
+    /**
+     * Folds the drift status of the stack instances of the resource into a {@link DriftSummary} page by page,
+     * without keeping the listed stack instances
+     */
+    private static DriftSummary summarize(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName,
+            final DriftDetectionStore.Detection detection) {
+
+        final Map<StackInstance, StackInstance> targets = InstancesAnalyzer.flattenStackInstances(model).stream()
+                .collect(Collectors.toMap(stackInstance -> stackInstance, stackInstance -> stackInstance));
+        final Map<StackDriftStatus, Integer> counts = new HashMap<>();
+        final List<String> drifted = new ArrayList<>();
+        Instant lastCheck = null;
+
+        String nextToken = null;
+        do {
+            final ListStackInstancesResponse response = proxyClient.injectCredentialsAndInvokeV2(
+                    listStackInstancesRequest(model, nextToken, stackSetName),
+                    proxyClient.client()::listStackInstances);
+            for (final StackInstanceSummary summary : response.summaries()) {
+                if (StackSetOperations.resolveExistingStackInstance(summary, targets) == null) continue;
+                final StackDriftStatus driftStatus = summary.driftStatus() == null ? StackDriftStatus.NOT_CHECKED : summary.driftStatus();
+                counts.merge(driftStatus, 1, Integer::sum);
+                if (driftStatus == StackDriftStatus.DRIFTED && drifted.size() < DRIFTED_INSTANCES_LISTED) {
+                    drifted.add(summary.account() + "/" + summary.region());
+                }
+                if (summary.lastDriftCheckTimestamp() != null
+                        && (lastCheck == null || summary.lastDriftCheckTimestamp().isAfter(lastCheck))) {
+                    lastCheck = summary.lastDriftCheckTimestamp();
+                }
+            }
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+
+        final int inSync = counts.getOrDefault(StackDriftStatus.IN_SYNC, 0);
+        final int driftedCount = counts.getOrDefault(StackDriftStatus.DRIFTED, 0);
+        final int total = counts.values().stream().mapToInt(Integer::intValue).sum();
+        return DriftSummary.builder()
+                .detectionStatus(detection.getStatus())
+                .operationId(detection.getOperationId())
+                .driftStatus(driftedCount > 0 ? StackDriftStatus.DRIFTED.toString() :
+                        total > 0 && inSync == total ? StackDriftStatus.IN_SYNC.toString() : StackDriftStatus.NOT_CHECKED.toString())
+                .lastCheckTimestamp(lastCheck == null ? null : lastCheck.toString())
+                .inSyncCount(inSync)
+                .driftedCount(driftedCount)
+                .notCheckedCount(counts.getOrDefault(StackDriftStatus.NOT_CHECKED, 0))
+                .unknownCount(counts.getOrDefault(StackDriftStatus.UNKNOWN, 0))
+                .driftedInstances(drifted)
+                .build();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import lombok.Value;
+import software.amazon.awssdk.services.cloudformation.model.RegionConcurrencyType;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationPreferences;
+import software.amazon.cloudformation.stackinstances.OperationPreferences;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Estimates how long a StackSet operation runs. Within a Region, accounts are deployed in batches of the maximum
+ * concurrency, Regions run one after another unless the Region concurrency is PARALLEL. Each batch takes the
+ * duration per stack instance recorded for the Region in {@link OperationTimingStore}, or the optimistic
+ * {@link #DEFAULT_INSTANCE_DURATION} without history. OrganizationalUnitIds count as a single account, the
+ * estimate of service-managed operations is a lower bound
+ */
+public final class DurationEstimator {
+
+    public static final Duration DEFAULT_INSTANCE_DURATION = Duration.ofMinutes(1L);
+
+    private DurationEstimator() {
+    }
+
+    /**
+     * @param stackInstances       {@link StackInstance} set of the operation
+     * @param operationPreferences {@link OperationPreferences} of the operation, null for the service defaults
+     * @param millisPerInstance    recorded duration per stack instance by Region
+     * @return estimated operation duration
+     */
+    public static Duration estimate(
+            final Set<StackInstance> stackInstances,
+            final OperationPreferences operationPreferences,
+            final Map<String, Double> millisPerInstance) {
+
+        return estimate(countByRegion(stackInstances), Concurrency.of(operationPreferences), millisPerInstance);
+    }
+
+    /**
+     * @param instancesByRegion number of stack instances by Region
+     * @param concurrency       {@link Concurrency} of the operation
+     * @param millisPerInstance recorded duration per stack instance by Region
+     * @return estimated operation duration
+     */
+    public static Duration estimate(
+            final Map<String, Integer> instancesByRegion,
+            final Concurrency concurrency,
+            final Map<String, Double> millisPerInstance) {
+
+        double total = 0;
+        for (final Map.Entry<String, Integer> region : instancesByRegion.entrySet()) {
+            final double regionMillis = concurrency.batches(region.getValue())
+                    * millisPerInstance.getOrDefault(region.getKey(), (double) DEFAULT_INSTANCE_DURATION.toMillis());
+            total = concurrency.isParallelRegions() ? Math.max(total, regionMillis) : total + regionMillis;
+        }
+        return Duration.ofMillis((long) Math.ceil(total));
+    }
+
+    /**
+     * Inverse of {@link #estimate(Map, Concurrency, Map)} with the same duration per stack instance in every Region
+     *
+     * @param instancesByRegion number of stack instances by Region
+     * @param concurrency       {@link Concurrency} of the operation
+     * @param duration          observed operation duration
+     * @return duration per stack instance in milliseconds, null without stack instances
+     */
+    public static Double millisPerInstance(
+            final Map<String, Integer> instancesByRegion,
+            final Concurrency concurrency,
+            final Duration duration) {
+
+        long batches = 0;
+        for (final int instances : instancesByRegion.values()) {
+            final long regionBatches = concurrency.batches(instances);
+            batches = concurrency.isParallelRegions() ? Math.max(batches, regionBatches) : batches + regionBatches;
+        }
+        return batches == 0 ? null : (double) duration.toMillis() / batches;
+    }
+
+    /**
+     * @param stackInstances {@link StackInstance} set
+     * @return number of stack instances by Region
+     */
+    public static Map<String, Integer> countByRegion(final Set<StackInstance> stackInstances) {
+        final Map<String, Integer> instancesByRegion = new TreeMap<>();
+        stackInstances.forEach(stackInstance -> instancesByRegion.merge(stackInstance.getRegion(), 1, Integer::sum));
+        return instancesByRegion;
+    }
+
+    /**
+     * Concurrency settings of a StackSet operation, either from the resource {@link OperationPreferences} or from
+     * the {@link StackSetOperationPreferences} the service reports for a submitted operation
+     */
+    @Value
+    public static class Concurrency {
+        Integer maxConcurrentCount;
+        Integer maxConcurrentPercentage;
+        boolean parallelRegions;
+
+        public static Concurrency of(final OperationPreferences operationPreferences) {
+            if (operationPreferences == null) return new Concurrency(null, null, false);
+            return new Concurrency(operationPreferences.getMaxConcurrentCount(),
+                    operationPreferences.getMaxConcurrentPercentage(),
+                    RegionConcurrencyType.PARALLEL.toString().equals(operationPreferences.getRegionConcurrencyType()));
+        }
+
+        public static Concurrency of(final StackSetOperationPreferences operationPreferences) {
+            if (operationPreferences == null) return new Concurrency(null, null, false);
+            return new Concurrency(operationPreferences.maxConcurrentCount(),
+                    operationPreferences.maxConcurrentPercentage(),
+                    RegionConcurrencyType.PARALLEL == operationPreferences.regionConcurrencyType());
+        }
+
+        /**
+         * Percentages round down with a minimum of one account, as the service does. Without preferences, one
+         * account at a time
+         *
+         * @param instances number of stack instances in a Region
+         * @return number of sequential batches in the Region
+         */
+        long batches(final int instances) {
+            final int concurrent;
+            if (maxConcurrentCount != null) {
+                concurrent = maxConcurrentCount;
+            } else if (maxConcurrentPercentage != null) {
+                concurrent = instances * maxConcurrentPercentage / 100;
+            } else {
+                concurrent = 1;
+            }
+            return (instances + Math.max(1, concurrent) - 1) / Math.max(1, concurrent);
+        }
+    }
+}
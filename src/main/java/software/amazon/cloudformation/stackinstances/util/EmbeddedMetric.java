@@ -0,0 +1,109 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CloudWatch embedded metric format record with the StackSet name as dimension. Logged through the handler
+ * {@link software.amazon.cloudformation.proxy.Logger}, the provider log group turns it into metrics without an
+ * extra API call or permission
+ */
+public final class EmbeddedMetric {
+
+    public static final String NAMESPACE = "ProServe/StackInstances";
+
+    private static final String DIMENSION = "StackSetName";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, Object> values = new LinkedHashMap<>();
+
+    private final List<Map<String, String>> metrics = new ArrayList<>();
+
+    private final long timestamp;
+
+    private EmbeddedMetric(final String stackSetName, final long timestamp) {
+        this.timestamp = timestamp;
+        values.put(DIMENSION, stackSetName);
+    }
+
+    /**
+     * @param stackSetName StackSet name, the dimension of every metric
+     * @param timestamp    epoch milliseconds
+     * @return {@link EmbeddedMetric}
+     */
+    public static EmbeddedMetric forStackSet(final String stackSetName, final long timestamp) {
+        return new EmbeddedMetric(stackSetName, timestamp);
+    }
+
+    /**
+     * @param name  metric name
+     * @param unit  CloudWatch unit, e.g. Milliseconds
+     * @param value metric value
+     * @return this {@link EmbeddedMetric}
+     */
+    public EmbeddedMetric metric(final String name, final String unit, final Number value) {
+        final Map<String, String> definition = new LinkedHashMap<>();
+        definition.put("Name", name);
+        definition.put("Unit", unit);
+        metrics.add(definition);
+        values.put(name, value);
+        return this;
+    }
+
+    /**
+     * @param name  property name, searchable in the log record but not a metric
+     * @param value property value
+     * @return this {@link EmbeddedMetric}
+     */
+    public EmbeddedMetric property(final String name, final Object value) {
+        values.put(name, value);
+        return this;
+    }
+
+    /**
+     * @return log line
+     */
+    public String toJson() {
+        final Map<String, Object> directive = new LinkedHashMap<>();
+        directive.put("Namespace", NAMESPACE);
+        directive.put("Dimensions", Collections.singletonList(Collections.singletonList(DIMENSION)));
+        directive.put("Metrics", metrics);
+
+        final Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("Timestamp", timestamp);
+        metadata.put("CloudWatchMetrics", Collections.singletonList(directive));
+
+        final Map<String, Object> record = new LinkedHashMap<>();
+        record.put("_aws", metadata);
+        record.putAll(values);
+        try {
+            return MAPPER.writeValueAsString(record);
+        } catch (final JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
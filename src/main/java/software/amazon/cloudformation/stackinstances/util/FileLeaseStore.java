@@ -0,0 +1,91 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+
+/**
+ * {@link LeaseStore} stand-in keeping one file per record in a directory, conditional writes are serialized
+ * through a lock file so that several processes share the records. Execution environments share them when the
+ * directory is on a file system they all mount
+ */
+public class FileLeaseStore implements LeaseStore {
+
+    private static final String LOCK_FILE = ".lock";
+
+    private final Path directory;
+
+    public FileLeaseStore(final Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public VersionedValue get(final String key) {
+        final Path file = recordFile(key);
+        try {
+            if (!Files.exists(file)) return null;
+            final String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            final int separator = content.indexOf('\n');
+            return new VersionedValue(Long.parseLong(content.substring(0, separator)), content.substring(separator + 1));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean compareAndSet(final String key, final long expectedVersion, final String value) {
+        try (FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+
+            final VersionedValue current = get(key);
+            if ((current == null ? 0 : current.getVersion()) != expectedVersion) return false;
+
+            final Path file = recordFile(key);
+            final Path temporary = Files.createTempFile(directory, null, null);
+            Files.write(temporary, String.format("%d\n%s", expectedVersion + 1, value).getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path recordFile(final String key) {
+        return directory.resolve(Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(key.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local stand-in for {@link OrganizationsAccountSource} and {@link AccountRegionSource} reading a JSON file, e.g.
+ * exported from the organization or written for tests:
+ * <pre>
+ * {"Accounts": {"111111111111": "ACTIVE", "222222222222": "SUSPENDED"},
+ *  "Regions": {"111111111111": ["us-east-1", "ap-east-1"], "*": ["us-east-1", "eu-west-1"]}}
+ * </pre>
+ * The "*" entry applies to accounts without their own Regions entry
+ */
+public class FileTargetSource implements TargetValidator.AccountSource, TargetValidator.RegionSource {
+
+    private static final String ANY_ACCOUNT = "*";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path path;
+
+    public FileTargetSource(final Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public Map<String, String> listAccountStatuses(final AmazonWebServicesClientProxy proxy) {
+        final Map<String, String> statuses = new HashMap<>();
+        final Iterator<Map.Entry<String, JsonNode>> accounts = read().path("Accounts").fields();
+        while (accounts.hasNext()) {
+            final Map.Entry<String, JsonNode> account = accounts.next();
+            statuses.put(account.getKey(), account.getValue().asText());
+        }
+        return statuses;
+    }
+
+    @Override
+    public Set<String> listEnabledRegions(final AmazonWebServicesClientProxy proxy, final String account) {
+        final JsonNode listings = read().path("Regions");
+        final JsonNode listing = listings.has(account) ? listings.get(account) : listings.get(ANY_ACCOUNT);
+        if (listing == null) return null;
+        final Set<String> regions = new HashSet<>();
+        listing.forEach(region -> regions.add(region.asText()));
+        return regions;
+    }
+
+    private JsonNode read() {
+        try {
+            return MAPPER.readTree(path.toFile());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
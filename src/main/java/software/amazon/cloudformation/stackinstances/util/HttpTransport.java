@@ -0,0 +1,106 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.cloudformation.LambdaWrapper;
+
+import java.time.Duration;
+
+/**
+ * Builds the {@link SdkHttpClient} shared by the service clients of {@link ClientBuilder}, selected through
+ * {@value #TRANSPORT_ENV}. Stabilization makes many small calls to the same endpoint, both transports keep
+ * connections alive between them so that only the first call of an execution environment pays the TCP and TLS
+ * handshakes
+ */
+public final class HttpTransport {
+
+    public static final String TRANSPORT_ENV = "STACK_INSTANCES_HTTP_TRANSPORT";
+
+    public static final String MAX_CONNECTIONS_ENV = "STACK_INSTANCES_HTTP_MAX_CONNECTIONS";
+
+    /**
+     * Pooled Apache client with keep-alive and idle connection reaping
+     */
+    public static final String APACHE = "apache";
+
+    /**
+     * JDK HttpURLConnection client, the smallest footprint and the fastest to initialize
+     */
+    public static final String URL_CONNECTION = "url-connection";
+
+    static final int DEFAULT_MAX_CONNECTIONS = 16;
+
+    static final Duration CONNECTION_TIMEOUT = Duration.ofSeconds(2L);
+
+    static final Duration SOCKET_TIMEOUT = Duration.ofSeconds(30L);
+
+    /**
+     * Below the idle timeout of the service load balancers, so that a pooled connection is not reused after the
+     * server side closed it
+     */
+    static final Duration CONNECTION_MAX_IDLE_TIME = Duration.ofSeconds(50L);
+
+    private static final String URL_CONNECTION_MAX_CONNECTIONS = "http.maxConnections";
+
+    private HttpTransport() {
+    }
+
+    /**
+     * @return {@link SdkHttpClient} configured through {@value #TRANSPORT_ENV} and {@value #MAX_CONNECTIONS_ENV},
+     * the client of the {@link LambdaWrapper} when unset
+     */
+    public static SdkHttpClient fromEnvironment() {
+        final String maxConnections = System.getenv(MAX_CONNECTIONS_ENV);
+        return newHttpClient(System.getenv(TRANSPORT_ENV),
+                maxConnections == null || maxConnections.isEmpty() ? DEFAULT_MAX_CONNECTIONS : Integer.parseInt(maxConnections));
+    }
+
+    /**
+     * @param transport      {@value #APACHE}, {@value #URL_CONNECTION}, or null for the client of the {@link LambdaWrapper}
+     * @param maxConnections connections kept per endpoint
+     * @return {@link SdkHttpClient}
+     */
+    public static SdkHttpClient newHttpClient(final String transport, final int maxConnections) {
+        if (APACHE.equals(transport)) {
+            return ApacheHttpClient.builder()
+                    .maxConnections(maxConnections)
+                    .connectionTimeout(CONNECTION_TIMEOUT)
+                    .connectionAcquisitionTimeout(CONNECTION_TIMEOUT)
+                    .socketTimeout(SOCKET_TIMEOUT)
+                    .connectionMaxIdleTime(CONNECTION_MAX_IDLE_TIME)
+                    .useIdleConnectionReaper(true)
+                    .tcpKeepAlive(true)
+                    .expectContinueEnabled(false)
+                    .build();
+        }
+        if (URL_CONNECTION.equals(transport)) {
+            // HttpURLConnection keeps idle connections in a JVM wide cache sized through a system property
+            if (System.getProperty(URL_CONNECTION_MAX_CONNECTIONS) == null) {
+                System.setProperty(URL_CONNECTION_MAX_CONNECTIONS, String.valueOf(maxConnections));
+            }
+            return UrlConnectionHttpClient.builder()
+                    .connectionTimeout(CONNECTION_TIMEOUT)
+                    .socketTimeout(SOCKET_TIMEOUT)
+                    .build();
+        }
+        return LambdaWrapper.HTTP_CLIENT;
+    }
+}
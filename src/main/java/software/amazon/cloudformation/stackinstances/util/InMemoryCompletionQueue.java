@@ -0,0 +1,50 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * {@link CompletionQueue} stand-in holding events in memory, published by tests or by code in the same environment
+ */
+public class InMemoryCompletionQueue implements CompletionQueue {
+
+    private final Queue<String> events = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param event EventBridge event JSON
+     */
+    public void publish(final String event) {
+        events.add(event);
+    }
+
+    @Override
+    public List<String> receive(final AmazonWebServicesClientProxy proxy) {
+        final List<String> received = new ArrayList<>();
+        String event;
+        while ((event = events.poll()) != null) {
+            received.add(event);
+        }
+        return received;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link LeaseStore} stand-in holding records in memory, shared by the invocations of one execution environment
+ */
+public class InMemoryLeaseStore implements LeaseStore {
+
+    private final ConcurrentMap<String, VersionedValue> records = new ConcurrentHashMap<>();
+
+    @Override
+    public VersionedValue get(final String key) {
+        return records.get(key);
+    }
+
+    @Override
+    public boolean compareAndSet(final String key, final long expectedVersion, final String value) {
+        final VersionedValue updated = new VersionedValue(expectedVersion + 1, value);
+        if (expectedVersion == 0) {
+            return records.putIfAbsent(key, updated) == null;
+        }
+        final VersionedValue current = records.get(key);
+        return current != null && current.getVersion() == expectedVersion && records.replace(key, current, updated);
+    }
+}
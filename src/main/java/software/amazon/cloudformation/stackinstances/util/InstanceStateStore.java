@@ -0,0 +1,132 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Last known status of every stack instance of a StackSet with the latest operation it reflects, so that Read
+ * applies only the operations that ran since instead of listing the stack instances again. Shared by all resources
+ * on the StackSet. Kept in a {@link LeaseStore} configured through {@value #INSTANCE_STATE_STORE_ENV}, in memory of
+ * the execution environment when unset
+ */
+public class InstanceStateStore {
+
+    public static final String INSTANCE_STATE_STORE_ENV = "STACK_INSTANCES_INSTANCE_STATE_STORE";
+
+    private static final String KEY_PREFIX = "stackset-instances::";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final LeaseStore store;
+
+    public InstanceStateStore(final LeaseStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return {@link InstanceStateStore} on the {@link LeaseStore} configured through {@value #INSTANCE_STATE_STORE_ENV}
+     */
+    public static InstanceStateStore fromEnvironment() {
+        final LeaseStore store = LeaseStore.fromConfiguration(System.getenv(INSTANCE_STATE_STORE_ENV));
+        return new InstanceStateStore(store == null ? new InMemoryLeaseStore() : store);
+    }
+
+    /**
+     * @param stackSetKey {@link StackSetKey} of the StackSet
+     * @return the last stored {@link State}, null if the StackSet was never listed
+     */
+    public State get(final String stackSetKey) {
+        final LeaseStore.VersionedValue current = store.get(KEY_PREFIX + stackSetKey);
+        return current == null ? null : read(current.getValue());
+    }
+
+    /**
+     * Stores the state, the last writer wins. A state older than the stored one is still correct: the next Read
+     * applies the operations since its cursor again, in order
+     *
+     * @param stackSetKey {@link StackSetKey} of the StackSet
+     * @param state       {@link State} to store
+     */
+    public void put(final String stackSetKey, final State state) {
+        final String value = write(state);
+        while (true) {
+            final LeaseStore.VersionedValue current = store.get(KEY_PREFIX + stackSetKey);
+            if (store.compareAndSet(KEY_PREFIX + stackSetKey, current == null ? 0 : current.getVersion(), value)) return;
+        }
+    }
+
+    private static State read(final String value) {
+        try {
+            return MAPPER.readValue(value, State.class);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String write(final State state) {
+        try {
+            return MAPPER.writeValueAsString(state);
+        } catch (final JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param account stack instance account
+     * @param region  stack instance Region
+     * @return key of the stack instance in {@link State#getInstances()}
+     */
+    public static String key(final String account, final String region) {
+        return account + "/" + region;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class State {
+        /**
+         * Latest operation applied, every older operation had completed. Null if none had when the StackSet was listed
+         */
+        private String lastOperationId;
+        private Long refreshedAt;
+        private Map<String, Instance> instances = new HashMap<>();
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Instance {
+        private String account;
+        private String region;
+        private String organizationalUnitId;
+
+        /**
+         * CURRENT, OUTDATED or INOPERABLE
+         */
+        private String status;
+    }
+}
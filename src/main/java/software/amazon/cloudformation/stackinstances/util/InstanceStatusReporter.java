@@ -0,0 +1,317 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.ListStackInstancesResponse;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationsResponse;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceSummary;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationAction;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultSummary;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationSummary;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.InstanceStatusSummary;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static software.amazon.cloudformation.stackinstances.translator.RequestTranslator.*;
+
+/**
+ * Reports the status of the stack instances of a resource in an {@link InstanceStatusSummary}. The status of every
+ * stack instance of each StackSet is kept in the {@link InstanceStateStore} with the last observed operation, each
+ * report applies the results of the operations that ran since. The stack instances are listed only on the first
+ * report or when more than {@value #MAX_DELTA_OPERATIONS} operations ran since
+ */
+public class InstanceStatusReporter {
+
+    static final String FULL = "FULL";
+
+    static final String DELTA = "DELTA";
+
+    /**
+     * Number of OUTDATED or INOPERABLE stack instances listed in {@link InstanceStatusSummary#getUnhealthyInstances()}
+     */
+    private static final int UNHEALTHY_INSTANCES_LISTED = 20;
+
+    /**
+     * Operations applied to the last known stack instance status at most, beyond that the stack instances are listed
+     */
+    static final int MAX_DELTA_OPERATIONS = 20;
+
+    private final InstanceStateStore store;
+
+    private final Clock clock;
+
+    public InstanceStatusReporter(final InstanceStateStore store, final Clock clock) {
+        this.store = store;
+        this.clock = clock;
+    }
+
+    /**
+     * @return {@link InstanceStatusReporter} on the {@link InstanceStateStore} configured through the environment
+     */
+    public static InstanceStatusReporter fromEnvironment() {
+        return new InstanceStatusReporter(InstanceStateStore.fromEnvironment(), Clock.systemUTC());
+    }
+
+    /**
+     * Sets {@link ResourceModel#getInstanceStatusSummary()}. Sharded models and StackSetTargets report over all their
+     * StackSets
+     *
+     * @param proxyClient the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model       {@link ResourceModel}
+     * @param logger      {@link Logger}
+     */
+    public void report(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final Logger logger) {
+
+        final Map<String, Set<StackInstance>> stackInstances = OperationPlan.resolveStackInstances(model);
+        final boolean multiple = stackInstances.size() > 1;
+        final Map<String, Integer> counts = new HashMap<>();
+        final List<String> unhealthy = new ArrayList<>();
+        final Set<String> refreshTypes = new HashSet<>();
+        String lastOperationId = null;
+        int missing = 0;
+        for (final Map.Entry<String, Set<StackInstance>> entry : stackInstances.entrySet()) {
+            final String stackSetName = entry.getKey();
+            final InstanceStateStore.State state = refresh(proxyClient, model, stackSetName, refreshTypes, logger);
+            lastOperationId = state.getLastOperationId();
+            missing += summarize(entry.getValue(), state, counts,
+                    multiple ? stackSetName + "/" : "", unhealthy);
+        }
+        Collections.sort(unhealthy);
+
+        model.setInstanceStatusSummary(InstanceStatusSummary.builder()
+                .lastOperationId(multiple ? null : lastOperationId)
+                .refreshType(refreshTypes.contains(FULL) ? FULL : DELTA)
+                .currentCount(counts.getOrDefault(StackInstanceStatus.CURRENT.toString(), 0))
+                .outdatedCount(counts.getOrDefault(StackInstanceStatus.OUTDATED.toString(), 0))
+                .inoperableCount(counts.getOrDefault(StackInstanceStatus.INOPERABLE.toString(), 0))
+                .missingCount(missing)
+                .unhealthyInstances(new ArrayList<>(unhealthy.subList(0, Math.min(unhealthy.size(), UNHEALTHY_INSTANCES_LISTED))))
+                .build());
+    }
+
+    /**
+     * Brings the status kept for the StackSet up to date, listing its stack instances or applying the operations that
+     * ran since the last observed one
+     *
+     * @param refreshTypes collects {@link #FULL} if the stack instances were listed, {@link #DELTA} otherwise
+     * @return {@link InstanceStateStore.State} of the StackSet
+     */
+    private InstanceStateStore.State refresh(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName,
+            final Set<String> refreshTypes,
+            final Logger logger) {
+
+        final String stackSetKey = StackSetKey.of(model, stackSetName);
+        final InstanceStateStore.State previous = store.get(stackSetKey);
+        final List<StackSetOperationSummary> operations = previous == null ? null :
+                listOperationsSince(proxyClient, model, stackSetName, previous.getLastOperationId());
+
+        final InstanceStateStore.State state;
+        if (operations == null) {
+            state = listInstanceState(proxyClient, model, stackSetName);
+            refreshTypes.add(FULL);
+            logger.log(String.format("StackSet [%s] instance status listed, %d stack instances as of operation [%s]",
+                    stackSetName, state.getInstances().size(), state.getLastOperationId()));
+        } else {
+            state = applyOperations(proxyClient, model, stackSetName, previous, operations);
+            refreshTypes.add(DELTA);
+            logger.log(String.format("StackSet [%s] instance status updated from %d operations since [%s]",
+                    stackSetName, operations.size(), previous.getLastOperationId()));
+        }
+        if (operations == null || !operations.isEmpty()) {
+            store.put(stackSetKey, state);
+        }
+        return state;
+    }
+
+    /**
+     * Lists the operations that ran after the given one, most recent first like ListStackSetOperations
+     *
+     * @return operations after the given one, null if it is unknown or more than {@value #MAX_DELTA_OPERATIONS} ran since
+     */
+    private static List<StackSetOperationSummary> listOperationsSince(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName,
+            final String lastOperationId) {
+
+        if (lastOperationId == null) return null;
+        final List<StackSetOperationSummary> operations = new ArrayList<>();
+        String nextToken = null;
+        do {
+            final ListStackSetOperationsResponse response = proxyClient.injectCredentialsAndInvokeV2(
+                    listStackSetOperationsRequest(model, nextToken, stackSetName),
+                    proxyClient.client()::listStackSetOperations);
+            for (final StackSetOperationSummary operation : response.summaries()) {
+                if (lastOperationId.equals(operation.operationId())) return operations;
+                if (operations.size() == MAX_DELTA_OPERATIONS) return null;
+                operations.add(operation);
+            }
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+        return null;
+    }
+
+    /**
+     * Lists every stack instance of the StackSet. The cursor is the latest operation older than any operation still
+     * in flight, so that the results of in-flight operations are applied by a later report
+     */
+    private InstanceStateStore.State listInstanceState(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName) {
+
+        final InstanceStateStore.State state = new InstanceStateStore.State();
+        // In-flight operations are the most recent ones, the first page is enough
+        for (final StackSetOperationSummary operation : proxyClient.injectCredentialsAndInvokeV2(
+                listStackSetOperationsRequest(model, stackSetName),
+                proxyClient.client()::listStackSetOperations).summaries()) {
+            if (!StackSetOperations.isEnded(operation.status())) {
+                state.setLastOperationId(null);
+            } else if (state.getLastOperationId() == null) {
+                state.setLastOperationId(operation.operationId());
+            }
+        }
+
+        String nextToken = null;
+        do {
+            final ListStackInstancesResponse response = proxyClient.injectCredentialsAndInvokeV2(
+                    listStackInstancesRequest(model, nextToken, stackSetName),
+                    proxyClient.client()::listStackInstances);
+            for (final StackInstanceSummary summary : response.summaries()) {
+                state.getInstances().put(InstanceStateStore.key(summary.account(), summary.region()),
+                        new InstanceStateStore.Instance(summary.account(), summary.region(),
+                                summary.organizationalUnitId(), summary.statusAsString()));
+            }
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+        state.setRefreshedAt(clock.millis());
+        return state;
+    }
+
+    /**
+     * Applies the results of the given operations oldest first, up to the first one still in flight
+     */
+    private InstanceStateStore.State applyOperations(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName,
+            final InstanceStateStore.State state,
+            final List<StackSetOperationSummary> operations) {
+
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            final StackSetOperationSummary operation = operations.get(i);
+            if (!StackSetOperations.isEnded(operation.status())) break;
+            if (StackSetOperationAction.DETECT_DRIFT != operation.action()) {
+                for (final StackSetOperationResultSummary result :
+                        StackSetOperations.listResults(proxyClient, model, stackSetName, operation.operationId())) {
+                    applyOperationResult(state, operation.action(), result);
+                }
+            }
+            state.setLastOperationId(operation.operationId());
+        }
+        state.setRefreshedAt(clock.millis());
+        return state;
+    }
+
+    /**
+     * A succeeded delete removes the stack instance, a failed one leaves it INOPERABLE. Other operations leave their
+     * stack instances CURRENT if they succeeded, OUTDATED otherwise
+     */
+    private static void applyOperationResult(
+            final InstanceStateStore.State state,
+            final StackSetOperationAction action,
+            final StackSetOperationResultSummary result) {
+
+        final String key = InstanceStateStore.key(result.account(), result.region());
+        final InstanceStateStore.Instance known = state.getInstances().get(key);
+        final String status;
+        if (StackSetOperationAction.DELETE == action) {
+            if (StackSetOperationResultStatus.SUCCEEDED == result.status()) {
+                state.getInstances().remove(key);
+                return;
+            }
+            if (StackSetOperationResultStatus.FAILED != result.status() || known == null) return;
+            status = StackInstanceStatus.INOPERABLE.toString();
+        } else {
+            status = StackSetOperationResultStatus.SUCCEEDED == result.status() ?
+                    StackInstanceStatus.CURRENT.toString() : StackInstanceStatus.OUTDATED.toString();
+        }
+        final String organizationalUnitId = result.organizationalUnitId() != null ? result.organizationalUnitId() :
+                known == null ? null : known.getOrganizationalUnitId();
+        state.getInstances().put(key,
+                new InstanceStateStore.Instance(result.account(), result.region(), organizationalUnitId, status));
+    }
+
+    /**
+     * Folds the status of the stack instances a StackSet of the resource should have into the counts of an
+     * {@link InstanceStatusSummary}
+     *
+     * @param stackInstances stack instances of the resource in the StackSet
+     * @param state          {@link InstanceStateStore.State} of the StackSet
+     * @param counts         stack instances by status, added to
+     * @param prefix         prefix of the listed unhealthy stack instances
+     * @param unhealthy      OUTDATED or INOPERABLE stack instances as account/Region, added to
+     * @return number of account targets the StackSet does not have
+     */
+    private static int summarize(
+            final Set<StackInstance> stackInstances,
+            final InstanceStateStore.State state,
+            final Map<String, Integer> counts,
+            final String prefix,
+            final List<String> unhealthy) {
+
+        final Map<StackInstance, StackInstance> targets = stackInstances.stream()
+                .collect(Collectors.toMap(stackInstance -> stackInstance, stackInstance -> stackInstance));
+        final Set<StackInstance> found = new HashSet<>();
+
+        for (final Map.Entry<String, InstanceStateStore.Instance> entry : state.getInstances().entrySet()) {
+            final InstanceStateStore.Instance instance = entry.getValue();
+            final StackInstance existing = StackSetOperations.resolveExistingStackInstance(StackInstanceSummary.builder()
+                    .account(instance.getAccount())
+                    .region(instance.getRegion())
+                    .organizationalUnitId(instance.getOrganizationalUnitId())
+                    .build(), targets);
+            if (existing == null) continue;
+            found.add(existing);
+            counts.merge(instance.getStatus(), 1, Integer::sum);
+            if (!StackInstanceStatus.CURRENT.toString().equals(instance.getStatus())) unhealthy.add(prefix + entry.getKey());
+        }
+        return (int) targets.keySet().stream()
+                .filter(target -> !target.targetsOrganizationalUnit() && !found.contains(target)).count();
+    }
+}
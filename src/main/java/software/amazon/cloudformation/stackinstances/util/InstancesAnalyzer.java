@@ -18,6 +18,7 @@ package software.amazon.cloudformation.stackinstances.util;
 
 import lombok.Builder;
 import lombok.Data;
+import software.amazon.awssdk.services.cloudformation.model.AccountFilterType;
 import software.amazon.awssdk.utils.CollectionUtils;
 import software.amazon.cloudformation.exceptions.CfnInvalidRequestException;
 import software.amazon.cloudformation.stackinstances.DeploymentTargets;
@@ -71,12 +72,9 @@ public class InstancesAnalyzer {
             if (groupedStacksMap.containsKey(compositeKey)) {
                 groupedStacksMap.get(compositeKey).getRegions().add(stackInstance.getRegion());
             } else {
-                final DeploymentTargets targets = DeploymentTargets.builder().build();
-                targets.setAccounts(new HashSet<>(Arrays.asList(target)));
-
                 final StackInstances stackInstances = StackInstances.builder()
                         .regions(new HashSet<>(Arrays.asList(region)))
-                        .deploymentTargets(targets)
+                        .deploymentTargets(toDeploymentTargets(stackInstance))
                         .parameterOverrides(parameterSet)
                         .build();
                 groupedStacksMap.put(compositeKey, stackInstances);
@@ -86,7 +84,31 @@ public class InstancesAnalyzer {
     }
 
     /**
-     * Aggregates instances with similar {@link StackInstances#getRegions()}
+     * Builds the {@link DeploymentTargets} addressing a single {@link StackInstance} target
+     *
+     * @param stackInstance {@link StackInstance}
+     * @return {@link DeploymentTargets}
+     */
+    private static DeploymentTargets toDeploymentTargets(final StackInstance stackInstance) {
+        final DeploymentTargets targets = DeploymentTargets.builder().build();
+        targets.setAccountFilterType(stackInstance.getAccountFilterType());
+        if (stackInstance.targetsOrganizationalUnit()) {
+            targets.setOrganizationalUnitIds(new HashSet<>(Arrays.asList(stackInstance.getDeploymentTarget())));
+            if (!CollectionUtils.isNullOrEmpty(stackInstance.getExcludedAccounts())) {
+                targets.setAccounts(new HashSet<>(stackInstance.getExcludedAccounts()));
+            }
+        } else {
+            targets.setAccounts(new HashSet<>(Arrays.asList(stackInstance.getDeploymentTarget())));
+            if (!CollectionUtils.isNullOrEmpty(stackInstance.getOrganizationalUnitIds())) {
+                targets.setOrganizationalUnitIds(new HashSet<>(stackInstance.getOrganizationalUnitIds()));
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Aggregates instances with similar {@link StackInstances#getRegions()}. OrganizationalUnitId targets excluding
+     * accounts are only aggregated with targets excluding the same accounts
      *
      * @param groupedStacks {@link StackInstances} set
      * @return Aggregated {@link StackInstances} set
@@ -98,10 +120,14 @@ public class InstancesAnalyzer {
         for (final StackInstances stackInstances : groupedStacks) {
             final DeploymentTargets target = stackInstances.getDeploymentTargets();
             final Set<Parameter> parameterSet = stackInstances.getParameterOverrides();
-            final List<Object> compositeKey = Arrays.asList(stackInstances.getRegions(), parameterSet);
+            final String accountFilterType = target.getAccountFilterType();
+            final List<Object> compositeKey = AccountFilterType.DIFFERENCE.toString().equals(accountFilterType) ?
+                    Arrays.asList(stackInstances.getRegions(), parameterSet, accountFilterType, target.getAccounts()) :
+                    Arrays.asList(stackInstances.getRegions(), parameterSet, accountFilterType);
             if (groupedStacksMap.containsKey(compositeKey)) {
-                groupedStacksMap.get(compositeKey).getDeploymentTargets()
-                        .getAccounts().addAll(target.getAccounts());
+                final DeploymentTargets aggregated = groupedStacksMap.get(compositeKey).getDeploymentTargets();
+                aggregated.setAccounts(union(aggregated.getAccounts(), target.getAccounts()));
+                aggregated.setOrganizationalUnitIds(union(aggregated.getOrganizationalUnitIds(), target.getOrganizationalUnitIds()));
             } else {
                 groupedStacksMap.put(compositeKey, stackInstances);
             }
@@ -109,6 +135,14 @@ public class InstancesAnalyzer {
         return new HashSet<>(groupedStacksMap.values());
     }
 
+    private static Set<String> union(final Set<String> left, final Set<String> right) {
+        if (CollectionUtils.isNullOrEmpty(left) && CollectionUtils.isNullOrEmpty(right)) return null;
+        final Set<String> union = new HashSet<>();
+        if (left != null) union.addAll(left);
+        if (right != null) union.addAll(right);
+        return union;
+    }
+
     /**
      * Compares {@link StackInstance#getParameters()} with previous {@link StackInstance#getParameters()}
      * Gets the StackInstances need to update
@@ -127,45 +161,149 @@ public class InstancesAnalyzer {
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Flattens the stack instances of a model, either inline or from the {@link StackInstanceManifest} loaded for
+     * {@link ResourceModel#getManifestLocation()}
+     *
+     * @param model {@link ResourceModel}
+     * @return {@link StackInstance} set
+     */
+    public static Set<StackInstance> flattenStackInstances(final ResourceModel model) {
+        if (model.getManifestLocation() != null) {
+            return StackInstanceManifest.get(model).flatten(Collections.emptySet());
+        }
+        return flattenStackInstances(model.getStackInstances());
+    }
+
     /**
      * Since Stack instances are defined across accounts and regions with(out) parameters,
-     * We are expanding all before we tack actions
+     * We are expanding all before we tack actions. Service-managed {@link DeploymentTargets} expand to
+     * OrganizationalUnitId targets, and to account targets for the accounts an INTERSECTION or UNION
+     * {@link AccountFilterType} selects
      *
      * @param stackInstances {@link ResourceModel#getStackInstances()}
      * @return {@link StackInstance} set
      */
-    private static Set<StackInstance> flattenStackInstances(
+    public static Set<StackInstance> flattenStackInstances(
             final StackInstances stackInstances) {
 
         final Set<StackInstance> flatStacks = new HashSet<>();
+        final DeploymentTargets deploymentTargets = stackInstances.getDeploymentTargets();
+        final String accountFilterType = resolveAccountFilterType(deploymentTargets);
 
         for (final String region : stackInstances.getRegions()) {
+            for (final StackInstance stackInstance : expandDeploymentTargets(
+                    region, deploymentTargets, accountFilterType, stackInstances.getParameterOverrides())) {
 
-            final Set<String> targets = stackInstances.getDeploymentTargets().getAccounts();
+                // Validates no duplicated stack instance is specified
+                if (flatStacks.contains(stackInstance)) {
+                    throw new CfnInvalidRequestException(
+                            String.format("Stack instance [%s,%s] is duplicated", stackInstance.getDeploymentTarget(), region));
+                }
+
+                flatStacks.add(stackInstance);
+            }
+        }
+        return flatStacks;
+    }
+
+    /**
+     * Validates the combination of Accounts, OrganizationalUnitIds and AccountFilterType
+     *
+     * @param deploymentTargets {@link DeploymentTargets}
+     * @return the effective {@link AccountFilterType}, null for self-managed {@link DeploymentTargets}
+     */
+    private static String resolveAccountFilterType(final DeploymentTargets deploymentTargets) {
+        final boolean hasAccounts = !CollectionUtils.isNullOrEmpty(deploymentTargets.getAccounts());
+        final String accountFilterType = deploymentTargets.getAccountFilterType();
 
+        if (CollectionUtils.isNullOrEmpty(deploymentTargets.getOrganizationalUnitIds())) {
             // Validates expected DeploymentTargets exist in the template
-            if (CollectionUtils.isNullOrEmpty(targets)) {
+            if (!hasAccounts) {
                 throw new CfnInvalidRequestException(
                         String.format("%s should be specified in DeploymentTargets in [%s] model",
-                                "Accounts",
-                                "SELF_MANAGED"));
+                                "Accounts or OrganizationalUnitIds",
+                                "SELF_MANAGED or SERVICE_MANAGED"));
+            }
+            if (accountFilterType != null && !AccountFilterType.NONE.toString().equals(accountFilterType)) {
+                throw new CfnInvalidRequestException(
+                        String.format("AccountFilterType [%s] requires OrganizationalUnitIds", accountFilterType));
             }
+            return null;
+        }
 
-            for (final String target : targets) {
-                final StackInstance stackInstance = StackInstance.builder()
-                        .region(region).deploymentTarget(target).parameters(stackInstances.getParameterOverrides())
-                        .build();
+        if (accountFilterType == null || AccountFilterType.NONE.toString().equals(accountFilterType)) {
+            if (hasAccounts) {
+                throw new CfnInvalidRequestException(
+                        "Accounts along with OrganizationalUnitIds require an AccountFilterType of INTERSECTION, DIFFERENCE or UNION");
+            }
+            return AccountFilterType.NONE.toString();
+        }
+        if (!hasAccounts) {
+            throw new CfnInvalidRequestException(
+                    String.format("AccountFilterType [%s] requires Accounts", accountFilterType));
+        }
+        return accountFilterType;
+    }
 
-                // Validates no duplicated stack instance is specified
-                if (flatStacks.contains(stackInstance)) {
-                    throw new CfnInvalidRequestException(
-                            String.format("Stack instance [%s,%s] is duplicated", target, region));
-                }
+    /**
+     * Expands {@link DeploymentTargets} to the {@link StackInstance} targets of a region
+     *
+     * @param region            Region
+     * @param deploymentTargets {@link DeploymentTargets}
+     * @param accountFilterType effective {@link AccountFilterType}, see {@link #resolveAccountFilterType}
+     * @param parameters        parameter overrides
+     * @return {@link StackInstance} list
+     */
+    private static List<StackInstance> expandDeploymentTargets(
+            final String region,
+            final DeploymentTargets deploymentTargets,
+            final String accountFilterType,
+            final Set<Parameter> parameters) {
+
+        final List<StackInstance> expanded = new ArrayList<>();
+        if (accountFilterType == null) {
+            for (final String account : deploymentTargets.getAccounts()) {
+                expanded.add(StackInstance.builder()
+                        .region(region).deploymentTarget(account).parameters(parameters)
+                        .build());
+            }
+            return expanded;
+        }
 
-                flatStacks.add(stackInstance);
+        final boolean differenceFilter = AccountFilterType.DIFFERENCE.toString().equals(accountFilterType);
+        if (!AccountFilterType.INTERSECTION.toString().equals(accountFilterType)) {
+            for (final String organizationalUnitId : deploymentTargets.getOrganizationalUnitIds()) {
+                expanded.add(StackInstance.builder()
+                        .region(region).deploymentTarget(organizationalUnitId).parameters(parameters)
+                        .accountFilterType(accountFilterType)
+                        .excludedAccounts(differenceFilter ? new HashSet<>(deploymentTargets.getAccounts()) : null)
+                        .build());
             }
         }
-        return flatStacks;
+        if (AccountFilterType.INTERSECTION.toString().equals(accountFilterType)
+                || AccountFilterType.UNION.toString().equals(accountFilterType)) {
+            for (final String account : deploymentTargets.getAccounts()) {
+                expanded.add(StackInstance.builder()
+                        .region(region).deploymentTarget(account).parameters(parameters)
+                        .organizationalUnitIds(new HashSet<>(deploymentTargets.getOrganizationalUnitIds()))
+                        .accountFilterType(accountFilterType)
+                        .build());
+            }
+        }
+        return expanded;
+    }
+
+    /**
+     * Groups the effective {@link AccountFilterType} of {@link DeploymentTargets} whose stack instances can be
+     * diffed against each other, NONE and DIFFERENCE both target whole OrganizationalUnitIds
+     */
+    private static String getTargetingFamily(final ResourceModel model) {
+        if (model.getManifestLocation() != null) return "Accounts";
+        final String accountFilterType = resolveAccountFilterType(model.getStackInstances().getDeploymentTargets());
+        if (accountFilterType == null) return "Accounts";
+        if (AccountFilterType.DIFFERENCE.toString().equals(accountFilterType)) return AccountFilterType.NONE.toString();
+        return accountFilterType;
     }
 
     /**
@@ -174,12 +312,22 @@ public class InstancesAnalyzer {
      * @param placeHolder {@link software.amazon.cloudformation.stackinstances.util.StackInstancesPlaceHolder}
      */
     public void analyzeForUpdate(final software.amazon.cloudformation.stackinstances.util.StackInstancesPlaceHolder placeHolder) {
-        final boolean isSelfManaged = true;
+        final String previousFamily = getTargetingFamily(previousModel);
+        final String desiredFamily = getTargetingFamily(desiredModel);
+        if (!previousFamily.equals(desiredFamily)) {
+            throw new CfnInvalidRequestException(String.format(
+                    "DeploymentTargets cannot change from [%s] to [%s] targeting in place, remove the stack instances first",
+                    previousFamily, desiredFamily));
+        }
 
-        final Set<StackInstance> previousStackInstances =
-                flattenStackInstances(previousModel.getStackInstances());
-        final Set<StackInstance> desiredStackInstances =
-                flattenStackInstances(desiredModel.getStackInstances());
+        // Manifest sections present in both versions cannot contribute any difference
+        final Set<String> unchangedSections = StackInstanceManifest.getUnchangedSections(previousModel, desiredModel);
+        final Set<StackInstance> previousStackInstances = previousModel.getManifestLocation() == null ?
+                flattenStackInstances(previousModel.getStackInstances()) :
+                StackInstanceManifest.get(previousModel).flatten(unchangedSections);
+        final Set<StackInstance> desiredStackInstances = desiredModel.getManifestLocation() == null ?
+                flattenStackInstances(desiredModel.getStackInstances()) :
+                StackInstanceManifest.get(desiredModel).flatten(unchangedSections);
 
         // Calculates all necessary differences that we need to take actions
         final Set<StackInstance> stacksToAdd = new HashSet<>(desiredStackInstances);
@@ -191,8 +339,15 @@ public class InstancesAnalyzer {
 
         // Since StackInstance.parameters is excluded for @EqualsAndHashCode,
         // we needs to construct a key value map to keep track on previous StackInstance objects
-        final Set<StackInstance> stacksToUpdate = getUpdatingStackInstances(
-                stacksToCompare, previousStackInstances.stream().collect(Collectors.toMap(s -> s, s -> s)));
+        final Map<StackInstance, StackInstance> previousStackMap =
+                previousStackInstances.stream().collect(Collectors.toMap(s -> s, s -> s));
+        final Set<StackInstance> stacksToUpdate = getUpdatingStackInstances(stacksToCompare, previousStackMap);
+
+        if (AccountFilterType.NONE.toString().equals(desiredFamily)) {
+            analyzeExcludedAccounts(stacksToCompare, previousStackMap, stacksToAdd, stacksToDelete);
+        } else if (AccountFilterType.UNION.toString().equals(desiredFamily)) {
+            validateUnionDeletions(stacksToDelete, desiredStackInstances);
+        }
 
         // Update the stack lists that need to write of callbackContext holder
         placeHolder.setCreateStackInstances(stacksToAdd);
@@ -200,15 +355,95 @@ public class InstancesAnalyzer {
         placeHolder.setUpdateStackInstances(stacksToUpdate);
     }
 
+    /**
+     * Turns changes to the accounts a DIFFERENCE filter excludes from a retained OrganizationalUnitId into
+     * INTERSECTION stack instances: newly excluded accounts are deleted, no longer excluded accounts are created.
+     * A single operation addresses either OrganizationalUnitIds or accounts, so excluded accounts cannot change
+     * along with the OrganizationalUnitIds themselves
+     */
+    private static void analyzeExcludedAccounts(
+            final Set<StackInstance> stacksToCompare,
+            final Map<StackInstance, StackInstance> previousStackMap,
+            final Set<StackInstance> stacksToAdd,
+            final Set<StackInstance> stacksToDelete) {
+
+        final Map<StackInstance, StackInstance> accountsToAdd = new HashMap<>();
+        final Map<StackInstance, StackInstance> accountsToDelete = new HashMap<>();
+        for (final StackInstance desired : stacksToCompare) {
+            final Set<String> previousExcluded = excludedAccounts(previousStackMap.get(desired));
+            final Set<String> desiredExcluded = excludedAccounts(desired);
+
+            for (final String account : previousExcluded) {
+                if (!desiredExcluded.contains(account)) {
+                    addIntersectionTarget(accountsToAdd, desired, account);
+                }
+            }
+            for (final String account : desiredExcluded) {
+                if (!previousExcluded.contains(account)) {
+                    addIntersectionTarget(accountsToDelete, desired, account);
+                }
+            }
+        }
+
+        if ((!accountsToAdd.isEmpty() || !accountsToDelete.isEmpty())
+                && (!stacksToAdd.isEmpty() || !stacksToDelete.isEmpty())) {
+            throw new CfnInvalidRequestException(
+                    "Excluded Accounts and OrganizationalUnitIds cannot change in the same update, apply them one after another");
+        }
+        stacksToAdd.addAll(accountsToAdd.keySet());
+        stacksToDelete.addAll(accountsToDelete.keySet());
+    }
+
+    private static Set<String> excludedAccounts(final StackInstance stackInstance) {
+        return stackInstance.getExcludedAccounts() == null ? new HashSet<>() : stackInstance.getExcludedAccounts();
+    }
+
+    private static void addIntersectionTarget(
+            final Map<StackInstance, StackInstance> targets,
+            final StackInstance organizationalUnit,
+            final String account) {
+
+        final StackInstance key = StackInstance.builder()
+                .region(organizationalUnit.getRegion()).deploymentTarget(account).build();
+        targets.computeIfAbsent(key, k -> StackInstance.builder()
+                        .region(organizationalUnit.getRegion()).deploymentTarget(account)
+                        .parameters(organizationalUnit.getParameters())
+                        .organizationalUnitIds(new HashSet<>())
+                        .accountFilterType(AccountFilterType.INTERSECTION.toString())
+                        .build())
+                .getOrganizationalUnitIds().add(organizationalUnit.getDeploymentTarget());
+    }
+
+    /**
+     * Deleting with the UNION filter removes the stack instances of the OrganizationalUnitIds as well, so an
+     * account can only leave a UNION along with the OrganizationalUnitIds it was addressed through
+     */
+    private static void validateUnionDeletions(
+            final Set<StackInstance> stacksToDelete,
+            final Set<StackInstance> desiredStackInstances) {
+
+        for (final StackInstance stackInstance : stacksToDelete) {
+            if (stackInstance.targetsOrganizationalUnit()) continue;
+            for (final String organizationalUnitId : stackInstance.getOrganizationalUnitIds()) {
+                final StackInstance organizationalUnit = StackInstance.builder()
+                        .region(stackInstance.getRegion()).deploymentTarget(organizationalUnitId).build();
+                if (desiredStackInstances.contains(organizationalUnit)) {
+                    throw new CfnInvalidRequestException(String.format(
+                            "Account [%s] cannot leave the UNION in [%s] while OrganizationalUnitId [%s] remains",
+                            stackInstance.getDeploymentTarget(), stackInstance.getRegion(), organizationalUnitId));
+                }
+            }
+        }
+    }
+
     /**
      * Analyzes {@link StackInstances} that need to be modified during create operations
      *
      * @param placeHolder {@link software.amazon.cloudformation.stackinstances.util.StackInstancesPlaceHolder}
      */
     public void analyzeForCreate(final software.amazon.cloudformation.stackinstances.util.StackInstancesPlaceHolder placeHolder) {
-        if (desiredModel.getStackInstances() == null) return;
-        final Set<StackInstance> desiredStackInstances =
-                flattenStackInstances(desiredModel.getStackInstances());
+        if (desiredModel.getStackInstances() == null && desiredModel.getManifestLocation() == null) return;
+        final Set<StackInstance> desiredStackInstances = flattenStackInstances(desiredModel);
 
         placeHolder.setCreateStackInstances(desiredStackInstances);
     }
@@ -219,10 +454,9 @@ public class InstancesAnalyzer {
      * @param placeHolder {@link software.amazon.cloudformation.stackinstances.util.StackInstancesPlaceHolder}
      */
     public void analyzeForDelete(final software.amazon.cloudformation.stackinstances.util.StackInstancesPlaceHolder placeHolder) {
-        if (desiredModel.getStackInstances() == null) return;
+        if (desiredModel.getStackInstances() == null && desiredModel.getManifestLocation() == null) return;
 
-        final Set<StackInstance> desiredStackInstances =
-                flattenStackInstances(desiredModel.getStackInstances());
+        final Set<StackInstance> desiredStackInstances = flattenStackInstances(desiredModel);
         placeHolder.setDeleteStackInstances(desiredStackInstances);
     }
 }
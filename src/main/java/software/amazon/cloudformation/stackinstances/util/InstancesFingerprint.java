@@ -0,0 +1,115 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.cloudformation.stackinstances.Parameter;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Canonical hash of what a model deploys: where and as whom the StackSets are administered, the StackSets with their
+ * parameters, and every flattened {@link StackInstance} with its overrides and targeting. Independent of the order
+ * properties are listed in, see {@link ResourceModel#getInstancesFingerprint()}
+ */
+public final class InstancesFingerprint {
+
+    /**
+     * Prefix of the fingerprints, changed whenever the canonical form changes so that older ones never match
+     */
+    static final String VERSION = "v2:";
+
+    private InstancesFingerprint() {
+    }
+
+    /**
+     * @param model {@link ResourceModel}, with its manifest loaded if any
+     * @return fingerprint of the model
+     */
+    public static String of(final ResourceModel model) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        update(digest, "a:" + field(model.getAdministrationRegion()) + field(model.getCallAs()));
+        for (final Map.Entry<String, Set<Parameter>> stackSet : OperationPlan.resolveStackSetParameters(model).entrySet()) {
+            update(digest, "s:" + field(stackSet.getKey()) + canonicalParameters(stackSet.getValue()));
+        }
+        InstancesAnalyzer.flattenStackInstances(model).stream()
+                .map(InstancesFingerprint::canonicalStackInstance)
+                .sorted()
+                .forEach(stackInstance -> update(digest, stackInstance));
+        return VERSION + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+    }
+
+    /**
+     * Always recomputes the fingerprint of the previous model. Its {@link ResourceModel#getInstancesFingerprint()}
+     * is carried over from the last successful state, which a rollback after a failed update does not match
+     *
+     * @param previousModel previous {@link ResourceModel}, with its manifest loaded if any
+     * @param fingerprint   fingerprint of the desired model
+     * @return true if the previous model deploys exactly the same stack instances
+     */
+    public static boolean matches(final ResourceModel previousModel, final String fingerprint) {
+        if (previousModel == null) return false;
+        return of(previousModel).equals(fingerprint);
+    }
+
+    private static String canonicalStackInstance(final StackInstance stackInstance) {
+        return "i:" + field(stackInstance.getDeploymentTarget())
+                + field(stackInstance.getRegion())
+                + field(stackInstance.getAccountFilterType())
+                + canonicalStrings(stackInstance.getOrganizationalUnitIds())
+                + canonicalStrings(stackInstance.getExcludedAccounts())
+                + canonicalParameters(stackInstance.getParameters());
+    }
+
+    private static String canonicalParameters(final Set<Parameter> parameters) {
+        if (parameters == null) return field(null);
+        return field(parameters.stream()
+                .map(parameter -> field(parameter.getParameterKey()) + field(parameter.getParameterValue()))
+                .sorted()
+                .collect(Collectors.joining()));
+    }
+
+    private static String canonicalStrings(final Collection<String> values) {
+        if (values == null) return field(null);
+        return field(values.stream().sorted().map(InstancesFingerprint::field).collect(Collectors.joining()));
+    }
+
+    /**
+     * Length-prefixed value, so that separators inside parameter values cannot make two models collide
+     */
+    private static String field(final String value) {
+        return value == null ? "-" : value.length() + ":" + value;
+    }
+
+    private static void update(final MessageDigest digest, final String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+}
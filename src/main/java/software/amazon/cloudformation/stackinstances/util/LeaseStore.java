@@ -0,0 +1,92 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import lombok.Value;
+
+import java.nio.file.Paths;
+
+/**
+ * Key value store with conditional writes backing {@link StackSetLeaseQueue}. Implementations shared between
+ * execution environments (e.g. a table with conditional puts) make the queue fair across all of them, the local
+ * {@link InMemoryLeaseStore} and {@link FileLeaseStore} only order contenders of a single environment or host
+ */
+public interface LeaseStore {
+
+    String FILE_STORE_PREFIX = "file:";
+
+    String MEMORY_STORE = "memory";
+
+    /**
+     * @param configuration "memory" for {@link InMemoryLeaseStore}, "file:&lt;directory&gt;" for {@link FileLeaseStore}
+     * @throws IllegalArgumentException if the configuration names neither
+     * @return {@link LeaseStore}, null if the configuration is unset
+     */
+    static LeaseStore fromConfiguration(final String configuration) {
+        if (configuration == null || configuration.isEmpty()) return null;
+        if (configuration.startsWith(FILE_STORE_PREFIX)) {
+            return new FileLeaseStore(Paths.get(configuration.substring(FILE_STORE_PREFIX.length())));
+        }
+        if (MEMORY_STORE.equals(configuration)) return new InMemoryLeaseStore();
+        throw new IllegalArgumentException(String.format(
+                "Unsupported store [%s], use %s or %s<directory>", configuration, MEMORY_STORE, FILE_STORE_PREFIX));
+    }
+
+    /**
+     * @param variable environment variable the store was configured through
+     * @param store    {@link LeaseStore}, null if unset
+     * @throws IllegalArgumentException if the store is local to one execution environment
+     * @return the store
+     */
+    static LeaseStore requireShared(final String variable, final LeaseStore store) {
+        if (store != null && !store.isShared()) {
+            throw new IllegalArgumentException(String.format(
+                    "%s must name a store shared between execution environments, e.g. %s<directory>",
+                    variable, FILE_STORE_PREFIX));
+        }
+        return store;
+    }
+
+    /**
+     * @param key record key
+     * @return the current {@link VersionedValue}, null if the key does not exist
+     */
+    VersionedValue get(String key);
+
+    /**
+     * Writes the value only if the record is still at the expected version
+     *
+     * @param key             record key
+     * @param expectedVersion version read before, 0 if the key did not exist
+     * @param value           new value, stored with version expectedVersion + 1
+     * @return true if written, false if another writer got there first
+     */
+    boolean compareAndSet(String key, long expectedVersion, String value);
+
+    /**
+     * @return true if other execution environments read and write the same records
+     */
+    default boolean isShared() {
+        return false;
+    }
+
+    @Value
+    class VersionedValue {
+        long version;
+        String value;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.cloudformation.stackinstances.DeploymentTargets;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.StackInstances;
+import software.amazon.cloudformation.stackinstances.StackSetTarget;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Structured key/value log record of bounded size, logged through the handler
+ * {@link software.amazon.cloudformation.proxy.Logger}. Models are rendered as summaries whose size does not grow
+ * with the number of accounts, see {@link #model(ResourceModel)}
+ */
+public final class LogEvent {
+
+    /**
+     * Environment variable with the fraction of invocations, between 0 and 1, that also log the full model
+     */
+    public static final String DETAIL_SAMPLE_RATE_ENV = "STACK_INSTANCES_LOG_DETAIL_RATE";
+
+    /**
+     * Number of elements a collection is rendered with before it is cut
+     */
+    static final int SAMPLED_ELEMENTS = 5;
+
+    /**
+     * Length a string value is cut at
+     */
+    static final int MAX_VALUE_LENGTH = 256;
+
+    private static final int ANONYMIZED_BYTES = 6;
+
+    private static final double DETAIL_SAMPLE_RATE = parseSampleRate(System.getenv(DETAIL_SAMPLE_RATE_ENV));
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, Object> values = new LinkedHashMap<>();
+
+    private LogEvent(final String event) {
+        values.put("Event", event);
+    }
+
+    /**
+     * @param event event name
+     * @return {@link LogEvent}
+     */
+    public static LogEvent of(final String event) {
+        return new LogEvent(event);
+    }
+
+    /**
+     * @return true if this invocation should also log the full model, see {@value #DETAIL_SAMPLE_RATE_ENV}
+     */
+    public static boolean isDetailSampled() {
+        return DETAIL_SAMPLE_RATE > 0 && ThreadLocalRandom.current().nextDouble() < DETAIL_SAMPLE_RATE;
+    }
+
+    /**
+     * @param name  field name
+     * @param value field value, strings are cut at {@value #MAX_VALUE_LENGTH} characters and collections at
+     *              {@value #SAMPLED_ELEMENTS} elements
+     * @return this {@link LogEvent}
+     */
+    public LogEvent field(final String name, final Object value) {
+        if (value == null) return this;
+        if (value instanceof Collection) {
+            values.put(name, bounded((Collection<?>) value));
+        } else if (value instanceof Number || value instanceof Boolean) {
+            values.put(name, value);
+        } else {
+            values.put(name, truncate(value.toString()));
+        }
+        return this;
+    }
+
+    /**
+     * Summarizes a model with counts, the first targets and its fingerprint instead of its stack instances
+     *
+     * @param model {@link ResourceModel}, ignored if null
+     * @return this {@link LogEvent}
+     */
+    public LogEvent model(final ResourceModel model) {
+        if (model == null) return this;
+        field("InstanceId", model.getInstanceId());
+        field("StackSetName", model.getStackSetName());
+        field("CallAs", model.getCallAs());
+        field("ManifestLocation", model.getManifestLocation());
+        field("InstancesFingerprint", model.getInstancesFingerprint());
+        field("ShardCount", model.getShardCount());
+        if (model.getStackSetTargets() != null) {
+            field("StackSetTargetCount", model.getStackSetTargets().size());
+            field("StackSetTargets", model.getStackSetTargets().stream()
+                    .map(StackSetTarget::getStackSetName).collect(Collectors.toList()));
+        }
+
+        final StackInstances stackInstances = model.getStackInstances();
+        if (stackInstances == null) return this;
+        final DeploymentTargets deploymentTargets = stackInstances.getDeploymentTargets();
+        if (deploymentTargets != null) {
+            count("AccountCount", deploymentTargets.getAccounts());
+            field("Accounts", deploymentTargets.getAccounts());
+            count("OrganizationalUnitIdCount", deploymentTargets.getOrganizationalUnitIds());
+            field("OrganizationalUnitIds", deploymentTargets.getOrganizationalUnitIds());
+            field("AccountFilterType", deploymentTargets.getAccountFilterType());
+        }
+        count("RegionCount", stackInstances.getRegions());
+        field("Regions", stackInstances.getRegions());
+        count("ParameterOverrideCount", stackInstances.getParameterOverrides());
+        return this;
+    }
+
+    /**
+     * @param values collection to render
+     * @return the first {@value #SAMPLED_ELEMENTS} elements, followed by the number of elements left out
+     */
+    public static String bounded(final Collection<?> values) {
+        final String sample = values.stream()
+                .limit(SAMPLED_ELEMENTS)
+                .map(value -> truncate(String.valueOf(value)))
+                .collect(Collectors.joining(", "));
+        return values.size() <= SAMPLED_ELEMENTS ?
+                "[" + sample + "]" :
+                String.format("[%s, ... +%d more]", sample, values.size() - SAMPLED_ELEMENTS);
+    }
+
+    /**
+     * @param value identifier to leave out of the logs, e.g. a StackSet name
+     * @return stable short hash of the value, null if the value is null
+     */
+    public static String anonymize(final String value) {
+        if (value == null) return null;
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hash = new StringBuilder();
+            for (int i = 0; i < ANONYMIZED_BYTES; i++) {
+                hash.append(String.format("%02x", digest[i]));
+            }
+            return hash.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return log line
+     */
+    public String toJson() {
+        try {
+            return MAPPER.writeValueAsString(values);
+        } catch (final JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void count(final String name, final Collection<?> values) {
+        if (values != null) field(name, values.size());
+    }
+
+    private static String truncate(final String value) {
+        return value.length() <= MAX_VALUE_LENGTH ? value : value.substring(0, MAX_VALUE_LENGTH) + "...";
+    }
+
+    static double parseSampleRate(final String configuration) {
+        if (configuration == null || configuration.trim().isEmpty()) return 0;
+        try {
+            return Math.max(0, Math.min(1, Double.parseDouble(configuration.trim())));
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Final statuses of StackSet operations learned from status change events, so that a handler waiting for an operation
+ * notices its completion within one short callback delay instead of a polling backoff. Events are drained from the
+ * {@link CompletionQueue} configured through {@value #COMPLETION_QUEUE_ENV} by whichever handler checks first and
+ * kept in a {@link LeaseStore} configured through {@value #COMPLETION_STORE_ENV}, in memory when unset. A queue
+ * consuming events on receive requires a shared store, otherwise the events would be lost to the handlers of every
+ * other execution environment. Both are configured through environment variables, which a type registered with
+ * CloudFormation cannot set, so the completions are for self-hosted handlers only and disabled otherwise. The handlers
+ * still describe the operation every {@link #SAFETY_NET_POLL_INTERVAL} in case an event was lost
+ */
+public class OperationCompletions {
+
+    public static final String COMPLETION_QUEUE_ENV = "STACK_INSTANCES_COMPLETION_QUEUE";
+
+    public static final String COMPLETION_STORE_ENV = "STACK_INSTANCES_COMPLETION_STORE";
+
+    public static final Duration SAFETY_NET_POLL_INTERVAL = Duration.ofMinutes(5L);
+
+    /**
+     * Delay between two checks of the completion events
+     */
+    public static final Duration EVENT_CHECK_INTERVAL = Duration.ofSeconds(5L);
+
+    private static final String KEY_PREFIX = "operation-completion::";
+
+    private static final Set<String> FINAL_STATUSES = new HashSet<>(Arrays.asList("SUCCEEDED", "FAILED", "STOPPED"));
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final CompletionQueue queue;
+
+    private final LeaseStore store;
+
+    private final Clock clock;
+
+    /**
+     * @throws IllegalArgumentException If the queue consumes events on receive and the store is not shared
+     */
+    public OperationCompletions(final CompletionQueue queue, final LeaseStore store, final Clock clock) {
+        if (queue != null && queue.isConsumedOnReceive() && !store.isShared()) {
+            throw new IllegalArgumentException(String.format("%s requires %s to name a store shared by all execution "
+                    + "environments, e.g. file:<directory> on a mounted file system", COMPLETION_QUEUE_ENV, COMPLETION_STORE_ENV));
+        }
+        this.queue = queue;
+        this.store = store;
+        this.clock = clock;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the configuration is inconsistent, see {@link #fromConfiguration(String, String)}
+     * @return {@link OperationCompletions}, disabled when {@value #COMPLETION_QUEUE_ENV} is unset
+     */
+    public static OperationCompletions fromEnvironment() {
+        return fromConfiguration(System.getenv(COMPLETION_QUEUE_ENV), System.getenv(COMPLETION_STORE_ENV));
+    }
+
+    /**
+     * @param queueConfiguration {@link CompletionQueue#fromConfiguration(String)} configuration, null if unset
+     * @param storeConfiguration {@link LeaseStore#fromConfiguration(String)} configuration, null if unset
+     * @throws IllegalArgumentException if either configuration is unsupported, the store is set without a queue, or
+     *                                  the queue consumes events on receive and the store is not shared
+     * @return {@link OperationCompletions}
+     */
+    static OperationCompletions fromConfiguration(final String queueConfiguration, final String storeConfiguration) {
+        final CompletionQueue queue = CompletionQueue.fromConfiguration(queueConfiguration);
+        final LeaseStore store = LeaseStore.fromConfiguration(storeConfiguration);
+        if (queue == null && store != null) {
+            throw new IllegalArgumentException(String.format("%s is set without %s, which the completions are read from",
+                    COMPLETION_STORE_ENV, COMPLETION_QUEUE_ENV));
+        }
+        return new OperationCompletions(queue, store == null ? new InMemoryLeaseStore() : store, Clock.systemUTC());
+    }
+
+    public boolean isEnabled() {
+        return queue != null;
+    }
+
+    /**
+     * Drains the queue, then looks the operation up
+     *
+     * @param proxy       {@link AmazonWebServicesClientProxy} to read the queue with
+     * @param operationId OperationId
+     * @return SUCCEEDED, FAILED or STOPPED once an event reported it, null otherwise
+     */
+    public String getFinalStatus(final AmazonWebServicesClientProxy proxy, final String operationId) {
+        for (final String event : queue.receive(proxy)) {
+            record(event);
+        }
+        final LeaseStore.VersionedValue completion = store.get(KEY_PREFIX + operationId);
+        return completion == null ? null : completion.getValue();
+    }
+
+    /**
+     * @param polledAt epoch millis of the last DescribeStackSetOperation, null if never polled
+     * @return true if the safety net poll is due
+     */
+    public boolean isSafetyNetPollDue(final Long polledAt) {
+        return polledAt == null || clock.millis() - polledAt >= SAFETY_NET_POLL_INTERVAL.toMillis();
+    }
+
+    /**
+     * Keeps the final status of an EventBridge StackSet operation status change event, other events are skipped
+     */
+    private void record(final String event) {
+        final JsonNode detail;
+        try {
+            detail = MAPPER.readTree(event).path("detail");
+        } catch (final IOException e) {
+            return;
+        }
+        final String operationId = detail.has("stack-set-operation-id") ?
+                detail.path("stack-set-operation-id").asText() : detail.path("operation-id").asText(null);
+        final String status = detail.path("status-details").path("status").asText(detail.path("status").asText(null));
+        if (operationId == null || status == null || !FINAL_STATUSES.contains(status)) return;
+        // Final statuses never change, the first writer wins
+        store.compareAndSet(KEY_PREFIX + operationId, 0, status);
+    }
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import lombok.Getter;
+import software.amazon.awssdk.utils.CollectionUtils;
+import software.amazon.cloudformation.Action;
+import software.amazon.cloudformation.exceptions.CfnInvalidRequestException;
+import software.amazon.cloudformation.stackinstances.Parameter;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.StackSetTarget;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Utility class to plan the operations of a resource enrolling its stack instances into several StackSets,
+ * see {@link ResourceModel#getStackSetTargets()}, or spreading them over the shards of one StackSet, see
+ * {@link ResourceModel#getShardCount()}. Operations on the same StackSet run one after another,
+ * operations on different StackSets run concurrently unless ordered through {@link StackSetTarget#getDependsOn()}
+ */
+@Getter
+public class OperationPlan {
+
+    private final List<PlannedOperation> operations;
+
+    /**
+     * StackSet names mapped to the StackSet names whose operations have to complete first
+     */
+    private final Map<String, Set<String>> dependencies;
+
+    private OperationPlan(final List<PlannedOperation> operations, final Map<String, Set<String>> dependencies) {
+        this.operations = operations;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * Checks whether the model needs to be handled through an {@link OperationPlan}
+     *
+     * @param model {@link ResourceModel}
+     * @throws CfnInvalidRequestException If neither or both StackSetName and StackSetTargets are specified
+     * @return boolean indicates if StackSetTargets or a ShardCount above 1 is specified
+     */
+    public static boolean targetsMultipleStackSets(final ResourceModel model) {
+        if (model == null) return false;
+        final boolean hasTargets = !CollectionUtils.isNullOrEmpty(model.getStackSetTargets());
+        if (hasTargets == (model.getStackSetName() != null)) {
+            throw new CfnInvalidRequestException("Exactly one of StackSetName or StackSetTargets should be specified");
+        }
+        final boolean sharded = ShardRing.of(model) != null;
+        return hasTargets || sharded;
+    }
+
+    /**
+     * Plans the operations creating all stack instances in every StackSet
+     *
+     * @param model {@link ResourceModel}
+     * @return {@link OperationPlan}
+     */
+    public static OperationPlan forCreate(final ResourceModel model) {
+        final StackInstancesPlaceHolder placeHolder = new StackInstancesPlaceHolder();
+        InstancesAnalyzer.builder().desiredModel(model).build().analyzeForCreate(placeHolder);
+
+        final ShardRing shardRing = ShardRing.of(model);
+        final List<PlannedOperation> operations = new ArrayList<>();
+        for (final StackSetTarget target : resolveTargets(model).values()) {
+            addOperation(operations, target.getStackSetName(), Action.CREATE,
+                    assigned(shardRing, target.getStackSetName(), placeHolder.getCreateStackInstances()),
+                    resolveParameters(model, target));
+        }
+        return new OperationPlan(operations, resolveDependencies(model));
+    }
+
+    /**
+     * Plans the operations deleting all stack instances from every StackSet. Dependencies are reversed,
+     * a StackSet is cleaned up only after the StackSets depending on it
+     *
+     * @param model {@link ResourceModel}
+     * @return {@link OperationPlan}
+     */
+    public static OperationPlan forDelete(final ResourceModel model) {
+        final StackInstancesPlaceHolder placeHolder = new StackInstancesPlaceHolder();
+        InstancesAnalyzer.builder().desiredModel(model).build().analyzeForDelete(placeHolder);
+
+        final ShardRing shardRing = ShardRing.of(model);
+        final List<PlannedOperation> operations = new ArrayList<>();
+        for (final StackSetTarget target : resolveTargets(model).values()) {
+            addOperation(operations, target.getStackSetName(), Action.DELETE,
+                    assigned(shardRing, target.getStackSetName(), placeHolder.getDeleteStackInstances()), null);
+        }
+
+        final Map<String, Set<String>> reversed = new HashMap<>();
+        resolveDependencies(model).forEach((stackSet, dependsOn) -> dependsOn.forEach(dependency ->
+                reversed.computeIfAbsent(dependency, key -> new HashSet<>()).add(stackSet)));
+        return new OperationPlan(operations, reversed);
+    }
+
+    /**
+     * Plans the operations moving every StackSet from the previous to the desired model. StackSets
+     * removed from the model have all their previous stack instances deleted, StackSets added to the model
+     * have all desired stack instances created. Stack instances whose shard changes with the ShardCount are
+     * deleted from the previous shard and created in the new one
+     *
+     * @param previousModel previous {@link ResourceModel}
+     * @param desiredModel  desired {@link ResourceModel}
+     * @return {@link OperationPlan}
+     */
+    public static OperationPlan forUpdate(final ResourceModel previousModel, final ResourceModel desiredModel) {
+        return forUpdate(previousModel, desiredModel, new HashSet<>());
+    }
+
+    /**
+     * Plans the operations moving every StackSet from the previous to the desired model, creating the retried
+     * stack instances again whether or not they changed
+     *
+     * @param previousModel previous {@link ResourceModel}
+     * @param desiredModel  desired {@link ResourceModel}
+     * @param retried       {@link StackInstance} set of the desired model the previous model did not deploy
+     * @return {@link OperationPlan}
+     */
+    public static OperationPlan forUpdate(
+            final ResourceModel previousModel,
+            final ResourceModel desiredModel,
+            final Set<StackInstance> retried) {
+
+        final StackInstancesPlaceHolder placeHolder = new StackInstancesPlaceHolder();
+        InstancesAnalyzer.builder().previousModel(previousModel).desiredModel(desiredModel).build()
+                .analyzeForUpdate(placeHolder);
+        placeHolder.getCreateStackInstances().addAll(retried);
+        placeHolder.getUpdateStackInstances().removeAll(retried);
+        final StackInstancesPlaceHolder previousPlaceHolder = new StackInstancesPlaceHolder();
+        InstancesAnalyzer.builder().desiredModel(previousModel).build().analyzeForDelete(previousPlaceHolder);
+        final StackInstancesPlaceHolder desiredPlaceHolder = new StackInstancesPlaceHolder();
+        InstancesAnalyzer.builder().desiredModel(desiredModel).build().analyzeForCreate(desiredPlaceHolder);
+
+        final Map<String, StackSetTarget> previousTargets = resolveTargets(previousModel);
+        final Map<String, StackSetTarget> desiredTargets = resolveTargets(desiredModel);
+        final ShardRing previousShardRing = ShardRing.of(previousModel);
+        final ShardRing desiredShardRing = ShardRing.of(desiredModel);
+        final List<PlannedOperation> operations = new ArrayList<>();
+
+        for (final StackSetTarget target : previousTargets.values()) {
+            if (desiredTargets.containsKey(target.getStackSetName())) continue;
+            addOperation(operations, target.getStackSetName(), Action.DELETE,
+                    assigned(previousShardRing, target.getStackSetName(), previousPlaceHolder.getDeleteStackInstances()), null);
+        }
+
+        for (final StackSetTarget target : desiredTargets.values()) {
+            final String stackSetName = target.getStackSetName();
+            final Set<Parameter> parameters = resolveParameters(desiredModel, target);
+
+            if (!previousTargets.containsKey(stackSetName)) {
+                addOperation(operations, stackSetName, Action.CREATE,
+                        assigned(desiredShardRing, stackSetName, desiredPlaceHolder.getCreateStackInstances()), parameters);
+                continue;
+            }
+
+            // Changed overrides of the StackSet apply to every retained stack instance
+            final Set<StackInstance> stacksToUpdate = new HashSet<>(placeHolder.getUpdateStackInstances());
+            if (!Comparator.equals(resolveParameters(previousModel, previousTargets.get(stackSetName)), parameters)) {
+                final Set<StackInstance> retained = new HashSet<>(desiredPlaceHolder.getCreateStackInstances());
+                retained.retainAll(previousPlaceHolder.getDeleteStackInstances());
+                stacksToUpdate.addAll(retained);
+            }
+            stacksToUpdate.removeAll(retried);
+
+            // Retained stack instances reassigned by a ShardCount change move between shards
+            final Set<StackInstance> movedOut = assigned(previousShardRing, stackSetName, previousPlaceHolder.getDeleteStackInstances());
+            movedOut.removeAll(assigned(desiredShardRing, stackSetName, previousPlaceHolder.getDeleteStackInstances()));
+            final Set<StackInstance> movedIn = assigned(desiredShardRing, stackSetName, desiredPlaceHolder.getCreateStackInstances());
+            movedIn.removeAll(assigned(previousShardRing, stackSetName, desiredPlaceHolder.getCreateStackInstances()));
+
+            final Set<StackInstance> stacksToDelete = assigned(previousShardRing, stackSetName, placeHolder.getDeleteStackInstances());
+            stacksToDelete.addAll(movedOut);
+            final Set<StackInstance> stacksToCreate = assigned(desiredShardRing, stackSetName, placeHolder.getCreateStackInstances());
+            stacksToCreate.addAll(movedIn);
+            final Set<StackInstance> shardStacksToUpdate = assigned(desiredShardRing, stackSetName, stacksToUpdate);
+            shardStacksToUpdate.removeAll(movedIn);
+
+            addOperation(operations, stackSetName, Action.DELETE, stacksToDelete, null);
+            addOperation(operations, stackSetName, Action.CREATE, stacksToCreate, parameters);
+            addOperation(operations, stackSetName, Action.UPDATE, shardStacksToUpdate, parameters);
+        }
+        return new OperationPlan(operations, resolveDependencies(desiredModel));
+    }
+
+    /**
+     * Resolves the parameter overrides applied to the stack instances of every StackSet of the model
+     *
+     * @param model {@link ResourceModel}
+     * @return parameter overrides by StackSet name
+     */
+    public static Map<String, Set<Parameter>> resolveStackSetParameters(final ResourceModel model) {
+        final Map<String, Set<Parameter>> parameters = new TreeMap<>();
+        resolveTargets(model).forEach((stackSetName, target) -> parameters.put(stackSetName, resolveParameters(model, target)));
+        return parameters;
+    }
+
+    /**
+     * Resolves the stack instances every StackSet of the model receives, each shard only gets the stack instances
+     * assigned to it
+     *
+     * @param model {@link ResourceModel}
+     * @return physical StackSet names mapped to their stack instances
+     */
+    public static Map<String, Set<StackInstance>> resolveStackInstances(final ResourceModel model) {
+        final Set<StackInstance> stackInstances = InstancesAnalyzer.flattenStackInstances(model);
+        final ShardRing shardRing = ShardRing.of(model);
+        final Map<String, Set<StackInstance>> resolved = new TreeMap<>();
+        resolveTargets(model).keySet()
+                .forEach(stackSetName -> resolved.put(stackSetName, assigned(shardRing, stackSetName, stackInstances)));
+        return resolved;
+    }
+
+    /**
+     * Gets the operations that can be submitted now: not submitted yet, every earlier operation on the same
+     * StackSet completed and every operation on the StackSets it depends on completed
+     *
+     * @param completed keys of completed operations
+     * @param submitted keys of submitted operations
+     * @return {@link PlannedOperation} list in plan order
+     */
+    public List<PlannedOperation> getReadyOperations(final Set<String> completed, final Set<String> submitted) {
+        final List<PlannedOperation> ready = new ArrayList<>();
+        final Set<String> blockedStackSets = new HashSet<>();
+        for (final PlannedOperation operation : operations) {
+            final String stackSetName = operation.getStackSetName();
+            if (completed.contains(operation.getKey())) continue;
+            if (!blockedStackSets.add(stackSetName)) continue;
+            if (submitted.contains(operation.getKey())) continue;
+
+            final boolean dependenciesCompleted = dependencies.getOrDefault(stackSetName, Collections.emptySet())
+                    .stream()
+                    .allMatch(dependency -> isStackSetComplete(dependency, completed));
+            if (dependenciesCompleted) ready.add(operation);
+        }
+        return ready;
+    }
+
+    /**
+     * @param completed keys of completed operations
+     * @return boolean indicates if every operation of the plan completed
+     */
+    public boolean isComplete(final Set<String> completed) {
+        return operations.stream().allMatch(operation -> completed.contains(operation.getKey()));
+    }
+
+    /**
+     * Estimates the time until the last operation completes, the longest chain of StackSets through the dependencies
+     * where the operations of one StackSet run one after another
+     *
+     * @param completed keys of completed operations, left out of the estimate
+     * @param estimate  estimated duration of a {@link PlannedOperation}
+     * @return estimated remaining duration of the plan
+     */
+    public Duration estimateMakespan(final Set<String> completed, final Function<PlannedOperation, Duration> estimate) {
+        final Map<String, Duration> stackSetDurations = new TreeMap<>();
+        for (final PlannedOperation operation : operations) {
+            if (completed.contains(operation.getKey())) continue;
+            stackSetDurations.merge(operation.getStackSetName(), estimate.apply(operation), Duration::plus);
+        }
+
+        final Map<String, Duration> finishTimes = new HashMap<>();
+        Duration makespan = Duration.ZERO;
+        for (final String stackSetName : stackSetDurations.keySet()) {
+            final Duration finish = estimateFinishTime(stackSetName, stackSetDurations, finishTimes, new HashSet<>());
+            if (finish.compareTo(makespan) > 0) makespan = finish;
+        }
+        return makespan;
+    }
+
+    private Duration estimateFinishTime(
+            final String stackSetName,
+            final Map<String, Duration> stackSetDurations,
+            final Map<String, Duration> finishTimes,
+            final Set<String> visiting) {
+
+        if (finishTimes.containsKey(stackSetName)) return finishTimes.get(stackSetName);
+        Duration start = Duration.ZERO;
+        if (visiting.add(stackSetName)) {
+            for (final String dependency : dependencies.getOrDefault(stackSetName, Collections.emptySet())) {
+                final Duration dependencyFinish = estimateFinishTime(dependency, stackSetDurations, finishTimes, visiting);
+                if (dependencyFinish.compareTo(start) > 0) start = dependencyFinish;
+            }
+        }
+        final Duration finish = start.plus(stackSetDurations.getOrDefault(stackSetName, Duration.ZERO));
+        finishTimes.put(stackSetName, finish);
+        return finish;
+    }
+
+    private boolean isStackSetComplete(final String stackSetName, final Set<String> completed) {
+        return operations.stream()
+                .filter(operation -> operation.getStackSetName().equals(stackSetName))
+                .allMatch(operation -> completed.contains(operation.getKey()));
+    }
+
+    private static void addOperation(
+            final List<PlannedOperation> operations,
+            final String stackSetName,
+            final Action action,
+            final Set<StackInstance> stackInstances,
+            final Set<Parameter> parameters) {
+
+        if (CollectionUtils.isNullOrEmpty(stackInstances)) return;
+        operations.add(PlannedOperation.builder()
+                .stackSetName(stackSetName)
+                .action(action)
+                .stackInstances(stackInstances)
+                .parameters(parameters)
+                .build());
+    }
+
+    /**
+     * Filters the stack instances a StackSet receives
+     *
+     * @param shardRing      {@link ShardRing} of the model, null if the model is not sharded
+     * @param stackSetName   physical StackSet name
+     * @param stackInstances stack instances of the model
+     * @return copy of the stack instances assigned to the StackSet, all of them if the model is not sharded
+     */
+    private static Set<StackInstance> assigned(
+            final ShardRing shardRing,
+            final String stackSetName,
+            final Set<StackInstance> stackInstances) {
+
+        if (shardRing == null) return new HashSet<>(stackInstances);
+        return stackInstances.stream()
+                .filter(stackInstance -> stackSetName.equals(shardRing.stackSetNameOf(stackInstance)))
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    /**
+     * Resolves the StackSets of a model, a model with StackSetName only is a single target, a sharded model
+     * targets every shard
+     *
+     * @param model {@link ResourceModel}
+     * @return {@link StackSetTarget} by StackSet name, sorted to keep plans stable across invocations
+     */
+    private static Map<String, StackSetTarget> resolveTargets(final ResourceModel model) {
+        final Map<String, StackSetTarget> targets = new TreeMap<>();
+        if (!targetsMultipleStackSets(model)) {
+            targets.put(model.getStackSetName(), StackSetTarget.builder().stackSetName(model.getStackSetName()).build());
+            return targets;
+        }
+        final ShardRing shardRing = ShardRing.of(model);
+        if (shardRing != null) {
+            shardRing.getStackSetNames().forEach(stackSetName ->
+                    targets.put(stackSetName, StackSetTarget.builder().stackSetName(stackSetName).build()));
+            return targets;
+        }
+        for (final StackSetTarget target : model.getStackSetTargets()) {
+            if (targets.put(target.getStackSetName(), target) != null) {
+                throw new CfnInvalidRequestException(
+                        String.format("StackSet [%s] is duplicated in StackSetTargets", target.getStackSetName()));
+            }
+        }
+        return targets;
+    }
+
+    private static Set<Parameter> resolveParameters(final ResourceModel model, final StackSetTarget target) {
+        return target.getParameters() != null ? target.getParameters() : model.getParameters();
+    }
+
+    /**
+     * Resolves and validates {@link StackSetTarget#getDependsOn()}
+     *
+     * @param model {@link ResourceModel}
+     * @throws CfnInvalidRequestException If a dependency is unknown or cyclic
+     * @return StackSet names mapped to the StackSet names they depend on
+     */
+    private static Map<String, Set<String>> resolveDependencies(final ResourceModel model) {
+        final Map<String, StackSetTarget> targets = resolveTargets(model);
+        final Map<String, Set<String>> dependencies = targets.values().stream()
+                .filter(target -> !CollectionUtils.isNullOrEmpty(target.getDependsOn()))
+                .collect(Collectors.toMap(StackSetTarget::getStackSetName, StackSetTarget::getDependsOn));
+
+        dependencies.forEach((stackSet, dependsOn) -> dependsOn.forEach(dependency -> {
+            if (!targets.containsKey(dependency)) {
+                throw new CfnInvalidRequestException(
+                        String.format("StackSet [%s] depends on [%s] which is not in StackSetTargets", stackSet, dependency));
+            }
+        }));
+
+        final Set<String> visited = new HashSet<>();
+        for (final String stackSet : dependencies.keySet()) {
+            checkAcyclic(stackSet, dependencies, visited, new HashSet<>());
+        }
+        return dependencies;
+    }
+
+    private static void checkAcyclic(
+            final String stackSet,
+            final Map<String, Set<String>> dependencies,
+            final Set<String> visited,
+            final Set<String> path) {
+
+        if (!path.add(stackSet)) {
+            throw new CfnInvalidRequestException(
+                    String.format("StackSet [%s] has a cyclic DependsOn in StackSetTargets", stackSet));
+        }
+        if (visited.add(stackSet)) {
+            for (final String dependency : dependencies.getOrDefault(stackSet, Collections.emptySet())) {
+                checkAcyclic(dependency, dependencies, visited, path);
+            }
+        }
+        path.remove(stackSet);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Durations per stack instance and failure rates observed on completed operations, by StackSet, action and Region,
+ * smoothed with an exponentially weighted moving average. Kept in a {@link LeaseStore} configured through {@value #TIMING_STORE_ENV},
+ * in memory of the execution environment when unset
+ */
+public class OperationTimingStore {
+
+    public static final String TIMING_STORE_ENV = "STACK_INSTANCES_TIMING_STORE";
+
+    private static final String KEY_PREFIX = "stackset-timings::";
+
+    /**
+     * Weight of the latest observation
+     */
+    private static final double SMOOTHING = 0.3;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final LeaseStore store;
+
+    public OperationTimingStore(final LeaseStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return {@link OperationTimingStore} on the {@link LeaseStore} configured through {@value #TIMING_STORE_ENV}
+     */
+    public static OperationTimingStore fromEnvironment() {
+        final LeaseStore store = LeaseStore.fromConfiguration(System.getenv(TIMING_STORE_ENV));
+        return new OperationTimingStore(store == null ? new InMemoryLeaseStore() : store);
+    }
+
+    /**
+     * @param stackSetKey  {@link StackSetKey} of the StackSet
+     * @param action       operation action, e.g. CREATE
+     * @return smoothed duration per stack instance in milliseconds by Region, empty without history
+     */
+    public Map<String, Double> getMillisPerInstance(final String stackSetKey, final String action) {
+        final Map<String, Double> millisPerInstance = new TreeMap<>();
+        read(stackSetKey).getActions().getOrDefault(action, Collections.emptyMap()).forEach((region, timing) -> {
+            if (timing.getSamples() > 0) millisPerInstance.put(region, timing.getMillisPerInstance());
+        });
+        return millisPerInstance;
+    }
+
+    /**
+     * @param stackSetKey  {@link StackSetKey} of the StackSet
+     * @param action       operation action, e.g. CREATE
+     * @return smoothed share of failed stack instances by Region, empty without history
+     */
+    public Map<String, Double> getFailureRates(final String stackSetKey, final String action) {
+        final Map<String, Double> failureRates = new TreeMap<>();
+        read(stackSetKey).getActions().getOrDefault(action, Collections.emptyMap()).forEach((region, timing) -> {
+            if (timing.getFailureSamples() > 0) failureRates.put(region, timing.getFailureRate());
+        });
+        return failureRates;
+    }
+
+    /**
+     * @param stackSetKey       {@link StackSetKey} of the StackSet
+     * @param action            operation action, e.g. CREATE
+     * @param failureRates      share of failed stack instances by Region of the completed operation
+     * @param millisPerInstance observed duration per stack instance in milliseconds, null if the operation did not
+     *                          run to completion
+     */
+    public void record(
+            final String stackSetKey,
+            final String action,
+            final Map<String, Double> failureRates,
+            final Double millisPerInstance) {
+
+        while (true) {
+            final LeaseStore.VersionedValue current = store.get(KEY_PREFIX + stackSetKey);
+            final Timings timings = current == null ? new Timings() : read(current.getValue());
+            final Map<String, RegionTiming> regionTimings = timings.getActions().computeIfAbsent(action, key -> new TreeMap<>());
+            for (final Map.Entry<String, Double> region : failureRates.entrySet()) {
+                final RegionTiming timing = regionTimings.computeIfAbsent(region.getKey(), key -> new RegionTiming());
+                timing.setFailureRate(smooth(timing.getFailureRate(), timing.getFailureSamples(), region.getValue()));
+                timing.setFailureSamples(timing.getFailureSamples() + 1);
+                if (millisPerInstance == null) continue;
+                timing.setMillisPerInstance(smooth(timing.getMillisPerInstance(), timing.getSamples(), millisPerInstance));
+                timing.setSamples(timing.getSamples() + 1);
+            }
+            if (store.compareAndSet(KEY_PREFIX + stackSetKey, current == null ? 0 : current.getVersion(), write(timings))) {
+                return;
+            }
+        }
+    }
+
+    private static double smooth(final double average, final long samples, final double observation) {
+        return samples == 0 ? observation : SMOOTHING * observation + (1 - SMOOTHING) * average;
+    }
+
+    private Timings read(final String stackSetKey) {
+        final LeaseStore.VersionedValue current = store.get(KEY_PREFIX + stackSetKey);
+        return current == null ? new Timings() : read(current.getValue());
+    }
+
+    private static Timings read(final String value) {
+        try {
+            return MAPPER.readValue(value, Timings.class);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String write(final Timings timings) {
+        try {
+            return MAPPER.writeValueAsString(timings);
+        } catch (final JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    static class Timings {
+        private Map<String, Map<String, RegionTiming>> actions = new TreeMap<>();
+    }
+
+    @Data
+    @NoArgsConstructor
+    static class RegionTiming {
+        private double millisPerInstance;
+        private long samples;
+        private double failureRate;
+        private long failureSamples;
+    }
+}
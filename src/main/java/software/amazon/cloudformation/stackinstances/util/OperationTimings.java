@@ -0,0 +1,198 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperation;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultSummary;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationStatus;
+import software.amazon.cloudformation.Action;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.CallbackContext;
+import software.amazon.cloudformation.stackinstances.OperationPreferences;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Records finished operations in the {@link OperationTimingStore} and reads them back to estimate durations and
+ * to resolve automatic Region orders. An unreadable or unwritable store only costs the estimates, operations go on
+ */
+public final class OperationTimings {
+
+    private static final OperationTimingStore TIMING_STORE = OperationTimingStore.fromEnvironment();
+
+    private OperationTimings() {
+    }
+
+    /**
+     * Records the outcome of a finished operation: the failure rate of every Region from the operation results and,
+     * for succeeded operations, the duration per stack instance derived from the operation timestamps and
+     * preferences. Running operations and operations without timestamps are skipped
+     *
+     * @param proxyClient  the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model        {@link ResourceModel}
+     * @param stackSetName StackSet name
+     * @param operation    {@link StackSetOperation}
+     * @param logger       {@link Logger}
+     */
+    public static void record(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName,
+            final StackSetOperation operation,
+            final Logger logger) {
+
+        final StackSetOperationStatus status = operation.status();
+        if (!StackSetOperations.isEnded(status)) return;
+        if (operation.creationTimestamp() == null || operation.endTimestamp() == null || operation.action() == null) return;
+
+        final Map<String, Integer> instancesByRegion = new TreeMap<>();
+        final Map<String, Integer> failedByRegion = new TreeMap<>();
+        for (final StackSetOperationResultSummary result :
+                StackSetOperations.listResults(proxyClient, model, stackSetName, operation.operationId())) {
+            instancesByRegion.merge(result.region(), 1, Integer::sum);
+            if (result.status() == StackSetOperationResultStatus.FAILED) failedByRegion.merge(result.region(), 1, Integer::sum);
+        }
+        if (instancesByRegion.isEmpty()) return;
+
+        final Map<String, Double> failureRates = new TreeMap<>();
+        instancesByRegion.forEach((region, instances) ->
+                failureRates.put(region, (double) failedByRegion.getOrDefault(region, 0) / instances));
+        final Double millisPerInstance = status != StackSetOperationStatus.SUCCEEDED ? null :
+                DurationEstimator.millisPerInstance(instancesByRegion,
+                        DurationEstimator.Concurrency.of(operation.operationPreferences()),
+                        Duration.between(operation.creationTimestamp(), operation.endTimestamp()));
+        try {
+            TIMING_STORE.record(StackSetKey.of(model, stackSetName), operation.actionAsString(), failureRates, millisPerInstance);
+        } catch (final UncheckedIOException e) {
+            logger.log(String.format("Timing of StackSet [%s] operation [%s] not recorded: %s",
+                    stackSetName, operation.operationId(), e.getMessage()));
+        }
+    }
+
+    /**
+     * @param model        {@link ResourceModel} addressing the StackSet
+     * @param stackSetName StackSet name
+     * @param action       {@link Action}
+     * @param logger       {@link Logger}
+     * @return recorded duration per stack instance by Region, empty if the {@link OperationTimingStore} is unreadable
+     */
+    public static Map<String, Double> getMillisPerInstance(
+            final ResourceModel model,
+            final String stackSetName,
+            final Action action,
+            final Logger logger) {
+
+        final String stackSetKey = StackSetKey.of(model, stackSetName);
+        return read(stackSetName, () -> TIMING_STORE.getMillisPerInstance(stackSetKey, action.name()), logger);
+    }
+
+    /**
+     * @param model        {@link ResourceModel} addressing the StackSet
+     * @param stackSetName StackSet name
+     * @param action       {@link Action}
+     * @param logger       {@link Logger}
+     * @return recorded share of failed stack instances by Region, empty if the {@link OperationTimingStore} is unreadable
+     */
+    public static Map<String, Double> getFailureRates(
+            final ResourceModel model,
+            final String stackSetName,
+            final Action action,
+            final Logger logger) {
+
+        final String stackSetKey = StackSetKey.of(model, stackSetName);
+        return read(stackSetName, () -> TIMING_STORE.getFailureRates(stackSetKey, action.name()), logger);
+    }
+
+    private static Map<String, Double> read(
+            final String stackSetName,
+            final Supplier<Map<String, Double>> reader,
+            final Logger logger) {
+
+        try {
+            return reader.get();
+        } catch (final UncheckedIOException e) {
+            logger.log(String.format("Timings of StackSet [%s] not readable, estimating with defaults: %s",
+                    stackSetName, e.getMessage()));
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Resolves {@link OperationPreferences} with RegionOrder [{@value RegionOrderPlanner#AUTO}] into a concrete
+     * Region order through {@link RegionOrderPlanner}. The order is picked once per StackSet and action and kept in
+     * {@link CallbackContext#getRegionOrders()}, so later invocations plan the same waves and requests
+     *
+     * @param callbackContext {@link CallbackContext}
+     * @param model           {@link ResourceModel}
+     * @param stackSetName    StackSet name
+     * @param action          {@link Action}
+     * @param stackInstances  {@link StackInstance} set of the operation
+     * @param logger          {@link Logger}
+     * @return {@link OperationPreferences} to submit the operation with
+     */
+    public static OperationPreferences resolveOperationPreferences(
+            final CallbackContext callbackContext,
+            final ResourceModel model,
+            final String stackSetName,
+            final Action action,
+            final Set<StackInstance> stackInstances,
+            final Logger logger) {
+
+        final OperationPreferences operationPreferences = model.getOperationPreferences();
+        if (!RegionOrderPlanner.isAuto(operationPreferences)) return operationPreferences;
+
+        final String key = PlannedOperation.key(stackSetName, action);
+        List<String> regionOrder = callbackContext.getRegionOrders().get(key);
+        if (regionOrder == null) {
+            final Map<String, Integer> instancesByRegion = DurationEstimator.countByRegion(stackInstances);
+            final DurationEstimator.Concurrency concurrency = DurationEstimator.Concurrency.of(operationPreferences);
+            final Map<String, Double> timings = getMillisPerInstance(model, stackSetName, action, logger);
+            regionOrder = RegionOrderPlanner.order(instancesByRegion, concurrency, timings,
+                    getFailureRates(model, stackSetName, action, logger));
+            callbackContext.getRegionOrders().put(key, regionOrder);
+
+            logger.log(String.format("StackSet [%s] %s Region order resolved to %s", stackSetName, action, regionOrder));
+            logger.log(EmbeddedMetric.forStackSet(stackSetName, System.currentTimeMillis())
+                    .metric("EstimatedOperationMillis", "Milliseconds",
+                            DurationEstimator.estimate(instancesByRegion, concurrency, timings).toMillis())
+                    .property("Action", action.name())
+                    .property("RegionOrder", regionOrder)
+                    .toJson());
+        }
+
+        return OperationPreferences.builder()
+                .failureToleranceCount(operationPreferences.getFailureToleranceCount())
+                .failureTolerancePercentage(operationPreferences.getFailureTolerancePercentage())
+                .maxConcurrentCount(operationPreferences.getMaxConcurrentCount())
+                .maxConcurrentPercentage(operationPreferences.getMaxConcurrentPercentage())
+                .regionConcurrencyType(operationPreferences.getRegionConcurrencyType())
+                .regionOrder(regionOrder)
+                .build();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.awssdk.services.organizations.OrganizationsClient;
+import software.amazon.awssdk.services.organizations.model.Account;
+import software.amazon.awssdk.services.organizations.model.ListAccountsRequest;
+import software.amazon.awssdk.services.organizations.model.ListAccountsResponse;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.ProxyClient;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lists the accounts of the organization through ListAccounts, callable from the management account or a delegated
+ * administrator
+ */
+public class OrganizationsAccountSource implements TargetValidator.AccountSource {
+
+    @Override
+    public Map<String, String> listAccountStatuses(final AmazonWebServicesClientProxy proxy) {
+        final ProxyClient<OrganizationsClient> proxyClient = proxy.newProxy(ClientBuilder::getOrganizationsClient);
+        final Map<String, String> statuses = new HashMap<>();
+        String nextToken = null;
+        do {
+            final ListAccountsResponse response = proxyClient.injectCredentialsAndInvokeV2(
+                    ListAccountsRequest.builder().nextToken(nextToken).build(),
+                    proxyClient.client()::listAccounts);
+            for (final Account account : response.accounts()) {
+                statuses.put(account.id(), account.statusAsString());
+            }
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+        return statuses;
+    }
+}
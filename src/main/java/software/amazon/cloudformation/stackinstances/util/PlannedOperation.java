@@ -0,0 +1,59 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import lombok.Builder;
+import lombok.Data;
+import software.amazon.cloudformation.Action;
+import software.amazon.cloudformation.stackinstances.Parameter;
+
+import java.util.Set;
+
+/**
+ * A single StackSet operation of an {@link OperationPlan}
+ */
+@Data
+@Builder
+public class PlannedOperation {
+
+    private String stackSetName;
+
+    private Action action;
+
+    private Set<StackInstance> stackInstances;
+
+    private Set<Parameter> parameters;
+
+    /**
+     * Key identifying the operation across handler invocations, a StackSet receives at most one
+     * operation per {@link Action} in a plan
+     *
+     * @return operation key
+     */
+    public String getKey() {
+        return key(stackSetName, action);
+    }
+
+    /**
+     * @param stackSetName StackSet name
+     * @param action       {@link Action}
+     * @return key of the operation running the action on the StackSet
+     */
+    public static String key(final String stackSetName, final Action action) {
+        return String.format("%s::%s", stackSetName, action);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.cloudformation.stackinstances.OperationPreferences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders the Regions of an operation with {@link OperationPreferences#getRegionOrder()} set to [{@value #AUTO}],
+ * from the durations and failure rates in {@link OperationTimingStore}. With SEQUENTIAL Regions the total duration
+ * does not depend on the order, so Regions likely to fail come first, ranked by failure probability per unit of
+ * time to reach the first failure early. Regions without failure history follow, shortest first, which minimizes
+ * the mean time until a Region completes. Ties are broken alphabetically so the order is stable
+ */
+public final class RegionOrderPlanner {
+
+    public static final String AUTO = "AUTO";
+
+    private RegionOrderPlanner() {
+    }
+
+    /**
+     * @param operationPreferences {@link OperationPreferences}, may be null
+     * @return true if the Region order is left to the planner
+     */
+    public static boolean isAuto(final OperationPreferences operationPreferences) {
+        return operationPreferences != null && operationPreferences.getRegionOrder() != null
+                && operationPreferences.getRegionOrder().size() == 1
+                && AUTO.equals(operationPreferences.getRegionOrder().get(0));
+    }
+
+    /**
+     * @param instancesByRegion number of stack instances by Region
+     * @param concurrency       {@link DurationEstimator.Concurrency} of the operation
+     * @param millisPerInstance recorded duration per stack instance by Region
+     * @param failureRates      recorded share of failed stack instances by Region
+     * @return Regions in rollout order
+     */
+    public static List<String> order(
+            final Map<String, Integer> instancesByRegion,
+            final DurationEstimator.Concurrency concurrency,
+            final Map<String, Double> millisPerInstance,
+            final Map<String, Double> failureRates) {
+
+        final List<RegionRank> ranks = new ArrayList<>();
+        instancesByRegion.forEach((region, instances) -> {
+            final double millis = concurrency.batches(instances) * millisPerInstance.getOrDefault(region,
+                    (double) DurationEstimator.DEFAULT_INSTANCE_DURATION.toMillis());
+            final double failureProbability = 1 - Math.pow(1 - failureRates.getOrDefault(region, 0.0), instances);
+            ranks.add(new RegionRank(region, millis, failureProbability));
+        });
+        Collections.sort(ranks);
+
+        final List<String> ordered = new ArrayList<>();
+        ranks.forEach(rank -> ordered.add(rank.region));
+        return ordered;
+    }
+
+    private static final class RegionRank implements Comparable<RegionRank> {
+        private final String region;
+        private final double millis;
+        private final double failureProbability;
+
+        private RegionRank(final String region, final double millis, final double failureProbability) {
+            this.region = region;
+            this.millis = millis;
+            this.failureProbability = failureProbability;
+        }
+
+        private double failuresPerMilli() {
+            return millis <= 0 ? failureProbability : failureProbability / millis;
+        }
+
+        @Override
+        public int compareTo(final RegionRank other) {
+            int compared = Double.compare(other.failuresPerMilli(), failuresPerMilli());
+            if (compared == 0) compared = Double.compare(millis, other.millis);
+            return compared != 0 ? compared : region.compareTo(other.region);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceDetailedStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceSummary;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.Parameter;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Picks the stack instances to repair, see {@link ResourceModel#getReconcileUnhealthyInstances()}
+ */
+public final class RepairPlanner {
+
+    private RepairPlanner() {
+    }
+
+    /**
+     * Collects the OUTDATED stack instances of the resource that no running operation is working on.
+     * INOPERABLE stack instances are only reported, StackSets exclude them from updates until they are
+     * deleted with RetainStacks. Accounts found under an OrganizationalUnitId target are collected as account
+     * targets addressed through the INTERSECTION filter
+     *
+     * @param proxyClient    the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model          {@link ResourceModel}
+     * @param stackSetName   StackSet name
+     * @param stackInstances {@link StackInstance} set of the resource
+     * @param logger         {@link Logger}
+     * @return OUTDATED {@link StackInstance} set
+     */
+    public static Set<StackInstance> collectOutdated(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName,
+            final Set<StackInstance> stackInstances,
+            final Logger logger) {
+
+        final Map<StackInstance, StackInstance> targets = stackInstances.stream()
+                .collect(Collectors.toMap(stackInstance -> stackInstance, stackInstance -> stackInstance));
+        final Set<StackInstance> outdated = new HashSet<>();
+        final Set<StackInstance> inoperable = new HashSet<>();
+        for (final StackInstanceSummary summary :
+                StackSetOperations.listStackInstanceSummaries(proxyClient, model, stackSetName, stackInstances)) {
+            final StackInstance existing = StackSetOperations.resolveExistingStackInstance(summary, targets);
+            if (existing == null) continue;
+
+            final StackInstanceDetailedStatus detailedStatus = summary.stackInstanceStatus() == null ?
+                    null : summary.stackInstanceStatus().detailedStatus();
+            if (StackInstanceStatus.INOPERABLE == summary.status()) {
+                inoperable.add(existing);
+            } else if (StackInstanceStatus.OUTDATED == summary.status()
+                    && StackInstanceDetailedStatus.RUNNING != detailedStatus
+                    && StackInstanceDetailedStatus.PENDING != detailedStatus) {
+                outdated.add(existing);
+            }
+        }
+
+        if (!inoperable.isEmpty()) {
+            logger.log(String.format("StackSet [%s] has %d INOPERABLE stack instances to delete with RetainStacks: %s",
+                    stackSetName, inoperable.size(), LogEvent.bounded(inoperable)));
+        }
+        return outdated;
+    }
+
+    /**
+     * Picks the largest batch of stack instances sharing Regions and overrides, so that a batch is exactly one
+     * accounts x Regions UpdateStackInstances
+     *
+     * @param outdated   OUTDATED {@link StackInstance} set, non-empty, its overrides are set to the given ones
+     * @param parameters parameter overrides the repair applies
+     * @return {@link StackInstance} set of the batch
+     */
+    public static Set<StackInstance> nextBatch(final Set<StackInstance> outdated, final Set<Parameter> parameters) {
+        outdated.forEach(stackInstance -> stackInstance.setParameters(parameters));
+        return InstancesAnalyzer.aggregateStackInstances(outdated).stream()
+                .map(InstancesAnalyzer::flattenStackInstances)
+                .max(java.util.Comparator.comparingInt(Set::size))
+                .orElseThrow(IllegalStateException::new);
+    }
+}
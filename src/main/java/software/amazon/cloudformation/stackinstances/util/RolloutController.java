@@ -0,0 +1,195 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperation;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultSummary;
+import software.amazon.cloudformation.Action;
+import software.amazon.cloudformation.exceptions.TerminalException;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.CallbackContext;
+import software.amazon.cloudformation.stackinstances.OperationPreferences;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.RolloutPreferences;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * Runs the {@link RolloutWave} list of a staged rollout: gates each wave on the success of the previous one, picks
+ * the concurrency of auto-tuned waves through {@link ConcurrencyTuner} and estimates the duration of the rollout.
+ * Progress is kept in {@link CallbackContext} between invocations
+ */
+public final class RolloutController {
+
+    private RolloutController() {
+    }
+
+    /**
+     * Lets a rollout wave start only once the previous wave succeeded on at least
+     * {@link RolloutPreferences#getMinimumSuccessPercentage()} of its stack instances. Operations that stay within
+     * their failure tolerance still succeed, so the ratio is taken from the operation results
+     *
+     * @param proxyClient     the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model           {@link ResourceModel}
+     * @param callbackContext {@link CallbackContext}
+     * @param action          {@link Action} of the rollout
+     * @param wave            {@link RolloutWave} about to start
+     * @param logger          {@link Logger}
+     * @throws TerminalException if the previous wave fell short, later waves are not submitted
+     */
+    public static void checkGate(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final CallbackContext callbackContext,
+            final Action action,
+            final RolloutWave wave,
+            final Logger logger) {
+
+        if (wave.getIndex() == 0 || model.getRolloutPreferences() == null) return;
+        final String previousKey = RolloutWave.key(model.getStackSetName(), action, wave.getIndex() - 1);
+        final String operationId = callbackContext.getRolloutOperationIds().get(previousKey);
+        if (callbackContext.getPassedRolloutWaves().contains(previousKey) || operationId == null) return;
+
+        final List<StackSetOperationResultSummary> results =
+                StackSetOperations.listResults(proxyClient, model, model.getStackSetName(), operationId);
+        final long succeeded = results.stream()
+                .filter(result -> StackSetOperationResultStatus.SUCCEEDED == result.status()).count();
+        final Integer minimumSuccessPercentage = model.getRolloutPreferences().getMinimumSuccessPercentage();
+        final int minimum = minimumSuccessPercentage == null ? 100 : minimumSuccessPercentage;
+        if (succeeded * 100 < (long) minimum * results.size()) {
+            throw new TerminalException(String.format(
+                    "Rollout wave %d of StackSet [%s] succeeded on %d of %d stack instances, below the minimum of %d%%",
+                    wave.getIndex() - 1, model.getStackSetName(), succeeded, results.size(), minimum));
+        }
+
+        logger.log(String.format("Rollout wave %d of StackSet [%s] succeeded on %d of %d stack instances, starting wave %d",
+                wave.getIndex() - 1, model.getStackSetName(), succeeded, results.size(), wave.getIndex()));
+        if (wave.getMaxConcurrentPercentageCeiling() != null && callbackContext.getRolloutConcurrency().containsKey(previousKey)) {
+            tuneConcurrency(proxyClient, model, callbackContext, action, wave, operationId,
+                    results.size(), results.size() - succeeded, logger);
+        }
+        callbackContext.getPassedRolloutWaves().add(previousKey);
+    }
+
+    /**
+     * Picks the MaxConcurrentPercentage of an auto-tuned wave from the failure rate and the duration per stack
+     * instance of the previous bulk wave, see {@link ConcurrencyTuner}. The choice is kept in
+     * {@link CallbackContext#getRolloutConcurrency()} and logged as an embedded metric
+     */
+    private static void tuneConcurrency(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final CallbackContext callbackContext,
+            final Action action,
+            final RolloutWave wave,
+            final String previousOperationId,
+            final long resultCount,
+            final long failedCount,
+            final Logger logger) {
+
+        final String stackSetName = model.getStackSetName();
+        final String previousKey = RolloutWave.key(stackSetName, action, wave.getIndex() - 1);
+        final StackSetOperation operation = StackSetOperations.describe(proxyClient, model, stackSetName, previousOperationId);
+        final Double millisPerInstance =
+                resultCount == 0 || operation.creationTimestamp() == null || operation.endTimestamp() == null ? null :
+                        (double) Duration.between(operation.creationTimestamp(), operation.endTimestamp()).toMillis() / resultCount;
+        final Double fastestMillisPerInstance = IntStream.range(0, wave.getIndex() - 1)
+                .mapToObj(index -> callbackContext.getRolloutMillisPerInstance().get(RolloutWave.key(stackSetName, action, index)))
+                .filter(Objects::nonNull)
+                .min(Double::compare)
+                .orElse(null);
+        if (millisPerInstance != null) {
+            callbackContext.getRolloutMillisPerInstance().put(previousKey, millisPerInstance);
+        }
+
+        final double failureRate = resultCount == 0 ? 0 : (double) failedCount / resultCount;
+        final int maxConcurrentPercentage = ConcurrencyTuner.next(callbackContext.getRolloutConcurrency().get(previousKey),
+                wave.getMaxConcurrentPercentageCeiling(), failureRate, millisPerInstance, fastestMillisPerInstance);
+        callbackContext.getRolloutConcurrency().put(wave.getKey(stackSetName, action), maxConcurrentPercentage);
+        logger.log(ConcurrencyTuner.toEmbeddedMetric(stackSetName, maxConcurrentPercentage, failureRate,
+                millisPerInstance, System.currentTimeMillis()));
+    }
+
+    /**
+     * @param wave                 {@link RolloutWave}
+     * @param operationPreferences resolved {@link OperationPreferences} of the rollout
+     * @param timings              recorded duration per stack instance by Region
+     * @return estimated duration of the wave, auto-tuned waves at their ceiling
+     */
+    public static Duration estimate(
+            final RolloutWave wave,
+            final OperationPreferences operationPreferences,
+            final Map<String, Double> timings) {
+
+        return DurationEstimator.estimate(wave.getStackInstances(), estimatedOperationPreferences(operationPreferences, wave), timings);
+    }
+
+    /**
+     * @param waves                {@link RolloutWave} list
+     * @param operationPreferences resolved {@link OperationPreferences} of the rollout
+     * @param timings              recorded duration per stack instance by Region
+     * @return estimated duration of all waves run one after the other
+     */
+    public static Duration estimate(
+            final List<RolloutWave> waves,
+            final OperationPreferences operationPreferences,
+            final Map<String, Double> timings) {
+
+        return waves.stream()
+                .map(wave -> estimate(wave, operationPreferences, timings))
+                .reduce(Duration.ZERO, Duration::plus);
+    }
+
+    /**
+     * @return {@link OperationPreferences} the wave runs with at best, auto-tuned waves at their ceiling
+     */
+    private static OperationPreferences estimatedOperationPreferences(
+            final OperationPreferences operationPreferences,
+            final RolloutWave wave) {
+
+        if (wave.getMaxConcurrentPercentageCeiling() == null) return wave.getOperationPreferences();
+        return RolloutWave.bulkOperationPreferences(operationPreferences, wave.getMaxConcurrentPercentageCeiling());
+    }
+
+    /**
+     * @param callbackContext      {@link CallbackContext}
+     * @param operationPreferences resolved {@link OperationPreferences} of the rollout
+     * @param waveKey              key of the wave, see {@link RolloutWave#getKey}
+     * @param wave                 {@link RolloutWave}
+     * @return {@link OperationPreferences} of the wave, with the MaxConcurrentPercentage picked by
+     * {@link #tuneConcurrency} for auto-tuned waves
+     */
+    public static OperationPreferences operationPreferences(
+            final CallbackContext callbackContext,
+            final OperationPreferences operationPreferences,
+            final String waveKey,
+            final RolloutWave wave) {
+
+        if (wave.getMaxConcurrentPercentageCeiling() == null) return wave.getOperationPreferences();
+        final int maxConcurrentPercentage = callbackContext.getRolloutConcurrency()
+                .computeIfAbsent(waveKey, key -> wave.getOperationPreferences().getMaxConcurrentPercentage());
+        return RolloutWave.bulkOperationPreferences(operationPreferences, maxConcurrentPercentage);
+    }
+}
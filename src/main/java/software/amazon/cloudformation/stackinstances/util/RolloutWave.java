@@ -0,0 +1,227 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import lombok.Builder;
+import lombok.Data;
+import software.amazon.cloudformation.Action;
+import software.amazon.cloudformation.stackinstances.OperationPreferences;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.RolloutPreferences;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * A wave of a rollout, see {@link ResourceModel#getRolloutPreferences()}. The canary wave deploys to
+ * {@link RolloutPreferences#getCanaryTargetCount()} targets in the first Region with the resource
+ * {@link OperationPreferences}. The remaining targets of the first Region, then all targets of the other Regions,
+ * follow in bulk waves with PARALLEL Region concurrency, chunked by {@link RolloutPreferences#getBulkWaveTargetCount()}.
+ * Each of these is split further by {@link StackInstanceGrid#partition}, so that every wave is an accounts x Regions
+ * rectangle and one operation deploys exactly the stack instances of its wave
+ */
+@Data
+@Builder
+public class RolloutWave {
+
+    private static final int DEFAULT_BULK_MAX_CONCURRENT_PERCENTAGE = 100;
+
+    private int index;
+
+    private Set<StackInstance> stackInstances;
+
+    private OperationPreferences operationPreferences;
+
+    /**
+     * Highest MaxConcurrentPercentage {@link ConcurrencyTuner} may pick for the wave, null when the concurrency of the
+     * wave is not tuned
+     */
+    private Integer maxConcurrentPercentageCeiling;
+
+    /**
+     * Suffix distinguishing the proxy call graph of the wave, empty without rollout so that the call graph of a
+     * single operation stays unchanged
+     */
+    private String callGraphSuffix;
+
+    /**
+     * @param stackSetName StackSet name
+     * @param action       {@link Action}
+     * @return key of the wave across handler invocations
+     */
+    public String getKey(final String stackSetName, final Action action) {
+        return key(stackSetName, action, index);
+    }
+
+    /**
+     * @param stackSetName StackSet name
+     * @param action       {@link Action}
+     * @param index        wave index
+     * @return key of the wave running the action on the StackSet
+     */
+    public static String key(final String stackSetName, final Action action, final int index) {
+        return String.format("%s::wave-%d", PlannedOperation.key(stackSetName, action), index);
+    }
+
+    /**
+     * Splits the planned stack instances into waves, one wave per rectangle with the resource
+     * {@link OperationPreferences} without {@link RolloutPreferences}
+     *
+     * @param stackInstances       planned {@link StackInstance} set
+     * @param model                {@link ResourceModel}
+     * @param operationPreferences resource {@link OperationPreferences} with the Region order resolved, see
+     *                             {@link RegionOrderPlanner}
+     * @return {@link RolloutWave} list in rollout order, without empty waves
+     */
+    public static List<RolloutWave> plan(
+            final Set<StackInstance> stackInstances,
+            final ResourceModel model,
+            final OperationPreferences operationPreferences) {
+
+        final RolloutPreferences rollout = model.getRolloutPreferences();
+        if (rollout == null) {
+            final List<RolloutWave> waves = new ArrayList<>();
+            for (final Set<StackInstance> rectangle : StackInstanceGrid.partition(stackInstances)) {
+                waves.add(RolloutWave.builder()
+                        .index(waves.size()).stackInstances(rectangle)
+                        .operationPreferences(operationPreferences)
+                        .callGraphSuffix(waves.isEmpty() ? "" : String.format("::Wave%d", waves.size()))
+                        .build());
+            }
+            return waves;
+        }
+
+        final String firstRegion = orderRegions(stackInstances, operationPreferences).get(0);
+        final Set<String> canaryTargets = stackInstances.stream()
+                .filter(stackInstance -> firstRegion.equals(stackInstance.getRegion()))
+                .map(StackInstance::getDeploymentTarget)
+                .collect(Collectors.toCollection(TreeSet::new))
+                .stream()
+                .limit(rollout.getCanaryTargetCount())
+                .collect(Collectors.toSet());
+
+        final Set<StackInstance> canary = new LinkedHashSet<>();
+        final Set<StackInstance> firstRegionBulk = new LinkedHashSet<>();
+        final Set<StackInstance> otherRegionsBulk = new LinkedHashSet<>();
+        for (final StackInstance stackInstance : stackInstances) {
+            if (!firstRegion.equals(stackInstance.getRegion())) {
+                otherRegionsBulk.add(stackInstance);
+            } else if (canaryTargets.contains(stackInstance.getDeploymentTarget())) {
+                canary.add(stackInstance);
+            } else {
+                firstRegionBulk.add(stackInstance);
+            }
+        }
+
+        final int bulkPercentage = rollout.getBulkMaxConcurrentPercentage() == null ?
+                DEFAULT_BULK_MAX_CONCURRENT_PERCENTAGE : rollout.getBulkMaxConcurrentPercentage();
+        final boolean autoTune = Boolean.TRUE.equals(rollout.getAutoTuneConcurrency());
+        final List<RolloutWave> waves = new ArrayList<>();
+        for (final Set<StackInstance> rectangle : StackInstanceGrid.partition(canary)) {
+            waves.add(RolloutWave.builder()
+                    .index(waves.size())
+                    .stackInstances(rectangle)
+                    .operationPreferences(operationPreferences)
+                    .callGraphSuffix(String.format("::Wave%d", waves.size()))
+                    .build());
+        }
+        final int canaryWaves = waves.size();
+        for (final Set<StackInstance> bulk : Arrays.asList(firstRegionBulk, otherRegionsBulk)) {
+            for (final Set<StackInstance> chunk : chunkByTargets(bulk, rollout.getBulkWaveTargetCount())) {
+                for (final Set<StackInstance> rectangle : StackInstanceGrid.partition(chunk)) {
+                    final boolean firstBulkWave = waves.size() == canaryWaves;
+                    waves.add(RolloutWave.builder()
+                            .index(waves.size())
+                            .stackInstances(rectangle)
+                            .operationPreferences(bulkOperationPreferences(operationPreferences,
+                                    autoTune && firstBulkWave ?
+                                            Math.min(bulkPercentage, ConcurrencyTuner.ADDITIVE_INCREASE) : bulkPercentage))
+                            .maxConcurrentPercentageCeiling(autoTune ? bulkPercentage : null)
+                            .callGraphSuffix(String.format("::Wave%d", waves.size()))
+                            .build());
+                }
+            }
+        }
+        return waves;
+    }
+
+    /**
+     * Splits stack instances into chunks of at most targetCount targets each, see {@link StackInstanceGrid#partition}
+     * for the rectangles
+     */
+    private static List<Set<StackInstance>> chunkByTargets(final Set<StackInstance> stackInstances, final Integer targetCount) {
+        if (stackInstances.isEmpty()) return Collections.emptyList();
+        if (targetCount == null) return Collections.singletonList(stackInstances);
+
+        final List<String> targets = stackInstances.stream()
+                .map(StackInstance::getDeploymentTarget)
+                .collect(Collectors.toCollection(TreeSet::new))
+                .stream().collect(Collectors.toList());
+        final List<Set<StackInstance>> chunks = new ArrayList<>();
+        for (int from = 0; from < targets.size(); from += targetCount) {
+            final Set<String> chunkTargets = new TreeSet<>(targets.subList(from, Math.min(targets.size(), from + targetCount)));
+            chunks.add(stackInstances.stream()
+                    .filter(stackInstance -> chunkTargets.contains(stackInstance.getDeploymentTarget()))
+                    .collect(Collectors.toCollection(LinkedHashSet::new)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Regions of the stack instances, in {@link OperationPreferences#getRegionOrder()} first and alphabetically after
+     */
+    private static List<String> orderRegions(
+            final Set<StackInstance> stackInstances,
+            final OperationPreferences operationPreferences) {
+
+        final Set<String> regions = stackInstances.stream()
+                .map(StackInstance::getRegion).collect(Collectors.toCollection(TreeSet::new));
+        final List<String> ordered = new ArrayList<>();
+        if (operationPreferences != null && operationPreferences.getRegionOrder() != null) {
+            operationPreferences.getRegionOrder().stream().filter(regions::contains).forEach(ordered::add);
+        }
+        regions.stream().filter(region -> !ordered.contains(region)).forEach(ordered::add);
+        return ordered;
+    }
+
+    /**
+     * @param operationPreferences    resource {@link OperationPreferences}
+     * @param maxConcurrentPercentage MaxConcurrentPercentage of the bulk wave
+     * @return {@link OperationPreferences} of a bulk wave, keeping the failure tolerance and RegionOrder of the resource
+     */
+    public static OperationPreferences bulkOperationPreferences(
+            final OperationPreferences operationPreferences,
+            final int maxConcurrentPercentage) {
+
+        final OperationPreferences bulk = OperationPreferences.builder()
+                .regionConcurrencyType("PARALLEL")
+                .maxConcurrentPercentage(maxConcurrentPercentage)
+                .build();
+        if (operationPreferences != null) {
+            bulk.setFailureToleranceCount(operationPreferences.getFailureToleranceCount());
+            bulk.setFailureTolerancePercentage(operationPreferences.getFailureTolerancePercentage());
+            bulk.setRegionOrder(operationPreferences.getRegionOrder());
+        }
+        return bulk;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import lombok.Getter;
+import software.amazon.awssdk.utils.CollectionUtils;
+import software.amazon.cloudformation.exceptions.CfnInvalidRequestException;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Consistent hash ring assigning the deployment targets of a logical StackSet to its physical shards,
+ * see {@link ResourceModel#getShardCount()}. Ring points depend on the shard index only, so that adding
+ * a shard moves only the targets it takes over and removing one moves only the targets it held
+ */
+public class ShardRing {
+
+    private static final int VIRTUAL_NODES = 128;
+
+    private static final int MAX_STACK_SET_NAME_LENGTH = 128;
+
+    private static final String SHARD_SUFFIX = "-shard-";
+
+    private static final Map<Integer, NavigableMap<Long, Integer>> RINGS = new ConcurrentHashMap<>();
+
+    @Getter
+    private final List<String> stackSetNames;
+
+    private final NavigableMap<Long, Integer> ring;
+
+    private ShardRing(final String stackSetName, final int shardCount) {
+        this.stackSetNames = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            stackSetNames.add(shardName(stackSetName, shard));
+        }
+        this.ring = RINGS.computeIfAbsent(shardCount, ShardRing::buildRing);
+    }
+
+    /**
+     * @param model {@link ResourceModel}
+     * @throws CfnInvalidRequestException If ShardCount is combined with StackSetTargets or a shard name is too long
+     * @return {@link ShardRing} of the model, null if the model is not sharded
+     */
+    public static ShardRing of(final ResourceModel model) {
+        if (model == null || model.getShardCount() == null || model.getShardCount() <= 1) return null;
+        if (!CollectionUtils.isNullOrEmpty(model.getStackSetTargets())) {
+            throw new CfnInvalidRequestException("ShardCount cannot be combined with StackSetTargets");
+        }
+        if (model.getStackSetName() == null) {
+            throw new CfnInvalidRequestException("ShardCount requires StackSetName");
+        }
+
+        final ShardRing shardRing = new ShardRing(model.getStackSetName(), model.getShardCount());
+        final String longest = shardRing.stackSetNames.get(model.getShardCount() - 1);
+        if (longest.length() > MAX_STACK_SET_NAME_LENGTH) {
+            throw new CfnInvalidRequestException(
+                    String.format("Shard StackSet name [%s] exceeds %d characters", longest, MAX_STACK_SET_NAME_LENGTH));
+        }
+        return shardRing;
+    }
+
+    /**
+     * @param stackSetName logical StackSet name
+     * @param shard        shard index
+     * @return physical StackSet name of the shard, shard 0 keeps the logical name
+     */
+    public static String shardName(final String stackSetName, final int shard) {
+        return shard == 0 ? stackSetName : stackSetName + SHARD_SUFFIX + shard;
+    }
+
+    /**
+     * Accounts addressed through OrganizationalUnitIds go with their OrganizationalUnitId, the shard submits them
+     * with it. An account addressed through several OrganizationalUnitIds goes with the lowest one
+     *
+     * @param stackInstance {@link StackInstance}
+     * @return physical StackSet name the stack instance is assigned to
+     */
+    public String stackSetNameOf(final StackInstance stackInstance) {
+        return stackSetNameOf(CollectionUtils.isNullOrEmpty(stackInstance.getOrganizationalUnitIds()) ?
+                stackInstance.getDeploymentTarget() : new TreeSet<>(stackInstance.getOrganizationalUnitIds()).first());
+    }
+
+    /**
+     * @param deploymentTarget account or OrganizationalUnitId
+     * @return physical StackSet name the deployment target is assigned to
+     */
+    public String stackSetNameOf(final String deploymentTarget) {
+        final Map.Entry<Long, Integer> point = ring.ceilingEntry(hash(deploymentTarget));
+        return stackSetNames.get(point != null ? point.getValue() : ring.firstEntry().getValue());
+    }
+
+    private static NavigableMap<Long, Integer> buildRing(final int shardCount) {
+        final NavigableMap<Long, Integer> ring = new TreeMap<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                ring.put(hash("shard-" + shard + "#" + node), shard);
+            }
+        }
+        return ring;
+    }
+
+    private static long hash(final String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.ProxyClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the SQS queue an EventBridge rule on "CloudFormation StackSet Operation Status Change" events delivers to.
+ * Messages are deleted once received, {@link OperationCompletions} keeps what they reported for every contender in
+ * a shared {@link LeaseStore}
+ */
+public class SqsCompletionQueue implements CompletionQueue {
+
+    private static final int MAX_MESSAGES = 10;
+
+    /**
+     * Receive calls per drain, bounds the time a handler spends catching up on a backlog
+     */
+    private static final int MAX_RECEIVES = 5;
+
+    private final String queueUrl;
+
+    public SqsCompletionQueue(final String queueUrl) {
+        this.queueUrl = queueUrl;
+    }
+
+    @Override
+    public boolean isConsumedOnReceive() {
+        return true;
+    }
+
+    @Override
+    public List<String> receive(final AmazonWebServicesClientProxy proxy) {
+        final ProxyClient<SqsClient> proxyClient = proxy.newProxy(ClientBuilder::getSqsClient);
+        final List<String> received = new ArrayList<>();
+        for (int i = 0; i < MAX_RECEIVES; i++) {
+            final List<Message> messages = proxyClient.injectCredentialsAndInvokeV2(
+                    ReceiveMessageRequest.builder()
+                            .queueUrl(queueUrl)
+                            .maxNumberOfMessages(MAX_MESSAGES)
+                            .waitTimeSeconds(0)
+                            .build(),
+                    proxyClient.client()::receiveMessage).messages();
+            if (messages.isEmpty()) break;
+
+            messages.forEach(message -> received.add(message.body()));
+            proxyClient.injectCredentialsAndInvokeV2(
+                    DeleteMessageBatchRequest.builder()
+                            .queueUrl(queueUrl)
+                            .entries(messages.stream()
+                                    .map(message -> DeleteMessageBatchRequestEntry.builder()
+                                            .id(message.messageId())
+                                            .receiptHandle(message.receiptHandle())
+                                            .build())
+                                    .collect(Collectors.toList()))
+                            .build(),
+                    proxyClient.client()::deleteMessageBatch);
+            if (messages.size() < MAX_MESSAGES) break;
+        }
+        return received;
+    }
+}
@@ -17,18 +17,25 @@
 package software.amazon.cloudformation.stackinstances.util;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
 import software.amazon.cloudformation.stackinstances.Parameter;
 
 import java.util.Set;
+import java.util.regex.Pattern;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 @EqualsAndHashCode
 public class StackInstance {
 
+    private static final Pattern ACCOUNT_PATTERN = Pattern.compile("^[0-9]{12}$");
+
     @JsonProperty("Region")
     private String region;
 
@@ -37,4 +44,29 @@ public class StackInstance {
 
     @EqualsAndHashCode.Exclude
     private Set<Parameter> parameters;
+
+    /**
+     * OrganizationalUnitIds an account target of a service-managed StackSet is addressed through
+     */
+    @EqualsAndHashCode.Exclude
+    private Set<String> organizationalUnitIds;
+
+    /**
+     * AccountFilterType the target is submitted with, null for self-managed StackSets
+     */
+    @EqualsAndHashCode.Exclude
+    private String accountFilterType;
+
+    /**
+     * Accounts left out of an OrganizationalUnitId target through the DIFFERENCE filter
+     */
+    @EqualsAndHashCode.Exclude
+    private Set<String> excludedAccounts;
+
+    /**
+     * @return true if {@link #getDeploymentTarget()} is an OrganizationalUnitId rather than an account
+     */
+    public boolean targetsOrganizationalUnit() {
+        return deploymentTarget != null && !ACCOUNT_PATTERN.matcher(deploymentTarget).matches();
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Utility class splitting {@link StackInstance} sets into accounts x Regions rectangles. A stack instance operation
+ * deploys every target of its request to every Region of it, so submitting a set that is not a rectangle would also
+ * deploy the missing target and Region pairs
+ */
+public final class StackInstanceGrid {
+
+    private StackInstanceGrid() {
+    }
+
+    /**
+     * Groups the targets that share the same Regions and targeting, each group is exactly one operation. The result
+     * only depends on the content of the set, so that re-invocations get the same rectangles in the same order
+     *
+     * @param stackInstances {@link StackInstance} set
+     * @return rectangles sorted by their first target, each with its stack instances sorted by target and Region
+     */
+    public static List<Set<StackInstance>> partition(final Set<StackInstance> stackInstances) {
+        final Map<String, Set<String>> regionsByTarget = new TreeMap<>();
+        final Map<String, StackInstance> byCell = new TreeMap<>();
+        for (final StackInstance stackInstance : stackInstances) {
+            regionsByTarget.computeIfAbsent(stackInstance.getDeploymentTarget(), target -> new TreeSet<>())
+                    .add(stackInstance.getRegion());
+            byCell.put(cell(stackInstance.getDeploymentTarget(), stackInstance.getRegion()), stackInstance);
+        }
+
+        final Map<String, List<String>> targetsByShape = new TreeMap<>();
+        regionsByTarget.forEach((target, regions) -> targetsByShape.computeIfAbsent(
+                shape(byCell.get(cell(target, regions.iterator().next())), regions), shape -> new ArrayList<>()).add(target));
+
+        final List<Set<StackInstance>> rectangles = new ArrayList<>();
+        for (final List<String> targets : targetsByShape.values()) {
+            final Set<StackInstance> rectangle = new LinkedHashSet<>();
+            for (final String target : targets) {
+                regionsByTarget.get(target).forEach(region -> rectangle.add(byCell.get(cell(target, region))));
+            }
+            rectangles.add(rectangle);
+        }
+        rectangles.sort(Comparator.comparing(rectangle -> rectangle.iterator().next().getDeploymentTarget()));
+        return rectangles;
+    }
+
+    /**
+     * @param stackInstances {@link StackInstance} set
+     * @return true if the set deploys every one of its targets to every one of its Regions
+     */
+    public static boolean isRectangle(final Set<StackInstance> stackInstances) {
+        final long targets = stackInstances.stream().map(StackInstance::getDeploymentTarget).distinct().count();
+        final long regions = stackInstances.stream().map(StackInstance::getRegion).distinct().count();
+        return targets * regions == stackInstances.size();
+    }
+
+    /**
+     * Leaves out the targets whose every planned stack instance is covered, then the Regions whose every remaining
+     * planned stack instance is covered. Single covered stack instances stay planned: leaving them out would split the
+     * plan into more rectangles, and an additional operation costs more than deploying them again
+     *
+     * @param planned planned {@link StackInstance} set
+     * @param covered planned stack instances that need no change
+     * @return planned stack instances still to be submitted
+     */
+    public static Set<StackInstance> removeCovered(final Set<StackInstance> planned, final Set<StackInstance> covered) {
+        final Set<String> coveredTargets = planned.stream()
+                .collect(Collectors.groupingBy(StackInstance::getDeploymentTarget, Collectors.toSet()))
+                .entrySet().stream()
+                .filter(entry -> covered.containsAll(entry.getValue()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        final Set<StackInstance> remaining = planned.stream()
+                .filter(stackInstance -> !coveredTargets.contains(stackInstance.getDeploymentTarget()))
+                .collect(Collectors.toSet());
+
+        final Set<String> coveredRegions = remaining.stream()
+                .collect(Collectors.groupingBy(StackInstance::getRegion, Collectors.toSet()))
+                .entrySet().stream()
+                .filter(entry -> covered.containsAll(entry.getValue()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        return remaining.stream()
+                .filter(stackInstance -> !coveredRegions.contains(stackInstance.getRegion()))
+                .collect(Collectors.toSet());
+    }
+
+    private static String cell(final String target, final String region) {
+        return target + "/" + region;
+    }
+
+    /**
+     * Regions and targeting of a target, targets of different targeting cannot share a request
+     */
+    private static String shape(final StackInstance sample, final Set<String> regions) {
+        return String.join(",", regions) + "|" + sample.targetsOrganizationalUnit() + "|" + sample.getAccountFilterType()
+                + "|" + (sample.getOrganizationalUnitIds() == null ? "" : new TreeSet<>(sample.getOrganizationalUnitIds()))
+                + "|" + (sample.getExcludedAccounts() == null ? "" : new TreeSet<>(sample.getExcludedAccounts()));
+    }
+}
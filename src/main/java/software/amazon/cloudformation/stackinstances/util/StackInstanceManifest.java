@@ -0,0 +1,375 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.Value;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.utils.CollectionUtils;
+import software.amazon.cloudformation.exceptions.CfnInvalidRequestException;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.Parameter;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Stack instances of a resource kept outside the template, see {@link ResourceModel#getManifestLocation()}. The
+ * manifest is a JSON document of sections, each an accounts x Regions rectangle with its parameter overrides:
+ * <pre>
+ * {"Sections": [{"Accounts": ["123456789012"], "Regions": ["us-east-1"], "ParameterOverrides": []}]}
+ * </pre>
+ * It is parsed as a token stream into compact sections, expanded into {@link StackInstance} only when flattened.
+ * Every section carries a content hash, so that sections unchanged between two manifests are left out of the diff.
+ * The version read is recorded in {@link ResourceModel#getManifestVersion()}, and later reads of the model, e.g. as
+ * the previous model of an Update or on Delete, are pinned to it. Parsed manifests are kept per location and version
+ */
+public class StackInstanceManifest {
+
+    public static final String S3_PREFIX = "s3://";
+
+    private static final String VERSION_ID_QUERY = "?versionId=";
+
+    /**
+     * Version ID S3 reports for objects of a bucket that never had versioning enabled
+     */
+    private static final String NULL_VERSION_ID = "null";
+
+    private static final Pattern ACCOUNT_PATTERN = Pattern.compile("^[0-9]{12}$");
+
+    private static final int CACHED_MANIFESTS = 16;
+
+    private static final int NOT_MODIFIED = 304;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Map<String, CachedManifest> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedManifest>(CACHED_MANIFESTS, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, CachedManifest> eldest) {
+                    return size() > CACHED_MANIFESTS;
+                }
+            });
+
+    @Getter
+    private final List<Section> sections;
+
+    private StackInstanceManifest(final List<Section> sections) {
+        this.sections = sections;
+    }
+
+    /**
+     * Validates that the model does not specify its stack instances both inline and through a manifest, and loads
+     * the manifest so that {@link #get(ResourceModel)} serves it for the rest of the invocation. A model that
+     * recorded a {@link ResourceModel#getManifestVersion()} reads that version, any other reads the current one and
+     * records it
+     *
+     * @param proxy {@link AmazonWebServicesClientProxy} to read S3 manifests with the caller credentials
+     * @param model {@link ResourceModel}, ignored if null
+     * @throws CfnInvalidRequestException if the model specifies both, a manifest with StackSetTargets, or an S3
+     *                                    manifest without version ID
+     */
+    public static void load(final AmazonWebServicesClientProxy proxy, final ResourceModel model) {
+        load(proxy.newProxy(ClientBuilder::getS3Client), model);
+    }
+
+    static void load(final ProxyClient<S3Client> proxyClient, final ResourceModel model) {
+        if (model == null) return;
+        if (model.getManifestLocation() == null) return;
+        if (model.getStackInstances() != null) {
+            throw new CfnInvalidRequestException("Only one of StackInstances or ManifestLocation should be specified");
+        }
+        if (!CollectionUtils.isNullOrEmpty(model.getStackSetTargets())) {
+            throw new CfnInvalidRequestException("ManifestLocation is only supported along with StackSetName");
+        }
+        model.setManifestVersion(load(proxyClient, model.getManifestLocation(), model.getManifestVersion()));
+    }
+
+    /**
+     * @param model {@link ResourceModel} whose manifest was loaded before, see
+     *              {@link #load(AmazonWebServicesClientProxy, ResourceModel)}
+     * @return {@link StackInstanceManifest} at the version recorded in the model
+     */
+    public static StackInstanceManifest get(final ResourceModel model) {
+        final CachedManifest cached = model.getManifestVersion() == null ? null :
+                CACHE.get(versionKey(model.getManifestLocation(), model.getManifestVersion()));
+        if (cached == null) {
+            throw new IllegalStateException(String.format("Manifest [%s] has not been loaded", model.getManifestLocation()));
+        }
+        return cached.getManifest();
+    }
+
+    /**
+     * @param previousModel previous {@link ResourceModel}
+     * @param desiredModel  desired {@link ResourceModel}
+     * @return hashes of the sections present in the manifests of both models, empty unless both use a manifest
+     */
+    public static Set<String> getUnchangedSections(final ResourceModel previousModel, final ResourceModel desiredModel) {
+        if (previousModel.getManifestLocation() == null || desiredModel.getManifestLocation() == null) {
+            return Collections.emptySet();
+        }
+        final Set<String> unchanged = get(previousModel).getSectionHashes();
+        unchanged.retainAll(get(desiredModel).getSectionHashes());
+        return unchanged;
+    }
+
+    /**
+     * @return content hashes of the sections
+     */
+    public Set<String> getSectionHashes() {
+        return sections.stream().map(Section::getHash).collect(Collectors.toCollection(HashSet::new));
+    }
+
+    /**
+     * @param skippedSections hashes of the sections to leave out
+     * @return {@link StackInstance} set of the other sections
+     * @throws CfnInvalidRequestException if a stack instance is listed twice
+     */
+    public Set<StackInstance> flatten(final Set<String> skippedSections) {
+        final Set<StackInstance> flatStacks = new HashSet<>();
+        for (final Section section : sections) {
+            if (skippedSections.contains(section.getHash())) continue;
+            for (final String region : section.getRegions()) {
+                for (final String account : section.getAccounts()) {
+                    final StackInstance stackInstance = StackInstance.builder()
+                            .region(region).deploymentTarget(account).parameters(section.getParameterOverrides())
+                            .build();
+                    if (!flatStacks.add(stackInstance)) {
+                        throw new CfnInvalidRequestException(
+                                String.format("Stack instance [%s,%s] is duplicated", account, region));
+                    }
+                }
+            }
+        }
+        return flatStacks;
+    }
+
+    /**
+     * Parses a manifest token by token, account lists are never materialized as a document tree
+     *
+     * @param inputStream manifest content
+     * @return {@link StackInstanceManifest}
+     * @throws IOException if the content is not readable JSON
+     * @throws CfnInvalidRequestException if the content is not a valid manifest
+     */
+    public static StackInstanceManifest parse(final InputStream inputStream) throws IOException {
+        final List<Section> sections = new ArrayList<>();
+        try (JsonParser parser = MAPPER.getFactory().createParser(inputStream)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                if (!"Sections".equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                expect(parser.currentToken(), JsonToken.START_ARRAY);
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    sections.add(parseSection(parser));
+                }
+            }
+        }
+        if (sections.isEmpty()) {
+            throw new CfnInvalidRequestException("Manifest should contain at least one section");
+        }
+        return new StackInstanceManifest(sections);
+    }
+
+    private static Section parseSection(final JsonParser parser) throws IOException {
+        final List<String> accounts = new ArrayList<>();
+        final List<String> regions = new ArrayList<>();
+        final Set<Parameter> parameterOverrides = new HashSet<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "Accounts":
+                    readStrings(parser, accounts);
+                    break;
+                case "Regions":
+                    readStrings(parser, regions);
+                    break;
+                case "ParameterOverrides":
+                    expect(parser.currentToken(), JsonToken.START_ARRAY);
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        parameterOverrides.add(MAPPER.readValue(parser, Parameter.class));
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (accounts.isEmpty() || regions.isEmpty()) {
+            throw new CfnInvalidRequestException("Every manifest section should specify Accounts and Regions");
+        }
+        for (final String account : accounts) {
+            if (!ACCOUNT_PATTERN.matcher(account).matches()) {
+                throw new CfnInvalidRequestException(String.format("Manifest account [%s] is not a 12-digit account ID", account));
+            }
+        }
+        return new Section(hash(accounts, regions, parameterOverrides), accounts, regions,
+                parameterOverrides.isEmpty() ? null : parameterOverrides);
+    }
+
+    private static void readStrings(final JsonParser parser, final List<String> values) throws IOException {
+        expect(parser.currentToken(), JsonToken.START_ARRAY);
+        while (parser.nextToken() == JsonToken.VALUE_STRING) {
+            values.add(parser.getText());
+        }
+        expect(parser.currentToken(), JsonToken.END_ARRAY);
+    }
+
+    private static void expect(final JsonToken actual, final JsonToken expected) {
+        if (actual != expected) {
+            throw new CfnInvalidRequestException(String.format("Manifest is malformed, expected %s but found %s", expected, actual));
+        }
+    }
+
+    /**
+     * Hash of the sorted accounts, Regions and parameter overrides, independent of the order in the manifest
+     */
+    private static String hash(final List<String> accounts, final List<String> regions, final Set<Parameter> parameterOverrides) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        new TreeSet<>(accounts).forEach(account -> update(digest, "a:" + account));
+        new TreeSet<>(regions).forEach(region -> update(digest, "r:" + region));
+        parameterOverrides.stream()
+                .map(parameter -> "p:" + parameter.getParameterKey() + "=" + parameter.getParameterValue())
+                .sorted()
+                .forEach(parameter -> update(digest, parameter));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+    }
+
+    private static void update(final MessageDigest digest, final String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    /**
+     * @param pinnedVersion version to read, null for the current one
+     * @return version read
+     */
+    private static String load(final ProxyClient<S3Client> proxyClient, final String location, final String pinnedVersion) {
+        if (pinnedVersion != null && CACHE.containsKey(versionKey(location, pinnedVersion))) return pinnedVersion;
+        if (!location.startsWith(S3_PREFIX)) {
+            throw new CfnInvalidRequestException(String.format("ManifestLocation [%s] should start with %s", location, S3_PREFIX));
+        }
+        try {
+            return loadObject(proxyClient, location, pinnedVersion);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads s3://bucket/key, optionally pinned with ?versionId=, at the pinned version if any, or else through a
+     * conditional GetObject on the ETag of the version read last. Objects without version ID are rejected, since
+     * the version deployed could not be read again
+     */
+    private static String loadObject(
+            final ProxyClient<S3Client> proxyClient,
+            final String location,
+            final String pinnedVersion) throws IOException {
+
+        final String path = location.substring(S3_PREFIX.length());
+        final int versionIndex = path.indexOf(VERSION_ID_QUERY);
+        final String bucketAndKey = versionIndex < 0 ? path : path.substring(0, versionIndex);
+        final int keyIndex = bucketAndKey.indexOf('/');
+        if (keyIndex <= 0 || keyIndex == bucketAndKey.length() - 1) {
+            throw new CfnInvalidRequestException(String.format("ManifestLocation [%s] should be s3://bucket/key", location));
+        }
+
+        final String versionId = pinnedVersion != null ? pinnedVersion :
+                versionIndex < 0 ? null : path.substring(versionIndex + VERSION_ID_QUERY.length());
+        final CachedManifest latest = versionId == null ? CACHE.get(location) : null;
+        final GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucketAndKey.substring(0, keyIndex))
+                .key(bucketAndKey.substring(keyIndex + 1))
+                .versionId(versionId)
+                .ifNoneMatch(latest == null ? null : latest.getETag())
+                .build();
+        try (ResponseInputStream<GetObjectResponse> object =
+                     proxyClient.injectCredentialsAndInvokeV2InputStream(request, proxyClient.client()::getObject)) {
+            final String readVersionId = object.response().versionId();
+            if (readVersionId == null || NULL_VERSION_ID.equals(readVersionId)) {
+                throw new CfnInvalidRequestException(String.format(
+                        "ManifestLocation [%s] should be in a bucket with versioning enabled", location));
+            }
+            final CachedManifest cached = new CachedManifest(object.response().eTag(), readVersionId, parse(object));
+            CACHE.put(versionKey(location, readVersionId), cached);
+            if (versionId == null) CACHE.put(location, cached);
+            return readVersionId;
+        } catch (final S3Exception e) {
+            if (e.statusCode() != NOT_MODIFIED || latest == null) throw e;
+            CACHE.put(versionKey(location, latest.getVersion()), latest);
+            return latest.getVersion();
+        }
+    }
+
+    private static String versionKey(final String location, final String version) {
+        return location + "#" + version;
+    }
+
+    /**
+     * Accounts x Regions rectangle of a manifest, with its parameter overrides
+     */
+    @Value
+    public static class Section {
+        String hash;
+        List<String> accounts;
+        List<String> regions;
+        Set<Parameter> parameterOverrides;
+    }
+
+    @Value
+    private static class CachedManifest {
+        String eTag;
+        String version;
+        StackInstanceManifest manifest;
+    }
+}
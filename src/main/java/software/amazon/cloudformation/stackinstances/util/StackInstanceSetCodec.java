@@ -0,0 +1,247 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact encoding of {@link StackInstance} sets carried in the callback context between handler invocations.
+ * A set is written as a sorted deployment target dictionary, a sorted Region dictionary and a bitmap over
+ * targets x Regions, deflated when that is smaller, as a Base64 string. 12-digit account IDs are stored as
+ * delta-encoded numbers. {@link StackInstance#getParameters()} is not encoded, overrides are resolved from the model
+ *
+ * <p>Consecutive accounts cost next to nothing, 50,000 instances over 2,500 consecutive accounts encode to ~2 KB.
+ * Random 12-digit accounts carry ~30 bits each and do not compress, so 2,500 random accounts x 20 Regions encode to
+ * ~16 KB. The floor for them is ~12.5 KB once Base64 is added.
+ */
+public final class StackInstanceSetCodec {
+
+    private static final Pattern ACCOUNT_PATTERN = Pattern.compile("^[0-9]{12}$");
+
+    private static final int DEFLATED = 1;
+
+    private static final int NUMERIC_TARGETS = 2;
+
+    private StackInstanceSetCodec() {
+    }
+
+    /**
+     * Encodes a {@link StackInstance} set
+     *
+     * @param stackInstances {@link StackInstance} set
+     * @return Base64 encoded set
+     */
+    public static String encode(final Set<StackInstance> stackInstances) {
+        final List<String> targets = stackInstances.stream()
+                .map(StackInstance::getDeploymentTarget).distinct().sorted().collect(Collectors.toList());
+        final List<String> regions = stackInstances.stream()
+                .map(StackInstance::getRegion).distinct().sorted().collect(Collectors.toList());
+        final boolean numericTargets = targets.stream().allMatch(target -> ACCOUNT_PATTERN.matcher(target).matches());
+
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        writeVarLong(payload, targets.size());
+        long previous = 0L;
+        for (final String target : targets) {
+            if (numericTargets) {
+                final long account = Long.parseLong(target);
+                writeVarLong(payload, account - previous);
+                previous = account;
+            } else {
+                writeString(payload, target);
+            }
+        }
+        writeVarLong(payload, regions.size());
+        regions.forEach(region -> writeString(payload, region));
+
+        final Map<String, Integer> targetIndex = index(targets);
+        final Map<String, Integer> regionIndex = index(regions);
+        final BitSet bitmap = new BitSet(targets.size() * regions.size());
+        for (final StackInstance stackInstance : stackInstances) {
+            bitmap.set(targetIndex.get(stackInstance.getDeploymentTarget()) * regions.size()
+                    + regionIndex.get(stackInstance.getRegion()));
+        }
+        final byte[] bitmapBytes = Arrays.copyOf(bitmap.toByteArray(), (targets.size() * regions.size() + 7) / 8);
+        payload.write(bitmapBytes, 0, bitmapBytes.length);
+
+        final byte[] raw = payload.toByteArray();
+        final byte[] deflated = deflate(raw);
+        final boolean useDeflated = deflated.length < raw.length;
+        final byte[] body = useDeflated ? deflated : raw;
+
+        final byte[] encoded = new byte[body.length + 1];
+        encoded[0] = (byte) ((useDeflated ? DEFLATED : 0) | (numericTargets ? NUMERIC_TARGETS : 0));
+        System.arraycopy(body, 0, encoded, 1, body.length);
+        return Base64.getEncoder().encodeToString(encoded);
+    }
+
+    /**
+     * Decodes a {@link StackInstance} set encoded by {@link #encode}
+     *
+     * @param encoded Base64 encoded set
+     * @return {@link StackInstance} set
+     */
+    public static Set<StackInstance> decode(final String encoded) {
+        final byte[] bytes = Base64.getDecoder().decode(encoded);
+        final int flags = bytes[0];
+        final byte[] raw = (flags & DEFLATED) != 0 ?
+                inflate(Arrays.copyOfRange(bytes, 1, bytes.length)) : Arrays.copyOfRange(bytes, 1, bytes.length);
+
+        try (DataInputStream payload = new DataInputStream(new ByteArrayInputStream(raw))) {
+            final int targetCount = (int) readVarLong(payload);
+            final List<String> targets = new ArrayList<>(targetCount);
+            long previous = 0L;
+            for (int i = 0; i < targetCount; i++) {
+                if ((flags & NUMERIC_TARGETS) != 0) {
+                    previous += readVarLong(payload);
+                    targets.add(String.format("%012d", previous));
+                } else {
+                    targets.add(readString(payload));
+                }
+            }
+            final int regionCount = (int) readVarLong(payload);
+            final List<String> regions = new ArrayList<>(regionCount);
+            for (int i = 0; i < regionCount; i++) {
+                regions.add(readString(payload));
+            }
+
+            final byte[] bitmapBytes = new byte[(targetCount * regionCount + 7) / 8];
+            payload.readFully(bitmapBytes);
+            final BitSet bitmap = BitSet.valueOf(bitmapBytes);
+
+            final Set<StackInstance> stackInstances = new HashSet<>();
+            for (int bit = bitmap.nextSetBit(0); bit >= 0; bit = bitmap.nextSetBit(bit + 1)) {
+                stackInstances.add(StackInstance.builder()
+                        .deploymentTarget(targets.get(bit / regionCount))
+                        .region(regions.get(bit % regionCount))
+                        .build());
+            }
+            return stackInstances;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, Integer> index(final List<String> values) {
+        final Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            index.put(values.get(i), i);
+        }
+        return index;
+    }
+
+    private static void writeVarLong(final ByteArrayOutputStream out, final long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    private static long readVarLong(final DataInputStream in) throws IOException {
+        long value = 0L;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeString(final ByteArrayOutputStream out, final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] deflate(final byte[] raw) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION))) {
+            deflater.write(raw);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(final byte[] deflated) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InflaterInputStream inflater = new InflaterInputStream(new ByteArrayInputStream(deflated))) {
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inflater.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Jackson serializer writing a {@link StackInstance} set with {@link #encode}
+     */
+    public static class Serializer extends JsonSerializer<Set<StackInstance>> {
+
+        @Override
+        public void serialize(
+                final Set<StackInstance> stackInstances,
+                final JsonGenerator generator,
+                final SerializerProvider provider) throws IOException {
+            generator.writeString(encode(stackInstances));
+        }
+    }
+
+    /**
+     * Jackson deserializer reading a {@link StackInstance} set written by {@link Serializer}
+     */
+    public static class Deserializer extends JsonDeserializer<Set<StackInstance>> {
+
+        @Override
+        public Set<StackInstance> deserialize(
+                final JsonParser parser,
+                final DeserializationContext context) throws IOException {
+            return decode(parser.getValueAsString());
+        }
+    }
+}
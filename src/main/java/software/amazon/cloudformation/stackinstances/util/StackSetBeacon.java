@@ -0,0 +1,188 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Shared view of the operation running on each StackSet, so that contenders waiting for a StackSet do not all poll
+ * CloudFormation. Resources publish the state of their own operations whenever they poll them. When the published
+ * state is stale, one contender is elected through a conditional write to poll for everyone, the others keep
+ * waiting on the {@link Signal}. Kept in a {@link LeaseStore} configured through {@value #BEACON_STORE_ENV}, which must
+ * be shared by every execution environment: contenders in other environments would never see a local signal
+ */
+public class StackSetBeacon {
+
+    public static final String BEACON_STORE_ENV = "STACK_INSTANCES_BEACON_STORE";
+
+    private static final String KEY_PREFIX = "stackset-beacon::";
+
+    static final Duration MIN_POLL_INTERVAL = Duration.ofSeconds(10L);
+
+    static final Duration MAX_POLL_INTERVAL = Duration.ofSeconds(120L);
+
+    /**
+     * Share of the elapsed time of a running operation it is expected to keep running for
+     */
+    private static final int ELAPSED_FRACTION = 4;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final LeaseStore store;
+
+    private final Clock clock;
+
+    public StackSetBeacon(final LeaseStore store, final Clock clock) {
+        this.store = store;
+        this.clock = clock;
+    }
+
+    /**
+     * Builds the beacon configured through {@value #BEACON_STORE_ENV}: "file:&lt;directory&gt;" for a
+     * {@link FileLeaseStore} every execution environment mounts, unset to disable the beacon
+     *
+     * @throws IllegalArgumentException if the configured store is not shared between execution environments
+     * @return {@link StackSetBeacon}
+     */
+    public static StackSetBeacon fromEnvironment() {
+        return new StackSetBeacon(LeaseStore.requireShared(BEACON_STORE_ENV,
+                LeaseStore.fromConfiguration(System.getenv(BEACON_STORE_ENV))), Clock.systemUTC());
+    }
+
+    public boolean isEnabled() {
+        return store != null;
+    }
+
+    /**
+     * @param stackSetKey  {@link StackSetKey} of the StackSet
+     * @return the published {@link Signal}, null if none was published yet
+     */
+    public Signal read(final String stackSetKey) {
+        final LeaseStore.VersionedValue current = store.get(KEY_PREFIX + stackSetKey);
+        return current == null ? null : read(current.getValue());
+    }
+
+    /**
+     * Elects the contender to poll the StackSet, unless the signal is fresh or another poller was elected within
+     * {@link #MIN_POLL_INTERVAL}
+     *
+     * @param stackSetKey  {@link StackSetKey} of the StackSet
+     * @param pollerId     contender identifier
+     * @return true if the contender should poll and {@link #publish} the result
+     */
+    public boolean elect(final String stackSetKey, final String pollerId) {
+        final long now = clock.millis();
+        final LeaseStore.VersionedValue current = store.get(KEY_PREFIX + stackSetKey);
+        final Signal signal = current == null ? new Signal() : read(current.getValue());
+        if (signal.getPollerId() != null && now < signal.getPollerLeaseUntil()) return pollerId.equals(signal.getPollerId());
+
+        signal.setPollerId(pollerId);
+        signal.setPollerLeaseUntil(now + MIN_POLL_INTERVAL.toMillis());
+        return store.compareAndSet(KEY_PREFIX + stackSetKey, current == null ? 0 : current.getVersion(), write(signal));
+    }
+
+    /**
+     * Publishes the operation running on the StackSet, or that none is running. A running operation is expected to
+     * keep running for a quarter of its elapsed time, bounded by {@link #MIN_POLL_INTERVAL} and
+     * {@link #MAX_POLL_INTERVAL}
+     *
+     * @param stackSetKey  {@link StackSetKey} of the StackSet
+     * @param operationId  running operation ID, null if the StackSet is free
+     * @param startedAt    creation time of the running operation, null if unknown
+     * @return the published {@link Signal}
+     */
+    public Signal publish(final String stackSetKey, final String operationId, final Instant startedAt) {
+        final long now = clock.millis();
+        final long elapsed = startedAt == null ? 0 : Math.max(0, now - startedAt.toEpochMilli());
+        final Signal signal = new Signal();
+        signal.setOperationId(operationId);
+        signal.setUpdatedAt(now);
+        signal.setExpectedFreeAt(operationId == null ? now : now + Math.max(MIN_POLL_INTERVAL.toMillis(),
+                Math.min(MAX_POLL_INTERVAL.toMillis(), elapsed / ELAPSED_FRACTION)));
+
+        while (true) {
+            final LeaseStore.VersionedValue current = store.get(KEY_PREFIX + stackSetKey);
+            if (current != null && read(current.getValue()).getUpdatedAt() > now) return read(current.getValue());
+            if (store.compareAndSet(KEY_PREFIX + stackSetKey, current == null ? 0 : current.getVersion(), write(signal))) {
+                return signal;
+            }
+        }
+    }
+
+    /**
+     * @param signal {@link Signal}, may be null
+     * @return true if the signal still describes the StackSet: a running operation until its expected end, a free
+     * StackSet for {@link #MIN_POLL_INTERVAL}
+     */
+    public boolean isFresh(final Signal signal) {
+        if (signal == null || signal.getUpdatedAt() == 0) return false;
+        final long now = clock.millis();
+        return signal.isBusy() ? now < signal.getExpectedFreeAt() : now < signal.getUpdatedAt() + MIN_POLL_INTERVAL.toMillis();
+    }
+
+    /**
+     * @param signal published {@link Signal}
+     * @return time until the running operation is expected to end, negative once overdue
+     */
+    public Duration untilFree(final Signal signal) {
+        return Duration.ofMillis(signal.getExpectedFreeAt() - clock.millis());
+    }
+
+    private static Signal read(final String value) {
+        try {
+            return MAPPER.readValue(value, Signal.class);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String write(final Signal signal) {
+        try {
+            return MAPPER.writeValueAsString(signal);
+        } catch (final JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Signal {
+        /**
+         * Running operation, null if the StackSet was free when last polled
+         */
+        private String operationId;
+        private long updatedAt;
+        private long expectedFreeAt;
+        private String pollerId;
+        private long pollerLeaseUntil;
+
+        @JsonIgnore
+        public boolean isBusy() {
+            return operationId != null;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperation;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationSummary;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.CallbackContext;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+/**
+ * Coordinates the resources working on the same StackSet through the {@link StackSetLeaseQueue} and the
+ * {@link StackSetBeacon}. StackSets using managed execution are left to CloudFormation, which queues conflicting
+ * operations server-side
+ */
+public final class StackSetCoordinator {
+
+    /**
+     * Callback delay of contenders waiting while another contender polls for the {@link StackSetBeacon}
+     */
+    static final int BEACON_FOLLOWER_DELAY_SECONDS = 10;
+
+    private static final StackSetLeaseQueue LEASE_QUEUE = StackSetLeaseQueue.fromEnvironment();
+
+    private static final StackSetBeacon BEACON = StackSetBeacon.fromEnvironment();
+
+    private StackSetCoordinator() {
+    }
+
+    /**
+     * @return true if the {@link StackSetLeaseQueue} is configured
+     */
+    public static boolean isLeaseQueueEnabled() {
+        return LEASE_QUEUE.isEnabled();
+    }
+
+    /**
+     * Takes or renews the resource's ticket in the {@link StackSetLeaseQueue} of the StackSet. The ticket is the
+     * {@link ResourceModel#getInstanceId()}
+     *
+     * @param model           {@link ResourceModel}
+     * @param callbackContext {@link CallbackContext} with the resolved execution paths
+     * @param stackSetName    StackSet name
+     * @param logger          {@link Logger}
+     * @return true if the resource holds the lease
+     */
+    public static boolean isLeaseHeld(
+            final ResourceModel model,
+            final CallbackContext callbackContext,
+            final String stackSetName,
+            final Logger logger) {
+
+        // Managed execution queues conflicting operations server-side
+        if (model.getInstanceId() == null || Boolean.TRUE.equals(callbackContext.getManagedExecution().get(stackSetName))) return true;
+        final int ahead = LEASE_QUEUE.acquire(StackSetKey.of(model, stackSetName), model.getInstanceId());
+        if (ahead > 0) {
+            logger.log(String.format("StackSet [%s] lease queue has %d tickets ahead of [%s]",
+                    stackSetName, ahead, model.getInstanceId()));
+        }
+        return ahead == 0;
+    }
+
+    /**
+     * Releases the lease of the resource on the StackSet, if it took one
+     *
+     * @param model        {@link ResourceModel}
+     * @param stackSetName StackSet name
+     */
+    public static void releaseLease(final ResourceModel model, final String stackSetName) {
+        if (model.getInstanceId() != null) {
+            LEASE_QUEUE.release(StackSetKey.of(model, stackSetName), model.getInstanceId());
+        }
+    }
+
+    /**
+     * Waits on the {@link StackSetBeacon} until no other operation runs on the StackSet, once per StackSet: after
+     * the beacon let the resource through, later operations of the resource follow its own operations and are
+     * not gated again, see {@link CallbackContext#getBeaconPassedStackSets()}
+     *
+     * @param proxyClient     the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model           {@link ResourceModel}
+     * @param callbackContext {@link CallbackContext} with the resolved execution paths
+     * @param stackSetName    StackSet name
+     * @param logger          {@link Logger}
+     * @return seconds until the running operation is expected to end, 0 if the resource may submit
+     */
+    public static int getBeaconDelaySeconds(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final CallbackContext callbackContext,
+            final String stackSetName,
+            final Logger logger) {
+        return getBeaconDelaySeconds(BEACON, proxyClient, model, callbackContext, stackSetName, logger);
+    }
+
+    static int getBeaconDelaySeconds(
+            final StackSetBeacon beacon,
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final CallbackContext callbackContext,
+            final String stackSetName,
+            final Logger logger) {
+
+        if (callbackContext.getBeaconPassedStackSets().contains(stackSetName)) return 0;
+        final int delaySeconds = readBeacon(beacon, proxyClient, model, callbackContext, stackSetName, logger);
+        if (delaySeconds == 0) callbackContext.getBeaconPassedStackSets().add(stackSetName);
+        return delaySeconds;
+    }
+
+    /**
+     * Reads the {@link StackSetBeacon} of the StackSet, polling CloudFormation for all contenders when elected
+     */
+    private static int readBeacon(
+            final StackSetBeacon beacon,
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final CallbackContext callbackContext,
+            final String stackSetName,
+            final Logger logger) {
+
+        if (!beacon.isEnabled() || model.getInstanceId() == null
+                || Boolean.TRUE.equals(callbackContext.getManagedExecution().get(stackSetName))) return 0;
+
+        final String stackSetKey = StackSetKey.of(model, stackSetName);
+        StackSetBeacon.Signal signal = beacon.read(stackSetKey);
+        if (!beacon.isFresh(signal)) {
+            if (!beacon.elect(stackSetKey, model.getInstanceId())) return BEACON_FOLLOWER_DELAY_SECONDS;
+            final StackSetOperationSummary running = StackSetOperations.findRunning(proxyClient, model, stackSetName);
+            signal = beacon.publish(stackSetKey, running == null ? null : running.operationId(),
+                    running == null ? null : running.creationTimestamp());
+        }
+        if (!signal.isBusy()) return 0;
+
+        final long delaySeconds = Math.max(BEACON_FOLLOWER_DELAY_SECONDS, beacon.untilFree(signal).getSeconds());
+        logger.log(String.format("StackSet [%s] beacon reports operation [%s] running, waiting %d seconds",
+                stackSetName, signal.getOperationId(), delaySeconds));
+        return (int) delaySeconds;
+    }
+
+    /**
+     * Publishes the state of an operation the resource polled anyway, so that contenders read it from the
+     * {@link StackSetBeacon} instead of polling
+     *
+     * @param model        {@link ResourceModel} addressing the StackSet
+     * @param stackSetName StackSet name
+     * @param operation    {@link StackSetOperation}, null once the StackSet is known to be free
+     */
+    public static void publishOperationState(
+            final ResourceModel model,
+            final String stackSetName,
+            final StackSetOperation operation) {
+
+        if (!BEACON.isEnabled()) return;
+        final boolean running = StackSetOperations.isInFlight(operation);
+        BEACON.publish(StackSetKey.of(model, stackSetName), running ? operation.operationId() : null, running ? operation.creationTimestamp() : null);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+/**
+ * Key of a StackSet in the stores shared between resources. StackSets are regional and CallAs addresses them as the
+ * management account or as a delegated administrator, so the name alone does not tell two StackSets apart
+ */
+public final class StackSetKey {
+
+    /**
+     * Region of the function, the Region a model without AdministrationRegion administers its StackSets in
+     */
+    private static final String REGION_ENV = "AWS_REGION";
+
+    private static final String DEFAULT_CALL_AS = "SELF";
+
+    private StackSetKey() {
+    }
+
+    /**
+     * @param model        {@link ResourceModel} with the AdministrationRegion and CallAs of the StackSet
+     * @param stackSetName StackSet name
+     * @return Region, CallAs and StackSet name joined by "::"
+     */
+    public static String of(final ResourceModel model, final String stackSetName) {
+        final String region = model.getAdministrationRegion() != null ?
+                model.getAdministrationRegion() : System.getenv(REGION_ENV);
+        final String callAs = model.getCallAs() != null ? model.getCallAs() : DEFAULT_CALL_AS;
+        return region + "::" + callAs + "::" + stackSetName;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lease-based ticket queue per StackSet. Contenders take a ticket on first sight and hold their place while they
+ * keep coming back, the head of the queue gets the lease and keeps it until released or not renewed in time.
+ * Tickets are served in arrival order, so a contender that waited longest cannot lose to a newcomer. Every change is
+ * a conditional write to the {@link LeaseStore}, retried on conflict. The store must be shared by every execution
+ * environment, a store local to one of them would grant each environment its own lease
+ */
+public class StackSetLeaseQueue {
+
+    public static final String LEASE_STORE_ENV = "STACK_INSTANCES_LEASE_STORE";
+
+    private static final String KEY_PREFIX = "stackset-lease::";
+
+    /**
+     * Waiting tickets are renewed on every callback, the holder on every stabilization check as well
+     */
+    private static final Duration TICKET_TIMEOUT = Duration.ofMinutes(5L);
+
+    private static final Duration LEASE_TIMEOUT = Duration.ofMinutes(20L);
+
+    /**
+     * Longest wait between two renewals of a held lease, well within {@link #LEASE_TIMEOUT}
+     */
+    public static final Duration RENEWAL_INTERVAL = Duration.ofMinutes(5L);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final LeaseStore store;
+
+    private final Clock clock;
+
+    public StackSetLeaseQueue(final LeaseStore store, final Clock clock) {
+        this.store = store;
+        this.clock = clock;
+    }
+
+    /**
+     * Builds the queue configured through {@value #LEASE_STORE_ENV}: "file:&lt;directory&gt;" for a
+     * {@link FileLeaseStore} every execution environment mounts, unset to disable the queue
+     *
+     * @throws IllegalArgumentException if the configured store is not shared between execution environments
+     * @return {@link StackSetLeaseQueue}
+     */
+    public static StackSetLeaseQueue fromEnvironment() {
+        return new StackSetLeaseQueue(requireShared(LeaseStore.fromConfiguration(System.getenv(LEASE_STORE_ENV))),
+                Clock.systemUTC());
+    }
+
+    /**
+     * @param store {@link LeaseStore}, null if unset
+     * @throws IllegalArgumentException if the store is local to one execution environment
+     * @return the store
+     */
+    static LeaseStore requireShared(final LeaseStore store) {
+        return LeaseStore.requireShared(LEASE_STORE_ENV, store);
+    }
+
+    public boolean isEnabled() {
+        return store != null;
+    }
+
+    /**
+     * Takes a ticket if the contender has none yet, renews it otherwise, and grants the lease once the ticket is
+     * at the head of the queue
+     *
+     * @param stackSetKey  {@link StackSetKey} of the StackSet
+     * @param ticketId     contender identifier, stable across invocations
+     * @return number of tickets ahead, 0 once the contender holds the lease
+     */
+    public int acquire(final String stackSetKey, final String ticketId) {
+        if (!isEnabled()) return 0;
+        while (true) {
+            final long now = clock.millis();
+            final LeaseStore.VersionedValue current = store.get(KEY_PREFIX + stackSetKey);
+            final QueueState state = current == null ? new QueueState() : read(current.getValue());
+            expire(state, now);
+
+            Ticket ticket = state.findTicket(ticketId);
+            if (ticket == null) {
+                ticket = new Ticket(ticketId, state.getNextSequence(), now);
+                state.setNextSequence(state.getNextSequence() + 1);
+                state.getTickets().add(ticket);
+            }
+            ticket.setLastSeen(now);
+
+            final int ahead = countAhead(state, ticket);
+            if (ahead == 0 && (state.getHolder() == null || ticketId.equals(state.getHolder()))) {
+                state.setHolder(ticketId);
+                state.setLeaseExpiry(now + LEASE_TIMEOUT.toMillis());
+            }
+            if (store.compareAndSet(KEY_PREFIX + stackSetKey, current == null ? 0 : current.getVersion(), write(state))) {
+                return ticketId.equals(state.getHolder()) ? 0 : Math.max(ahead, 1);
+            }
+        }
+    }
+
+    /**
+     * Reads the queue without taking a ticket, for work that must not run next to a leased operation but cannot
+     * wait in line for it
+     *
+     * @param stackSetKey  {@link StackSetKey} of the StackSet
+     * @return true if the queue is disabled, or nobody holds the lease or waits for it
+     */
+    public boolean isIdle(final String stackSetKey) {
+        if (!isEnabled()) return true;
+        final LeaseStore.VersionedValue current = store.get(KEY_PREFIX + stackSetKey);
+        if (current == null) return true;
+        final QueueState state = read(current.getValue());
+        expire(state, clock.millis());
+        return state.getHolder() == null && state.getTickets().isEmpty();
+    }
+
+    /**
+     * Gives the lease and the ticket up, the next ticket in line gets the lease on its next attempt
+     *
+     * @param stackSetKey  {@link StackSetKey} of the StackSet
+     * @param ticketId     contender identifier
+     */
+    public void release(final String stackSetKey, final String ticketId) {
+        if (!isEnabled()) return;
+        while (true) {
+            final LeaseStore.VersionedValue current = store.get(KEY_PREFIX + stackSetKey);
+            if (current == null) return;
+            final QueueState state = read(current.getValue());
+            final Ticket ticket = state.findTicket(ticketId);
+            if (ticket == null && !ticketId.equals(state.getHolder())) return;
+
+            state.getTickets().remove(ticket);
+            if (ticketId.equals(state.getHolder())) {
+                state.setHolder(null);
+                state.setLeaseExpiry(0L);
+            }
+            if (store.compareAndSet(KEY_PREFIX + stackSetKey, current.getVersion(), write(state))) return;
+        }
+    }
+
+    private static void expire(final QueueState state, final long now) {
+        if (state.getHolder() != null && state.getLeaseExpiry() < now) {
+            state.getTickets().remove(state.findTicket(state.getHolder()));
+            state.setHolder(null);
+            state.setLeaseExpiry(0L);
+        }
+        state.getTickets().removeIf(ticket -> !ticket.getTicketId().equals(state.getHolder())
+                && ticket.getLastSeen() + TICKET_TIMEOUT.toMillis() < now);
+    }
+
+    private static int countAhead(final QueueState state, final Ticket ticket) {
+        int ahead = 0;
+        for (final Ticket other : state.getTickets()) {
+            if (other != ticket && other.getSequence() < ticket.getSequence()) ahead++;
+        }
+        return ahead;
+    }
+
+    private static QueueState read(final String value) {
+        try {
+            return MAPPER.readValue(value, QueueState.class);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String write(final QueueState state) {
+        try {
+            return MAPPER.writeValueAsString(state);
+        } catch (final JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    static class QueueState {
+        private long nextSequence;
+        private String holder;
+        private long leaseExpiry;
+        private List<Ticket> tickets = new ArrayList<>();
+
+        Ticket findTicket(final String ticketId) {
+            return tickets.stream().filter(ticket -> ticket.getTicketId().equals(ticketId)).findFirst().orElse(null);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Ticket {
+        private String ticketId;
+        private long sequence;
+        private long lastSeen;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.AccountFilterType;
+import software.amazon.awssdk.services.cloudformation.model.ListStackInstancesResponse;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationResultsResponse;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceSummary;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperation;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultSummary;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationSummary;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static software.amazon.cloudformation.stackinstances.translator.RequestTranslator.*;
+
+/**
+ * StackSet operation and stack instance lookups shared by the handlers and their collaborators
+ */
+public final class StackSetOperations {
+
+    private StackSetOperations() {
+    }
+
+    /**
+     * @param proxyClient  the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model        {@link ResourceModel}
+     * @param stackSetName StackSet name
+     * @param operationId  Operation ID
+     * @return {@link StackSetOperation}
+     */
+    public static StackSetOperation describe(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName,
+            final String operationId) {
+
+        return proxyClient.injectCredentialsAndInvokeV2(
+                describeStackSetOperationRequest(model, stackSetName, operationId),
+                proxyClient.client()::describeStackSetOperation).stackSetOperation();
+    }
+
+    /**
+     * @param status {@link StackSetOperationStatus}
+     * @return true if the operation succeeded, failed or stopped
+     */
+    public static boolean isEnded(final StackSetOperationStatus status) {
+        return StackSetOperationStatus.SUCCEEDED == status || StackSetOperationStatus.FAILED == status
+                || StackSetOperationStatus.STOPPED == status;
+    }
+
+    /**
+     * @param operation {@link StackSetOperation}, may be null
+     * @return true if the operation is running, queued or stopping
+     */
+    public static boolean isInFlight(final StackSetOperation operation) {
+        return operation != null && (StackSetOperationStatus.RUNNING == operation.status()
+                || StackSetOperationStatus.QUEUED == operation.status()
+                || StackSetOperationStatus.STOPPING == operation.status());
+    }
+
+    /**
+     * @param proxyClient  the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model        {@link ResourceModel}
+     * @param stackSetName StackSet name
+     * @return the running, queued or stopping operation of the StackSet, null if none
+     */
+    public static StackSetOperationSummary findRunning(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName) {
+
+        // In-flight operations are the most recent ones, the first page is enough
+        return proxyClient.injectCredentialsAndInvokeV2(
+                listStackSetOperationsRequest(model, stackSetName),
+                proxyClient.client()::listStackSetOperations).summaries().stream()
+                .filter(operation -> StackSetOperationStatus.RUNNING == operation.status()
+                        || StackSetOperationStatus.QUEUED == operation.status()
+                        || StackSetOperationStatus.STOPPING == operation.status())
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Lists the results of an operation, one per account and Region
+     *
+     * @param proxyClient  the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model        {@link ResourceModel}
+     * @param stackSetName StackSet name
+     * @param operationId  Operation ID
+     * @return {@link StackSetOperationResultSummary} list
+     */
+    public static List<StackSetOperationResultSummary> listResults(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName,
+            final String operationId) {
+
+        final List<StackSetOperationResultSummary> results = new ArrayList<>();
+        String nextToken = null;
+        do {
+            final ListStackSetOperationResultsResponse response = proxyClient.injectCredentialsAndInvokeV2(
+                    listStackSetOperationResultsRequest(model, nextToken, stackSetName, operationId),
+                    proxyClient.client()::listStackSetOperationResults);
+            results.addAll(response.summaries());
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+        return results;
+    }
+
+    /**
+     * Lists the account stack instances an operation works on, leaving out the failed and cancelled ones
+     *
+     * @param proxyClient  the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model        {@link ResourceModel}
+     * @param stackSetName StackSet name
+     * @param operationId  Operation ID
+     * @return {@link StackInstance} set
+     */
+    public static Set<StackInstance> listTargets(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName,
+            final String operationId) {
+
+        return listResults(proxyClient, model, stackSetName, operationId).stream()
+                .filter(summary -> StackSetOperationResultStatus.FAILED != summary.status()
+                        && StackSetOperationResultStatus.CANCELLED != summary.status())
+                .map(summary -> StackInstance.builder()
+                        .region(summary.region()).deploymentTarget(summary.account()).build())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Lists the stack instance summaries of a StackSet, narrowed to the account when all given stack instances
+     * belong to a single account
+     *
+     * @param proxyClient    the aws service client {@link ProxyClient<CloudFormationClient>} to make the call
+     * @param model          {@link ResourceModel}
+     * @param stackSetName   StackSet name
+     * @param stackInstances {@link StackInstance} set of interest
+     * @return {@link StackInstanceSummary} list
+     */
+    public static List<StackInstanceSummary> listStackInstanceSummaries(
+            final ProxyClient<CloudFormationClient> proxyClient,
+            final ResourceModel model,
+            final String stackSetName,
+            final Set<StackInstance> stackInstances) {
+
+        final Set<String> accounts = stackInstances.stream()
+                .map(StackInstance::getDeploymentTarget).collect(Collectors.toSet());
+        final boolean singleAccount = accounts.size() == 1
+                && stackInstances.stream().noneMatch(StackInstance::targetsOrganizationalUnit);
+        final String account = singleAccount ? accounts.iterator().next() : null;
+        final List<StackInstanceSummary> summaries = new ArrayList<>();
+
+        String nextToken = null;
+        do {
+            final ListStackInstancesResponse response = proxyClient.injectCredentialsAndInvokeV2(
+                    listStackInstancesRequest(model, nextToken, stackSetName, account),
+                    proxyClient.client()::listStackInstances);
+            summaries.addAll(response.summaries());
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+        return summaries;
+    }
+
+    /**
+     * Matches a {@link StackInstanceSummary} with the account or OrganizationalUnitId target of the resource covering
+     * it, accounts a DIFFERENCE filter excludes are not covered
+     *
+     * @param summary {@link StackInstanceSummary}
+     * @param targets {@link StackInstance} targets of the resource
+     * @return account {@link StackInstance} of the summary, null if the resource does not cover it
+     */
+    public static StackInstance resolveExistingStackInstance(
+            final StackInstanceSummary summary,
+            final Map<StackInstance, StackInstance> targets) {
+
+        final StackInstance existing = StackInstance.builder()
+                .region(summary.region()).deploymentTarget(summary.account()).build();
+        if (targets.containsKey(existing)) {
+            existing.setOrganizationalUnitIds(targets.get(existing).getOrganizationalUnitIds());
+            existing.setAccountFilterType(targets.get(existing).getAccountFilterType());
+            return existing;
+        }
+        if (summary.organizationalUnitId() == null) return null;
+
+        final StackInstance organizationalUnit = targets.get(StackInstance.builder()
+                .region(summary.region()).deploymentTarget(summary.organizationalUnitId()).build());
+        if (organizationalUnit == null || (organizationalUnit.getExcludedAccounts() != null
+                && organizationalUnit.getExcludedAccounts().contains(summary.account()))) return null;
+        existing.setOrganizationalUnitIds(new HashSet<>(Collections.singletonList(summary.organizationalUnitId())));
+        existing.setAccountFilterType(AccountFilterType.INTERSECTION.toString());
+        return existing;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import lombok.Value;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pre-flight check of account targets before the StackSet is locked. Accounts the organization reports as SUSPENDED
+ * or PENDING_CLOSURE, and Regions that are not enabled in the target account, would only fail once the operation
+ * ran. The listings are cached per execution environment, so that checks after the first one take no API call.
+ * The account statuses take one listing of the organization, but account:ListRegions has no batch form, so a cold
+ * cache costs one call per target account. Failed lookups are cached for {@link #FAILURE_CACHE_TTL}, so that a denied
+ * or throttled account is not retried for every target of the check. A check takes a bounded number of lookups, it
+ * resumes at the first unchecked account on the next call.
+ * Accounts or Regions a source does not know about pass, as do OrganizationalUnitId targets
+ */
+public class TargetValidator {
+
+    public static final String ACCOUNT_SOURCE_ENV = "STACK_INSTANCES_ACCOUNT_SOURCE";
+
+    public static final String REGION_SOURCE_ENV = "STACK_INSTANCES_REGION_SOURCE";
+
+    static final Duration ACCOUNT_CACHE_TTL = Duration.ofMinutes(15L);
+
+    static final Duration REGION_CACHE_TTL = Duration.ofHours(1L);
+
+    static final Duration FAILURE_CACHE_TTL = Duration.ofMinutes(1L);
+
+    private static final String ACTIVE = "ACTIVE";
+
+    private final AccountSource accountSource;
+
+    private final RegionSource regionSource;
+
+    private final Clock clock;
+
+    /**
+     * True if the sources only check models opting in through
+     * {@link software.amazon.cloudformation.stackinstances.ResourceModel#getInvalidTargetAction()}
+     */
+    private final boolean optIn;
+
+    private volatile Listing<Map<String, String>> accountStatuses;
+
+    private final Map<String, Listing<Set<String>>> enabledRegions = new ConcurrentHashMap<>();
+
+    public TargetValidator(final AccountSource accountSource, final RegionSource regionSource, final Clock clock) {
+        this(accountSource, regionSource, clock, false);
+    }
+
+    public TargetValidator(
+            final AccountSource accountSource,
+            final RegionSource regionSource,
+            final Clock clock,
+            final boolean optIn) {
+        this.accountSource = accountSource;
+        this.regionSource = regionSource;
+        this.clock = clock;
+        this.optIn = optIn;
+    }
+
+    /**
+     * Builds the validator configured through {@value #ACCOUNT_SOURCE_ENV}: "organizations" for
+     * {@link OrganizationsAccountSource}, "file:&lt;path&gt;" for {@link FileTargetSource}, and
+     * {@value #REGION_SOURCE_ENV}: "account" for {@link AccountRegionSource}, "file:&lt;path&gt;" for
+     * {@link FileTargetSource}. An unset source skips its check. With neither set, as for a type registered with
+     * CloudFormation, models setting InvalidTargetAction are checked through {@link OrganizationsAccountSource} and
+     * {@link AccountRegionSource} with the caller credentials
+     *
+     * @return {@link TargetValidator}
+     */
+    public static TargetValidator fromEnvironment() {
+        final String accounts = System.getenv(ACCOUNT_SOURCE_ENV);
+        final String regions = System.getenv(REGION_SOURCE_ENV);
+        if ((accounts == null || accounts.isEmpty()) && (regions == null || regions.isEmpty())) {
+            return new TargetValidator(new OrganizationsAccountSource(), new AccountRegionSource(), Clock.systemUTC(), true);
+        }
+        return new TargetValidator(
+                accounts == null || accounts.isEmpty() ? null
+                        : accounts.startsWith(LeaseStore.FILE_STORE_PREFIX) ? fileSource(accounts) : new OrganizationsAccountSource(),
+                regions == null || regions.isEmpty() ? null
+                        : regions.startsWith(LeaseStore.FILE_STORE_PREFIX) ? fileSource(regions) : new AccountRegionSource(),
+                Clock.systemUTC());
+    }
+
+    private static FileTargetSource fileSource(final String configuration) {
+        return new FileTargetSource(Paths.get(configuration.substring(LeaseStore.FILE_STORE_PREFIX.length())));
+    }
+
+    /**
+     * @param invalidTargetAction {@link software.amazon.cloudformation.stackinstances.ResourceModel#getInvalidTargetAction()}
+     * @return true if the targets of the model are checked
+     */
+    public boolean isEnabled(final String invalidTargetAction) {
+        return (accountSource != null || regionSource != null) && (!optIn || invalidTargetAction != null);
+    }
+
+    /**
+     * Checks every account target, see {@link #validate(AmazonWebServicesClientProxy, Set, int, int)}
+     */
+    public Findings validate(final AmazonWebServicesClientProxy proxy, final Set<StackInstance> stackInstances) {
+        return validate(proxy, stackInstances, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Checks the account targets in account order, starting at an account index so that a check spread over
+     * several calls resumes where the previous call stopped
+     *
+     * @param proxy          {@link AmazonWebServicesClientProxy} to call the sources with the caller credentials
+     * @param stackInstances {@link StackInstance} set to check, the same on every call of a check
+     * @param resumeAt       index of the first account to check, in account order
+     * @param maxLookups     enabled Regions lookups allowed before stopping, cached listings take none
+     * @return {@link Findings} with the reason each invalid target of the checked accounts is rejected for
+     */
+    public Findings validate(
+            final AmazonWebServicesClientProxy proxy,
+            final Set<StackInstance> stackInstances,
+            final int resumeAt,
+            final int maxLookups) {
+
+        final Map<StackInstance, String> invalid = new LinkedHashMap<>();
+        final Set<String> unavailable = new HashSet<>();
+        final Map<String, List<StackInstance>> accounts = new TreeMap<>();
+        for (final StackInstance stackInstance : stackInstances) {
+            if (stackInstance.targetsOrganizationalUnit()) continue;
+            accounts.computeIfAbsent(stackInstance.getDeploymentTarget(), key -> new ArrayList<>()).add(stackInstance);
+        }
+
+        final Map<String, String> statuses = accountSource == null ? null : getAccountStatuses(proxy, unavailable);
+        int index = 0;
+        int lookups = 0;
+        for (final Map.Entry<String, List<StackInstance>> entry : accounts.entrySet()) {
+            if (index++ < resumeAt) continue;
+            final String account = entry.getKey();
+
+            final String status = statuses == null ? null : statuses.get(account);
+            if (status != null && !ACTIVE.equals(status)) {
+                entry.getValue().forEach(stackInstance ->
+                        invalid.put(stackInstance, String.format("account %s is %s", account, status)));
+                continue;
+            }
+            if (regionSource == null) continue;
+
+            if (!isCached(account)) {
+                if (lookups == maxLookups) return new Findings(invalid, unavailable, index - 1);
+                lookups++;
+            }
+            final Set<String> regions = getEnabledRegions(proxy, account, unavailable);
+            if (regions == null) continue;
+            for (final StackInstance stackInstance : entry.getValue()) {
+                if (!regions.contains(stackInstance.getRegion())) {
+                    invalid.put(stackInstance, String.format("Region %s is not enabled in account %s", stackInstance.getRegion(), account));
+                }
+            }
+        }
+        return new Findings(invalid, unavailable, null);
+    }
+
+    private boolean isCached(final String account) {
+        final Listing<Set<String>> listing = enabledRegions.get(account);
+        return listing != null && !listing.isExpired(clock);
+    }
+
+    private Map<String, String> getAccountStatuses(final AmazonWebServicesClientProxy proxy, final Set<String> unavailable) {
+        final Listing<Map<String, String>> cached = accountStatuses;
+        if (cached != null && !cached.isExpired(clock)) return cached.getValue();
+        try {
+            final Map<String, String> statuses = accountSource.listAccountStatuses(proxy);
+            accountStatuses = new Listing<>(statuses, null, clock.millis() + ACCOUNT_CACHE_TTL.toMillis());
+            return statuses;
+        } catch (final RuntimeException e) {
+            unavailable.add(String.format("account statuses (%s)", e.getMessage()));
+            return null;
+        }
+    }
+
+    private Set<String> getEnabledRegions(final AmazonWebServicesClientProxy proxy, final String account, final Set<String> unavailable) {
+        Listing<Set<String>> listing = enabledRegions.get(account);
+        if (listing == null || listing.isExpired(clock)) {
+            try {
+                // Unknown accounts, listed as null, are cached for as long as known ones
+                listing = new Listing<>(regionSource.listEnabledRegions(proxy, account), null,
+                        clock.millis() + REGION_CACHE_TTL.toMillis());
+            } catch (final RuntimeException e) {
+                listing = new Listing<>(null, e.getMessage(), clock.millis() + FAILURE_CACHE_TTL.toMillis());
+            }
+            enabledRegions.put(account, listing);
+        }
+        if (listing.getFailure() != null) {
+            unavailable.add(String.format("enabled Regions of %s (%s)", account, listing.getFailure()));
+        }
+        return listing.getValue();
+    }
+
+    /**
+     * Status of every account of the organization, e.g. ACTIVE, SUSPENDED or PENDING_CLOSURE
+     */
+    public interface AccountSource {
+
+        /**
+         * @param proxy {@link AmazonWebServicesClientProxy}
+         * @return account status by account ID
+         */
+        Map<String, String> listAccountStatuses(AmazonWebServicesClientProxy proxy);
+    }
+
+    /**
+     * Regions enabled in an account, opt-in Regions included once enabled
+     */
+    public interface RegionSource {
+
+        /**
+         * @param proxy   {@link AmazonWebServicesClientProxy}
+         * @param account account ID
+         * @return enabled Regions, null if the source cannot tell for the account
+         */
+        Set<String> listEnabledRegions(AmazonWebServicesClientProxy proxy, String account);
+    }
+
+    @Value
+    public static class Findings {
+
+        /**
+         * Rejected targets with the reason
+         */
+        Map<StackInstance, String> invalidTargets;
+
+        /**
+         * Listings that could not be loaded, their checks were skipped
+         */
+        Set<String> unavailableSources;
+
+        /**
+         * Index of the first account left unchecked once the lookups ran out, null if every account was checked
+         */
+        Integer resumeAt;
+    }
+
+    @Value
+    private static class Listing<T> {
+        T value;
+
+        /**
+         * Message of the failed lookup, null if the value was listed
+         */
+        String failure;
+
+        long expiresAt;
+
+        boolean isExpired(final Clock clock) {
+            return clock.millis() >= expiresAt;
+        }
+    }
+}
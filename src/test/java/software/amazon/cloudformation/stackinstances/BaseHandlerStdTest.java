@@ -0,0 +1,159 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.DeleteStackInstancesRequest;
+import software.amazon.awssdk.services.cloudformation.model.DeploymentTargets;
+import software.amazon.cloudformation.Action;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.Credentials;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.LoggerProxy;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.util.StackInstance;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BaseHandlerStdTest {
+
+    private static final String STACK_SET = "StackSet";
+
+    private static final Set<Parameter> OVERRIDES = Collections.singleton(
+            Parameter.builder().parameterKey("Baseline").parameterValue("v1").build());
+
+    private final Logger logger = message -> { };
+
+    private StubCloudFormationClient client;
+
+    private ProxyClient<CloudFormationClient> proxyClient;
+
+    private final CreateHandler handler = new CreateHandler();
+
+    private final ResourceModel model = ResourceModel.builder().stackSetName(STACK_SET).build();
+
+    @BeforeEach
+    public void setup() {
+        client = new StubCloudFormationClient(new HashMap<>());
+        proxyClient = new AmazonWebServicesClientProxy(new LoggerProxy(),
+                new Credentials("test", "test", "test"), () -> 0L).newProxy(() -> client);
+    }
+
+    private static StackInstance instance(final String account, final String region) {
+        return StackInstance.builder().deploymentTarget(account).region(region).parameters(OVERRIDES).build();
+    }
+
+    private static Set<StackInstance> grid() {
+        return new HashSet<>(Arrays.asList(
+                instance("111111111111", "us-east-1"), instance("111111111111", "eu-west-1"),
+                instance("222222222222", "us-east-1"), instance("222222222222", "eu-west-1")));
+    }
+
+    private void seed(final String account, final String... regions) {
+        client.seed(STACK_SET, Collections.singletonList(account), Arrays.asList(regions), Collections.singletonList(
+                software.amazon.awssdk.services.cloudformation.model.Parameter.builder()
+                        .parameterKey("Baseline").parameterValue("v1").build()));
+    }
+
+    @Test
+    public void filterCurrentStackInstances_CurrentAccount_LeavesOutWholeAccount() {
+        seed("111111111111", "us-east-1", "eu-west-1");
+
+        final Set<StackInstance> pending = handler.filterCurrentStackInstances(
+                proxyClient, model, STACK_SET, OVERRIDES, grid(), logger);
+
+        assertThat(pending).containsExactlyInAnyOrder(
+                instance("222222222222", "us-east-1"), instance("222222222222", "eu-west-1"));
+        assertThat(client.getApiCalls().get("DescribeStackInstance")).isEqualTo(2);
+    }
+
+    @Test
+    public void filterCurrentStackInstances_SingleCurrentInstance_KeepsRectangleWithoutDescribing() {
+        seed("111111111111", "us-east-1");
+
+        final Set<StackInstance> pending = handler.filterCurrentStackInstances(
+                proxyClient, model, STACK_SET, OVERRIDES, grid(), logger);
+
+        assertThat(pending).isEqualTo(grid());
+        assertThat(client.getApiCalls()).doesNotContainKey("DescribeStackInstance");
+    }
+
+    @Test
+    public void pendingStackInstancesOf_SecondCall_ReusesFilteredSet() {
+        seed("111111111111", "us-east-1", "eu-west-1");
+        final CallbackContext callbackContext = new CallbackContext();
+
+        handler.pendingStackInstancesOf(proxyClient, callbackContext, model, STACK_SET, Action.CREATE, OVERRIDES, grid(), logger);
+        final int apiCalls = client.totalApiCalls();
+        final Set<StackInstance> pending = handler.pendingStackInstancesOf(
+                proxyClient, callbackContext, model, STACK_SET, Action.CREATE, OVERRIDES, grid(), logger);
+
+        assertThat(client.totalApiCalls()).isEqualTo(apiCalls);
+        assertThat(pending).containsExactlyInAnyOrder(
+                instance("222222222222", "us-east-1"), instance("222222222222", "eu-west-1"));
+        assertThat(pending).allMatch(stackInstance -> OVERRIDES.equals(stackInstance.getParameters()));
+    }
+
+    private String submitDelete(final String... accounts) {
+        return client.deleteStackInstances(DeleteStackInstancesRequest.builder()
+                .stackSetName(STACK_SET)
+                .deploymentTargets(DeploymentTargets.builder().accounts(accounts).build())
+                .regions("us-east-1", "eu-west-1")
+                .build()).operationId();
+    }
+
+    @Test
+    public void findCoveringOperation_RunningOperationCoversPlan_AttachesToIt() {
+        seed("111111111111", "us-east-1", "eu-west-1");
+        seed("222222222222", "us-east-1", "eu-west-1");
+        final String operationId = submitDelete("111111111111", "222222222222");
+
+        final String covering = handler.findCoveringOperation(
+                proxyClient, model, STACK_SET, Action.DELETE, OVERRIDES, grid(), logger);
+
+        assertThat(covering).isEqualTo(operationId);
+    }
+
+    @Test
+    public void findCoveringOperation_RunningOperationCoversPartOfPlan_NotAttached() {
+        seed("111111111111", "us-east-1", "eu-west-1");
+        submitDelete("111111111111");
+
+        assertThat(handler.findCoveringOperation(
+                proxyClient, model, STACK_SET, Action.DELETE, OVERRIDES, grid(), logger)).isNull();
+    }
+
+    @Test
+    public void findCoveringOperation_EndedOperation_NotAttached() {
+        seed("111111111111", "us-east-1", "eu-west-1");
+        seed("222222222222", "us-east-1", "eu-west-1");
+        submitDelete("111111111111", "222222222222");
+        client.setNow(Long.MAX_VALUE);
+
+        assertThat(handler.findCoveringOperation(
+                proxyClient, model, STACK_SET, Action.DELETE, OVERRIDES, grid(), logger)).isNull();
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.Credentials;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.LoggerProxy;
+import software.amazon.cloudformation.proxy.OperationStatus;
+import software.amazon.cloudformation.proxy.ProgressEvent;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Scenario benchmark driving the CREATE, UPDATE and DELETE handlers against {@link StubCloudFormationClient} on a
+ * virtual clock, so that a day of contended StackSet operations replays in seconds. Built-in scenarios cover a burst
+ * of account vending, a mass parameter update and a mass decommission, {@code replay=} replays the arrivals of a
+ * timeline recorded with {@value BaseHandlerStd#TRACE_ENV}. Run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=software.amazon.cloudformation.stackinstances.ScenarioBenchmark -Dexec.args="baseline=scenario-baseline.properties"}.
+ * A missing baseline file is written from the run, an existing one fails the run when makespan, p99 latency or API
+ * calls regress beyond {@code tolerance=} (default 0.10). The stub and the callback delays use the virtual clock,
+ * deadline checks of the handlers still see wall time
+ */
+public class ScenarioBenchmark {
+
+    private static final String STACK_SET = "scenario-benchmark";
+    private static final long HORIZON_MILLIS = Duration.ofHours(24).toMillis();
+    private static final double DEFAULT_TOLERANCE = 0.10;
+    private static final List<String> SCENARIOS = Arrays.asList("burst-vending", "mass-parameter-update", "mass-decommission");
+
+    private static final Map<String, Double> MILLIS_PER_INSTANCE = new HashMap<>();
+    static {
+        MILLIS_PER_INSTANCE.put("us-east-1", 30_000d);
+        MILLIS_PER_INSTANCE.put("eu-west-1", 45_000d);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> options = new HashMap<>();
+        for (final String arg : args) {
+            final int separator = arg.indexOf('=');
+            options.put(separator < 0 ? "scenario" : arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        final double tolerance = Double.parseDouble(options.getOrDefault("tolerance", String.valueOf(DEFAULT_TOLERANCE)));
+
+        final Map<String, Result> results = new LinkedHashMap<>();
+        if (options.containsKey("replay")) {
+            results.put("replay", run(options.get("replay"), replay(options.get("replay"))));
+        } else {
+            for (final String scenario : options.containsKey("scenario")
+                    ? Collections.singletonList(options.get("scenario")) : SCENARIOS) {
+                results.put(scenario, run(scenario, scenario(scenario)));
+            }
+        }
+
+        if (options.containsKey("baseline") && !compare(new File(options.get("baseline")), results, tolerance)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the workload until every resource completed or the horizon passed
+     */
+    static Result run(final String name, final Workload workload) {
+        final StubCloudFormationClient client = new StubCloudFormationClient(MILLIS_PER_INSTANCE);
+        workload.seeds.forEach(seed -> seed.accept(client));
+        final AmazonWebServicesClientProxy proxy = new AmazonWebServicesClientProxy(
+                new LoggerProxy(), new Credentials("benchmark", "benchmark", "benchmark"), () -> 0L);
+        final ProxyClient<CloudFormationClient> proxyClient = proxy.newProxy(() -> client);
+        final Logger logger = message -> { };
+
+        final PriorityQueue<Invocation> queue = new PriorityQueue<>();
+        for (final Resource resource : workload.resources) {
+            queue.add(new Invocation(resource.arrival, queue.size(), resource));
+        }
+
+        final List<Long> latencies = new ArrayList<>();
+        int invocations = 0;
+        int failures = 0;
+        long makespan = 0;
+        while (!queue.isEmpty() && queue.peek().at <= HORIZON_MILLIS) {
+            final Invocation invocation = queue.poll();
+            final Resource resource = invocation.resource;
+            client.setNow(invocation.at);
+            invocations++;
+
+            ProgressEvent<ResourceModel, CallbackContext> event;
+            try {
+                event = resource.handler.handleRequest(proxy, resource.request(), resource.context, proxyClient, logger);
+            } catch (final RuntimeException e) {
+                event = ProgressEvent.failed(resource.desired, resource.context, null, e.getMessage());
+            }
+
+            if (event.getStatus() == OperationStatus.IN_PROGRESS) {
+                resource.context = event.getCallbackContext();
+                if (event.getResourceModel() != null) resource.desired = event.getResourceModel();
+                final long delayMillis = Math.max(1, event.getCallbackDelaySeconds()) * 1000L;
+                queue.add(new Invocation(invocation.at + delayMillis, invocations, resource));
+                continue;
+            }
+            if (event.getStatus() == OperationStatus.FAILED) failures++;
+            latencies.add(invocation.at - resource.arrival);
+            makespan = Math.max(makespan, invocation.at);
+        }
+
+        Collections.sort(latencies);
+        final Result result = new Result(
+                makespan / 1000.0,
+                percentile(latencies, 0.50) / 1000.0,
+                percentile(latencies, 0.99) / 1000.0,
+                client.totalApiCalls(),
+                invocations,
+                failures,
+                workload.resources.size() - latencies.size());
+        System.out.printf("scenario=%s resources=%d makespan=%.0fs p50=%.0fs p99=%.0fs apiCalls=%d invocations=%d failed=%d unfinished=%d%n",
+                name, workload.resources.size(), result.makespanSeconds, result.p50Seconds, result.p99Seconds,
+                result.apiCalls, result.invocations, result.failures, result.unfinished);
+        System.out.printf("  apiCalls %s%n", client.getApiCalls());
+        return result;
+    }
+
+    /**
+     * @return built-in workload by name
+     */
+    static Workload scenario(final String name) {
+        final Workload workload = new Workload();
+        switch (name) {
+            case "burst-vending":
+                // Account vending, each new account gets its baseline in two Regions
+                for (int i = 0; i < 40; i++) {
+                    workload.add(i * 2_000L, new CreateHandler(), null,
+                            model(account(i), Arrays.asList("us-east-1", "eu-west-1"), "Baseline", "v1"));
+                }
+                return workload;
+            case "mass-parameter-update":
+                for (int i = 0; i < 25; i++) {
+                    final String account = account(i);
+                    workload.seed(account, Collections.singletonList("us-east-1"), "Baseline", "v1");
+                    workload.add(i * 500L, new UpdateHandler(),
+                            model(account, Collections.singletonList("us-east-1"), "Baseline", "v1"),
+                            model(account, Collections.singletonList("us-east-1"), "Baseline", "v2"));
+                }
+                return workload;
+            case "mass-decommission":
+                for (int i = 0; i < 30; i++) {
+                    final String account = account(i);
+                    workload.seed(account, Arrays.asList("us-east-1", "eu-west-1"), "Baseline", "v1");
+                    workload.add(i * 1_000L, new DeleteHandler(), null,
+                            model(account, Arrays.asList("us-east-1", "eu-west-1"), "Baseline", "v1"));
+                }
+                return workload;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown scenario [%s], expected one of %s", name, SCENARIOS));
+        }
+    }
+
+    /**
+     * Rebuilds the arrivals of a recorded timeline. Resource and StackSet hashes are kept, the stack instances of
+     * each resource become synthetic accounts in us-east-1, as many as its first submitted operation
+     *
+     * @param path file with the TraceStart and TraceSubmit log lines, other lines are skipped
+     * @return {@link Workload}
+     */
+    static Workload replay(final String path) throws IOException {
+        final ObjectMapper mapper = new ObjectMapper();
+        final Map<String, JsonNode> starts = new LinkedHashMap<>();
+        final Map<String, Integer> instances = new HashMap<>();
+        long firstStart = Long.MAX_VALUE;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int json = line.indexOf('{');
+                if (json < 0) continue;
+                final JsonNode trace;
+                try {
+                    trace = mapper.readTree(line.substring(json));
+                } catch (final IOException e) {
+                    continue;
+                }
+                final String resource = trace.path("Resource").asText(null);
+                if (resource == null) continue;
+                if ("TraceStart".equals(trace.path("Event").asText()) && !starts.containsKey(resource)) {
+                    starts.put(resource, trace);
+                    firstStart = Math.min(firstStart, trace.path("Timestamp").asLong());
+                } else if ("TraceSubmit".equals(trace.path("Event").asText())) {
+                    instances.putIfAbsent(resource, trace.path("Instances").asInt(1));
+                }
+            }
+        }
+
+        final Workload workload = new Workload();
+        int nextAccount = 0;
+        for (final Map.Entry<String, JsonNode> start : starts.entrySet()) {
+            final JsonNode trace = start.getValue();
+            final String stackSetName = trace.path("StackSet").asText(STACK_SET);
+            final long arrival = trace.path("Timestamp").asLong() - firstStart;
+            final List<String> accounts = new ArrayList<>();
+            for (int i = 0; i < instances.getOrDefault(start.getKey(), 1); i++) {
+                accounts.add(account(nextAccount++));
+            }
+            final List<String> regions = Collections.singletonList("us-east-1");
+
+            switch (trace.path("Action").asText()) {
+                case "UpdateHandler":
+                    accounts.forEach(account -> workload.seed(stackSetName, account, regions, "Baseline", "v1"));
+                    workload.add(arrival, new UpdateHandler(),
+                            model(stackSetName, accounts, regions, "Baseline", "v1"),
+                            model(stackSetName, accounts, regions, "Baseline", "v2"));
+                    break;
+                case "DeleteHandler":
+                    accounts.forEach(account -> workload.seed(stackSetName, account, regions, "Baseline", "v1"));
+                    workload.add(arrival, new DeleteHandler(), null, model(stackSetName, accounts, regions, "Baseline", "v1"));
+                    break;
+                case "CreateHandler":
+                    workload.add(arrival, new CreateHandler(), null, model(stackSetName, accounts, regions, "Baseline", "v1"));
+                    break;
+                default:
+            }
+        }
+        System.out.printf("replay=%s resources=%d%n", path, workload.resources.size());
+        return workload;
+    }
+
+    /**
+     * Writes the baseline when the file does not exist, compares against it otherwise
+     *
+     * @return false if a metric regressed beyond the tolerance
+     */
+    static boolean compare(final File file, final Map<String, Result> results, final double tolerance) throws IOException {
+        final Properties baseline = new Properties();
+        if (!file.exists()) {
+            results.forEach((name, result) -> result.store(name, baseline));
+            try (OutputStream out = new FileOutputStream(file)) {
+                baseline.store(out, "ScenarioBenchmark baseline");
+            }
+            System.out.printf("baseline written to %s%n", file);
+            return true;
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            baseline.load(in);
+        }
+        boolean passed = true;
+        for (final Map.Entry<String, Result> entry : results.entrySet()) {
+            final Properties current = new Properties();
+            entry.getValue().store(entry.getKey(), current);
+            for (final String key : current.stringPropertyNames()) {
+                final String expected = baseline.getProperty(key);
+                if (expected == null) continue;
+                final double limit = Double.parseDouble(expected) * (1 + tolerance);
+                final double actual = Double.parseDouble(current.getProperty(key));
+                final boolean regressed = actual > limit && actual - Double.parseDouble(expected) >= 1;
+                System.out.printf("  %s baseline=%s current=%s %s%n", key, expected, current.getProperty(key),
+                        regressed ? "REGRESSED" : "ok");
+                passed &= !regressed;
+            }
+        }
+        return passed;
+    }
+
+    private static long percentile(final List<Long> sorted, final double percentile) {
+        if (sorted.isEmpty()) return 0;
+        return sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(percentile * sorted.size()) - 1));
+    }
+
+    private static String account(final int index) {
+        return String.format("%012d", 100000000000L + index);
+    }
+
+    private static ResourceModel model(final String account, final List<String> regions, final String key, final String value) {
+        return model(STACK_SET, Collections.singletonList(account), regions, key, value);
+    }
+
+    private static ResourceModel model(final String stackSetName, final List<String> accounts, final List<String> regions,
+                                       final String key, final String value) {
+        return ResourceModel.builder()
+                .stackSetName(stackSetName)
+                .stackInstances(StackInstances.builder()
+                        .deploymentTargets(DeploymentTargets.builder().accounts(new HashSet<>(accounts)).build())
+                        .regions(new HashSet<>(regions))
+                        .parameterOverrides(Collections.singleton(Parameter.builder().parameterKey(key).parameterValue(value).build()))
+                        .build())
+                .build();
+    }
+
+    static class Workload {
+        private final List<Resource> resources = new ArrayList<>();
+        private final List<Consumer<StubCloudFormationClient>> seeds = new ArrayList<>();
+
+        void add(final long arrival, final BaseHandlerStd handler, final ResourceModel previous, final ResourceModel desired) {
+            resources.add(new Resource(arrival, handler, previous, desired));
+        }
+
+        void seed(final String account, final List<String> regions, final String key, final String value) {
+            seed(STACK_SET, account, regions, key, value);
+        }
+
+        void seed(final String stackSetName, final String account, final List<String> regions, final String key, final String value) {
+            seeds.add(client -> client.seed(stackSetName, Collections.singletonList(account), regions,
+                    Collections.singletonList(software.amazon.awssdk.services.cloudformation.model.Parameter.builder()
+                            .parameterKey(key).parameterValue(value).build())));
+        }
+    }
+
+    private static class Resource {
+        private final long arrival;
+        private final BaseHandlerStd handler;
+        private final ResourceModel previous;
+        private final String clientRequestToken = UUID.randomUUID().toString();
+        private ResourceModel desired;
+        private CallbackContext context;
+
+        Resource(final long arrival, final BaseHandlerStd handler, final ResourceModel previous, final ResourceModel desired) {
+            this.arrival = arrival;
+            this.handler = handler;
+            this.previous = previous;
+            this.desired = desired;
+        }
+
+        ResourceHandlerRequest<ResourceModel> request() {
+            if (context == null) {
+                context = new CallbackContext();
+                context.setHandlerStartedAt(System.currentTimeMillis());
+            }
+            return ResourceHandlerRequest.<ResourceModel>builder()
+                    .clientRequestToken(clientRequestToken)
+                    .previousResourceState(previous)
+                    .desiredResourceState(desired)
+                    .build();
+        }
+    }
+
+    private static class Invocation implements Comparable<Invocation> {
+        private final long at;
+        private final int sequence;
+        private final Resource resource;
+
+        Invocation(final long at, final int sequence, final Resource resource) {
+            this.at = at;
+            this.sequence = sequence;
+            this.resource = resource;
+        }
+
+        @Override
+        public int compareTo(final Invocation other) {
+            return at != other.at ? Long.compare(at, other.at) : Integer.compare(sequence, other.sequence);
+        }
+    }
+
+    static class Result {
+        private final double makespanSeconds;
+        private final double p50Seconds;
+        private final double p99Seconds;
+        private final int apiCalls;
+        private final int invocations;
+        private final int failures;
+        private final int unfinished;
+
+        Result(final double makespanSeconds, final double p50Seconds, final double p99Seconds, final int apiCalls,
+               final int invocations, final int failures, final int unfinished) {
+            this.makespanSeconds = makespanSeconds;
+            this.p50Seconds = p50Seconds;
+            this.p99Seconds = p99Seconds;
+            this.apiCalls = apiCalls;
+            this.invocations = invocations;
+            this.failures = failures;
+            this.unfinished = unfinished;
+        }
+
+        void store(final String name, final Properties properties) {
+            properties.setProperty(name + ".makespanSeconds", String.valueOf(makespanSeconds));
+            properties.setProperty(name + ".p99Seconds", String.valueOf(p99Seconds));
+            properties.setProperty(name + ".apiCalls", String.valueOf(apiCalls));
+            properties.setProperty(name + ".unfinished", String.valueOf(unfinished));
+        }
+    }
+}
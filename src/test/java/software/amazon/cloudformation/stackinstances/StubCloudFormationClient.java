@@ -0,0 +1,359 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances;
+
+import lombok.Getter;
+import lombok.Setter;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.CreateStackInstancesRequest;
+import software.amazon.awssdk.services.cloudformation.model.CreateStackInstancesResponse;
+import software.amazon.awssdk.services.cloudformation.model.DeleteStackInstancesRequest;
+import software.amazon.awssdk.services.cloudformation.model.DeleteStackInstancesResponse;
+import software.amazon.awssdk.services.cloudformation.model.DeploymentTargets;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackInstanceRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackInstanceResponse;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackSetOperationRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackSetOperationResponse;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackSetRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackSetResponse;
+import software.amazon.awssdk.services.cloudformation.model.ListStackInstancesRequest;
+import software.amazon.awssdk.services.cloudformation.model.ListStackInstancesResponse;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationResultsRequest;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationResultsResponse;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationsRequest;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationsResponse;
+import software.amazon.awssdk.services.cloudformation.model.ManagedExecution;
+import software.amazon.awssdk.services.cloudformation.model.OperationInProgressException;
+import software.amazon.awssdk.services.cloudformation.model.Parameter;
+import software.amazon.awssdk.services.cloudformation.model.StackInstance;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceComprehensiveStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceDetailedStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceNotFoundException;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceSummary;
+import software.amazon.awssdk.services.cloudformation.model.StackSet;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperation;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationAction;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationPreferences;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultSummary;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationSummary;
+import software.amazon.awssdk.services.cloudformation.model.StackSetStatus;
+import software.amazon.awssdk.services.cloudformation.model.UpdateStackInstancesRequest;
+import software.amazon.awssdk.services.cloudformation.model.UpdateStackInstancesResponse;
+import software.amazon.cloudformation.stackinstances.util.DurationEstimator;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory {@link CloudFormationClient} on a virtual clock for {@link ScenarioBenchmark}. Each StackSet runs one
+ * operation at a time and rejects others with {@link OperationInProgressException}, operations last as long as
+ * {@link DurationEstimator} predicts and apply their stack instance changes once the virtual clock passes their end
+ */
+class StubCloudFormationClient implements CloudFormationClient {
+
+    private final Map<String, Double> millisPerInstance;
+    private final Map<String, StubStackSet> stackSets = new HashMap<>();
+
+    @Getter
+    private final Map<String, Integer> apiCalls = new TreeMap<>();
+
+    @Getter
+    @Setter
+    private long now;
+
+    StubCloudFormationClient(final Map<String, Double> millisPerInstance) {
+        this.millisPerInstance = millisPerInstance;
+    }
+
+    /**
+     * Deploys stack instances without an operation, for scenarios that start from existing ones
+     */
+    void seed(final String stackSetName, final Collection<String> accounts, final Collection<String> regions,
+              final List<Parameter> overrides) {
+        final StubStackSet stackSet = stackSet(stackSetName);
+        for (final String account : accounts) {
+            for (final String region : regions) {
+                stackSet.instances.put(key(account, region), overrides);
+            }
+        }
+    }
+
+    int totalApiCalls() {
+        return apiCalls.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Override
+    public DescribeStackSetResponse describeStackSet(final DescribeStackSetRequest request) {
+        count("DescribeStackSet");
+        return DescribeStackSetResponse.builder()
+                .stackSet(StackSet.builder()
+                        .stackSetName(request.stackSetName())
+                        .stackSetId(request.stackSetName())
+                        .status(StackSetStatus.ACTIVE)
+                        .managedExecution(ManagedExecution.builder().active(false).build())
+                        .build())
+                .build();
+    }
+
+    @Override
+    public CreateStackInstancesResponse createStackInstances(final CreateStackInstancesRequest request) {
+        count("CreateStackInstances");
+        final StubOperation operation = submit(request.stackSetName(), StackSetOperationAction.CREATE,
+                request.deploymentTargets(), request.regions(), request.parameterOverrides(), request.operationPreferences());
+        return CreateStackInstancesResponse.builder().operationId(operation.id).build();
+    }
+
+    @Override
+    public UpdateStackInstancesResponse updateStackInstances(final UpdateStackInstancesRequest request) {
+        count("UpdateStackInstances");
+        final StubOperation operation = submit(request.stackSetName(), StackSetOperationAction.UPDATE,
+                request.deploymentTargets(), request.regions(), request.parameterOverrides(), request.operationPreferences());
+        return UpdateStackInstancesResponse.builder().operationId(operation.id).build();
+    }
+
+    @Override
+    public DeleteStackInstancesResponse deleteStackInstances(final DeleteStackInstancesRequest request) {
+        count("DeleteStackInstances");
+        final StubOperation operation = submit(request.stackSetName(), StackSetOperationAction.DELETE,
+                request.deploymentTargets(), request.regions(), null, request.operationPreferences());
+        return DeleteStackInstancesResponse.builder().operationId(operation.id).build();
+    }
+
+    @Override
+    public DescribeStackSetOperationResponse describeStackSetOperation(final DescribeStackSetOperationRequest request) {
+        count("DescribeStackSetOperation");
+        final StubStackSet stackSet = settle(request.stackSetName());
+        final StubOperation operation = stackSet.operations.get(request.operationId());
+        return DescribeStackSetOperationResponse.builder()
+                .stackSetOperation(StackSetOperation.builder()
+                        .operationId(operation.id)
+                        .stackSetId(request.stackSetName())
+                        .action(operation.action)
+                        .status(operation.status(now))
+                        .operationPreferences(operation.preferences)
+                        .creationTimestamp(Instant.ofEpochMilli(operation.createdAt))
+                        .endTimestamp(operation.isDone(now) ? Instant.ofEpochMilli(operation.endsAt) : null)
+                        .build())
+                .build();
+    }
+
+    @Override
+    public ListStackSetOperationsResponse listStackSetOperations(final ListStackSetOperationsRequest request) {
+        count("ListStackSetOperations");
+        final List<StackSetOperationSummary> summaries = new ArrayList<>();
+        for (final StubOperation operation : settle(request.stackSetName()).operations.values()) {
+            summaries.add(0, StackSetOperationSummary.builder()
+                    .operationId(operation.id)
+                    .action(operation.action)
+                    .status(operation.status(now))
+                    .creationTimestamp(Instant.ofEpochMilli(operation.createdAt))
+                    .endTimestamp(operation.isDone(now) ? Instant.ofEpochMilli(operation.endsAt) : null)
+                    .build());
+        }
+        return ListStackSetOperationsResponse.builder().summaries(summaries).build();
+    }
+
+    @Override
+    public ListStackSetOperationResultsResponse listStackSetOperationResults(final ListStackSetOperationResultsRequest request) {
+        count("ListStackSetOperationResults");
+        final StubOperation operation = settle(request.stackSetName()).operations.get(request.operationId());
+        return ListStackSetOperationResultsResponse.builder()
+                .summaries(operation.targets.stream()
+                        .map(target -> StackSetOperationResultSummary.builder()
+                                .account(account(target))
+                                .region(region(target))
+                                .status(operation.isDone(now) ? StackSetOperationResultStatus.SUCCEEDED : StackSetOperationResultStatus.RUNNING)
+                                .build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    @Override
+    public ListStackInstancesResponse listStackInstances(final ListStackInstancesRequest request) {
+        count("ListStackInstances");
+        return ListStackInstancesResponse.builder()
+                .summaries(settle(request.stackSetName()).instances.keySet().stream()
+                        .filter(target -> request.stackInstanceAccount() == null || request.stackInstanceAccount().equals(account(target)))
+                        .map(target -> StackInstanceSummary.builder()
+                                .stackSetId(request.stackSetName())
+                                .account(account(target))
+                                .region(region(target))
+                                .status(StackInstanceStatus.CURRENT)
+                                .stackInstanceStatus(StackInstanceComprehensiveStatus.builder()
+                                        .detailedStatus(StackInstanceDetailedStatus.SUCCEEDED).build())
+                                .build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    @Override
+    public DescribeStackInstanceResponse describeStackInstance(final DescribeStackInstanceRequest request) {
+        count("DescribeStackInstance");
+        final String target = key(request.stackInstanceAccount(), request.stackInstanceRegion());
+        final StubStackSet stackSet = settle(request.stackSetName());
+        if (!stackSet.instances.containsKey(target)) {
+            throw StackInstanceNotFoundException.builder()
+                    .message(String.format("Stack instance [%s] not found", target)).build();
+        }
+        return DescribeStackInstanceResponse.builder()
+                .stackInstance(StackInstance.builder()
+                        .stackSetId(request.stackSetName())
+                        .account(request.stackInstanceAccount())
+                        .region(request.stackInstanceRegion())
+                        .status(StackInstanceStatus.CURRENT)
+                        .parameterOverrides(stackSet.instances.get(target))
+                        .build())
+                .build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private StubOperation submit(
+            final String stackSetName,
+            final StackSetOperationAction action,
+            final DeploymentTargets deploymentTargets,
+            final Collection<String> regions,
+            final List<Parameter> overrides,
+            final StackSetOperationPreferences preferences) {
+
+        final StubStackSet stackSet = settle(stackSetName);
+        if (stackSet.running != null) {
+            throw OperationInProgressException.builder()
+                    .message(String.format("Another Operation on StackSet [%s] is in progress", stackSetName)).build();
+        }
+
+        final List<String> accounts = new ArrayList<>();
+        if (deploymentTargets.accounts() != null) accounts.addAll(deploymentTargets.accounts());
+        if (deploymentTargets.organizationalUnitIds() != null) accounts.addAll(deploymentTargets.organizationalUnitIds());
+        final List<String> targets = new ArrayList<>();
+        final Map<String, Integer> instancesByRegion = new HashMap<>();
+        for (final String region : regions) {
+            for (final String account : accounts) {
+                targets.add(key(account, region));
+            }
+            instancesByRegion.put(region, accounts.size());
+        }
+
+        final Duration duration = DurationEstimator.estimate(
+                instancesByRegion, DurationEstimator.Concurrency.of(preferences), millisPerInstance);
+        final StubOperation operation = new StubOperation(UUID.randomUUID().toString(), action, targets,
+                overrides, preferences, now, now + duration.toMillis());
+        stackSet.operations.put(operation.id, operation);
+        stackSet.running = operation;
+        return operation;
+    }
+
+    /**
+     * Applies the running operation of the StackSet once the virtual clock passed its end
+     */
+    private StubStackSet settle(final String stackSetName) {
+        final StubStackSet stackSet = stackSet(stackSetName);
+        final StubOperation operation = stackSet.running;
+        if (operation == null || !operation.isDone(now)) return stackSet;
+
+        for (final String target : operation.targets) {
+            switch (operation.action) {
+                case DELETE:
+                    stackSet.instances.remove(target);
+                    break;
+                case UPDATE:
+                    if (operation.overrides != null) stackSet.instances.replace(target, operation.overrides);
+                    break;
+                default:
+                    stackSet.instances.put(target, operation.overrides == null ? new ArrayList<>() : operation.overrides);
+            }
+        }
+        stackSet.running = null;
+        return stackSet;
+    }
+
+    private StubStackSet stackSet(final String stackSetName) {
+        return stackSets.computeIfAbsent(stackSetName, name -> new StubStackSet());
+    }
+
+    private void count(final String api) {
+        apiCalls.merge(api, 1, Integer::sum);
+    }
+
+    private static String key(final String account, final String region) {
+        return account + "|" + region;
+    }
+
+    private static String account(final String key) {
+        return key.substring(0, key.indexOf('|'));
+    }
+
+    private static String region(final String key) {
+        return key.substring(key.indexOf('|') + 1);
+    }
+
+    private static class StubStackSet {
+        private final Map<String, List<Parameter>> instances = new HashMap<>();
+        private final Map<String, StubOperation> operations = new LinkedHashMap<>();
+        private StubOperation running;
+    }
+
+    private static class StubOperation {
+        private final String id;
+        private final StackSetOperationAction action;
+        private final List<String> targets;
+        private final List<Parameter> overrides;
+        private final StackSetOperationPreferences preferences;
+        private final long createdAt;
+        private final long endsAt;
+
+        StubOperation(final String id, final StackSetOperationAction action, final List<String> targets,
+                      final List<Parameter> overrides, final StackSetOperationPreferences preferences,
+                      final long createdAt, final long endsAt) {
+            this.id = id;
+            this.action = action;
+            this.targets = targets;
+            this.overrides = overrides;
+            this.preferences = preferences;
+            this.createdAt = createdAt;
+            this.endsAt = endsAt;
+        }
+
+        boolean isDone(final long now) {
+            return now >= endsAt;
+        }
+
+        StackSetOperationStatus status(final long now) {
+            return isDone(now) ? StackSetOperationStatus.SUCCEEDED : StackSetOperationStatus.RUNNING;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CappedMultipleOfTest {
+
+    private final CappedMultipleOf delay = new CappedMultipleOf(
+            Duration.ofSeconds(60L), 2, Duration.ofMinutes(5L), Duration.ofHours(1L));
+
+    @Test
+    public void nextDelay_Growing_MultipleOfDelay() {
+        assertThat(delay.nextDelay(1)).isEqualTo(Duration.ofSeconds(60L));
+        assertThat(delay.nextDelay(2)).isEqualTo(Duration.ofSeconds(120L));
+        assertThat(delay.nextDelay(3)).isEqualTo(Duration.ofSeconds(240L));
+    }
+
+    @Test
+    public void nextDelay_Beyond_CappedAtMaxDelay() {
+        assertThat(delay.nextDelay(4)).isEqualTo(Duration.ofMinutes(5L));
+        assertThat(delay.nextDelay(10)).isEqualTo(Duration.ofMinutes(5L));
+    }
+
+    @Test
+    public void nextDelay_PastTimeout_Zero() {
+        // 1 + 2 + 4 minutes, then 5 minutes each: the 14th delay ends past one hour
+        assertThat(delay.nextDelay(13)).isEqualTo(Duration.ofMinutes(5L));
+        assertThat(delay.nextDelay(14)).isEqualTo(Duration.ZERO);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static software.amazon.cloudformation.stackinstances.translator.RequestTranslator.describeStackSetOperationRequest;
+
+/**
+ * Cold start benchmark measuring time-to-first-API-call against a local CloudFormation stub, with and without
+ * {@link ColdStartPrimer}. Every run needs a fresh JVM, run each mode separately with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=software.amazon.cloudformation.stackinstances.util.ColdStartBenchmark -Dexec.args=primed}
+ * and {@code -Dexec.args=cold}. Outside of {@code exec:java} the JVM start offset includes no build tool time.
+ */
+public class ColdStartBenchmark {
+
+    private static final String RESPONSE = "<DescribeStackSetOperationResponse xmlns=\"http://cloudformation.amazonaws.com/doc/2010-05-15/\">"
+            + "<DescribeStackSetOperationResult><StackSetOperation><OperationId>benchmark</OperationId>"
+            + "<Status>SUCCEEDED</Status></StackSetOperation></DescribeStackSetOperationResult>"
+            + "<ResponseMetadata><RequestId>benchmark</RequestId></ResponseMetadata></DescribeStackSetOperationResponse>";
+
+    public static void main(final String[] args) throws Exception {
+        final boolean primed = args.length > 0 && "primed".equals(args[0]);
+        System.setProperty("aws.region", "us-east-1");
+        System.setProperty("aws.accessKeyId", "benchmark");
+        System.setProperty("aws.secretAccessKey", "benchmark");
+
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            final byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/xml");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        try {
+            final long initStart = System.nanoTime();
+            final CloudFormationClient client = ClientBuilder.newClient(
+                    URI.create(String.format("http://localhost:%d", server.getAddress().getPort())));
+            final ResourceModel model = ResourceModel.builder().build();
+            if (primed) {
+                ColdStartPrimer.prime(client);
+            }
+            final long initEnd = System.nanoTime();
+
+            client.describeStackSetOperation(describeStackSetOperationRequest(model, "benchmark", "benchmark"));
+            final long firstCallEnd = System.nanoTime();
+
+            client.describeStackSetOperation(describeStackSetOperationRequest(model, "benchmark", "benchmark"));
+            final long secondCallEnd = System.nanoTime();
+
+            final long sinceJvmStart = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+            System.out.printf("mode=%s init=%.1fms firstCall=%.1fms secondCall=%.1fms sinceJvmStart=%dms%n",
+                    primed ? "primed" : "cold",
+                    (initEnd - initStart) / 1e6,
+                    (firstCallEnd - initEnd) / 1e6,
+                    (secondCallEnd - firstCallEnd) / 1e6,
+                    sinceJvmStart);
+        } finally {
+            server.stop(0);
+        }
+    }
+}
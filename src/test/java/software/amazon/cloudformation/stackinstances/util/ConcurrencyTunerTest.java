@@ -0,0 +1,49 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrencyTunerTest {
+
+    @Test
+    public void next_CleanWave_IncreasesAdditively() {
+        assertThat(ConcurrencyTuner.next(10, 100, 0.0, 100.0, 100.0)).isEqualTo(10 + ConcurrencyTuner.ADDITIVE_INCREASE);
+        assertThat(ConcurrencyTuner.next(10, 100, 0.0, null, null)).isEqualTo(10 + ConcurrencyTuner.ADDITIVE_INCREASE);
+    }
+
+    @Test
+    public void next_CleanWave_CappedByCeiling() {
+        assertThat(ConcurrencyTuner.next(55, 60, 0.0, null, null)).isEqualTo(60);
+        assertThat(ConcurrencyTuner.next(95, 150, 0.0, null, null)).isEqualTo(100);
+    }
+
+    @Test
+    public void next_FailedWave_HalvesConcurrency() {
+        assertThat(ConcurrencyTuner.next(40, 100, 0.01, null, null)).isEqualTo(20);
+        assertThat(ConcurrencyTuner.next(1, 100, 0.5, null, null)).isEqualTo(1);
+    }
+
+    @Test
+    public void next_SlowedDownWave_HalvesConcurrency() {
+        assertThat(ConcurrencyTuner.next(40, 100, 0.0, 201.0, 100.0)).isEqualTo(20);
+        assertThat(ConcurrencyTuner.next(40, 100, 0.0, 200.0, 100.0)).isEqualTo(50);
+    }
+}
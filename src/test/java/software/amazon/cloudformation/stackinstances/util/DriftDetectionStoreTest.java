@@ -0,0 +1,182 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.cloudformation.stackinstances.DriftSummary;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DriftDetectionStoreTest {
+
+    private static final String KEY = "us-east-1::SELF::StackSet";
+
+    private static final Duration TTL = Duration.ofMinutes(60L);
+
+    private static final Duration STALE_AFTER = Duration.ofHours(12L);
+
+    private final InMemoryLeaseStore leaseStore = new InMemoryLeaseStore();
+
+    private final DriftDetectionStore store = new DriftDetectionStore(leaseStore);
+
+    private final TickingClock clock = new TickingClock();
+
+    private DriftDetectionStore.Detection claim(final String operationId) {
+        return store.claim(KEY, operationId, clock.millis(), TTL, STALE_AFTER);
+    }
+
+    @Test
+    public void claim_RunningDetection_SharedUntilStale() {
+        assertThat(claim("first").getOperationId()).isEqualTo("first");
+        assertThat(claim("second").getOperationId()).isEqualTo("first");
+
+        clock.advance(STALE_AFTER);
+
+        assertThat(claim("third").getOperationId()).isEqualTo("third");
+    }
+
+    @Test
+    public void claim_CompletedDetection_ReusedWithinTtl() {
+        claim("first");
+        clock.advance(Duration.ofMinutes(10L));
+        store.complete(KEY, "first", clock.millis(), "COMPLETED");
+
+        clock.advance(TTL.minusMinutes(1L));
+        assertThat(claim("second").getOperationId()).isEqualTo("first");
+
+        clock.advance(Duration.ofMinutes(1L));
+        assertThat(claim("third").getOperationId()).isEqualTo("third");
+    }
+
+    @Test
+    public void release_ClaimedDetection_NextClaimWins() {
+        claim("first");
+
+        store.release(KEY, "first");
+
+        assertThat(claim("second").getOperationId()).isEqualTo("second");
+    }
+
+    @Test
+    public void release_AfterReplaced_KeepsNewerDetection() {
+        claim("first");
+        clock.advance(STALE_AFTER);
+        claim("second");
+
+        store.release(KEY, "first");
+
+        assertThat(claim("third").getOperationId()).isEqualTo("second");
+    }
+
+    @Test
+    public void complete_AfterReleased_Ignored() {
+        claim("first");
+        store.release(KEY, "first");
+
+        assertThat(store.complete(KEY, "first", clock.millis(), "COMPLETED")).isNull();
+        assertThat(claim("second").getOperationId()).isEqualTo("second");
+    }
+
+    @Test
+    public void complete_Twice_KeepsFirstCompletion() {
+        claim("first");
+        store.complete(KEY, "first", 1000L, "COMPLETED");
+
+        final DriftDetectionStore.Detection detection = store.complete(KEY, "first", 2000L, "FAILED");
+
+        assertThat(detection.getCompletedAt()).isEqualTo(1000L);
+        assertThat(detection.getStatus()).isEqualTo("COMPLETED");
+    }
+
+    @Test
+    public void complete_AfterReplaced_ReturnsNewerDetection() {
+        claim("first");
+        clock.advance(STALE_AFTER);
+        claim("second");
+
+        final DriftDetectionStore.Detection detection = store.complete(KEY, "first", clock.millis(), "COMPLETED");
+
+        assertThat(detection.getOperationId()).isEqualTo("second");
+        assertThat(detection.getCompletedAt()).isNull();
+    }
+
+    @Test
+    public void putSummary_AfterReplaced_Ignored() {
+        claim("first");
+        store.complete(KEY, "first", clock.millis(), "COMPLETED");
+        clock.advance(TTL);
+        claim("second");
+
+        store.putSummary(KEY, "first", "resource", DriftSummary.builder().driftStatus("IN_SYNC").build());
+
+        assertThat(claim("third").getSummaries()).isEmpty();
+    }
+
+    @Test
+    public void claim_ConcurrentClaim_LosesToEarlierWrite() {
+        final DriftDetectionStore racing = new DriftDetectionStore(new LeaseStore() {
+            private boolean raced;
+
+            @Override
+            public VersionedValue get(final String key) {
+                return leaseStore.get(key);
+            }
+
+            @Override
+            public boolean compareAndSet(final String key, final long expectedVersion, final String value) {
+                if (!raced) {
+                    raced = true;
+                    claim("other");
+                }
+                return leaseStore.compareAndSet(key, expectedVersion, value);
+            }
+        });
+
+        assertThat(racing.claim(KEY, "mine", clock.millis(), TTL, STALE_AFTER).getOperationId()).isEqualTo("other");
+        assertThat(claim("third").getOperationId()).isEqualTo("other");
+    }
+
+    @Test
+    public void putSummary_ConcurrentSummaries_BothKept() {
+        claim("first");
+        store.complete(KEY, "first", clock.millis(), "COMPLETED");
+        final DriftDetectionStore racing = new DriftDetectionStore(new LeaseStore() {
+            private boolean raced;
+
+            @Override
+            public VersionedValue get(final String key) {
+                return leaseStore.get(key);
+            }
+
+            @Override
+            public boolean compareAndSet(final String key, final long expectedVersion, final String value) {
+                if (!raced) {
+                    raced = true;
+                    store.putSummary(KEY, "first", "other", DriftSummary.builder().driftStatus("DRIFTED").build());
+                }
+                return leaseStore.compareAndSet(key, expectedVersion, value);
+            }
+        });
+
+        racing.putSummary(KEY, "first", "mine", DriftSummary.builder().driftStatus("IN_SYNC").build());
+
+        assertThat(claim("second").getSummaries()).containsOnlyKeys("mine", "other");
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackSetOperationRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackSetOperationResponse;
+import software.amazon.awssdk.services.cloudformation.model.DetectStackSetDriftRequest;
+import software.amazon.awssdk.services.cloudformation.model.DetectStackSetDriftResponse;
+import software.amazon.awssdk.services.cloudformation.model.ListStackInstancesRequest;
+import software.amazon.awssdk.services.cloudformation.model.ListStackInstancesResponse;
+import software.amazon.awssdk.services.cloudformation.model.OperationInProgressException;
+import software.amazon.awssdk.services.cloudformation.model.StackDriftStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceSummary;
+import software.amazon.awssdk.services.cloudformation.model.StackSetDriftDetectionDetails;
+import software.amazon.awssdk.services.cloudformation.model.StackSetDriftDetectionStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperation;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationStatus;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.Credentials;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.LoggerProxy;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.DeploymentTargets;
+import software.amazon.cloudformation.stackinstances.DriftDetection;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.StackInstances;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DriftReporterTest {
+
+    private static final String STACK_SET = "StackSet";
+
+    private static final Duration CLAIM_DURATION = Duration.ofHours(12L);
+
+    private final Logger logger = message -> { };
+
+    private final TickingClock clock = new TickingClock();
+
+    private final InMemoryLeaseStore leaseStore = new InMemoryLeaseStore();
+
+    private final StackSetLeaseQueue leaseQueue = new StackSetLeaseQueue(leaseStore, clock);
+
+    private final DriftReporter reporter = new DriftReporter(
+            new DriftDetectionStore(new InMemoryLeaseStore()), leaseQueue, clock);
+
+    private final List<String> detections = new ArrayList<>();
+
+    private final List<StackInstanceSummary> summaries = new ArrayList<>();
+
+    private int listCalls;
+
+    private boolean operationInProgress;
+
+    private Instant endTimestamp;
+
+    private final ProxyClient<CloudFormationClient> proxyClient = new AmazonWebServicesClientProxy(new LoggerProxy(),
+            new Credentials("test", "test", "test"), () -> 0L).newProxy(() -> new CloudFormationClient() {
+                @Override
+                public DetectStackSetDriftResponse detectStackSetDrift(final DetectStackSetDriftRequest request) {
+                    if (operationInProgress) throw OperationInProgressException.builder().message("busy").build();
+                    detections.add(request.operationId());
+                    endTimestamp = null;
+                    return DetectStackSetDriftResponse.builder().operationId(request.operationId()).build();
+                }
+
+                @Override
+                public DescribeStackSetOperationResponse describeStackSetOperation(final DescribeStackSetOperationRequest request) {
+                    return DescribeStackSetOperationResponse.builder().stackSetOperation(StackSetOperation.builder()
+                            .operationId(request.operationId())
+                            .status(endTimestamp == null ? StackSetOperationStatus.RUNNING : StackSetOperationStatus.SUCCEEDED)
+                            .endTimestamp(endTimestamp)
+                            .stackSetDriftDetectionDetails(StackSetDriftDetectionDetails.builder()
+                                    .driftDetectionStatus(endTimestamp == null ?
+                                            StackSetDriftDetectionStatus.IN_PROGRESS : StackSetDriftDetectionStatus.COMPLETED)
+                                    .build())
+                            .build()).build();
+                }
+
+                @Override
+                public ListStackInstancesResponse listStackInstances(final ListStackInstancesRequest request) {
+                    listCalls++;
+                    return ListStackInstancesResponse.builder().summaries(summaries).build();
+                }
+
+                @Override
+                public String serviceName() {
+                    return SERVICE_NAME;
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+
+    private static ResourceModel model(final String instanceId, final String... regions) {
+        return ResourceModel.builder()
+                .instanceId(instanceId)
+                .stackSetName(STACK_SET)
+                .administrationRegion("us-east-1")
+                .driftDetection(DriftDetection.builder().enabled(true).cacheTtlMinutes(60).build())
+                .stackInstances(StackInstances.builder()
+                        .deploymentTargets(DeploymentTargets.builder()
+                                .accounts(Collections.singleton("111111111111")).build())
+                        .regions(new HashSet<>(Arrays.asList(regions)))
+                        .build())
+                .build();
+    }
+
+    private void summary(final String region, final StackDriftStatus driftStatus) {
+        summaries.add(StackInstanceSummary.builder()
+                .account("111111111111").region(region).driftStatus(driftStatus).build());
+    }
+
+    private ResourceModel report(final ResourceModel model) {
+        reporter.report(proxyClient, model, CLAIM_DURATION, logger);
+        return model;
+    }
+
+    @Test
+    public void report_Running_OneDetectionSharedByResources() {
+        final ResourceModel first = report(model("first", "us-east-1"));
+        final ResourceModel second = report(model("second", "eu-west-1"));
+
+        assertThat(detections).hasSize(1);
+        assertThat(first.getDriftSummary().getDetectionStatus()).isEqualTo(StackSetDriftDetectionStatus.IN_PROGRESS.toString());
+        assertThat(second.getDriftSummary().getOperationId()).isEqualTo(detections.get(0));
+        assertThat(listCalls).isZero();
+    }
+
+    @Test
+    public void report_Completed_SummarizesOnceAndCaches() {
+        summary("us-east-1", StackDriftStatus.DRIFTED);
+        summary("eu-west-1", StackDriftStatus.IN_SYNC);
+        report(model("first", "us-east-1", "eu-west-1"));
+        endTimestamp = clock.instant();
+
+        final ResourceModel model = report(model("first", "us-east-1", "eu-west-1"));
+        report(model("first", "us-east-1", "eu-west-1"));
+
+        assertThat(listCalls).isEqualTo(1);
+        assertThat(model.getDriftSummary().getDetectionStatus()).isEqualTo(StackSetDriftDetectionStatus.COMPLETED.toString());
+        assertThat(model.getDriftSummary().getDriftStatus()).isEqualTo(StackDriftStatus.DRIFTED.toString());
+        assertThat(model.getDriftSummary().getDriftedCount()).isEqualTo(1);
+        assertThat(model.getDriftSummary().getInSyncCount()).isEqualTo(1);
+        assertThat(model.getDriftSummary().getDriftedInstances()).containsExactly("111111111111/us-east-1");
+    }
+
+    @Test
+    public void report_TargetsChanged_SummarizesAgain() {
+        summary("us-east-1", StackDriftStatus.DRIFTED);
+        summary("eu-west-1", StackDriftStatus.IN_SYNC);
+        report(model("first", "us-east-1", "eu-west-1"));
+        endTimestamp = clock.instant();
+        report(model("first", "us-east-1", "eu-west-1"));
+
+        final ResourceModel model = report(model("first", "eu-west-1"));
+
+        assertThat(listCalls).isEqualTo(2);
+        assertThat(detections).hasSize(1);
+        assertThat(model.getDriftSummary().getDriftStatus()).isEqualTo(StackDriftStatus.IN_SYNC.toString());
+    }
+
+    @Test
+    public void report_TtlExpired_StartsNewDetection() {
+        report(model("first", "us-east-1"));
+        endTimestamp = clock.instant();
+        report(model("first", "us-east-1"));
+
+        clock.advance(Duration.ofMinutes(60L));
+        final ResourceModel model = report(model("first", "us-east-1"));
+
+        assertThat(detections).hasSize(2);
+        assertThat(model.getDriftSummary().getOperationId()).isEqualTo(detections.get(1));
+    }
+
+    @Test
+    public void report_OperationInProgress_PendingAndRetried() {
+        operationInProgress = true;
+        final ResourceModel model = report(model("first", "us-east-1"));
+
+        assertThat(model.getDriftSummary().getDetectionStatus()).isEqualTo(DriftReporter.PENDING);
+        assertThat(detections).isEmpty();
+
+        operationInProgress = false;
+        report(model("first", "us-east-1"));
+
+        assertThat(detections).hasSize(1);
+    }
+
+    @Test
+    public void report_LeaseHeld_NotStartedUntilReleased() {
+        final String stackSetKey = StackSetKey.of(model("first", "us-east-1"), STACK_SET);
+        leaseQueue.acquire(stackSetKey, "updating");
+
+        final ResourceModel model = report(model("first", "us-east-1"));
+
+        assertThat(model.getDriftSummary().getDetectionStatus()).isEqualTo(DriftReporter.PENDING);
+        assertThat(detections).isEmpty();
+
+        leaseQueue.release(stackSetKey, "updating");
+        report(model("first", "us-east-1"));
+
+        assertThat(detections).hasSize(1);
+    }
+
+    @Test
+    public void report_LeaseAwaitedAfterDetectionStarted_DetectionStillReported() {
+        final String stackSetKey = StackSetKey.of(model("first", "us-east-1"), STACK_SET);
+        report(model("first", "us-east-1"));
+        leaseQueue.acquire(stackSetKey, "updating");
+        endTimestamp = clock.instant();
+
+        final ResourceModel model = report(model("first", "us-east-1"));
+
+        assertThat(detections).hasSize(1);
+        assertThat(model.getDriftSummary().getDetectionStatus()).isEqualTo(StackSetDriftDetectionStatus.COMPLETED.toString());
+    }
+}
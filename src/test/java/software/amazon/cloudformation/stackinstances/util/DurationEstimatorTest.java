@@ -0,0 +1,82 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.cloudformation.stackinstances.OperationPreferences;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DurationEstimatorTest {
+
+    private static final DurationEstimator.Concurrency SEQUENTIAL_ONE_AT_A_TIME = DurationEstimator.Concurrency.of(
+            OperationPreferences.builder().maxConcurrentCount(1).build());
+
+    private static final DurationEstimator.Concurrency PARALLEL_HALF = DurationEstimator.Concurrency.of(
+            OperationPreferences.builder().maxConcurrentPercentage(50).regionConcurrencyType("PARALLEL").build());
+
+    private static Map<String, Integer> instancesByRegion(final int usEast1, final int euWest1) {
+        final Map<String, Integer> instancesByRegion = new HashMap<>();
+        instancesByRegion.put("us-east-1", usEast1);
+        instancesByRegion.put("eu-west-1", euWest1);
+        return instancesByRegion;
+    }
+
+    @Test
+    public void estimate_SequentialRegions_AddsRegions() {
+        final Map<String, Double> millisPerInstance = Collections.singletonMap("us-east-1", 1_000.0);
+
+        assertThat(DurationEstimator.estimate(instancesByRegion(3, 2), SEQUENTIAL_ONE_AT_A_TIME, millisPerInstance))
+                .isEqualTo(Duration.ofMillis(3 * 1_000L).plus(DurationEstimator.DEFAULT_INSTANCE_DURATION.multipliedBy(2L)));
+    }
+
+    @Test
+    public void estimate_ParallelRegions_TakesSlowestRegion() {
+        final Map<String, Double> millisPerInstance = new HashMap<>();
+        millisPerInstance.put("us-east-1", 1_000.0);
+        millisPerInstance.put("eu-west-1", 5_000.0);
+
+        // 50% of 10 accounts runs 2 batches, 50% of 3 accounts rounds down to 1 account and runs 3 batches
+        assertThat(DurationEstimator.estimate(instancesByRegion(10, 3), PARALLEL_HALF, millisPerInstance))
+                .isEqualTo(Duration.ofMillis(15_000L));
+    }
+
+    @Test
+    public void millisPerInstance_ObservedDuration_InvertsEstimate() {
+        final Map<String, Integer> instancesByRegion = instancesByRegion(3, 2);
+
+        final Double millisPerInstance = DurationEstimator.millisPerInstance(
+                instancesByRegion, SEQUENTIAL_ONE_AT_A_TIME, Duration.ofSeconds(10L));
+
+        assertThat(millisPerInstance).isEqualTo(2_000.0);
+        assertThat(DurationEstimator.estimate(instancesByRegion, SEQUENTIAL_ONE_AT_A_TIME,
+                Collections.singletonMap("us-east-1", millisPerInstance)))
+                .isEqualTo(Duration.ofSeconds(6L).plus(DurationEstimator.DEFAULT_INSTANCE_DURATION.multipliedBy(2L)));
+    }
+
+    @Test
+    public void millisPerInstance_NoInstances_Null() {
+        assertThat(DurationEstimator.millisPerInstance(Collections.emptyMap(), SEQUENTIAL_ONE_AT_A_TIME, Duration.ofSeconds(10L)))
+                .isNull();
+    }
+}
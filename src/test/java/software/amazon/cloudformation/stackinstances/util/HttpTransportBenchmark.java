@@ -0,0 +1,109 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static software.amazon.cloudformation.stackinstances.translator.RequestTranslator.describeStackSetOperationRequest;
+
+/**
+ * Benchmark of the {@link HttpTransport} options against a local CloudFormation stub: init cost of the transport and
+ * client, first call, and latency of the stabilization-like calls after it with the connections the server saw.
+ * Init numbers are only meaningful for the first transport of a JVM, run each transport separately with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=software.amazon.cloudformation.stackinstances.util.HttpTransportBenchmark -Dexec.args=apache}
+ * and {@code -Dexec.args=url-connection} or {@code -Dexec.args=default}, without arguments all three run in one JVM
+ */
+public class HttpTransportBenchmark {
+
+    private static final int CALLS = 500;
+
+    private static final String RESPONSE = "<DescribeStackSetOperationResponse xmlns=\"http://cloudformation.amazonaws.com/doc/2010-05-15/\">"
+            + "<DescribeStackSetOperationResult><StackSetOperation><OperationId>benchmark</OperationId>"
+            + "<Status>RUNNING</Status></StackSetOperation></DescribeStackSetOperationResult>"
+            + "<ResponseMetadata><RequestId>benchmark</RequestId></ResponseMetadata></DescribeStackSetOperationResponse>";
+
+    public static void main(final String[] args) throws Exception {
+        final List<String> transports = args.length > 0 ? Collections.singletonList(args[0])
+                : Arrays.asList("default", HttpTransport.APACHE, HttpTransport.URL_CONNECTION);
+        System.setProperty("aws.region", "us-east-1");
+        System.setProperty("aws.accessKeyId", "benchmark");
+        System.setProperty("aws.secretAccessKey", "benchmark");
+
+        final Set<Integer> connections = ConcurrentHashMap.newKeySet();
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            connections.add(exchange.getRemoteAddress().getPort());
+            final byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/xml");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        try {
+            final URI endpoint = URI.create(String.format("http://localhost:%d", server.getAddress().getPort()));
+            final ResourceModel model = ResourceModel.builder().build();
+            for (final String transport : transports) {
+                connections.clear();
+                final long initStart = System.nanoTime();
+                final SdkHttpClient httpClient = HttpTransport.newHttpClient(
+                        "default".equals(transport) ? null : transport, HttpTransport.DEFAULT_MAX_CONNECTIONS);
+                final CloudFormationClient client = ClientBuilder.newClient(endpoint, httpClient);
+                final long initEnd = System.nanoTime();
+
+                client.describeStackSetOperation(describeStackSetOperationRequest(model, "benchmark", "benchmark"));
+                final long firstCallEnd = System.nanoTime();
+
+                final long[] latencies = new long[CALLS];
+                for (int i = 0; i < CALLS; i++) {
+                    final long callStart = System.nanoTime();
+                    client.describeStackSetOperation(describeStackSetOperationRequest(model, "benchmark", "benchmark"));
+                    latencies[i] = System.nanoTime() - callStart;
+                }
+                Arrays.sort(latencies);
+
+                System.out.printf("transport=%s init=%.1fms firstCall=%.1fms p50=%.2fms p99=%.2fms calls=%d connections=%d%n",
+                        transport,
+                        (initEnd - initStart) / 1e6,
+                        (firstCallEnd - initEnd) / 1e6,
+                        latencies[CALLS / 2] / 1e6,
+                        latencies[CALLS * 99 / 100] / 1e6,
+                        CALLS + 1,
+                        connections.size());
+                client.close();
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.ListStackInstancesRequest;
+import software.amazon.awssdk.services.cloudformation.model.ListStackInstancesResponse;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationResultsRequest;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationResultsResponse;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationsRequest;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationsResponse;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceSummary;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationAction;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultSummary;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationSummary;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.Credentials;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.LoggerProxy;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.DeploymentTargets;
+import software.amazon.cloudformation.stackinstances.InstanceStatusSummary;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.StackInstances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstanceStatusReporterTest {
+
+    private static final String STACK_SET = "StackSet";
+
+    private static final String FIRST = "111111111111";
+
+    private static final String SECOND = "222222222222";
+
+    private final Logger logger = message -> { };
+
+    private final InstanceStateStore store = new InstanceStateStore(new InMemoryLeaseStore());
+
+    private final InstanceStatusReporter reporter = new InstanceStatusReporter(store, new TickingClock());
+
+    /**
+     * Operations of the StackSet, most recent first like ListStackSetOperations
+     */
+    private final List<StackSetOperationSummary> operations = new ArrayList<>();
+
+    private final Map<String, List<StackSetOperationResultSummary>> results = new HashMap<>();
+
+    private final List<StackInstanceSummary> summaries = new ArrayList<>();
+
+    private int listCalls;
+
+    private final ProxyClient<CloudFormationClient> proxyClient = new AmazonWebServicesClientProxy(new LoggerProxy(),
+            new Credentials("test", "test", "test"), () -> 0L).newProxy(() -> new CloudFormationClient() {
+                @Override
+                public ListStackSetOperationsResponse listStackSetOperations(final ListStackSetOperationsRequest request) {
+                    return ListStackSetOperationsResponse.builder().summaries(operations).build();
+                }
+
+                @Override
+                public ListStackSetOperationResultsResponse listStackSetOperationResults(
+                        final ListStackSetOperationResultsRequest request) {
+                    return ListStackSetOperationResultsResponse.builder()
+                            .summaries(results.getOrDefault(request.operationId(), Collections.emptyList())).build();
+                }
+
+                @Override
+                public ListStackInstancesResponse listStackInstances(final ListStackInstancesRequest request) {
+                    listCalls++;
+                    return ListStackInstancesResponse.builder().summaries(summaries).build();
+                }
+
+                @Override
+                public String serviceName() {
+                    return SERVICE_NAME;
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+
+    private final ResourceModel model = ResourceModel.builder()
+            .stackSetName(STACK_SET)
+            .administrationRegion("us-east-1")
+            .reportInstanceStatus(true)
+            .stackInstances(StackInstances.builder()
+                    .deploymentTargets(DeploymentTargets.builder()
+                            .accounts(new HashSet<>(Arrays.asList(FIRST, SECOND))).build())
+                    .regions(Collections.singleton("us-east-1"))
+                    .build())
+            .build();
+
+    private void operation(final String operationId, final StackSetOperationStatus status,
+                           final StackSetOperationAction action, final StackSetOperationResultSummary... operationResults) {
+        operations.add(0, StackSetOperationSummary.builder()
+                .operationId(operationId).status(status).action(action).build());
+        results.put(operationId, Arrays.asList(operationResults));
+    }
+
+    private static StackSetOperationResultSummary result(final String account, final StackSetOperationResultStatus status) {
+        return StackSetOperationResultSummary.builder().account(account).region("us-east-1").status(status).build();
+    }
+
+    private void summary(final String account, final StackInstanceStatus status) {
+        summaries.add(StackInstanceSummary.builder().account(account).region("us-east-1").status(status).build());
+    }
+
+    private InstanceStatusSummary report() {
+        reporter.report(proxyClient, model, logger);
+        return model.getInstanceStatusSummary();
+    }
+
+    /**
+     * Lists the stack instances with every operation completed, leaving the cursor at the last one
+     */
+    private void listed() {
+        operation("op-1", StackSetOperationStatus.SUCCEEDED, StackSetOperationAction.CREATE);
+        summary(FIRST, StackInstanceStatus.CURRENT);
+        summary(SECOND, StackInstanceStatus.CURRENT);
+        assertThat(report().getRefreshType()).isEqualTo(InstanceStatusReporter.FULL);
+    }
+
+    @Test
+    public void report_FirstReport_CursorBeforeInFlightOperation() {
+        operation("op-1", StackSetOperationStatus.SUCCEEDED, StackSetOperationAction.CREATE);
+        operation("op-2", StackSetOperationStatus.SUCCEEDED, StackSetOperationAction.UPDATE);
+        operation("op-3", StackSetOperationStatus.RUNNING, StackSetOperationAction.UPDATE,
+                result(SECOND, StackSetOperationResultStatus.SUCCEEDED));
+        summary(FIRST, StackInstanceStatus.CURRENT);
+        summary(SECOND, StackInstanceStatus.OUTDATED);
+
+        final InstanceStatusSummary listed = report();
+
+        assertThat(listed.getRefreshType()).isEqualTo(InstanceStatusReporter.FULL);
+        assertThat(listed.getLastOperationId()).isEqualTo("op-2");
+        assertThat(listed.getCurrentCount()).isEqualTo(1);
+        assertThat(listed.getUnhealthyInstances()).containsExactly(SECOND + "/us-east-1");
+
+        operations.set(0, operations.get(0).toBuilder().status(StackSetOperationStatus.SUCCEEDED).build());
+        final InstanceStatusSummary updated = report();
+
+        assertThat(listCalls).isEqualTo(1);
+        assertThat(updated.getRefreshType()).isEqualTo(InstanceStatusReporter.DELTA);
+        assertThat(updated.getLastOperationId()).isEqualTo("op-3");
+        assertThat(updated.getCurrentCount()).isEqualTo(2);
+        assertThat(updated.getUnhealthyInstances()).isEmpty();
+    }
+
+    @Test
+    public void report_OperationsSinceCursor_AppliedOldestFirst() {
+        listed();
+        operation("op-2", StackSetOperationStatus.FAILED, StackSetOperationAction.UPDATE,
+                result(FIRST, StackSetOperationResultStatus.FAILED));
+        operation("op-3", StackSetOperationStatus.SUCCEEDED, StackSetOperationAction.UPDATE,
+                result(FIRST, StackSetOperationResultStatus.SUCCEEDED));
+
+        final InstanceStatusSummary summary = report();
+
+        assertThat(summary.getRefreshType()).isEqualTo(InstanceStatusReporter.DELTA);
+        assertThat(summary.getLastOperationId()).isEqualTo("op-3");
+        assertThat(summary.getCurrentCount()).isEqualTo(2);
+        assertThat(summary.getOutdatedCount()).isZero();
+    }
+
+    @Test
+    public void report_InFlightOperation_StopsBeforeIt() {
+        listed();
+        operation("op-2", StackSetOperationStatus.RUNNING, StackSetOperationAction.UPDATE,
+                result(FIRST, StackSetOperationResultStatus.FAILED));
+        operation("op-3", StackSetOperationStatus.FAILED, StackSetOperationAction.UPDATE,
+                result(SECOND, StackSetOperationResultStatus.FAILED));
+
+        final InstanceStatusSummary summary = report();
+
+        assertThat(summary.getLastOperationId()).isEqualTo("op-1");
+        assertThat(summary.getCurrentCount()).isEqualTo(2);
+        assertThat(store.get(StackSetKey.of(model, STACK_SET)).getLastOperationId()).isEqualTo("op-1");
+    }
+
+    @Test
+    public void report_DeleteResults_RemoveSucceededAndLeaveFailedInoperable() {
+        listed();
+        operation("op-2", StackSetOperationStatus.FAILED, StackSetOperationAction.DELETE,
+                result(FIRST, StackSetOperationResultStatus.SUCCEEDED),
+                result(SECOND, StackSetOperationResultStatus.FAILED),
+                result("333333333333", StackSetOperationResultStatus.FAILED));
+
+        final InstanceStatusSummary summary = report();
+
+        assertThat(summary.getMissingCount()).isEqualTo(1);
+        assertThat(summary.getInoperableCount()).isEqualTo(1);
+        assertThat(summary.getCurrentCount()).isZero();
+        assertThat(summary.getUnhealthyInstances()).containsExactly(SECOND + "/us-east-1");
+        assertThat(store.get(StackSetKey.of(model, STACK_SET)).getInstances())
+                .containsOnlyKeys(InstanceStateStore.key(SECOND, "us-east-1"));
+    }
+
+    @Test
+    public void report_MoreThanMaxDeltaOperations_ListsAgain() {
+        listed();
+        for (int i = 0; i <= InstanceStatusReporter.MAX_DELTA_OPERATIONS; i++) {
+            operation("op-update-" + i, StackSetOperationStatus.SUCCEEDED, StackSetOperationAction.UPDATE,
+                    result(FIRST, StackSetOperationResultStatus.FAILED));
+        }
+
+        final InstanceStatusSummary summary = report();
+
+        assertThat(listCalls).isEqualTo(2);
+        assertThat(summary.getRefreshType()).isEqualTo(InstanceStatusReporter.FULL);
+        assertThat(summary.getLastOperationId()).isEqualTo("op-update-" + InstanceStatusReporter.MAX_DELTA_OPERATIONS);
+        assertThat(summary.getCurrentCount()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.cloudformation.exceptions.CfnInvalidRequestException;
+import software.amazon.cloudformation.stackinstances.DeploymentTargets;
+import software.amazon.cloudformation.stackinstances.Parameter;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.StackInstances;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InstancesAnalyzerTest {
+
+    private static final String REGION = "us-east-1";
+
+    private static final String OU = "ou-abcd-11111111";
+
+    private static final String OTHER_OU = "ou-abcd-22222222";
+
+    private static final String ACCOUNT_1 = "111111111111";
+
+    private static final String ACCOUNT_2 = "222222222222";
+
+    private static Set<String> set(final String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static ResourceModel model(final DeploymentTargets deploymentTargets, final Set<Parameter> parameterOverrides) {
+        return ResourceModel.builder()
+                .stackSetName("StackSet")
+                .stackInstances(StackInstances.builder()
+                        .deploymentTargets(deploymentTargets)
+                        .regions(set(REGION))
+                        .parameterOverrides(parameterOverrides)
+                        .build())
+                .build();
+    }
+
+    private static ResourceModel accounts(final String... accounts) {
+        return model(DeploymentTargets.builder().accounts(set(accounts)).build(), null);
+    }
+
+    private static ResourceModel filtered(final String accountFilterType, final Set<String> organizationalUnitIds, final String... accounts) {
+        return model(DeploymentTargets.builder()
+                .organizationalUnitIds(organizationalUnitIds)
+                .accounts(set(accounts))
+                .accountFilterType(accountFilterType)
+                .build(), null);
+    }
+
+    private static StackInstance instance(final String deploymentTarget) {
+        return StackInstance.builder().region(REGION).deploymentTarget(deploymentTarget).build();
+    }
+
+    private static StackInstancesPlaceHolder analyzeForUpdate(final ResourceModel previousModel, final ResourceModel desiredModel) {
+        final StackInstancesPlaceHolder placeHolder = new StackInstancesPlaceHolder();
+        InstancesAnalyzer.builder().previousModel(previousModel).desiredModel(desiredModel).build().analyzeForUpdate(placeHolder);
+        return placeHolder;
+    }
+
+    @Test
+    public void analyzeForUpdate_Accounts_DiffsTargets() {
+        final StackInstancesPlaceHolder placeHolder = analyzeForUpdate(accounts(ACCOUNT_1), accounts(ACCOUNT_2));
+
+        assertThat(placeHolder.getCreateStackInstances()).containsExactly(instance(ACCOUNT_2));
+        assertThat(placeHolder.getDeleteStackInstances()).containsExactly(instance(ACCOUNT_1));
+        assertThat(placeHolder.getUpdateStackInstances()).isEmpty();
+    }
+
+    @Test
+    public void analyzeForUpdate_ChangedOverrides_UpdatesRetainedTargets() {
+        final Set<Parameter> overrides = Collections.singleton(
+                Parameter.builder().parameterKey("Key").parameterValue("Value").build());
+        final ResourceModel previousModel = accounts(ACCOUNT_1);
+        final ResourceModel desiredModel = model(DeploymentTargets.builder().accounts(set(ACCOUNT_1)).build(), overrides);
+
+        final StackInstancesPlaceHolder placeHolder = analyzeForUpdate(previousModel, desiredModel);
+
+        assertThat(placeHolder.getCreateStackInstances()).isEmpty();
+        assertThat(placeHolder.getDeleteStackInstances()).isEmpty();
+        assertThat(placeHolder.getUpdateStackInstances()).containsExactly(instance(ACCOUNT_1));
+    }
+
+    @Test
+    public void analyzeForUpdate_OrganizationalUnits_DiffsOrganizationalUnits() {
+        final ResourceModel previousModel = model(DeploymentTargets.builder().organizationalUnitIds(set(OU)).build(), null);
+        final ResourceModel desiredModel = model(DeploymentTargets.builder().organizationalUnitIds(set(OTHER_OU)).build(), null);
+
+        final StackInstancesPlaceHolder placeHolder = analyzeForUpdate(previousModel, desiredModel);
+
+        assertThat(placeHolder.getCreateStackInstances()).containsExactly(instance(OTHER_OU));
+        assertThat(placeHolder.getDeleteStackInstances()).containsExactly(instance(OU));
+    }
+
+    @Test
+    public void analyzeForUpdate_ChangedExcludedAccounts_TurnsIntoIntersectionTargets() {
+        final StackInstancesPlaceHolder placeHolder = analyzeForUpdate(
+                filtered("DIFFERENCE", set(OU), ACCOUNT_1), filtered("DIFFERENCE", set(OU), ACCOUNT_2));
+
+        assertThat(placeHolder.getCreateStackInstances()).containsExactly(instance(ACCOUNT_1));
+        assertThat(placeHolder.getDeleteStackInstances()).containsExactly(instance(ACCOUNT_2));
+        final StackInstance created = placeHolder.getCreateStackInstances().iterator().next();
+        assertThat(created.getAccountFilterType()).isEqualTo("INTERSECTION");
+        assertThat(created.getOrganizationalUnitIds()).containsExactly(OU);
+    }
+
+    @Test
+    public void analyzeForUpdate_ExcludedAccountsWithOrganizationalUnits_Rejected() {
+        assertThatThrownBy(() -> analyzeForUpdate(
+                filtered("DIFFERENCE", set(OU), ACCOUNT_1), filtered("DIFFERENCE", set(OU, OTHER_OU), ACCOUNT_2)))
+                .isInstanceOf(CfnInvalidRequestException.class);
+    }
+
+    @Test
+    public void analyzeForUpdate_AccountLeavingUnionWithItsOrganizationalUnit_Rejected() {
+        assertThatThrownBy(() -> analyzeForUpdate(
+                filtered("UNION", set(OU), ACCOUNT_1, ACCOUNT_2), filtered("UNION", set(OU), ACCOUNT_1)))
+                .isInstanceOf(CfnInvalidRequestException.class)
+                .hasMessageContaining("cannot leave the UNION");
+    }
+
+    @Test
+    public void analyzeForUpdate_ChangedTargetingFamily_Rejected() {
+        final ResourceModel desiredModel = model(DeploymentTargets.builder().organizationalUnitIds(set(OU)).build(), null);
+
+        assertThatThrownBy(() -> analyzeForUpdate(accounts(ACCOUNT_1), desiredModel))
+                .isInstanceOf(CfnInvalidRequestException.class);
+    }
+
+    @Test
+    public void flattenStackInstances_Intersection_TargetsAccountsOnly() {
+        final Set<StackInstance> flattened = InstancesAnalyzer.flattenStackInstances(
+                filtered("INTERSECTION", set(OU), ACCOUNT_1).getStackInstances());
+
+        assertThat(flattened).containsExactly(instance(ACCOUNT_1));
+        assertThat(flattened.iterator().next().getOrganizationalUnitIds()).containsExactly(OU);
+    }
+
+    @Test
+    public void flattenStackInstances_AccountsWithoutFilter_Rejected() {
+        final ResourceModel model = filtered(null, set(OU), ACCOUNT_1);
+
+        assertThatThrownBy(() -> InstancesAnalyzer.flattenStackInstances(model.getStackInstances()))
+                .isInstanceOf(CfnInvalidRequestException.class);
+    }
+}
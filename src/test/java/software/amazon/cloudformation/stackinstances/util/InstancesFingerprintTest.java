@@ -0,0 +1,97 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.cloudformation.stackinstances.DeploymentTargets;
+import software.amazon.cloudformation.stackinstances.Parameter;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.StackInstances;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstancesFingerprintTest {
+
+    private static Set<String> set(final String... values) {
+        return new LinkedHashSet<>(Arrays.asList(values));
+    }
+
+    private static ResourceModel model(final Set<String> accounts, final Set<String> regions, final String parameterValue) {
+        return ResourceModel.builder()
+                .stackSetName("StackSet")
+                .stackInstances(StackInstances.builder()
+                        .deploymentTargets(DeploymentTargets.builder().accounts(accounts).build())
+                        .regions(regions)
+                        .parameterOverrides(parameterValue == null ? null : Collections.singleton(
+                                Parameter.builder().parameterKey("Key").parameterValue(parameterValue).build()))
+                        .build())
+                .build();
+    }
+
+    @Test
+    public void of_ReorderedProperties_SameFingerprint() {
+        final String fingerprint = InstancesFingerprint.of(
+                model(set("111111111111", "222222222222"), set("us-east-1", "eu-west-1"), "Value"));
+
+        assertThat(fingerprint).startsWith(InstancesFingerprint.VERSION);
+        assertThat(InstancesFingerprint.of(model(set("222222222222", "111111111111"), set("eu-west-1", "us-east-1"), "Value")))
+                .isEqualTo(fingerprint);
+    }
+
+    @Test
+    public void of_ChangedDeployment_DifferentFingerprint() {
+        final String fingerprint = InstancesFingerprint.of(model(set("111111111111"), set("us-east-1"), "Value"));
+
+        assertThat(InstancesFingerprint.of(model(set("111111111111"), set("us-east-1", "eu-west-1"), "Value")))
+                .isNotEqualTo(fingerprint);
+        assertThat(InstancesFingerprint.of(model(set("111111111111"), set("us-east-1"), "Other")))
+                .isNotEqualTo(fingerprint);
+        assertThat(InstancesFingerprint.of(model(set("111111111111"), set("us-east-1"), null)))
+                .isNotEqualTo(fingerprint);
+
+        final ResourceModel delegated = model(set("111111111111"), set("us-east-1"), "Value");
+        delegated.setCallAs("DELEGATED_ADMIN");
+        assertThat(InstancesFingerprint.of(delegated)).isNotEqualTo(fingerprint);
+    }
+
+    @Test
+    public void of_SeparatorInParameterValue_NoCollision() {
+        final ResourceModel left = model(set("111111111111"), set("us-east-1"), null);
+        left.getStackInstances().setParameterOverrides(new LinkedHashSet<>(Arrays.asList(
+                Parameter.builder().parameterKey("A").parameterValue("1:B").build())));
+        final ResourceModel right = model(set("111111111111"), set("us-east-1"), null);
+        right.getStackInstances().setParameterOverrides(new LinkedHashSet<>(Arrays.asList(
+                Parameter.builder().parameterKey("A:1").parameterValue("B").build())));
+
+        assertThat(InstancesFingerprint.of(left)).isNotEqualTo(InstancesFingerprint.of(right));
+    }
+
+    @Test
+    public void matches_PreviousModel() {
+        final String fingerprint = InstancesFingerprint.of(model(set("111111111111"), set("us-east-1"), "Value"));
+
+        assertThat(InstancesFingerprint.matches(model(set("111111111111"), set("us-east-1"), "Value"), fingerprint)).isTrue();
+        assertThat(InstancesFingerprint.matches(model(set("222222222222"), set("us-east-1"), "Value"), fingerprint)).isFalse();
+        assertThat(InstancesFingerprint.matches(null, fingerprint)).isFalse();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OperationCompletionsTest {
+
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/111111111111/completions";
+
+    @Test
+    public void construct_SqsQueueWithLocalStore_Rejected() {
+        assertThatThrownBy(() -> new OperationCompletions(
+                new SqsCompletionQueue(QUEUE_URL), new InMemoryLeaseStore(), Clock.systemUTC()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void construct_SqsQueueWithSharedStore_Enabled(@TempDir final Path directory) {
+        final OperationCompletions completions = new OperationCompletions(
+                new SqsCompletionQueue(QUEUE_URL), new FileLeaseStore(directory), Clock.systemUTC());
+
+        assertThat(completions.isEnabled()).isTrue();
+    }
+
+    @Test
+    public void construct_LocalQueueWithLocalStore_Enabled() {
+        final OperationCompletions completions = new OperationCompletions(
+                new InMemoryCompletionQueue(), new InMemoryLeaseStore(), Clock.systemUTC());
+
+        assertThat(completions.isEnabled()).isTrue();
+    }
+
+    @Test
+    public void fromConfiguration_StoreWithoutQueue_Rejected(@TempDir final Path directory) {
+        assertThatThrownBy(() -> OperationCompletions.fromConfiguration(null, "file:" + directory))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(OperationCompletions.COMPLETION_QUEUE_ENV);
+    }
+
+    @Test
+    public void fromConfiguration_SqsQueueWithoutStore_Rejected() {
+        assertThatThrownBy(() -> OperationCompletions.fromConfiguration(QUEUE_URL, null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(OperationCompletions.COMPLETION_STORE_ENV);
+    }
+
+    @Test
+    public void fromConfiguration_UnsupportedQueue_Rejected() {
+        assertThatThrownBy(() -> OperationCompletions.fromConfiguration("completions", null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unsupported completion queue");
+    }
+
+    @Test
+    public void fromConfiguration_Unset_Disabled() {
+        assertThat(OperationCompletions.fromConfiguration(null, null).isEnabled()).isFalse();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.cloudformation.Action;
+import software.amazon.cloudformation.exceptions.CfnInvalidRequestException;
+import software.amazon.cloudformation.stackinstances.DeploymentTargets;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.StackInstances;
+import software.amazon.cloudformation.stackinstances.StackSetTarget;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OperationPlanTest {
+
+    private static Set<String> set(final String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static StackInstances stackInstances(final Set<String> accounts) {
+        return StackInstances.builder()
+                .deploymentTargets(DeploymentTargets.builder().accounts(accounts).build())
+                .regions(set("us-east-1"))
+                .build();
+    }
+
+    private static StackSetTarget target(final String stackSetName, final String... dependsOn) {
+        return StackSetTarget.builder()
+                .stackSetName(stackSetName)
+                .dependsOn(dependsOn.length == 0 ? null : set(dependsOn))
+                .build();
+    }
+
+    private static ResourceModel model(final StackSetTarget... targets) {
+        return ResourceModel.builder()
+                .stackSetTargets(new HashSet<>(Arrays.asList(targets)))
+                .stackInstances(stackInstances(set("111111111111")))
+                .build();
+    }
+
+    private static Set<String> keys(final OperationPlan plan, final Set<String> completed, final Set<String> submitted) {
+        return plan.getReadyOperations(completed, submitted).stream()
+                .map(PlannedOperation::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Test
+    public void forCreate_DependsOn_ReadyAfterDependencyCompletes() {
+        final OperationPlan plan = OperationPlan.forCreate(model(target("Network"), target("App", "Network")));
+        final String network = PlannedOperation.key("Network", Action.CREATE);
+        final String app = PlannedOperation.key("App", Action.CREATE);
+
+        assertThat(keys(plan, Collections.emptySet(), Collections.emptySet())).containsExactly(network);
+        assertThat(keys(plan, Collections.emptySet(), set(network))).isEmpty();
+        assertThat(keys(plan, set(network), set(network))).containsExactly(app);
+        assertThat(plan.isComplete(set(network))).isFalse();
+        assertThat(plan.isComplete(set(network, app))).isTrue();
+    }
+
+    @Test
+    public void forCreate_IndependentStackSets_ReadyTogether() {
+        final OperationPlan plan = OperationPlan.forCreate(model(target("Network"), target("App")));
+
+        assertThat(keys(plan, Collections.emptySet(), Collections.emptySet())).containsExactlyInAnyOrder(
+                PlannedOperation.key("Network", Action.CREATE), PlannedOperation.key("App", Action.CREATE));
+    }
+
+    @Test
+    public void forCreate_CyclicDependsOn_Rejected() {
+        final ResourceModel model = model(target("Network", "App"), target("App", "Data"), target("Data", "Network"));
+
+        assertThatThrownBy(() -> OperationPlan.forCreate(model))
+                .isInstanceOf(CfnInvalidRequestException.class)
+                .hasMessageContaining("cyclic DependsOn");
+    }
+
+    @Test
+    public void forCreate_UnknownDependsOn_Rejected() {
+        assertThatThrownBy(() -> OperationPlan.forCreate(model(target("App", "Network"))))
+                .isInstanceOf(CfnInvalidRequestException.class)
+                .hasMessageContaining("not in StackSetTargets");
+    }
+
+    @Test
+    public void forDelete_DependsOn_Reversed() {
+        final OperationPlan plan = OperationPlan.forDelete(model(target("Network"), target("App", "Network")));
+        final String network = PlannedOperation.key("Network", Action.DELETE);
+        final String app = PlannedOperation.key("App", Action.DELETE);
+
+        assertThat(keys(plan, Collections.emptySet(), Collections.emptySet())).containsExactly(app);
+        assertThat(keys(plan, set(app), set(app))).containsExactly(network);
+    }
+
+    @Test
+    public void forUpdate_SameStackSet_OperationsRunOneAfterAnother() {
+        final ResourceModel previousModel = ResourceModel.builder()
+                .stackSetTargets(Collections.singleton(target("App")))
+                .stackInstances(stackInstances(set("111111111111")))
+                .build();
+        final ResourceModel desiredModel = ResourceModel.builder()
+                .stackSetTargets(Collections.singleton(target("App")))
+                .stackInstances(stackInstances(set("222222222222")))
+                .build();
+        final OperationPlan plan = OperationPlan.forUpdate(previousModel, desiredModel);
+        final String delete = PlannedOperation.key("App", Action.DELETE);
+        final String create = PlannedOperation.key("App", Action.CREATE);
+
+        assertThat(plan.getOperations()).extracting(PlannedOperation::getKey).containsExactly(delete, create);
+        assertThat(keys(plan, Collections.emptySet(), Collections.emptySet())).containsExactly(delete);
+        assertThat(keys(plan, set(delete), set(delete))).containsExactly(create);
+        assertThat(plan.isComplete(set(delete, create))).isTrue();
+    }
+
+    @Test
+    public void forUpdate_RemovedStackSet_DeletesAllItsStackInstances() {
+        final ResourceModel previousModel = model(target("Network"), target("App"));
+        final ResourceModel desiredModel = model(target("Network"));
+
+        final OperationPlan plan = OperationPlan.forUpdate(previousModel, desiredModel);
+
+        assertThat(plan.getOperations()).extracting(PlannedOperation::getKey)
+                .containsExactly(PlannedOperation.key("App", Action.DELETE));
+    }
+
+    @Test
+    public void forUpdate_RetriedStackInstances_CreatedAgain() {
+        final ResourceModel model = model(target("App"));
+        final StackInstance retried = StackInstance.builder().region("us-east-1").deploymentTarget("111111111111").build();
+
+        final OperationPlan plan = OperationPlan.forUpdate(model, model, Collections.singleton(retried));
+
+        assertThat(plan.getOperations()).extracting(PlannedOperation::getKey)
+                .containsExactly(PlannedOperation.key("App", Action.CREATE));
+        assertThat(plan.getOperations().get(0).getStackInstances()).containsExactly(retried);
+    }
+}
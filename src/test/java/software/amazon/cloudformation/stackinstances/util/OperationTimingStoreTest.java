@@ -0,0 +1,65 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class OperationTimingStoreTest {
+
+    private static final String KEY = "us-east-1::SELF::StackSet";
+
+    private final OperationTimingStore store = new OperationTimingStore(new InMemoryLeaseStore());
+
+    @Test
+    public void record_FirstObservation_TakenAsIs() {
+        store.record(KEY, "CREATE", Collections.singletonMap("us-east-1", 0.25), 1_000.0);
+
+        assertThat(store.getMillisPerInstance(KEY, "CREATE")).containsEntry("us-east-1", 1_000.0);
+        assertThat(store.getFailureRates(KEY, "CREATE")).containsEntry("us-east-1", 0.25);
+    }
+
+    @Test
+    public void record_LaterObservations_Smoothed() {
+        store.record(KEY, "CREATE", Collections.singletonMap("us-east-1", 0.0), 1_000.0);
+        store.record(KEY, "CREATE", Collections.singletonMap("us-east-1", 1.0), 2_000.0);
+
+        assertThat(store.getMillisPerInstance(KEY, "CREATE").get("us-east-1")).isCloseTo(1_300.0, within(0.001));
+        assertThat(store.getFailureRates(KEY, "CREATE").get("us-east-1")).isCloseTo(0.3, within(0.001));
+    }
+
+    @Test
+    public void record_FailedOperation_KeepsDurationsUntouched() {
+        store.record(KEY, "CREATE", Collections.singletonMap("us-east-1", 1.0), null);
+
+        assertThat(store.getMillisPerInstance(KEY, "CREATE")).isEmpty();
+        assertThat(store.getFailureRates(KEY, "CREATE")).containsEntry("us-east-1", 1.0);
+    }
+
+    @Test
+    public void getMillisPerInstance_OtherActionOrStackSet_Empty() {
+        store.record(KEY, "CREATE", Collections.singletonMap("us-east-1", 0.0), 1_000.0);
+
+        assertThat(store.getMillisPerInstance(KEY, "DELETE")).isEmpty();
+        assertThat(store.getMillisPerInstance("eu-west-1::SELF::StackSet", "CREATE")).isEmpty();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.cloudformation.stackinstances.OperationPreferences;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RegionOrderPlannerTest {
+
+    private static final DurationEstimator.Concurrency CONCURRENCY = DurationEstimator.Concurrency.of(
+            OperationPreferences.builder().maxConcurrentCount(1).build());
+
+    private static Map<String, Integer> instancesByRegion(final String... regions) {
+        final Map<String, Integer> instancesByRegion = new HashMap<>();
+        for (final String region : regions) instancesByRegion.put(region, 2);
+        return instancesByRegion;
+    }
+
+    @Test
+    public void order_WithoutHistory_Alphabetical() {
+        assertThat(RegionOrderPlanner.order(instancesByRegion("us-east-1", "eu-west-1", "ap-south-1"),
+                CONCURRENCY, Collections.emptyMap(), Collections.emptyMap()))
+                .containsExactly("ap-south-1", "eu-west-1", "us-east-1");
+    }
+
+    @Test
+    public void order_WithoutFailures_FastestFirst() {
+        final Map<String, Double> millisPerInstance = new HashMap<>();
+        millisPerInstance.put("eu-west-1", 3_000.0);
+        millisPerInstance.put("us-east-1", 1_000.0);
+        millisPerInstance.put("ap-south-1", 2_000.0);
+
+        assertThat(RegionOrderPlanner.order(instancesByRegion("us-east-1", "eu-west-1", "ap-south-1"),
+                CONCURRENCY, millisPerInstance, Collections.emptyMap()))
+                .containsExactly("us-east-1", "ap-south-1", "eu-west-1");
+    }
+
+    @Test
+    public void order_FailedRegion_First() {
+        final Map<String, Double> millisPerInstance = new HashMap<>();
+        millisPerInstance.put("eu-west-1", 3_000.0);
+        millisPerInstance.put("us-east-1", 1_000.0);
+
+        assertThat(RegionOrderPlanner.order(instancesByRegion("us-east-1", "eu-west-1"),
+                CONCURRENCY, millisPerInstance, Collections.singletonMap("eu-west-1", 0.1)))
+                .containsExactly("eu-west-1", "us-east-1");
+    }
+
+    @Test
+    public void isAuto_OnlyForSingleAutoEntry() {
+        assertThat(RegionOrderPlanner.isAuto(OperationPreferences.builder()
+                .regionOrder(Collections.singletonList(RegionOrderPlanner.AUTO)).build())).isTrue();
+        assertThat(RegionOrderPlanner.isAuto(OperationPreferences.builder()
+                .regionOrder(Arrays.asList(RegionOrderPlanner.AUTO, "us-east-1")).build())).isFalse();
+        assertThat(RegionOrderPlanner.isAuto(null)).isFalse();
+    }
+}
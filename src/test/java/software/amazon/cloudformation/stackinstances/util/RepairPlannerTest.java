@@ -0,0 +1,147 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.AccountFilterType;
+import software.amazon.awssdk.services.cloudformation.model.ListStackInstancesRequest;
+import software.amazon.awssdk.services.cloudformation.model.ListStackInstancesResponse;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceComprehensiveStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceDetailedStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackInstanceSummary;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.Credentials;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.LoggerProxy;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.Parameter;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RepairPlannerTest {
+
+    private static final String STACK_SET = "StackSet";
+
+    private static final String OU = "ou-abcd-11111111";
+
+    private final Logger logger = message -> { };
+
+    private final ResourceModel model = ResourceModel.builder().stackSetName(STACK_SET).build();
+
+    private final List<StackInstanceSummary> summaries = new ArrayList<>();
+
+    private final ProxyClient<CloudFormationClient> proxyClient = new AmazonWebServicesClientProxy(new LoggerProxy(),
+            new Credentials("test", "test", "test"), () -> 0L).newProxy(() -> new CloudFormationClient() {
+                @Override
+                public ListStackInstancesResponse listStackInstances(final ListStackInstancesRequest request) {
+                    return ListStackInstancesResponse.builder().summaries(summaries).build();
+                }
+
+                @Override
+                public String serviceName() {
+                    return SERVICE_NAME;
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+
+    private static StackInstance instance(final String target, final String region) {
+        return StackInstance.builder().deploymentTarget(target).region(region).build();
+    }
+
+    private void summary(final String account, final String region, final String organizationalUnitId,
+                         final StackInstanceStatus status, final StackInstanceDetailedStatus detailedStatus) {
+        summaries.add(StackInstanceSummary.builder()
+                .account(account)
+                .region(region)
+                .organizationalUnitId(organizationalUnitId)
+                .status(status)
+                .stackInstanceStatus(StackInstanceComprehensiveStatus.builder().detailedStatus(detailedStatus).build())
+                .build());
+    }
+
+    @Test
+    public void collectOutdated_IdleOutdatedInstances_Collected() {
+        summary("111111111111", "us-east-1", null, StackInstanceStatus.OUTDATED, StackInstanceDetailedStatus.FAILED);
+        summary("111111111111", "eu-west-1", null, StackInstanceStatus.OUTDATED, StackInstanceDetailedStatus.RUNNING);
+        summary("222222222222", "us-east-1", null, StackInstanceStatus.INOPERABLE, StackInstanceDetailedStatus.FAILED);
+        summary("222222222222", "eu-west-1", null, StackInstanceStatus.CURRENT, StackInstanceDetailedStatus.SUCCEEDED);
+        summary("333333333333", "us-east-1", null, StackInstanceStatus.OUTDATED, StackInstanceDetailedStatus.FAILED);
+
+        final Set<StackInstance> outdated = RepairPlanner.collectOutdated(proxyClient, model, STACK_SET,
+                new HashSet<>(Arrays.asList(
+                        instance("111111111111", "us-east-1"), instance("111111111111", "eu-west-1"),
+                        instance("222222222222", "us-east-1"), instance("222222222222", "eu-west-1"))),
+                logger);
+
+        assertThat(outdated).containsExactly(instance("111111111111", "us-east-1"));
+    }
+
+    @Test
+    public void collectOutdated_AccountUnderOrganizationalUnit_CollectedThroughIntersection() {
+        summary("444444444444", "us-east-1", OU, StackInstanceStatus.OUTDATED, StackInstanceDetailedStatus.FAILED);
+
+        final Set<StackInstance> outdated = RepairPlanner.collectOutdated(proxyClient, model, STACK_SET,
+                Collections.singleton(instance(OU, "us-east-1")), logger);
+
+        assertThat(outdated).hasSize(1);
+        final StackInstance repaired = outdated.iterator().next();
+        assertThat(repaired).isEqualTo(instance("444444444444", "us-east-1"));
+        assertThat(repaired.getOrganizationalUnitIds()).containsExactly(OU);
+        assertThat(repaired.getAccountFilterType()).isEqualTo(AccountFilterType.INTERSECTION.toString());
+    }
+
+    @Test
+    public void collectOutdated_AccountExcludedFromOrganizationalUnit_Skipped() {
+        summary("444444444444", "us-east-1", OU, StackInstanceStatus.OUTDATED, StackInstanceDetailedStatus.FAILED);
+        final StackInstance target = instance(OU, "us-east-1");
+        target.setExcludedAccounts(Collections.singleton("444444444444"));
+
+        assertThat(RepairPlanner.collectOutdated(proxyClient, model, STACK_SET, Collections.singleton(target), logger))
+                .isEmpty();
+    }
+
+    @Test
+    public void nextBatch_SharedRegions_PicksLargestRectangleWithOverrides() {
+        final Set<Parameter> overrides = Collections.singleton(
+                Parameter.builder().parameterKey("Baseline").parameterValue("v2").build());
+        final Set<StackInstance> outdated = new HashSet<>(Arrays.asList(
+                instance("111111111111", "us-east-1"), instance("111111111111", "eu-west-1"),
+                instance("222222222222", "us-east-1"), instance("222222222222", "eu-west-1"),
+                instance("333333333333", "us-east-1")));
+
+        final Set<StackInstance> batch = RepairPlanner.nextBatch(outdated, overrides);
+
+        assertThat(batch).containsExactlyInAnyOrder(
+                instance("111111111111", "us-east-1"), instance("111111111111", "eu-west-1"),
+                instance("222222222222", "us-east-1"), instance("222222222222", "eu-west-1"));
+        assertThat(batch).allMatch(stackInstance -> overrides.equals(stackInstance.getParameters()));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackSetOperationRequest;
+import software.amazon.awssdk.services.cloudformation.model.DescribeStackSetOperationResponse;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationResultsRequest;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationResultsResponse;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperation;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationResultSummary;
+import software.amazon.cloudformation.Action;
+import software.amazon.cloudformation.exceptions.TerminalException;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.Credentials;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.LoggerProxy;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.CallbackContext;
+import software.amazon.cloudformation.stackinstances.OperationPreferences;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.RolloutPreferences;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RolloutControllerTest {
+
+    private static final String STACK_SET = "StackSet";
+
+    private static final String PREVIOUS_OPERATION = "previous-operation";
+
+    private final Logger logger = message -> { };
+
+    private final List<StackSetOperationResultSummary> results = new ArrayList<>();
+
+    private int resultListings;
+
+    private final CallbackContext callbackContext = new CallbackContext();
+
+    private final ProxyClient<CloudFormationClient> proxyClient = new AmazonWebServicesClientProxy(new LoggerProxy(),
+            new Credentials("test", "test", "test"), () -> 0L).newProxy(() -> new CloudFormationClient() {
+                @Override
+                public ListStackSetOperationResultsResponse listStackSetOperationResults(
+                        final ListStackSetOperationResultsRequest request) {
+                    resultListings++;
+                    return ListStackSetOperationResultsResponse.builder().summaries(results).build();
+                }
+
+                @Override
+                public DescribeStackSetOperationResponse describeStackSetOperation(
+                        final DescribeStackSetOperationRequest request) {
+                    return DescribeStackSetOperationResponse.builder()
+                            .stackSetOperation(StackSetOperation.builder()
+                                    .operationId(request.operationId())
+                                    .creationTimestamp(Instant.EPOCH)
+                                    .endTimestamp(Instant.EPOCH.plus(Duration.ofMinutes(10L)))
+                                    .build())
+                            .build();
+                }
+
+                @Override
+                public String serviceName() {
+                    return SERVICE_NAME;
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+
+    private static ResourceModel model(final Integer minimumSuccessPercentage) {
+        return ResourceModel.builder()
+                .stackSetName(STACK_SET)
+                .rolloutPreferences(RolloutPreferences.builder()
+                        .canaryTargetCount(1)
+                        .minimumSuccessPercentage(minimumSuccessPercentage)
+                        .build())
+                .build();
+    }
+
+    private static RolloutWave wave(final int index) {
+        return RolloutWave.builder().index(index).stackInstances(Collections.emptySet()).build();
+    }
+
+    private void results(final int succeeded, final int failed) {
+        for (int index = 0; index < succeeded + failed; index++) {
+            results.add(StackSetOperationResultSummary.builder()
+                    .account(String.format("%012d", index))
+                    .region("us-east-1")
+                    .status(index < succeeded ? StackSetOperationResultStatus.SUCCEEDED : StackSetOperationResultStatus.FAILED)
+                    .build());
+        }
+        callbackContext.getRolloutOperationIds().put(RolloutWave.key(STACK_SET, Action.CREATE, 0), PREVIOUS_OPERATION);
+    }
+
+    @Test
+    public void checkGate_FirstWave_NoLookup() {
+        RolloutController.checkGate(proxyClient, model(100), callbackContext, Action.CREATE, wave(0), logger);
+
+        assertThat(resultListings).isZero();
+    }
+
+    @Test
+    public void checkGate_PreviousWaveAboveMinimum_PassesOnce() {
+        results(9, 1);
+
+        RolloutController.checkGate(proxyClient, model(90), callbackContext, Action.CREATE, wave(1), logger);
+        RolloutController.checkGate(proxyClient, model(90), callbackContext, Action.CREATE, wave(1), logger);
+
+        assertThat(callbackContext.getPassedRolloutWaves()).containsExactly(RolloutWave.key(STACK_SET, Action.CREATE, 0));
+        assertThat(resultListings).isEqualTo(1);
+    }
+
+    @Test
+    public void checkGate_PreviousWaveBelowMinimum_Terminal() {
+        results(8, 2);
+
+        assertThatThrownBy(() -> RolloutController.checkGate(
+                proxyClient, model(90), callbackContext, Action.CREATE, wave(1), logger))
+                .isInstanceOf(TerminalException.class);
+        assertThat(callbackContext.getPassedRolloutWaves()).isEmpty();
+    }
+
+    @Test
+    public void checkGate_NoMinimum_RequiresEveryInstance() {
+        results(9, 1);
+
+        assertThatThrownBy(() -> RolloutController.checkGate(
+                proxyClient, model(null), callbackContext, Action.CREATE, wave(1), logger))
+                .isInstanceOf(TerminalException.class);
+    }
+
+    @Test
+    public void estimate_Waves_AddUp() {
+        final Set<StackInstance> stackInstances = new HashSet<>(Arrays.asList(
+                StackInstance.builder().deploymentTarget("111111111111").region("us-east-1").build(),
+                StackInstance.builder().deploymentTarget("222222222222").region("us-east-1").build()));
+        final OperationPreferences operationPreferences = OperationPreferences.builder().maxConcurrentCount(1).build();
+        final RolloutWave first = RolloutWave.builder().index(0)
+                .stackInstances(stackInstances).operationPreferences(operationPreferences).build();
+        final RolloutWave second = RolloutWave.builder().index(1)
+                .stackInstances(stackInstances).operationPreferences(operationPreferences).build();
+
+        final Duration single = RolloutController.estimate(first, operationPreferences, Collections.emptyMap());
+
+        assertThat(single).isEqualTo(DurationEstimator.DEFAULT_INSTANCE_DURATION.multipliedBy(2L));
+        assertThat(RolloutController.estimate(Arrays.asList(first, second), operationPreferences, Collections.emptyMap()))
+                .isEqualTo(single.multipliedBy(2L));
+    }
+
+    @Test
+    public void checkGate_AutoTunedWaveAfterCleanWave_RaisesConcurrency() {
+        results(10, 0);
+        callbackContext.getRolloutConcurrency().put(RolloutWave.key(STACK_SET, Action.CREATE, 0), 10);
+        final RolloutWave wave = RolloutWave.builder().index(1).stackInstances(Collections.emptySet())
+                .maxConcurrentPercentageCeiling(50).build();
+
+        RolloutController.checkGate(proxyClient, model(100), callbackContext, Action.CREATE, wave, logger);
+
+        assertThat(callbackContext.getRolloutConcurrency())
+                .containsEntry(wave.getKey(STACK_SET, Action.CREATE), 10 + ConcurrencyTuner.ADDITIVE_INCREASE);
+        assertThat(callbackContext.getRolloutMillisPerInstance())
+                .containsEntry(RolloutWave.key(STACK_SET, Action.CREATE, 0), 60_000.0);
+    }
+
+    @Test
+    public void checkGate_AutoTunedWaveAfterFailures_HalvesConcurrency() {
+        results(9, 1);
+        callbackContext.getRolloutConcurrency().put(RolloutWave.key(STACK_SET, Action.CREATE, 0), 40);
+        final RolloutWave wave = RolloutWave.builder().index(1).stackInstances(Collections.emptySet())
+                .maxConcurrentPercentageCeiling(50).build();
+
+        RolloutController.checkGate(proxyClient, model(90), callbackContext, Action.CREATE, wave, logger);
+
+        assertThat(callbackContext.getRolloutConcurrency()).containsEntry(wave.getKey(STACK_SET, Action.CREATE), 20);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.cloudformation.Action;
+import software.amazon.cloudformation.stackinstances.OperationPreferences;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.RolloutPreferences;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RolloutWaveTest {
+
+    private static final String FIRST_REGION = "us-west-2";
+
+    private static final String OTHER_REGION = "us-east-1";
+
+    private static final OperationPreferences OPERATION_PREFERENCES = OperationPreferences.builder()
+            .regionOrder(Arrays.asList(FIRST_REGION, OTHER_REGION))
+            .failureToleranceCount(1)
+            .build();
+
+    private static String account(final int index) {
+        return String.format("%012d", index);
+    }
+
+    private static Set<StackInstance> grid(final int accounts, final String... regions) {
+        final Set<StackInstance> stackInstances = new HashSet<>();
+        for (int index = 1; index <= accounts; index++) {
+            for (final String region : regions) {
+                stackInstances.add(StackInstance.builder().deploymentTarget(account(index)).region(region).build());
+            }
+        }
+        return stackInstances;
+    }
+
+    private static ResourceModel model(final RolloutPreferences rolloutPreferences) {
+        return ResourceModel.builder().stackSetName("StackSet").rolloutPreferences(rolloutPreferences).build();
+    }
+
+    @Test
+    public void plan_WithoutRollout_SingleWaveWithResourcePreferences() {
+        final Set<StackInstance> stackInstances = grid(3, FIRST_REGION, OTHER_REGION);
+
+        final List<RolloutWave> waves = RolloutWave.plan(stackInstances, model(null), OPERATION_PREFERENCES);
+
+        assertThat(waves).hasSize(1);
+        assertThat(waves.get(0).getIndex()).isZero();
+        assertThat(waves.get(0).getStackInstances()).isEqualTo(stackInstances);
+        assertThat(waves.get(0).getOperationPreferences()).isSameAs(OPERATION_PREFERENCES);
+        assertThat(waves.get(0).getCallGraphSuffix()).isEmpty();
+    }
+
+    @Test
+    public void plan_Rollout_CanaryThenFirstRegionThenOtherRegions() {
+        final RolloutPreferences rollout = RolloutPreferences.builder().canaryTargetCount(1).build();
+
+        final List<RolloutWave> waves = RolloutWave.plan(grid(3, FIRST_REGION, OTHER_REGION), model(rollout), OPERATION_PREFERENCES);
+
+        assertThat(waves).extracting(RolloutWave::getIndex).containsExactly(0, 1, 2);
+        assertThat(waves).extracting(RolloutWave::getCallGraphSuffix).containsExactly("::Wave0", "::Wave1", "::Wave2");
+        assertThat(waves.get(0).getStackInstances()).isEqualTo(grid(1, FIRST_REGION));
+        assertThat(waves.get(0).getOperationPreferences()).isSameAs(OPERATION_PREFERENCES);
+        assertThat(waves.get(1).getStackInstances()).extracting(StackInstance::getDeploymentTarget)
+                .containsExactlyInAnyOrder(account(2), account(3));
+        assertThat(waves.get(1).getStackInstances()).extracting(StackInstance::getRegion).containsOnly(FIRST_REGION);
+        assertThat(waves.get(2).getStackInstances()).isEqualTo(grid(3, OTHER_REGION));
+
+        final OperationPreferences bulk = waves.get(1).getOperationPreferences();
+        assertThat(bulk.getRegionConcurrencyType()).isEqualTo("PARALLEL");
+        assertThat(bulk.getMaxConcurrentPercentage()).isEqualTo(100);
+        assertThat(bulk.getFailureToleranceCount()).isEqualTo(1);
+        assertThat(waves.get(1).getMaxConcurrentPercentageCeiling()).isNull();
+    }
+
+    @Test
+    public void plan_BulkWaveTargetCount_ChunksBulkWaves() {
+        final RolloutPreferences rollout = RolloutPreferences.builder().canaryTargetCount(1).bulkWaveTargetCount(2).build();
+
+        final List<RolloutWave> waves = RolloutWave.plan(grid(5, FIRST_REGION), model(rollout), OPERATION_PREFERENCES);
+
+        assertThat(waves).hasSize(3);
+        assertThat(waves.get(1).getStackInstances()).extracting(StackInstance::getDeploymentTarget)
+                .containsExactlyInAnyOrder(account(2), account(3));
+        assertThat(waves.get(2).getStackInstances()).extracting(StackInstance::getDeploymentTarget)
+                .containsExactlyInAnyOrder(account(4), account(5));
+    }
+
+    @Test
+    public void plan_AutoTuneConcurrency_FirstBulkWaveStartsLow() {
+        final RolloutPreferences rollout = RolloutPreferences.builder()
+                .canaryTargetCount(1).bulkWaveTargetCount(2).bulkMaxConcurrentPercentage(50).autoTuneConcurrency(true).build();
+
+        final List<RolloutWave> waves = RolloutWave.plan(grid(5, FIRST_REGION), model(rollout), OPERATION_PREFERENCES);
+
+        assertThat(waves.get(1).getOperationPreferences().getMaxConcurrentPercentage()).isEqualTo(ConcurrencyTuner.ADDITIVE_INCREASE);
+        assertThat(waves.get(2).getOperationPreferences().getMaxConcurrentPercentage()).isEqualTo(50);
+        assertThat(waves.subList(1, waves.size())).extracting(RolloutWave::getMaxConcurrentPercentageCeiling).containsOnly(50);
+    }
+
+    @Test
+    public void key_IncludesOperationAndIndex() {
+        assertThat(RolloutWave.key("StackSet", Action.CREATE, 2))
+                .isEqualTo(PlannedOperation.key("StackSet", Action.CREATE) + "::wave-2");
+    }
+}
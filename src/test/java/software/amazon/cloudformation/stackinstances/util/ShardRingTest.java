@@ -0,0 +1,91 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.cloudformation.exceptions.CfnInvalidRequestException;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.StackSetTarget;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShardRingTest {
+
+    private static ShardRing ring(final int shardCount) {
+        return ShardRing.of(ResourceModel.builder().stackSetName("StackSet").shardCount(shardCount).build());
+    }
+
+    private static String account(final int index) {
+        return String.format("%012d", index);
+    }
+
+    @Test
+    public void of_SingleShard_NotSharded() {
+        assertThat(ring(1)).isNull();
+        assertThat(ShardRing.of(ResourceModel.builder().stackSetName("StackSet").build())).isNull();
+    }
+
+    @Test
+    public void of_ShardCount_NamesShards() {
+        assertThat(ring(3).getStackSetNames()).containsExactly("StackSet", "StackSet-shard-1", "StackSet-shard-2");
+    }
+
+    @Test
+    public void of_StackSetTargets_Rejected() {
+        final ResourceModel model = ResourceModel.builder()
+                .stackSetTargets(Collections.singleton(StackSetTarget.builder().stackSetName("StackSet").build()))
+                .shardCount(2)
+                .build();
+
+        assertThatThrownBy(() -> ShardRing.of(model)).isInstanceOf(CfnInvalidRequestException.class);
+    }
+
+    @Test
+    public void stackSetNameOf_AddedShard_MovesOnlyTargetsItTakesOver() {
+        final ShardRing before = ring(4);
+        final ShardRing after = ring(5);
+        final Map<String, Integer> moved = new HashMap<>();
+        for (int index = 0; index < 1_000; index++) {
+            final String target = account(index);
+            if (!before.stackSetNameOf(target).equals(after.stackSetNameOf(target))) {
+                assertThat(after.stackSetNameOf(target)).isEqualTo("StackSet-shard-4");
+                moved.merge(after.stackSetNameOf(target), 1, Integer::sum);
+            }
+        }
+
+        // About a fifth of the targets move to the new shard
+        assertThat(moved.getOrDefault("StackSet-shard-4", 0)).isBetween(100, 300);
+    }
+
+    @Test
+    public void stackSetNameOf_FilteredAccount_FollowsOrganizationalUnit() {
+        final ShardRing shardRing = ring(8);
+        for (int index = 0; index < 100; index++) {
+            final StackInstance stackInstance = StackInstance.builder()
+                    .deploymentTarget(account(index)).region("us-east-1").accountFilterType("INTERSECTION")
+                    .organizationalUnitIds(Collections.singleton("ou-abcd-11111111")).build();
+
+            assertThat(shardRing.stackSetNameOf(stackInstance)).isEqualTo(shardRing.stackSetNameOf("ou-abcd-11111111"));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StackInstanceGridTest {
+
+    private static StackInstance instance(final String target, final String region) {
+        return StackInstance.builder().deploymentTarget(target).region(region).build();
+    }
+
+    private static Set<StackInstance> instances(final StackInstance... stackInstances) {
+        return new HashSet<>(Arrays.asList(stackInstances));
+    }
+
+    @Test
+    public void partition_Rectangle_SingleRectangle() {
+        final Set<StackInstance> stackInstances = instances(
+                instance("111111111111", "us-east-1"), instance("111111111111", "eu-west-1"),
+                instance("222222222222", "us-east-1"), instance("222222222222", "eu-west-1"));
+
+        final List<Set<StackInstance>> rectangles = StackInstanceGrid.partition(stackInstances);
+
+        assertThat(rectangles).hasSize(1);
+        assertThat(rectangles.get(0)).isEqualTo(stackInstances);
+    }
+
+    @Test
+    public void partition_Staircase_ExactRectangles() {
+        final Set<StackInstance> stackInstances = instances(
+                instance("111111111111", "us-east-1"), instance("111111111111", "eu-west-1"),
+                instance("222222222222", "us-east-1"));
+
+        final List<Set<StackInstance>> rectangles = StackInstanceGrid.partition(stackInstances);
+
+        assertThat(rectangles).hasSize(2);
+        assertThat(rectangles).allMatch(StackInstanceGrid::isRectangle);
+        assertThat(rectangles.get(0)).containsExactlyInAnyOrder(
+                instance("111111111111", "us-east-1"), instance("111111111111", "eu-west-1"));
+        assertThat(rectangles.get(1)).containsExactly(instance("222222222222", "us-east-1"));
+    }
+
+    @Test
+    public void partition_DifferentTargeting_SeparateRectangles() {
+        final StackInstance organizationalUnit = StackInstance.builder()
+                .deploymentTarget("ou-abcd-11111111").region("us-east-1").build();
+        final StackInstance intersection = StackInstance.builder()
+                .deploymentTarget("111111111111").region("us-east-1").accountFilterType("INTERSECTION")
+                .organizationalUnitIds(new HashSet<>(Arrays.asList("ou-abcd-11111111"))).build();
+
+        final List<Set<StackInstance>> rectangles = StackInstanceGrid.partition(instances(organizationalUnit, intersection));
+
+        assertThat(rectangles).hasSize(2);
+    }
+
+    @Test
+    public void partition_SameContent_SameOrder() {
+        final Set<StackInstance> first = instances(
+                instance("333333333333", "us-east-1"), instance("111111111111", "eu-west-1"),
+                instance("222222222222", "us-east-1"));
+        final Set<StackInstance> second = instances(
+                instance("222222222222", "us-east-1"), instance("333333333333", "us-east-1"),
+                instance("111111111111", "eu-west-1"));
+
+        assertThat(StackInstanceGrid.partition(first)).isEqualTo(StackInstanceGrid.partition(second));
+    }
+
+    @Test
+    public void removeCovered_CoveredTargetAndRegion_StaysRectangle() {
+        final Set<StackInstance> planned = instances(
+                instance("111111111111", "us-east-1"), instance("111111111111", "eu-west-1"),
+                instance("222222222222", "us-east-1"), instance("222222222222", "eu-west-1"));
+        final Set<StackInstance> covered = instances(
+                instance("111111111111", "us-east-1"), instance("111111111111", "eu-west-1"));
+
+        final Set<StackInstance> remaining = StackInstanceGrid.removeCovered(planned, covered);
+
+        assertThat(remaining).containsExactlyInAnyOrder(
+                instance("222222222222", "us-east-1"), instance("222222222222", "eu-west-1"));
+        assertThat(StackInstanceGrid.isRectangle(remaining)).isTrue();
+    }
+
+    @Test
+    public void removeCovered_SingleCoveredInstance_StaysPlanned() {
+        final Set<StackInstance> planned = instances(
+                instance("111111111111", "us-east-1"), instance("111111111111", "eu-west-1"),
+                instance("222222222222", "us-east-1"), instance("222222222222", "eu-west-1"));
+
+        final Set<StackInstance> remaining = StackInstanceGrid.removeCovered(planned,
+                instances(instance("111111111111", "us-east-1")));
+
+        assertThat(remaining).isEqualTo(planned);
+    }
+}
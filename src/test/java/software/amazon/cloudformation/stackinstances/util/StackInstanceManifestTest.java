@@ -0,0 +1,278 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.cloudformation.exceptions.CfnInvalidRequestException;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.Credentials;
+import software.amazon.cloudformation.proxy.LoggerProxy;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.Parameter;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+import software.amazon.cloudformation.stackinstances.StackInstances;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StackInstanceManifestTest {
+
+    private static final String SECTION_A = "{\"Accounts\": [\"111111111111\", \"222222222222\"], \"Regions\": [\"us-east-1\", \"eu-west-1\"],"
+            + " \"ParameterOverrides\": [{\"ParameterKey\": \"Tier\", \"ParameterValue\": \"prod\"}]}";
+
+    private static final String SECTION_A_REORDERED = "{\"Regions\": [\"eu-west-1\", \"us-east-1\"], \"Accounts\": [\"222222222222\", \"111111111111\"],"
+            + " \"ParameterOverrides\": [{\"ParameterKey\": \"Tier\", \"ParameterValue\": \"prod\"}]}";
+
+    private static final String SECTION_B = "{\"Accounts\": [\"333333333333\"], \"Regions\": [\"us-east-1\"]}";
+
+    private static final String SECTION_B_CHANGED = "{\"Accounts\": [\"333333333333\", \"444444444444\"], \"Regions\": [\"us-east-1\"]}";
+
+    /**
+     * Object versions by version ID, the last one is the current version
+     */
+    private final Map<String, String> versions = new HashMap<>();
+
+    private final List<GetObjectRequest> requests = new ArrayList<>();
+
+    private String currentVersion;
+
+    private String location;
+
+    private final ProxyClient<S3Client> proxyClient = new AmazonWebServicesClientProxy(new LoggerProxy(),
+            new Credentials("test", "test", "test"), () -> 0L).newProxy(() -> new S3Client() {
+                @Override
+                public ResponseInputStream<GetObjectResponse> getObject(final GetObjectRequest request) {
+                    requests.add(request);
+                    final String versionId = request.versionId() == null ? currentVersion : request.versionId();
+                    if (("etag-" + versionId).equals(request.ifNoneMatch())) {
+                        throw (S3Exception) S3Exception.builder().statusCode(304).build();
+                    }
+                    return new ResponseInputStream<>(
+                            GetObjectResponse.builder().versionId(versionId).eTag("etag-" + versionId).build(),
+                            AbortableInputStream.create(new ByteArrayInputStream(
+                                    versions.get(versionId).getBytes(StandardCharsets.UTF_8))));
+                }
+
+                @Override
+                public String serviceName() {
+                    return SERVICE_NAME;
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+
+    private static String manifest(final String... sections) {
+        return "{\"Version\": 1, \"Sections\": [" + String.join(", ", sections) + "]}";
+    }
+
+    private static StackInstanceManifest parse(final String content) throws IOException {
+        return StackInstanceManifest.parse(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void put(final String versionId, final String content) {
+        versions.put(versionId, content);
+        currentVersion = versionId;
+    }
+
+    private ResourceModel model(final String manifestVersion) {
+        return ResourceModel.builder()
+                .stackSetName("StackSet")
+                .manifestLocation(location)
+                .manifestVersion(manifestVersion)
+                .build();
+    }
+
+    @BeforeEach
+    public void setup() {
+        // Parsed manifests are cached per location across tests
+        location = "s3://bucket/" + UUID.randomUUID() + "/manifest.json";
+    }
+
+    @Test
+    public void parse_Sections_ReadsAccountsRegionsAndOverrides() throws IOException {
+        final StackInstanceManifest manifest = parse(manifest(SECTION_A, SECTION_B));
+
+        assertThat(manifest.getSections()).hasSize(2);
+        final StackInstanceManifest.Section section = manifest.getSections().get(0);
+        assertThat(section.getAccounts()).containsExactly("111111111111", "222222222222");
+        assertThat(section.getRegions()).containsExactly("us-east-1", "eu-west-1");
+        assertThat(section.getParameterOverrides()).containsExactly(
+                Parameter.builder().parameterKey("Tier").parameterValue("prod").build());
+        assertThat(manifest.getSections().get(1).getParameterOverrides()).isNull();
+        assertThat(manifest.flatten(Collections.emptySet())).hasSize(5);
+    }
+
+    @Test
+    public void parse_InvalidAccount_Rejected() {
+        assertThatThrownBy(() -> parse(manifest("{\"Accounts\": [\"ou-abcd-11111111\"], \"Regions\": [\"us-east-1\"]}")))
+                .isInstanceOf(CfnInvalidRequestException.class);
+    }
+
+    @Test
+    public void parse_WithoutSections_Rejected() {
+        assertThatThrownBy(() -> parse("{\"Sections\": []}")).isInstanceOf(CfnInvalidRequestException.class);
+        assertThatThrownBy(() -> parse("[]")).isInstanceOf(CfnInvalidRequestException.class);
+    }
+
+    @Test
+    public void getSectionHashes_ReorderedSection_SameHash() throws IOException {
+        assertThat(parse(manifest(SECTION_A)).getSectionHashes())
+                .isEqualTo(parse(manifest(SECTION_A_REORDERED)).getSectionHashes());
+        assertThat(parse(manifest(SECTION_B)).getSectionHashes())
+                .doesNotContainAnyElementsOf(parse(manifest(SECTION_B_CHANGED)).getSectionHashes());
+    }
+
+    @Test
+    public void flatten_SkippedSections_LeftOut() throws IOException {
+        final StackInstanceManifest manifest = parse(manifest(SECTION_A, SECTION_B));
+
+        assertThat(manifest.flatten(parse(manifest(SECTION_A)).getSectionHashes())).containsExactly(
+                StackInstance.builder().deploymentTarget("333333333333").region("us-east-1").build());
+    }
+
+    @Test
+    public void flatten_DuplicatedStackInstance_Rejected() throws IOException {
+        final StackInstanceManifest manifest = parse(manifest(SECTION_B, SECTION_B_CHANGED));
+
+        assertThatThrownBy(() -> manifest.flatten(Collections.emptySet()))
+                .isInstanceOf(CfnInvalidRequestException.class)
+                .hasMessageContaining("333333333333");
+    }
+
+    @Test
+    public void load_Unpinned_RecordsCurrentVersion() {
+        put("v1", manifest(SECTION_A));
+        final ResourceModel model = model(null);
+
+        StackInstanceManifest.load(proxyClient, model);
+
+        assertThat(model.getManifestVersion()).isEqualTo("v1");
+        assertThat(StackInstanceManifest.get(model).getSections()).hasSize(1);
+    }
+
+    @Test
+    public void load_PinnedAfterOverwrite_ReadsRecordedVersion() {
+        put("v1", manifest(SECTION_A));
+        put("v2", manifest(SECTION_A, SECTION_B));
+        final ResourceModel model = model("v1");
+
+        StackInstanceManifest.load(proxyClient, model);
+
+        assertThat(model.getManifestVersion()).isEqualTo("v1");
+        assertThat(requests.get(0).versionId()).isEqualTo("v1");
+        assertThat(StackInstanceManifest.get(model).getSections()).hasSize(1);
+    }
+
+    @Test
+    public void load_PinnedVersionCached_NoRead() {
+        put("v1", manifest(SECTION_A));
+        StackInstanceManifest.load(proxyClient, model(null));
+
+        StackInstanceManifest.load(proxyClient, model("v1"));
+
+        assertThat(requests).hasSize(1);
+    }
+
+    @Test
+    public void load_UnchangedObject_ReusesManifestOnNotModified() {
+        put("v1", manifest(SECTION_A));
+        StackInstanceManifest.load(proxyClient, model(null));
+        final ResourceModel model = model(null);
+
+        StackInstanceManifest.load(proxyClient, model);
+
+        assertThat(requests).hasSize(2);
+        assertThat(requests.get(1).ifNoneMatch()).isEqualTo("etag-v1");
+        assertThat(model.getManifestVersion()).isEqualTo("v1");
+        assertThat(StackInstanceManifest.get(model).getSections()).hasSize(1);
+    }
+
+    @Test
+    public void load_ChangedObject_ReadsNewVersion() {
+        put("v1", manifest(SECTION_A));
+        StackInstanceManifest.load(proxyClient, model(null));
+        put("v2", manifest(SECTION_A, SECTION_B));
+        final ResourceModel model = model(null);
+
+        StackInstanceManifest.load(proxyClient, model);
+
+        assertThat(model.getManifestVersion()).isEqualTo("v2");
+        assertThat(StackInstanceManifest.get(model).getSections()).hasSize(2);
+    }
+
+    @Test
+    public void getUnchangedSections_PreviousAndDesiredVersions_SharedSectionsOnly() {
+        put("v1", manifest(SECTION_A, SECTION_B));
+        put("v2", manifest(SECTION_A_REORDERED, SECTION_B_CHANGED));
+        final ResourceModel previousModel = model("v1");
+        final ResourceModel desiredModel = model("v2");
+        StackInstanceManifest.load(proxyClient, previousModel);
+        StackInstanceManifest.load(proxyClient, desiredModel);
+
+        assertThat(StackInstanceManifest.getUnchangedSections(previousModel, desiredModel))
+                .isEqualTo(StackInstanceManifest.get(previousModel).getSections().stream()
+                        .limit(1).map(StackInstanceManifest.Section::getHash).collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void load_UnversionedBucket_Rejected() {
+        put("null", manifest(SECTION_A));
+
+        assertThatThrownBy(() -> StackInstanceManifest.load(proxyClient, model(null)))
+                .isInstanceOf(CfnInvalidRequestException.class);
+    }
+
+    @Test
+    public void load_InlineStackInstancesAndManifest_Rejected() {
+        final ResourceModel model = model(null);
+        model.setStackInstances(StackInstances.builder().build());
+
+        assertThatThrownBy(() -> StackInstanceManifest.load(proxyClient, model))
+                .isInstanceOf(CfnInvalidRequestException.class);
+    }
+
+    @Test
+    public void load_OtherScheme_Rejected() {
+        final ResourceModel model = model(null);
+        model.setManifestLocation("file:///tmp/manifest.json");
+
+        assertThatThrownBy(() -> StackInstanceManifest.load(proxyClient, model))
+                .isInstanceOf(CfnInvalidRequestException.class);
+        assertThat(requests).isEmpty();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.*;
+
+/**
+ * Size and serialization-time benchmark of {@link StackInstanceSetCodec} against plain JSON objects.
+ * Not part of the unit test suite, run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=software.amazon.cloudformation.stackinstances.util.StackInstanceSetCodecBenchmark}
+ */
+public class StackInstanceSetCodecBenchmark {
+
+    private static final String[] REGIONS = {
+            "us-east-1", "us-east-2", "us-west-1", "us-west-2", "ca-central-1", "sa-east-1", "eu-west-1",
+            "eu-west-2", "eu-west-3", "eu-central-1", "eu-north-1", "eu-south-1", "ap-south-1", "ap-northeast-1",
+            "ap-northeast-2", "ap-northeast-3", "ap-southeast-1", "ap-southeast-2", "me-south-1", "af-south-1"
+    };
+
+    private static final int ITERATIONS = 20;
+
+    public static void main(final String[] args) throws Exception {
+        final ObjectMapper mapper = new ObjectMapper();
+        System.out.printf("%10s %10s %14s %12s %14s %12s%n",
+                "instances", "accounts", "json bytes", "json ms", "encoded bytes", "encoded ms");
+
+        for (final int accounts : new int[]{50, 500, 2500}) {
+            for (final boolean sequential : new boolean[]{true, false}) {
+                final Set<StackInstance> stackInstances = generate(accounts, sequential);
+
+                final long jsonStart = System.nanoTime();
+                String json = null;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    json = mapper.writeValueAsString(stackInstances);
+                }
+                final double jsonMillis = (System.nanoTime() - jsonStart) / 1e6 / ITERATIONS;
+
+                final long encodedStart = System.nanoTime();
+                String encoded = null;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    encoded = StackInstanceSetCodec.encode(stackInstances);
+                    StackInstanceSetCodec.decode(encoded);
+                }
+                final double encodedMillis = (System.nanoTime() - encodedStart) / 1e6 / ITERATIONS;
+
+                if (!StackInstanceSetCodec.decode(encoded).equals(stackInstances)) {
+                    throw new IllegalStateException("Decoded set differs from the encoded set");
+                }
+                System.out.printf("%10d %10s %14d %12.2f %14d %12.2f%n", stackInstances.size(),
+                        accounts + (sequential ? " seq" : " rnd"), json.length(), jsonMillis, encoded.length(), encodedMillis);
+            }
+        }
+    }
+
+    /**
+     * Generates accounts x Regions stack instances with 2% holes, with either consecutive account IDs
+     * (one organization vending accounts) or random account IDs
+     */
+    private static Set<StackInstance> generate(final int accounts, final boolean sequential) {
+        final Random random = new Random(accounts);
+        final Set<StackInstance> stackInstances = new HashSet<>();
+        final long base = 100000000000L;
+        for (int i = 0; i < accounts; i++) {
+            final long account = sequential ? base + i * 7L : base + (long) (random.nextDouble() * 899999999999L);
+            for (final String region : REGIONS) {
+                if (random.nextInt(100) < 2) continue;
+                stackInstances.add(StackInstance.builder()
+                        .deploymentTarget(String.format("%012d", account))
+                        .region(region)
+                        .build());
+            }
+        }
+        return stackInstances;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import software.amazon.cloudformation.stackinstances.CallbackContext;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StackInstanceSetCodecTest {
+
+    private static StackInstance instance(final String deploymentTarget, final String region) {
+        return StackInstance.builder().deploymentTarget(deploymentTarget).region(region).build();
+    }
+
+    @Test
+    public void decode_AccountTargets_RoundTrips() {
+        final Set<StackInstance> stackInstances = new HashSet<>();
+        for (int index = 0; index < 500; index++) {
+            stackInstances.add(instance(String.format("%012d", 1_000L + index * 7L), "us-east-1"));
+            if (index % 3 == 0) stackInstances.add(instance(String.format("%012d", 1_000L + index * 7L), "eu-west-1"));
+        }
+
+        final String encoded = StackInstanceSetCodec.encode(stackInstances);
+
+        assertThat(StackInstanceSetCodec.decode(encoded)).isEqualTo(stackInstances);
+        // Far below the ~50 bytes per stack instance of the plain JSON form
+        assertThat(encoded.length()).isLessThan(stackInstances.size() * 5);
+    }
+
+    @Test
+    public void encode_RandomAccounts_StaysNearEntropyFloor() {
+        final Random random = new Random(42L);
+        final Set<StackInstance> stackInstances = new HashSet<>();
+        for (int index = 0; index < 2_500; index++) {
+            final String account = String.format("%012d", (long) (random.nextDouble() * 1_000_000_000_000L));
+            for (int region = 0; region < 20; region++) {
+                stackInstances.add(instance(account, "region-" + region));
+            }
+        }
+
+        final String encoded = StackInstanceSetCodec.encode(stackInstances);
+
+        assertThat(StackInstanceSetCodec.decode(encoded)).isEqualTo(stackInstances);
+        // Random account IDs carry ~30 bits each, so ~12.5 KB of Base64 is the floor for 2,500 of them
+        assertThat(encoded.length()).isLessThan(20 * 1024);
+    }
+
+    @Test
+    public void decode_OrganizationalUnitTargets_RoundTrips() {
+        final Set<StackInstance> stackInstances = new HashSet<>();
+        stackInstances.add(instance("ou-abcd-11111111", "us-east-1"));
+        stackInstances.add(instance("ou-abcd-22222222", "us-west-2"));
+        stackInstances.add(instance("000000000001", "us-west-2"));
+
+        assertThat(StackInstanceSetCodec.decode(StackInstanceSetCodec.encode(stackInstances))).isEqualTo(stackInstances);
+    }
+
+    @Test
+    public void decode_LeadingZeroAccounts_KeepTwelveDigits() {
+        final Set<StackInstance> stackInstances = Collections.singleton(instance("000000000042", "us-east-1"));
+
+        final Set<StackInstance> decoded = StackInstanceSetCodec.decode(StackInstanceSetCodec.encode(stackInstances));
+
+        assertThat(decoded.iterator().next().getDeploymentTarget()).isEqualTo("000000000042");
+    }
+
+    @Test
+    public void decode_EmptySet_RoundTrips() {
+        assertThat(StackInstanceSetCodec.decode(StackInstanceSetCodec.encode(Collections.emptySet()))).isEmpty();
+    }
+
+    @Test
+    public void serialize_CallbackContext_RoundTripsEncodedSets() throws Exception {
+        final ObjectMapper mapper = new ObjectMapper();
+        final CallbackContext callbackContext = new CallbackContext();
+        final Set<StackInstance> stackInstances = Collections.singleton(instance("111111111111", "us-east-1"));
+        callbackContext.getRepairedStackInstances().put("StackSet", stackInstances);
+
+        final CallbackContext read = mapper.readValue(mapper.writeValueAsString(callbackContext), CallbackContext.class);
+
+        assertThat(read.getRepairedStackInstances()).containsEntry("StackSet", stackInstances);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StackSetBeaconTest {
+
+    private static final String KEY = "us-east-1::SELF::StackSet";
+
+    private final TickingClock clock = new TickingClock();
+
+    private final InMemoryLeaseStore store = new InMemoryLeaseStore();
+
+    private final StackSetBeacon beacon = new StackSetBeacon(store, clock);
+
+    @Test
+    public void elect_StaleSignal_OnePollerPerInterval() {
+        assertThat(beacon.elect(KEY, "first")).isTrue();
+        assertThat(beacon.elect(KEY, "second")).isFalse();
+        assertThat(beacon.elect(KEY, "first")).isTrue();
+
+        clock.advance(StackSetBeacon.MIN_POLL_INTERVAL);
+
+        assertThat(beacon.elect(KEY, "second")).isTrue();
+    }
+
+    @Test
+    public void publish_LongRunningOperation_ExpectedFreeAfterMaxPollInterval() {
+        clock.advance(Duration.ofMinutes(40L));
+
+        final StackSetBeacon.Signal signal = beacon.publish(KEY, "operation", Instant.EPOCH);
+
+        assertThat(signal.isBusy()).isTrue();
+        assertThat(beacon.untilFree(signal)).isEqualTo(StackSetBeacon.MAX_POLL_INTERVAL);
+        assertThat(beacon.isFresh(beacon.read(KEY))).isTrue();
+
+        clock.advance(StackSetBeacon.MAX_POLL_INTERVAL);
+
+        assertThat(beacon.isFresh(beacon.read(KEY))).isFalse();
+    }
+
+    @Test
+    public void publish_RecentOperation_ExpectedFreeAfterMinPollInterval() {
+        final Instant startedAt = clock.instant();
+        clock.advance(Duration.ofSeconds(8L));
+
+        final StackSetBeacon.Signal signal = beacon.publish(KEY, "operation", startedAt);
+
+        assertThat(beacon.untilFree(signal)).isEqualTo(StackSetBeacon.MIN_POLL_INTERVAL);
+    }
+
+    @Test
+    public void publish_FreeStackSet_FreshForMinPollInterval() {
+        beacon.publish(KEY, null, null);
+
+        assertThat(beacon.read(KEY).isBusy()).isFalse();
+        assertThat(beacon.isFresh(beacon.read(KEY))).isTrue();
+
+        clock.advance(StackSetBeacon.MIN_POLL_INTERVAL);
+
+        assertThat(beacon.isFresh(beacon.read(KEY))).isFalse();
+    }
+
+    @Test
+    public void publish_OlderThanPublished_KeepsNewer() {
+        final TickingClock laggingClock = new TickingClock();
+        final StackSetBeacon lagging = new StackSetBeacon(store, laggingClock);
+        clock.advance(Duration.ofSeconds(30L));
+        beacon.publish(KEY, null, null);
+
+        final StackSetBeacon.Signal signal = lagging.publish(KEY, "operation", Instant.EPOCH);
+
+        assertThat(signal.isBusy()).isFalse();
+        assertThat(beacon.read(KEY).isBusy()).isFalse();
+    }
+
+    @Test
+    public void isFresh_NothingPublished_Stale() {
+        assertThat(beacon.read(KEY)).isNull();
+        assertThat(beacon.isFresh(null)).isFalse();
+    }
+
+    @Test
+    public void requireShared_InMemoryStore_Rejected() {
+        assertThatThrownBy(() -> LeaseStore.requireShared(StackSetBeacon.BEACON_STORE_ENV,
+                LeaseStore.fromConfiguration(LeaseStore.MEMORY_STORE)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(StackSetBeacon.BEACON_STORE_ENV);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationsRequest;
+import software.amazon.awssdk.services.cloudformation.model.ListStackSetOperationsResponse;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationStatus;
+import software.amazon.awssdk.services.cloudformation.model.StackSetOperationSummary;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.Credentials;
+import software.amazon.cloudformation.proxy.Logger;
+import software.amazon.cloudformation.proxy.LoggerProxy;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.stackinstances.CallbackContext;
+import software.amazon.cloudformation.stackinstances.ResourceModel;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StackSetCoordinatorTest {
+
+    private static final String STACK_SET = "StackSet";
+
+    private final Logger logger = message -> { };
+
+    private final TickingClock clock = new TickingClock();
+
+    private final StackSetBeacon beacon = new StackSetBeacon(new InMemoryLeaseStore(), clock);
+
+    private final List<StackSetOperationSummary> operations = new ArrayList<>();
+
+    private int listCalls;
+
+    private final ProxyClient<CloudFormationClient> proxyClient = new AmazonWebServicesClientProxy(new LoggerProxy(),
+            new Credentials("test", "test", "test"), () -> 0L).newProxy(() -> new CloudFormationClient() {
+                @Override
+                public ListStackSetOperationsResponse listStackSetOperations(final ListStackSetOperationsRequest request) {
+                    listCalls++;
+                    return ListStackSetOperationsResponse.builder().summaries(operations).build();
+                }
+
+                @Override
+                public String serviceName() {
+                    return SERVICE_NAME;
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+
+    private static ResourceModel model(final String instanceId) {
+        return ResourceModel.builder().instanceId(instanceId).stackSetName(STACK_SET).administrationRegion("us-east-1").build();
+    }
+
+    private int delaySeconds(final String instanceId, final CallbackContext callbackContext) {
+        return StackSetCoordinator.getBeaconDelaySeconds(beacon, proxyClient, model(instanceId), callbackContext, STACK_SET, logger);
+    }
+
+    private void running() {
+        operations.add(StackSetOperationSummary.builder()
+                .operationId("running").status(StackSetOperationStatus.RUNNING).creationTimestamp(Instant.EPOCH).build());
+    }
+
+    @Test
+    public void getBeaconDelaySeconds_Busy_OnePollForAllContenders() {
+        running();
+        clock.advance(Duration.ofMinutes(40L));
+
+        assertThat(delaySeconds("first", new CallbackContext())).isEqualTo(120);
+        assertThat(delaySeconds("second", new CallbackContext())).isEqualTo(120);
+        assertThat(listCalls).isEqualTo(1);
+    }
+
+    @Test
+    public void getBeaconDelaySeconds_ElectedPollerPolling_FollowersWait() {
+        beacon.elect(StackSetKey.of(model("first"), STACK_SET), "first");
+
+        assertThat(delaySeconds("second", new CallbackContext()))
+                .isEqualTo(StackSetCoordinator.BEACON_FOLLOWER_DELAY_SECONDS);
+        assertThat(listCalls).isZero();
+    }
+
+    @Test
+    public void getBeaconDelaySeconds_Passed_NotGatedAgain() {
+        final CallbackContext callbackContext = new CallbackContext();
+        assertThat(delaySeconds("first", callbackContext)).isZero();
+        assertThat(callbackContext.getBeaconPassedStackSets()).containsExactly(STACK_SET);
+
+        // The resource's own operation now runs on the StackSet
+        running();
+        clock.advance(Duration.ofMinutes(40L));
+
+        assertThat(delaySeconds("first", callbackContext)).isZero();
+        assertThat(listCalls).isEqualTo(1);
+        assertThat(delaySeconds("second", new CallbackContext())).isEqualTo(120);
+    }
+
+    @Test
+    public void getBeaconDelaySeconds_ManagedExecution_NotGated() {
+        running();
+        final CallbackContext callbackContext = new CallbackContext();
+        callbackContext.getManagedExecution().put(STACK_SET, true);
+
+        assertThat(delaySeconds("first", callbackContext)).isZero();
+        assertThat(listCalls).isZero();
+    }
+
+    @Test
+    public void getBeaconDelaySeconds_Disabled_NotGated() {
+        running();
+
+        assertThat(StackSetCoordinator.getBeaconDelaySeconds(new StackSetBeacon(null, clock), proxyClient,
+                model("first"), new CallbackContext(), STACK_SET, logger)).isZero();
+        assertThat(listCalls).isZero();
+    }
+}
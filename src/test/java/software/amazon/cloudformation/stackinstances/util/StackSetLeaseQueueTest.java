@@ -0,0 +1,148 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StackSetLeaseQueueTest {
+
+    private static final String KEY = "us-east-1::SELF::StackSet";
+
+    private static final Duration RENEWAL = Duration.ofMinutes(4L);
+
+    private final TickingClock clock = new TickingClock();
+
+    private final StackSetLeaseQueue queue = new StackSetLeaseQueue(new InMemoryLeaseStore(), clock);
+
+    @Test
+    public void acquire_Contenders_ServedInArrivalOrder() {
+        assertThat(queue.acquire(KEY, "first")).isZero();
+        assertThat(queue.acquire(KEY, "second")).isEqualTo(1);
+        assertThat(queue.acquire(KEY, "third")).isEqualTo(2);
+
+        queue.release(KEY, "first");
+
+        assertThat(queue.acquire(KEY, "third")).isEqualTo(1);
+        assertThat(queue.acquire(KEY, "second")).isZero();
+    }
+
+    @Test
+    public void acquire_Newcomer_StaysBehindLongWaitingTicket() {
+        queue.acquire(KEY, "holder");
+        queue.acquire(KEY, "waiting");
+        for (int step = 0; step < 8; step++) {
+            clock.advance(RENEWAL);
+            queue.acquire(KEY, "holder");
+            queue.acquire(KEY, "waiting");
+        }
+        queue.acquire(KEY, "newcomer");
+
+        queue.release(KEY, "holder");
+
+        assertThat(queue.acquire(KEY, "newcomer")).isEqualTo(1);
+        assertThat(queue.acquire(KEY, "waiting")).isZero();
+    }
+
+    @Test
+    public void acquire_HolderNotRenewing_LeaseExpires() {
+        queue.acquire(KEY, "holder");
+        assertThat(queue.acquire(KEY, "waiting")).isEqualTo(1);
+
+        int ahead = 1;
+        for (int step = 0; step < 6 && ahead > 0; step++) {
+            clock.advance(RENEWAL);
+            ahead = queue.acquire(KEY, "waiting");
+        }
+
+        assertThat(ahead).isZero();
+        assertThat(queue.acquire(KEY, "holder")).isEqualTo(1);
+    }
+
+    @Test
+    public void acquire_WaitingTicketNotRenewed_DropsOut() {
+        queue.acquire(KEY, "holder");
+        queue.acquire(KEY, "gone");
+        queue.acquire(KEY, "waiting");
+
+        clock.advance(Duration.ofMinutes(6L));
+        queue.acquire(KEY, "holder");
+
+        assertThat(queue.acquire(KEY, "waiting")).isEqualTo(1);
+    }
+
+    @Test
+    public void acquire_OtherStackSetKey_Independent() {
+        assertThat(queue.acquire(KEY, "holder")).isZero();
+        assertThat(queue.acquire("eu-west-1::SELF::StackSet", "other")).isZero();
+        assertThat(queue.acquire("us-east-1::DELEGATED_ADMIN::StackSet", "delegated")).isZero();
+    }
+
+    @Test
+    public void isIdle_TicketsHeldOrWaiting_NotIdleUntilReleased() {
+        assertThat(queue.isIdle(KEY)).isTrue();
+        queue.acquire(KEY, "holder");
+        queue.acquire(KEY, "waiting");
+
+        queue.release(KEY, "holder");
+        assertThat(queue.isIdle(KEY)).isFalse();
+
+        queue.release(KEY, "waiting");
+        assertThat(queue.isIdle(KEY)).isTrue();
+    }
+
+    @Test
+    public void isIdle_WaitingTicketNotRenewed_Idle() {
+        queue.acquire(KEY, "holder");
+        queue.acquire(KEY, "waiting");
+        queue.release(KEY, "holder");
+
+        clock.advance(Duration.ofMinutes(6L));
+
+        assertThat(queue.isIdle(KEY)).isTrue();
+    }
+
+    @Test
+    public void acquire_Disabled_AlwaysGranted() {
+        final StackSetLeaseQueue disabled = new StackSetLeaseQueue(null, clock);
+
+        assertThat(disabled.acquire(KEY, "first")).isZero();
+        assertThat(disabled.acquire(KEY, "second")).isZero();
+    }
+
+    @Test
+    public void requireShared_InMemoryStore_Rejected() {
+        assertThatThrownBy(() -> StackSetLeaseQueue.requireShared(LeaseStore.fromConfiguration("memory")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void requireShared_Unset_Disabled() {
+        assertThat(StackSetLeaseQueue.requireShared(LeaseStore.fromConfiguration(null))).isNull();
+    }
+
+    @Test
+    public void fromConfiguration_UnknownStore_Rejected() {
+        assertThatThrownBy(() -> LeaseStore.fromConfiguration("dynamodb:leases"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
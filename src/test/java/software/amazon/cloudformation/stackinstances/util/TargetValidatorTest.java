@@ -0,0 +1,153 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package software.amazon.cloudformation.stackinstances.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TargetValidatorTest {
+
+    private static final String ACCOUNT = "111111111111";
+
+    private static final Set<StackInstance> STACK_INSTANCES = Collections.singleton(
+            StackInstance.builder().region("us-east-1").deploymentTarget(ACCOUNT).build());
+
+    @Test
+    public void validate_FailedRegionLookup_CachedUntilFailureTtl() {
+        final AtomicInteger calls = new AtomicInteger();
+        final TickingClock clock = new TickingClock();
+        final TargetValidator validator = new TargetValidator(null, (proxy, account) -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("AccessDenied");
+        }, clock);
+
+        final TargetValidator.Findings first = validator.validate(null, STACK_INSTANCES);
+        final TargetValidator.Findings second = validator.validate(null, STACK_INSTANCES);
+
+        assertThat(calls).hasValue(1);
+        assertThat(first.getUnavailableSources()).containsExactly("enabled Regions of 111111111111 (AccessDenied)");
+        assertThat(second.getUnavailableSources()).isEqualTo(first.getUnavailableSources());
+        assertThat(second.getInvalidTargets()).isEmpty();
+
+        clock.advance(TargetValidator.FAILURE_CACHE_TTL);
+        validator.validate(null, STACK_INSTANCES);
+
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    public void validate_ListedRegions_CachedUntilRegionTtl() {
+        final AtomicInteger calls = new AtomicInteger();
+        final TickingClock clock = new TickingClock();
+        final TargetValidator validator = new TargetValidator(null, (proxy, account) -> {
+            calls.incrementAndGet();
+            return Collections.singleton("eu-west-1");
+        }, clock);
+
+        final TargetValidator.Findings findings = validator.validate(null, STACK_INSTANCES);
+        clock.advance(TargetValidator.FAILURE_CACHE_TTL);
+        validator.validate(null, STACK_INSTANCES);
+
+        assertThat(calls).hasValue(1);
+        assertThat(findings.getInvalidTargets()).hasSize(1);
+        assertThat(findings.getUnavailableSources()).isEmpty();
+
+        clock.advance(TargetValidator.REGION_CACHE_TTL);
+        validator.validate(null, STACK_INSTANCES);
+
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    public void validate_LookupsRunOut_ResumesAtNextAccount() {
+        final AtomicInteger calls = new AtomicInteger();
+        final TargetValidator validator = new TargetValidator(null, (proxy, account) -> {
+            calls.incrementAndGet();
+            return Collections.singleton("us-east-1");
+        }, new TickingClock());
+        final Set<StackInstance> stackInstances = new HashSet<>(Arrays.asList(
+                instance("333333333333", "us-east-1"), instance("111111111111", "eu-west-1"),
+                instance("222222222222", "us-east-1")));
+
+        final TargetValidator.Findings first = validator.validate(null, stackInstances, 0, 2);
+
+        assertThat(calls).hasValue(2);
+        assertThat(first.getResumeAt()).isEqualTo(2);
+        assertThat(first.getInvalidTargets()).containsOnlyKeys(instance("111111111111", "eu-west-1"));
+
+        final TargetValidator.Findings second = validator.validate(null, stackInstances, first.getResumeAt(), 2);
+
+        assertThat(calls).hasValue(3);
+        assertThat(second.getResumeAt()).isNull();
+        assertThat(second.getInvalidTargets()).isEmpty();
+    }
+
+    @Test
+    public void validate_CachedRegions_TakeNoLookup() {
+        final AtomicInteger calls = new AtomicInteger();
+        final TargetValidator validator = new TargetValidator(null, (proxy, account) -> {
+            calls.incrementAndGet();
+            return Collections.singleton("us-east-1");
+        }, new TickingClock());
+        validator.validate(null, STACK_INSTANCES);
+
+        final TargetValidator.Findings findings = validator.validate(null, new HashSet<>(Arrays.asList(
+                instance(ACCOUNT, "us-east-1"), instance("222222222222", "us-east-1"))), 0, 1);
+
+        assertThat(calls).hasValue(2);
+        assertThat(findings.getResumeAt()).isNull();
+    }
+
+    @Test
+    public void validate_SuspendedAccount_RejectedWithoutLookup() {
+        final AtomicInteger calls = new AtomicInteger();
+        final TargetValidator validator = new TargetValidator(proxy -> Collections.singletonMap(ACCOUNT, "SUSPENDED"),
+                (proxy, account) -> {
+                    calls.incrementAndGet();
+                    return Collections.singleton("us-east-1");
+                }, new TickingClock());
+
+        final TargetValidator.Findings findings = validator.validate(null, STACK_INSTANCES, 0, 0);
+
+        assertThat(calls).hasValue(0);
+        assertThat(findings.getResumeAt()).isNull();
+        assertThat(findings.getInvalidTargets()).containsValue("account 111111111111 is SUSPENDED");
+    }
+
+    @Test
+    public void isEnabled_DefaultSources_OnlyWithInvalidTargetAction() {
+        final TargetValidator optIn = new TargetValidator(proxy -> Collections.emptyMap(), null, new TickingClock(), true);
+        final TargetValidator configured = new TargetValidator(proxy -> Collections.emptyMap(), null, new TickingClock());
+
+        assertThat(optIn.isEnabled(null)).isFalse();
+        assertThat(optIn.isEnabled("FAIL")).isTrue();
+        assertThat(configured.isEnabled(null)).isTrue();
+        assertThat(new TargetValidator(null, null, new TickingClock()).isEnabled("PRUNE")).isFalse();
+    }
+
+    private static StackInstance instance(final String account, final String region) {
+        return StackInstance.builder().region(region).deploymentTarget(account).build();
+    }
+}